@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.benchmarks;
+
+import com.sun.javafx.application.PlatformImpl;
+import javafx.application.Platform;
+import org.lttng.scope.common.jfx.JfxUtils;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Start-up of the JavaFX toolkit for the benchmarks.
+ * <p>
+ * The benchmark forks should be run on the headless Monocle platform, using
+ * the JVM arguments defined here, so that they do not depend on (nor get
+ * disturbed by) a display.
+ *
+ * @author Alexandre Montplaisir
+ */
+public final class JfxToolkit {
+
+    /** Use the Monocle glass platform */
+    public static final String GLASS_PLATFORM_ARG = "-Dglass.platform=Monocle"; //$NON-NLS-1$
+    /** Use Monocle's headless implementation */
+    public static final String MONOCLE_PLATFORM_ARG = "-Dmonocle.platform=Headless"; //$NON-NLS-1$
+    /** Use the software pipeline, there is no GPU to render to */
+    public static final String PRISM_ORDER_ARG = "-Dprism.order=sw"; //$NON-NLS-1$
+
+    private static boolean sfStarted = false;
+
+    private JfxToolkit() {}
+
+    /**
+     * Start the JavaFX toolkit, if it is not already running in this JVM.
+     */
+    public static synchronized void start() {
+        if (sfStarted) {
+            return;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        PlatformImpl.startup(latch::countDown);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        /* Benchmark setups open and close stages, keep the toolkit alive. */
+        Platform.setImplicitExit(false);
+        sfStarted = true;
+    }
+
+    /**
+     * Wait until all the operations queued on the UI thread so far have run.
+     * Layers hand their nodes to the UI thread with {@link Platform#runLater},
+     * benchmarks call this to include that part in their measurements.
+     */
+    public static void drainUIThread() {
+        JfxUtils.runLaterAndWait(() -> {});
+    }
+}
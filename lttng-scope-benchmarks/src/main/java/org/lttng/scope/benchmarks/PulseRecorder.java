@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.benchmarks;
+
+import com.sun.javafx.tk.TKPulseListener;
+import com.sun.javafx.tk.Toolkit;
+import org.lttng.scope.common.jfx.JfxUtils;
+
+/**
+ * Records the duration of the JavaFX pulses, from the start of the stage
+ * pulses to the end of the scene pulses. This covers the CSS, layout and
+ * synchronization of the scene graph done on the UI thread, but not the
+ * rendering itself, which happens on the render thread.
+ * <p>
+ * Pulses are measured from {@link #start()} to {@link #stop()}. The listeners
+ * run on the UI thread only, so the samples are only read from there.
+ *
+ * @author Alexandre Montplaisir
+ */
+public class PulseRecorder {
+
+    private final Samples fSamples = new Samples();
+
+    private long fPulseStart = -1;
+
+    private final TKPulseListener fStartListener = () -> fPulseStart = System.nanoTime();
+    private final TKPulseListener fEndListener = () -> {
+        if (fPulseStart >= 0) {
+            fSamples.add(System.nanoTime() - fPulseStart);
+            fPulseStart = -1;
+        }
+    };
+
+    /**
+     * Start recording pulses. Previous samples are discarded.
+     */
+    public void start() {
+        JfxUtils.runLaterAndWait(() -> {
+            fSamples.clear();
+            fPulseStart = -1;
+            Toolkit tk = Toolkit.getToolkit();
+            tk.addStageTkPulseListener(fStartListener);
+            tk.addPostSceneTkPulseListener(fEndListener);
+        });
+    }
+
+    /**
+     * Stop recording pulses.
+     *
+     * @return The durations of the pulses since {@link #start()}, in
+     *         nanoseconds
+     */
+    public Samples stop() {
+        Samples samples = new Samples();
+        JfxUtils.runLaterAndWait(() -> {
+            Toolkit tk = Toolkit.getToolkit();
+            tk.removeStageTkPulseListener(fStartListener);
+            tk.removePostSceneTkPulseListener(fEndListener);
+            samples.addAll(fSamples);
+        });
+        return samples;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.benchmarks;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A series of duration samples, in nanoseconds, and their distribution.
+ *
+ * @author Alexandre Montplaisir
+ */
+public class Samples {
+
+    private long[] fValues = new long[64];
+    private int fSize = 0;
+
+    /**
+     * Add a sample.
+     *
+     * @param nanos
+     *            The duration, in nanoseconds
+     */
+    public void add(long nanos) {
+        if (fSize == fValues.length) {
+            fValues = Arrays.copyOf(fValues, fSize * 2);
+        }
+        fValues[fSize++] = nanos;
+    }
+
+    /**
+     * Add all the samples of another series.
+     *
+     * @param other
+     *            The other series
+     */
+    public void addAll(Samples other) {
+        for (int i = 0; i < other.fSize; i++) {
+            add(other.fValues[i]);
+        }
+    }
+
+    /**
+     * Remove all samples.
+     */
+    public void clear() {
+        fSize = 0;
+    }
+
+    /**
+     * Get the number of samples.
+     *
+     * @return The number of samples
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Get a percentile of the samples, using the nearest-rank method.
+     *
+     * @param percentile
+     *            The percentile, between 0 and 100
+     * @return The sample value at that percentile, or 0 if there are no
+     *         samples
+     */
+    public long percentile(double percentile) {
+        if (fSize == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(fValues, fSize);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * fSize);
+        return sorted[Math.max(0, Math.min(fSize - 1, rank - 1))];
+    }
+
+    /**
+     * Get the mean of the samples.
+     *
+     * @return The mean, or 0 if there are no samples
+     */
+    public double mean() {
+        if (fSize == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < fSize; i++) {
+            sum += fValues[i];
+        }
+        return sum / fSize;
+    }
+
+    /**
+     * Write the distribution of the samples as a JSON object, with values in
+     * milliseconds.
+     *
+     * @return The JSON string
+     */
+    public String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"count\": %d, \"mean\": %.3f, \"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"max\": %.3f}", //$NON-NLS-1$
+                fSize,
+                mean() / 1e6,
+                percentile(50) / 1e6,
+                percentile(95) / 1e6,
+                percentile(99) / 1e6,
+                percentile(100) / 1e6);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.jfx;
+
+import com.efficios.jabberwocky.views.common.ColorDefinition;
+import com.efficios.jabberwocky.views.timegraph.model.render.LineThickness;
+import com.efficios.jabberwocky.views.timegraph.model.render.StateDefinition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Benchmarks of the color lookups done by the threads building the state
+ * rectangles in parallel. All the threads share the same palette, so this
+ * measures the contention on the color caches.
+ * <p>
+ * Every invocation does the same total amount of work, split between
+ * 'parallelism' threads. Without contention, the time of an invocation goes
+ * down as the number of threads goes up, until it reaches the number of
+ * cores.
+ *
+ * @author Alexandre Montplaisir
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class JfxColorFactoryBenchmark {
+
+    private static final int PALETTE_SIZE = 16;
+
+    /** Palette lookups of an invocation, all threads combined */
+    private static final int TOTAL_ROUNDS = 8192;
+
+    /** Number of threads sharing the work of an invocation */
+    @Param({ "1", "2", "4", "8", "16" })
+    public int parallelism;
+
+    private final ColorDefinition[] fPalette = new ColorDefinition[PALETTE_SIZE];
+    private final List<StateDefinition> fStateDefinitions = new ArrayList<>();
+
+    private ExecutorService fExecutor;
+
+    /**
+     * Create the palette, and put it in the caches like a paint would.
+     */
+    @Setup
+    public void setup() {
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            fPalette[i] = new ColorDefinition(i * 16, 255 - i * 16, (i * 37) % 256, ColorDefinition.MAX);
+            fStateDefinitions.add(new StateDefinition("State" + i, fPalette[i], LineThickness.NORMAL)); //$NON-NLS-1$
+        }
+        JfxColorFactory.precomputePalette(fStateDefinitions);
+        fExecutor = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * Stop the threads.
+     */
+    @TearDown
+    public void teardown() {
+        fExecutor.shutdownNow();
+    }
+
+    /**
+     * Run the given number of rounds split between the threads, and wait for
+     * all of them.
+     *
+     * @return The sum of the values returned by the rounds
+     */
+    private int runRounds(IntUnaryOperator round) throws InterruptedException, ExecutionException {
+        int roundsPerThread = TOTAL_ROUNDS / parallelism;
+        List<Future<Integer>> futures = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            futures.add(fExecutor.submit(() -> {
+                int sum = 0;
+                for (int r = 0; r < roundsPerThread; r++) {
+                    sum += round.applyAsInt(r);
+                }
+                return sum;
+            }));
+        }
+        int sum = 0;
+        for (Future<Integer> future : futures) {
+            sum += future.get();
+        }
+        return sum;
+    }
+
+    /**
+     * Look up the colors of the palette from all threads.
+     *
+     * @return A value depending on the results, for JMH to consume
+     * @throws Exception
+     *             If a thread failed
+     */
+    @Benchmark
+    public int getColorFromDef() throws Exception {
+        return runRounds(r -> {
+            int sum = 0;
+            for (ColorDefinition colorDef : fPalette) {
+                sum += JfxColorFactory.getColorFromDef(colorDef).hashCode();
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * Look up the derived colors of the palette from all threads.
+     *
+     * @return A value depending on the results, for JMH to consume
+     * @throws Exception
+     *             If a thread failed
+     */
+    @Benchmark
+    public int getDerivedColorFromDef() throws Exception {
+        return runRounds(r -> {
+            int sum = 0;
+            for (ColorDefinition colorDef : fPalette) {
+                sum += JfxColorFactory.getDerivedColorFromDef(colorDef).hashCode();
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * Precompute the palette of the state definitions from all threads, as
+     * every paint of every state layer does.
+     *
+     * @return A value depending on the results, for JMH to consume
+     * @throws Exception
+     *             If a thread failed
+     */
+    @Benchmark
+    public int precomputePalette() throws Exception {
+        return runRounds(r -> {
+            JfxColorFactory.precomputePalette(fStateDefinitions);
+            return r;
+        });
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.jfx;
+
+import javafx.scene.control.OverrunStyle;
+import javafx.scene.text.Font;
+import org.lttng.scope.benchmarks.JfxToolkit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the clipping of state labels.
+ *
+ * @author Alexandre Montplaisir
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+        JfxToolkit.GLASS_PLATFORM_ARG, JfxToolkit.MONOCLE_PLATFORM_ARG, JfxToolkit.PRISM_ORDER_ARG })
+public class JfxTextUtilsBenchmark {
+
+    private static final String ELLIPSIS = "..."; //$NON-NLS-1$
+
+    /** Length of the label to clip */
+    @Param({ "10", "50" })
+    public int labelLength;
+
+    private Font fFont;
+    private String fLabel;
+    private long fCounter = 0;
+
+    /**
+     * Prepare the label and font.
+     */
+    @Setup
+    public void setup() {
+        JfxToolkit.start();
+        fFont = Font.font(12.0);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labelLength; i++) {
+            sb.append((char) ('a' + i % 26));
+        }
+        fLabel = sb.toString();
+    }
+
+    /**
+     * Clip a label that was clipped to the same width before, as happens when
+     * repainting the same area.
+     *
+     * @return The clipped text
+     */
+    @Benchmark
+    public String clipCached() {
+        return JfxTextUtils.computeClippedText(fFont, fLabel, 40.5, OverrunStyle.ELLIPSIS, ELLIPSIS);
+    }
+
+    /**
+     * Clip a label that was never seen before, so that every call misses the
+     * cache, as happens when new states come into view.
+     *
+     * @return The clipped text
+     */
+    @Benchmark
+    public String clipUncached() {
+        String label = fCounter++ + fLabel;
+        return JfxTextUtils.computeClippedText(fFont, label, 40.5, OverrunStyle.ELLIPSIS, ELLIPSIS);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.views.timegraph.model.provider.states.TimeGraphModelStateProvider;
+import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateInterval;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
+import org.lttng.scope.benchmarks.JfxToolkit;
+import org.lttng.scope.common.jfx.JfxColorFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark of the creation of the state rectangles of the rows, which the
+ * state layer does with a parallel stream, one row per work item.
+ * <p>
+ * The states are fetched once at setup, so only the creation of the
+ * rectangles, including their color lookups, is measured. The parallel
+ * stream runs in a pool of 'parallelism' threads instead of the common pool,
+ * to show how this work scales with the number of cores.
+ *
+ * @author Alexandre Montplaisir
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        JfxToolkit.GLASS_PLATFORM_ARG, JfxToolkit.MONOCLE_PLATFORM_ARG, JfxToolkit.PRISM_ORDER_ARG })
+public class StateRectangleBenchmark {
+
+    /** Number of entries of the model, all of their rows get rectangles */
+    @Param({ "1000" })
+    public int nbEntries;
+
+    /** Number of state intervals of each entry, over the full range */
+    @Param({ "100", "1000" })
+    public int intervalsPerEntry;
+
+    /** Number of threads running the parallel stream */
+    @Param({ "1", "2", "4", "8", "16" })
+    public int parallelism;
+
+    private TimeGraphFixture fFixture;
+    private TimeGraphWidget fWidget;
+    private TimeGraphModelStateProvider fStateProvider;
+    private TimeGraphStateInterval[][] fIntervals;
+    private ForkJoinPool fPool;
+
+    /**
+     * Create the widget and fetch the states of all its rows.
+     */
+    @Setup
+    public void setup() {
+        fFixture = new TimeGraphFixture(nbEntries, intervalsPerEntry);
+        fWidget = fFixture.getWidget();
+        fStateProvider = fWidget.getControl().getRenderProvider().getStateProvider();
+
+        long resolution = Math.max(1, Math.round(fWidget.getCurrentNanosPerPixel()));
+        List<TimeGraphTreeElement> elements = fWidget.getVisibleRows().getElements();
+        fIntervals = elements.stream()
+                .map(element -> fStateProvider.getStateRender(element, TimeGraphFixture.FULL_RANGE, resolution, null))
+                .map(render -> render.getStateIntervals().toArray(new TimeGraphStateInterval[0]))
+                .toArray(TimeGraphStateInterval[][]::new);
+
+        fPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Dispose of the widget and stop the threads.
+     */
+    @TearDown
+    public void teardown() {
+        fPool.shutdownNow();
+        fFixture.close();
+    }
+
+    /**
+     * Create the rectangles of all the rows, after precomputing the palette,
+     * like a paint of the state layer does.
+     *
+     * @return The rectangles of each row
+     * @throws Exception
+     *             If the creation failed
+     */
+    @Benchmark
+    public List<StateRectangle[]> createStateRectangles() throws Exception {
+        JfxColorFactory.precomputePalette(fStateProvider.getStateDefinitions());
+        /* A parallel stream started from a pool's task runs in that pool */
+        return fPool.submit(() -> IntStream.range(0, fIntervals.length).parallel()
+                .mapToObj(row -> Arrays.stream(fIntervals[row])
+                        .map(interval -> new StateRectangle(fWidget, interval, row))
+                        .toArray(StateRectangle[]::new))
+                .collect(Collectors.toList()))
+                .get();
+    }
+}
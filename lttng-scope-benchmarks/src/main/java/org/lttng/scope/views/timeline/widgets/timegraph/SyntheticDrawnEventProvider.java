@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.common.ConfigOption;
+import com.efficios.jabberwocky.common.TimeRange;
+import com.efficios.jabberwocky.views.common.ColorDefinition;
+import com.efficios.jabberwocky.views.common.EventSymbolStyle;
+import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProvider;
+import com.efficios.jabberwocky.views.timegraph.model.render.TimeGraphEvent;
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEvent;
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEventRender;
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEventSeries;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Drawn event provider putting regularly-spaced events on every entry of a
+ * {@link SyntheticModelProvider}.
+ *
+ * @author Alexandre Montplaisir
+ */
+public class SyntheticDrawnEventProvider extends TimeGraphDrawnEventProvider {
+
+    private static final TimeGraphDrawnEventSeries EVENT_SERIES = new TimeGraphDrawnEventSeries(
+            "Syscalls", //$NON-NLS-1$
+            new ConfigOption<>(new ColorDefinition(255, 0, 255, ColorDefinition.MAX)),
+            new ConfigOption<>(EventSymbolStyle.DIAMOND));
+
+    private final long fFullStart;
+    private final long fEventSpacing;
+
+    /**
+     * Constructor
+     *
+     * @param eventsPerEntry
+     *            Number of events on each entry, over the full range
+     * @param fullRange
+     *            The full time range of the project
+     */
+    public SyntheticDrawnEventProvider(int eventsPerEntry, TimeRange fullRange) {
+        super(EVENT_SERIES);
+        fFullStart = fullRange.getStartTime();
+        fEventSpacing = Math.max(1, fullRange.getDuration() / eventsPerEntry);
+    }
+
+    @Override
+    public @NotNull TimeGraphDrawnEventRender getEventRender(TimeGraphTreeRender treeRender,
+            TimeRange timeRange, @Nullable FutureTask<?> task) {
+        TimeGraphDrawnEventSeries series = getDrawnEventSeries();
+        List<TimeGraphDrawnEvent> events = new ArrayList<>();
+        for (TimeGraphTreeElement treeElem : treeRender.getAllTreeElements()) {
+            int entryIndex = SyntheticModelProvider.indexOf(treeElem);
+            if (entryIndex < 0) {
+                continue;
+            }
+            if (task != null && task.isCancelled()) {
+                break;
+            }
+            long offset = (entryIndex * 3L % 10) * fEventSpacing / 10;
+            long first = fFullStart + offset + Math.max(0, (timeRange.getStartTime() - fFullStart - offset) / fEventSpacing) * fEventSpacing;
+            for (long ts = first; ts <= timeRange.getEndTime(); ts += fEventSpacing) {
+                events.add(new TimeGraphDrawnEvent(new TimeGraphEvent(ts, treeElem), series, null));
+            }
+        }
+        return new TimeGraphDrawnEventRender(timeRange, events);
+    }
+}
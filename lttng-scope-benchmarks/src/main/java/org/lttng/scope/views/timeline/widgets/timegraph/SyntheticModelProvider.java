@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.common.TimeRange;
+import com.efficios.jabberwocky.views.common.ColorDefinition;
+import com.efficios.jabberwocky.views.timegraph.model.provider.TimeGraphModelProvider;
+import com.efficios.jabberwocky.views.timegraph.model.provider.arrows.TimeGraphModelArrowProvider;
+import com.efficios.jabberwocky.views.timegraph.model.provider.states.TimeGraphModelStateProvider;
+import com.efficios.jabberwocky.views.timegraph.model.render.LineThickness;
+import com.efficios.jabberwocky.views.timegraph.model.render.StateDefinition;
+import com.efficios.jabberwocky.views.timegraph.model.render.TimeGraphEvent;
+import com.efficios.jabberwocky.views.timegraph.model.render.arrows.TimeGraphArrow;
+import com.efficios.jabberwocky.views.timegraph.model.render.arrows.TimeGraphArrowRender;
+import com.efficios.jabberwocky.views.timegraph.model.render.arrows.TimeGraphArrowSeries;
+import com.efficios.jabberwocky.views.timegraph.model.render.arrows.TimeGraphArrowSeries.LineStyle;
+import com.efficios.jabberwocky.views.timegraph.model.render.states.BasicTimeGraphStateInterval;
+import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateInterval;
+import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateRender;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
+import com.google.common.collect.ImmutableList;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Model provider generating a flat tree of entries with regular states, whose
+ * size and density are given by the benchmark parameters.
+ * <p>
+ * Each entry has about the requested number of intervals over the full time
+ * range. The intervals of different entries are offset from each other, so
+ * that the states of the timegraph do not all line up.
+ *
+ * @author Alexandre Montplaisir
+ */
+public class SyntheticModelProvider extends TimeGraphModelProvider {
+
+    private static final String ENTRY_NAME_PREFIX = "Entry #"; //$NON-NLS-1$
+
+    private static final List<StateDefinition> STATE_DEFINITIONS = ImmutableList.of(
+            new StateDefinition("Running", new ColorDefinition(0, 200, 0, ColorDefinition.MAX), LineThickness.NORMAL), //$NON-NLS-1$
+            new StateDefinition("Waiting", new ColorDefinition(200, 200, 0, ColorDefinition.MAX), LineThickness.SMALL), //$NON-NLS-1$
+            new StateDefinition("Blocked", new ColorDefinition(200, 0, 0, ColorDefinition.MAX), LineThickness.NORMAL)); //$NON-NLS-1$
+
+    private final TimeGraphTreeRender fTreeRender;
+
+    /**
+     * Constructor
+     *
+     * @param nbEntries
+     *            Number of entries in the tree
+     * @param intervalsPerEntry
+     *            Number of state intervals of each entry, over the full range
+     * @param arrowsPerEntry
+     *            Number of arrows starting from each entry, over the full range
+     * @param fullRange
+     *            The full time range of the project
+     */
+    public SyntheticModelProvider(int nbEntries, int intervalsPerEntry, int arrowsPerEntry, TimeRange fullRange) {
+        super("Synthetic", //$NON-NLS-1$
+                null,
+                null,
+                new SyntheticStateProvider(intervalsPerEntry, fullRange),
+                ImmutableList.of(new SyntheticArrowProvider(arrowsPerEntry, fullRange)));
+
+        List<TimeGraphTreeElement> entries = new ArrayList<>(nbEntries);
+        for (int i = 0; i < nbEntries; i++) {
+            entries.add(new TimeGraphTreeElement(ENTRY_NAME_PREFIX + i, Collections.emptyList()));
+        }
+        fTreeRender = new TimeGraphTreeRender(new TimeGraphTreeElement("Synthetic trace", entries)); //$NON-NLS-1$
+    }
+
+    @Override
+    public TimeGraphTreeRender getTreeRender() {
+        return fTreeRender;
+    }
+
+    /**
+     * Get the position of an entry in the tree, from its name.
+     *
+     * @param treeElement
+     *            The tree element
+     * @return Its index, or -1 for the root element
+     */
+    static int indexOf(TimeGraphTreeElement treeElement) {
+        String name = treeElement.getName();
+        if (!name.startsWith(ENTRY_NAME_PREFIX)) {
+            return -1;
+        }
+        return Integer.parseInt(name.substring(ENTRY_NAME_PREFIX.length()));
+    }
+
+    private static class SyntheticStateProvider extends TimeGraphModelStateProvider {
+
+        private final long fFullStart;
+        private final long fStateLength;
+
+        public SyntheticStateProvider(int intervalsPerEntry, TimeRange fullRange) {
+            super(STATE_DEFINITIONS);
+            fFullStart = fullRange.getStartTime();
+            fStateLength = Math.max(1, fullRange.getDuration() / intervalsPerEntry);
+        }
+
+        @Override
+        public TimeGraphStateRender getStateRender(TimeGraphTreeElement treeElement,
+                TimeRange timeRange, long resolution, @Nullable FutureTask<?> task) {
+            int entryIndex = indexOf(treeElement);
+            if (entryIndex < 0) {
+                return TimeGraphStateRender.EMPTY_RENDER;
+            }
+
+            /* Shift the states of each entry by a fraction of their length */
+            long offset = (entryIndex * 7L % 10) * fStateLength / 10;
+            long index = Math.max(0, (timeRange.getStartTime() - fFullStart - offset) / fStateLength);
+
+            List<TimeGraphStateInterval> intervals = new ArrayList<>();
+            long start = fFullStart + offset + index * fStateLength;
+            while (start <= timeRange.getEndTime()) {
+                if (task != null && task.isCancelled()) {
+                    break;
+                }
+                StateDefinition stateDef = STATE_DEFINITIONS.get((int) ((index + entryIndex) % STATE_DEFINITIONS.size()));
+                long end = start + fStateLength - 1;
+                intervals.add(new BasicTimeGraphStateInterval(start, end, treeElement,
+                        stateDef, stateDef.getName(), Collections.emptyMap()));
+                start += fStateLength;
+                index++;
+            }
+            return new TimeGraphStateRender(timeRange, treeElement, intervals);
+        }
+    }
+
+    private static class SyntheticArrowProvider extends TimeGraphModelArrowProvider {
+
+        private static final TimeGraphArrowSeries ARROW_SERIES = new TimeGraphArrowSeries(
+                "Wake-ups", //$NON-NLS-1$
+                new ColorDefinition(0, 0, 255, ColorDefinition.MAX),
+                LineStyle.FULL);
+
+        private final long fFullStart;
+        private final long fArrowSpacing;
+
+        public SyntheticArrowProvider(int arrowsPerEntry, TimeRange fullRange) {
+            super(ARROW_SERIES);
+            fFullStart = fullRange.getStartTime();
+            fArrowSpacing = Math.max(1, fullRange.getDuration() / arrowsPerEntry);
+        }
+
+        @Override
+        public TimeGraphArrowRender getArrowRender(TimeGraphTreeRender treeRender,
+                TimeRange timeRange, @Nullable FutureTask<?> task) {
+            List<TimeGraphTreeElement> treeElems = treeRender.getAllTreeElements();
+            int nbElems = treeElems.size();
+            List<TimeGraphArrow> arrows = new ArrayList<>();
+
+            /*
+             * Arrows go from each entry to one a few rows further. Their
+             * lengths vary, so that some of them span many rows.
+             */
+            long firstTs = fFullStart + Math.max(0, (timeRange.getStartTime() - fFullStart) / fArrowSpacing) * fArrowSpacing;
+            for (long ts = firstTs; ts <= timeRange.getEndTime(); ts += fArrowSpacing) {
+                if (task != null && task.isCancelled()) {
+                    break;
+                }
+                for (int i = 0; i < nbElems; i++) {
+                    int target = (int) ((i + 1 + (ts + i) % 13 * (i % 5 == 0 ? 10 : 1)) % nbElems);
+                    TimeGraphEvent startEvent = new TimeGraphEvent(ts, treeElems.get(i));
+                    TimeGraphEvent endEvent = new TimeGraphEvent(ts + fArrowSpacing / 2, treeElems.get(target));
+                    arrows.add(new TimeGraphArrow(startEvent, endEvent, getArrowSeries()));
+                }
+            }
+            return new TimeGraphArrowRender(timeRange, arrows);
+        }
+    }
+}
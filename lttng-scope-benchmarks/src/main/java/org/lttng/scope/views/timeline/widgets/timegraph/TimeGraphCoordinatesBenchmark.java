@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.common.TimeRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the conversions between timestamps and pane positions, which
+ * are done for every state, arrow and event that is drawn.
+ *
+ * @author Alexandre Montplaisir
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TimeGraphCoordinatesBenchmark {
+
+    private static final int NB_VALUES = 1024;
+
+    /** Full range of a one-hour trace */
+    private static final TimeRange FULL_RANGE = TimeRange.of(1_000_000_000L, 3_601_000_000_000L);
+
+    /** Zoom level, as the number of nanoseconds per pixel */
+    @Param({ "1", "1000", "1000000" })
+    public double nanosPerPixel;
+
+    private final long[] fTimestamps = new long[NB_VALUES];
+    private final double[] fPositions = new double[NB_VALUES];
+    private double fTotalWidth;
+
+    /**
+     * Generate random timestamps and positions.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        fTotalWidth = Math.floor(FULL_RANGE.getDuration() / nanosPerPixel);
+        for (int i = 0; i < NB_VALUES; i++) {
+            fTimestamps[i] = FULL_RANGE.getStartTime() + (long) (random.nextDouble() * FULL_RANGE.getDuration());
+            fPositions[i] = random.nextDouble() * fTotalWidth;
+        }
+    }
+
+    /**
+     * Convert timestamps to X positions.
+     *
+     * @param bh
+     *            The blackhole consuming the results
+     */
+    @Benchmark
+    @OperationsPerInvocation(NB_VALUES)
+    public void timestampToPaneXPos(Blackhole bh) {
+        for (long ts : fTimestamps) {
+            bh.consume(TimeGraphWidget.timestampToPaneXPos(ts, FULL_RANGE, nanosPerPixel));
+        }
+    }
+
+    /**
+     * Convert X positions to timestamps.
+     *
+     * @param bh
+     *            The blackhole consuming the results
+     */
+    @Benchmark
+    @OperationsPerInvocation(NB_VALUES)
+    public void paneXPosToTimestamp(Blackhole bh) {
+        for (double x : fPositions) {
+            bh.consume(TimeGraphWidget.paneXPosToTimestamp(x, fTotalWidth, FULL_RANGE.getStartTime(), nanosPerPixel));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.common.TimeRange;
+import com.efficios.jabberwocky.context.ViewGroupContext;
+import com.efficios.jabberwocky.views.timegraph.control.TimeGraphModelControl;
+import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProvider;
+import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProviderManager;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import org.lttng.scope.benchmarks.JfxToolkit;
+import org.lttng.scope.common.NestingBoolean;
+import org.lttng.scope.common.jfx.JfxUtils;
+import org.lttng.scope.common.tests.JfxTestUtils;
+import org.lttng.scope.common.tests.StubProject;
+import org.lttng.scope.common.tests.StubTrace;
+import org.lttng.scope.views.context.ViewGroupContextManager;
+
+/**
+ * A timegraph widget showing a synthetic model, in its own stage, to be used
+ * by the benchmarks. This is set up the same way as the widget tests, with
+ * automatic painting disabled: each paint is triggered explicitly.
+ *
+ * @author Alexandre Montplaisir
+ */
+public class TimeGraphFixture implements AutoCloseable {
+
+    /** Full time range of the stub project */
+    public static final TimeRange FULL_RANGE = TimeRange.of(StubTrace.FULL_TRACE_START_TIME, StubTrace.FULL_TRACE_END_TIME);
+
+    private static final int STAGE_WIDTH = 1600;
+    private static final int STAGE_HEIGHT = 1000;
+
+    private final StubProject fProject;
+    private final TimeGraphDrawnEventProvider fDrawnEventProvider;
+    private final TimeGraphModelControl fControl;
+    private final TimeGraphWidget fWidget;
+    private Stage fStage;
+
+    /**
+     * Constructor, starts the toolkit if needed and shows the widget.
+     *
+     * @param nbEntries
+     *            Number of entries of the model
+     * @param intervalsPerEntry
+     *            Number of state intervals of each entry, over the full range.
+     *            The arrows and drawn events are ten times less dense.
+     */
+    public TimeGraphFixture(int nbEntries, int intervalsPerEntry) {
+        JfxToolkit.start();
+
+        int otherObjectsPerEntry = Math.max(1, intervalsPerEntry / 10);
+        fDrawnEventProvider = new SyntheticDrawnEventProvider(otherObjectsPerEntry, FULL_RANGE);
+        TimeGraphDrawnEventProviderManager.instance().getRegisteredProviders().add(fDrawnEventProvider);
+        fDrawnEventProvider.enabledProperty().set(true);
+
+        fProject = new StubProject(new StubTrace());
+        fControl = new TimeGraphModelControl(ViewGroupContextManager.getCurrent(),
+                new SyntheticModelProvider(nbEntries, intervalsPerEntry, otherObjectsPerEntry, FULL_RANGE));
+        fWidget = new TimeGraphWidget(fControl, new NestingBoolean(), 0);
+        fControl.setView(fWidget);
+
+        JfxUtils.runLaterAndWait(() -> {
+            Stage stage = new Stage();
+            stage.setScene(new Scene(fWidget.getRootNode()));
+            stage.show();
+            stage.setWidth(STAGE_WIDTH);
+            stage.setHeight(STAGE_HEIGHT);
+            fStage = stage;
+        });
+        JfxTestUtils.updateUI();
+
+        fWidget.getDebugOptions().isPaintingEnabled().set(false);
+        fWidget.getDebugOptions().isScrollingListenersEnabled().set(false);
+        fWidget.getDebugOptions().isLoadingOverlayEnabled().set(false);
+
+        fControl.getViewContext().switchProject(fProject.getTraceProject());
+        JfxTestUtils.updateUI();
+
+        /* Do one complete paint, so that the tree and rows are known */
+        paint(FULL_RANGE);
+    }
+
+    /**
+     * Get the widget.
+     *
+     * @return The timegraph widget
+     */
+    public TimeGraphWidget getWidget() {
+        return fWidget;
+    }
+
+    /**
+     * Get the view context of the widget.
+     *
+     * @return The view context
+     */
+    public ViewGroupContext getViewContext() {
+        return fControl.getViewContext();
+    }
+
+    /**
+     * Seek the view context to the given range, then paint the widget and
+     * wait until the result is on the UI.
+     *
+     * @param range
+     *            The time range to display
+     */
+    public void paint(TimeRange range) {
+        seek(range);
+        repaint();
+    }
+
+    /**
+     * Seek the view context to the given range, without repainting.
+     *
+     * @param range
+     *            The time range to display
+     */
+    public void seek(TimeRange range) {
+        fControl.getViewContext().setVisibleTimeRange(range);
+        JfxTestUtils.updateUI();
+    }
+
+    /**
+     * Paint the current location of the widget and wait until the result is
+     * on the UI.
+     */
+    public void repaint() {
+        fWidget.prepareWaitForRepaint();
+        fWidget.paintCurrentLocation();
+        while (!fWidget.waitForRepaint()) {
+        }
+        JfxToolkit.drainUIThread();
+    }
+
+    @Override
+    public void close() {
+        Stage stage = fStage;
+        if (stage != null) {
+            JfxUtils.runLaterAndWait(stage::close);
+        }
+        fControl.dispose();
+        fProject.close();
+        TimeGraphDrawnEventProviderManager.instance().getRegisteredProviders().remove(fDrawnEventProvider);
+    }
+}
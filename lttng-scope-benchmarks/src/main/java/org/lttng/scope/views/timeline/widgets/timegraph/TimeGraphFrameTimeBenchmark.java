@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.common.TimeRange;
+import javafx.geometry.Point2D;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import org.lttng.scope.benchmarks.PulseRecorder;
+import org.lttng.scope.benchmarks.Samples;
+import org.lttng.scope.common.jfx.JfxUtils;
+import org.lttng.scope.common.tests.JfxTestUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * End-to-end frame-time benchmark of the timegraph widget, on the headless
+ * Monocle platform.
+ * <p>
+ * It scripts sequences of interactions (zooming, panning, scrolling and
+ * selecting states) over a large synthetic model, and for each of them
+ * measures the time until the widget is repainted and the result is
+ * displayed by a pulse, like the widget tests wait for it. Automatic painting
+ * is disabled, so the delay of the widget's redraw timer is not included.
+ * <p>
+ * The results are written as JSON, to the file given as argument or to the
+ * standard output. For each scenario they contain the distribution of the
+ * time-to-repaint and of the pulse durations, in milliseconds, and the
+ * allocation rate of the whole JVM. The model size can be set with the
+ * "nbEntries" and "intervalsPerEntry" system properties, and the number of
+ * measured interactions per scenario with "iterations".
+ *
+ * @author Alexandre Montplaisir
+ */
+public final class TimeGraphFrameTimeBenchmark {
+
+    private static final int NB_ENTRIES = Integer.getInteger("nbEntries", 5000); //$NON-NLS-1$
+    private static final int INTERVALS_PER_ENTRY = Integer.getInteger("intervalsPerEntry", 1000); //$NON-NLS-1$
+    private static final int ITERATIONS = Integer.getInteger("iterations", 100); //$NON-NLS-1$
+    private static final int WARMUP_ITERATIONS = Math.max(1, ITERATIONS / 5);
+
+    /** Zoom factor of each zoom step, like a few mouse wheel clicks */
+    private static final double ZOOM_FACTOR = 0.8;
+    /** Fraction of the visible range moved by each pan step */
+    private static final double PAN_FRACTION = 0.1;
+    /** Fraction of the viewport height moved by each vertical scroll step */
+    private static final double SCROLL_FRACTION = 0.5;
+
+    private final TimeGraphFixture fFixture;
+    private final Random fRandom = new Random(42);
+
+    private TimeGraphFrameTimeBenchmark(TimeGraphFixture fixture) {
+        fFixture = fixture;
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args
+     *            Optionally, the path of the JSON file to write
+     * @throws IOException
+     *             If the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        setPropertyIfAbsent("glass.platform", "Monocle"); //$NON-NLS-1$ //$NON-NLS-2$
+        setPropertyIfAbsent("monocle.platform", "Headless"); //$NON-NLS-1$ //$NON-NLS-2$
+        setPropertyIfAbsent("prism.order", "sw"); //$NON-NLS-1$ //$NON-NLS-2$
+
+        Map<String, String> results = new LinkedHashMap<>();
+        try (TimeGraphFixture fixture = new TimeGraphFixture(NB_ENTRIES, INTERVALS_PER_ENTRY)) {
+            TimeGraphFrameTimeBenchmark benchmark = new TimeGraphFrameTimeBenchmark(fixture);
+            results.put("zoom-in", benchmark.runScenario(benchmark::zoomIn)); //$NON-NLS-1$
+            results.put("zoom-out", benchmark.runScenario(benchmark::zoomOut)); //$NON-NLS-1$
+            results.put("pan", benchmark.runScenario(benchmark::pan)); //$NON-NLS-1$
+            results.put("scroll", benchmark.runScenario(benchmark::scroll)); //$NON-NLS-1$
+            results.put("select", benchmark.runScenario(benchmark::select)); //$NON-NLS-1$
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n"); //$NON-NLS-1$
+        sb.append("  \"nbEntries\": ").append(NB_ENTRIES).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+        sb.append("  \"intervalsPerEntry\": ").append(INTERVALS_PER_ENTRY).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+        sb.append("  \"iterations\": ").append(ITERATIONS).append(",\n"); //$NON-NLS-1$ //$NON-NLS-2$
+        sb.append("  \"javaVersion\": \"").append(System.getProperty("java.version")).append("\",\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        sb.append("  \"scenarios\": {\n"); //$NON-NLS-1$
+        List<String> scenarios = new ArrayList<>();
+        results.forEach((name, json) -> scenarios.add("    \"" + name + "\": " + json)); //$NON-NLS-1$ //$NON-NLS-2$
+        sb.append(String.join(",\n", scenarios)).append('\n'); //$NON-NLS-1$
+        sb.append("  }\n}\n"); //$NON-NLS-1$
+
+        if (args.length > 0) {
+            Files.write(Paths.get(args[0]), sb.toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            System.out.print(sb);
+        }
+        System.exit(0);
+    }
+
+    private static void setPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Scenarios
+    // ------------------------------------------------------------------------
+
+    /**
+     * Run the interactions of a scenario, starting from the full range, and
+     * return the results as a JSON object.
+     */
+    private String runScenario(Runnable interaction) {
+        fFixture.paint(TimeGraphFixture.FULL_RANGE);
+        JfxUtils.runLaterAndWait(() -> fFixture.getWidget().getTimeGraphScrollPane().setVvalue(0));
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            interaction.run();
+        }
+
+        Samples repaintTimes = new Samples();
+        PulseRecorder pulseRecorder = new PulseRecorder();
+        System.gc();
+
+        pulseRecorder.start();
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long t0 = System.nanoTime();
+            interaction.run();
+            repaintTimes.add(System.nanoTime() - t0);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        Samples pulseTimes = pulseRecorder.stop();
+
+        return String.format(Locale.ROOT,
+                "{\"timeToRepaintMs\": %s, \"pulseMs\": %s, \"allocatedBytesPerInteraction\": %d, \"allocationRateMBps\": %.3f}", //$NON-NLS-1$
+                repaintTimes.toJson(),
+                pulseTimes.toJson(),
+                allocated / ITERATIONS,
+                (allocated / 1e6) / (elapsed / 1e9));
+    }
+
+    /**
+     * Zoom in around a random point of the visible range, until the range is
+     * down to a few pixels, then start back from the full range.
+     */
+    private void zoomIn() {
+        TimeRange range = fFixture.getViewContext().getVisibleTimeRange();
+        long newDuration = (long) (range.getDuration() * ZOOM_FACTOR);
+        if (newDuration < fFixture.getWidget().getCurrentNanosPerPixel() * 100) {
+            newDuration = TimeGraphFixture.FULL_RANGE.getDuration();
+        }
+        long pivot = range.getStartTime() + (long) (fRandom.nextDouble() * range.getDuration());
+        zoomTo(pivot, newDuration);
+    }
+
+    /**
+     * Zoom out around the center of the visible range, until the full range
+     * is displayed, then start back from a narrow range.
+     */
+    private void zoomOut() {
+        TimeRange range = fFixture.getViewContext().getVisibleTimeRange();
+        long newDuration = (long) (range.getDuration() / ZOOM_FACTOR);
+        if (range.getDuration() >= TimeGraphFixture.FULL_RANGE.getDuration()) {
+            newDuration = TimeGraphFixture.FULL_RANGE.getDuration() / 1000;
+        }
+        zoomTo(range.getStartTime() + range.getDuration() / 2, newDuration);
+    }
+
+    private void zoomTo(long pivot, long duration) {
+        TimeRange full = TimeGraphFixture.FULL_RANGE;
+        long start = Math.max(full.getStartTime(), pivot - duration / 2);
+        long end = Math.min(full.getEndTime(), start + duration);
+        fFixture.paint(TimeRange.of(start, end));
+    }
+
+    /**
+     * Move the visible range right by a fraction of its duration, bouncing back
+     * at the end of the trace. The range is first narrowed to a tenth of the
+     * trace if needed.
+     */
+    private void pan() {
+        TimeRange full = TimeGraphFixture.FULL_RANGE;
+        TimeRange range = fFixture.getViewContext().getVisibleTimeRange();
+        long duration = Math.min(range.getDuration(), full.getDuration() / 10);
+        long start = range.getStartTime() + (long) (duration * PAN_FRACTION);
+        if (start + duration > full.getEndTime()) {
+            start = full.getStartTime();
+        }
+        fFixture.paint(TimeRange.of(start, start + duration));
+    }
+
+    /**
+     * Scroll down by half a page, going back to the top once the bottom is
+     * reached.
+     */
+    private void scroll() {
+        JfxUtils.runLaterAndWait(() -> {
+            ScrollPane scrollPane = fFixture.getWidget().getTimeGraphScrollPane();
+            double contentHeight = scrollPane.getContent().getLayoutBounds().getHeight();
+            double viewportHeight = scrollPane.getViewportBounds().getHeight();
+            double step = (contentHeight > viewportHeight ? SCROLL_FRACTION * viewportHeight / (contentHeight - viewportHeight) : 1.0);
+            double vvalue = scrollPane.getVvalue() + step;
+            scrollPane.setVvalue(vvalue > scrollPane.getVmax() ? scrollPane.getVmin() : vvalue);
+        });
+        fFixture.repaint();
+        JfxTestUtils.updateUI();
+    }
+
+    /**
+     * Click on a random point of the visible area, selecting the state under
+     * it, and wait for the next frame.
+     */
+    private void select() {
+        double xRatio = fRandom.nextDouble();
+        double yRatio = fRandom.nextDouble();
+        JfxUtils.runLaterAndWait(() -> {
+            TimeGraphWidget widget = fFixture.getWidget();
+            TimeRange range = fFixture.getViewContext().getVisibleTimeRange();
+            VerticalPosition vPos = widget.getCurrentVerticalPosition();
+
+            long ts = range.getStartTime() + (long) (xRatio * range.getDuration());
+            double x = widget.timestampToPaneXPos(ts);
+            double y = vPos.fTopPos + yRatio * (vPos.fBottomPos - vPos.fTopPos);
+
+            Pane pane = widget.getTimeGraphPane();
+            Point2D scenePos = pane.localToScene(x, y);
+            Point2D screenPos = pane.localToScreen(x, y);
+            pane.fireEvent(new MouseEvent(MouseEvent.MOUSE_CLICKED,
+                    scenePos.getX(), scenePos.getY(), screenPos.getX(), screenPos.getY(),
+                    MouseButton.PRIMARY, 1,
+                    false, false, false, false,
+                    true, false, false,
+                    false, false, true, null));
+        });
+        JfxTestUtils.updateUI();
+    }
+
+    // ------------------------------------------------------------------------
+    // Utilities
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of bytes allocated so far by the live threads. Threads
+     * that ended during a scenario are not counted, the paint tasks run on
+     * pooled threads so this is not an issue here.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        long total = 0;
+        for (long bytes : sunBean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.common.TimeRange;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
+import javafx.scene.Group;
+import org.lttng.scope.benchmarks.JfxToolkit;
+import org.lttng.scope.common.jfx.JfxUtils;
+import org.lttng.scope.views.timeline.widgets.timegraph.layer.TimeGraphArrowLayer;
+import org.lttng.scope.views.timeline.widgets.timegraph.layer.TimeGraphStateLayer;
+import org.lttng.scope.views.timeline.widgets.timegraph.layer.drawnevents.TimeGraphDrawnEventLayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the preparation of the timegraph layers' contents, for
+ * synthetic models of various sizes and densities.
+ * <p>
+ * Each benchmark layer is a separate instance from the widget's own, drawing
+ * in a group that is not part of the scene, using the widget's current rows
+ * and zoom level. Every invocation alternates between two time ranges, like a
+ * user panning back and forth, so that no layer can reuse its previous
+ * results. The invocations include the work the layers post to the UI
+ * thread.
+ *
+ * @author Alexandre Montplaisir
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        JfxToolkit.GLASS_PLATFORM_ARG, JfxToolkit.MONOCLE_PLATFORM_ARG, JfxToolkit.PRISM_ORDER_ARG })
+public class TimeGraphLayersBenchmark {
+
+    /** Number of entries of the model */
+    @Param({ "100", "1000", "10000" })
+    public int nbEntries;
+
+    /** Number of state intervals of each entry, over the full range */
+    @Param({ "10", "100", "1000" })
+    public int intervalsPerEntry;
+
+    private TimeGraphFixture fFixture;
+    private TimeGraphTreeRender fTreeRender;
+    private VerticalPosition fVerticalPos;
+    private TimeRange[] fRanges;
+    private int fNextRange = 0;
+
+    private TimeGraphStateLayer fStateLayer;
+    private TimeGraphArrowLayer fArrowLayer;
+    private TimeGraphDrawnEventLayer fDrawnEventLayer;
+
+    /**
+     * Create the widget and the benchmarked layers.
+     */
+    @Setup
+    public void setup() {
+        fFixture = new TimeGraphFixture(nbEntries, intervalsPerEntry);
+
+        /* Two adjacent ranges showing a fifth of the trace each */
+        long start = TimeGraphFixture.FULL_RANGE.getStartTime();
+        long fifth = TimeGraphFixture.FULL_RANGE.getDuration() / 5;
+        fRanges = new TimeRange[] {
+                TimeRange.of(start + fifth, start + 2 * fifth),
+                TimeRange.of(start + 2 * fifth, start + 3 * fifth)
+        };
+        fFixture.paint(fRanges[0]);
+
+        TimeGraphWidget widget = fFixture.getWidget();
+        fTreeRender = widget.getLatestTreeRender();
+        fVerticalPos = widget.getCurrentVerticalPosition();
+
+        JfxUtils.runLaterAndWait(() -> {
+            fStateLayer = new TimeGraphStateLayer(widget, new Group());
+            fArrowLayer = new TimeGraphArrowLayer(widget, new Group());
+            fDrawnEventLayer = new TimeGraphDrawnEventLayer(widget, new Group());
+        });
+    }
+
+    /**
+     * Dispose of the widget.
+     */
+    @TearDown
+    public void teardown() {
+        fFixture.close();
+    }
+
+    private TimeRange nextRange() {
+        fNextRange = (fNextRange + 1) % fRanges.length;
+        return fRanges[fNextRange];
+    }
+
+    /**
+     * Fetch the states of the visible rows and prepare their rectangles and
+     * labels.
+     */
+    @Benchmark
+    public void prepareStateRectangles() {
+        TimeRange range = nextRange();
+        fStateLayer.setWindowRange(range);
+        fStateLayer.drawContents(fTreeRender, range, fVerticalPos, null);
+        JfxToolkit.drainUIThread();
+    }
+
+    /**
+     * Fetch the arrows of the range, index them by rows and compute the paths
+     * of the visible ones.
+     */
+    @Benchmark
+    public void prepareArrows() {
+        fArrowLayer.drawContents(fTreeRender, nextRange(), fVerticalPos, null);
+        JfxToolkit.drainUIThread();
+    }
+
+    /**
+     * Fetch the drawn events of the range and create their symbols.
+     */
+    @Benchmark
+    public void prepareDrawnEvents() {
+        fDrawnEventLayer.drawContents(fTreeRender, nextRange(), fVerticalPos, null);
+        JfxToolkit.drainUIThread();
+    }
+
+    /**
+     * Seek the widget to another range, at another zoom level, which rescales
+     * the contents of all its layers.
+     */
+    @Benchmark
+    public void seekVisibleRangeRescale() {
+        TimeRange range = nextRange();
+        /* Zoom out to the range and the one next to it, or back in */
+        TimeRange target = (fNextRange == 0 ? range : TimeRange.of(fRanges[0].getStartTime(), range.getEndTime()));
+        JfxUtils.runLaterAndWait(() -> fFixture.getWidget().seekVisibleRange(target));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph.layer;
+
+import org.lttng.scope.common.jfx.ArrowsPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the arrow layer's preparation steps that do not depend on a
+ * widget: indexing the arrows by rows, culling them to the visible rows, and
+ * computing the path elements.
+ *
+ * @author Alexandre Montplaisir
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ArrowIndexingBenchmark {
+
+    /** Rows visible at once in a typical window */
+    private static final int VISIBLE_ROWS = 50;
+
+    /** Number of entries of the model */
+    @Param({ "1000", "10000" })
+    public int nbEntries;
+
+    /** Number of arrows in the time range */
+    @Param({ "1000", "100000" })
+    public int nbArrows;
+
+    private final List<int[]> fArrows = new ArrayList<>();
+    private RowSpanIndex<int[]> fIndex;
+    private double[] fCoords;
+    private int fTopRow = 0;
+
+    /**
+     * Generate the arrows, as pairs of rows. Most arrows are short, some of
+     * them span most of the tree.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        for (int i = 0; i < nbArrows; i++) {
+            int row1 = random.nextInt(nbEntries);
+            int span = (i % 20 == 0 ? random.nextInt(nbEntries) : random.nextInt(10));
+            int row2 = Math.min(nbEntries - 1, row1 + span);
+            fArrows.add(new int[] { row1, row2 });
+        }
+        fIndex = new RowSpanIndex<>(fArrows, arrow -> arrow[0], arrow -> arrow[1]);
+
+        fCoords = new double[Math.min(nbArrows, 5000) * 4];
+        for (int i = 0; i < fCoords.length; i++) {
+            fCoords[i] = random.nextDouble() * 2000;
+        }
+    }
+
+    /**
+     * Build the index of the arrows, which is done whenever the arrows or the
+     * displayed rows change.
+     *
+     * @return The index
+     */
+    @Benchmark
+    public RowSpanIndex<int[]> buildIndex() {
+        return new RowSpanIndex<>(fArrows, arrow -> arrow[0], arrow -> arrow[1]);
+    }
+
+    /**
+     * Find the arrows crossing the visible rows, moving the window down at
+     * each invocation like a vertical scroll does.
+     *
+     * @return The visible arrows
+     */
+    @Benchmark
+    public List<int[]> queryVisibleRows() {
+        fTopRow = (fTopRow + VISIBLE_ROWS / 2) % Math.max(1, nbEntries - VISIBLE_ROWS);
+        return fIndex.query(fTopRow, fTopRow + VISIBLE_ROWS - 1);
+    }
+
+    /**
+     * Compute the path elements of the arrows, at most a few thousand as there
+     * would be on screen.
+     *
+     * @return The path elements
+     */
+    @Benchmark
+    public Object computePathElements() {
+        return ArrowsPath.computeElements(fCoords);
+    }
+}
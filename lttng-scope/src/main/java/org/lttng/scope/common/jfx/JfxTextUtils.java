@@ -9,61 +9,247 @@
 
 package org.lttng.scope.common.jfx;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import javafx.scene.control.OverrunStyle;
 import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 
-import java.lang.invoke.MethodHandle;
-import java.lang.invoke.MethodHandles;
-import java.lang.reflect.Method;
-
-import static java.util.Objects.requireNonNull;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class JfxTextUtils {
 
-    private static final MethodHandles.Lookup LOOKUP = requireNonNull(MethodHandles.lookup());
-    private static final MethodHandle COMPUTE_CLIPPED_TEXT_HANDLE;
-
-    static {
-        MethodHandle handle = null;
-        try {
-            Class<?> c = Class.forName("com.sun.javafx.scene.control.skin.Utils"); //$NON-NLS-1$
-            Method method = c.getDeclaredMethod("computeClippedText", //$NON-NLS-1$
-                    Font.class, String.class, double.class, OverrunStyle.class, String.class);
-            method.setAccessible(true);
-            handle = LOOKUP.unreflect(method);
-        } catch (ClassNotFoundException | NoSuchMethodException | SecurityException | IllegalAccessException e) {
-            /* Should not fail if we did everything correctly. */
-        }
-        COMPUTE_CLIPPED_TEXT_HANDLE = requireNonNull(handle);
-    }
+    /** Maximum number of clipped strings kept in the cache */
+    private static final int CLIPPED_TEXT_CACHE_SIZE = 50_000;
+
+    private static final Map<Font, GlyphWidths> GLYPH_WIDTHS = new ConcurrentHashMap<>();
+
+    private static final Cache<ClipKey, String> CLIPPED_TEXTS = CacheBuilder.newBuilder()
+            .maximumSize(CLIPPED_TEXT_CACHE_SIZE)
+            .build();
+
+    private JfxTextUtils() {}
 
     /**
-     * Accessor for the
-     * com.sun.javafx.scene.control.skin.Utils.computeClippedText() method.
+     * Clip a string so that it fits in the given width, following the same
+     * rules as Labels.
+     * <p>
+     * Text widths are computed from a cache of the width of each character,
+     * per font, and results are cached per label, font and width (rounded down
+     * to the pixel), so the same labels at similar widths are only computed
+     * once.
      * <p>
-     * This method implements the logic to clip Label strings. It can be useful
-     * for other types, like Text. Unfortunately it is not public, but this
-     * accessor allows calling it through reflection. It makes use of
-     * {@link MethodHandle#invokeExact}, which should be close to just as fast
-     * as a standard compiled method call.
+     * Word-based overrun styles are handled like their character-based
+     * equivalents.
      *
      * @param font           The font of the text that will be used
      * @param text           The string to clip
      * @param width          The maximum width we want to limit the string to
      * @param type           The {@link OverrunStyle}
      * @param ellipsisString The string to use as ellipsis
-     * @return The clipped string, or "ERROR" if an error happened.
-     * Unfortunately we lose the exception typing due to the reflection
-     * call, so we do not want to throw "Throwable" here.
+     * @return The clipped string. It is the ellipsis string alone if no
+     *         character of the text fits, and an empty string if not even
+     *         the ellipsis fits.
      */
     public static String computeClippedText(Font font, String text, double width,
                                             OverrunStyle type, String ellipsisString) {
-        try {
-            String str = (String) COMPUTE_CLIPPED_TEXT_HANDLE.invokeExact(font, text, width, type, ellipsisString);
-            return requireNonNull(str);
-        } catch (Throwable e) {
-            return "ERROR";
+        if (text.isEmpty()) {
+            return text;
+        }
+        ClipKey key = new ClipKey(font, text, (int) Math.floor(width), type, ellipsisString);
+        String clipped = CLIPPED_TEXTS.getIfPresent(key);
+        if (clipped == null) {
+            clipped = clipText(getGlyphWidths(font), text, key.fWidth, type, ellipsisString);
+            CLIPPED_TEXTS.put(key, clipped);
+        }
+        return clipped;
+    }
+
+    /**
+     * Compute the width of a string, as it would be displayed with the given
+     * font. Kerning is not taken into account.
+     *
+     * @param font The font
+     * @param text The string
+     * @return The width in pixels
+     */
+    public static double computeTextWidth(Font font, String text) {
+        return getGlyphWidths(font).stringWidth(text, 0, text.length());
+    }
+
+    private static GlyphWidths getGlyphWidths(Font font) {
+        return GLYPH_WIDTHS.computeIfAbsent(font, GlyphWidths::new);
+    }
+
+    private static String clipText(GlyphWidths widths, String text, double width,
+                                   OverrunStyle type, String ellipsisString) {
+        int length = text.length();
+        if (widths.stringWidth(text, 0, length) <= width) {
+            return text;
+        }
+
+        if (type == OverrunStyle.CLIP) {
+            return text.substring(0, widths.fittingPrefix(text, width));
+        }
+
+        double available = width - widths.stringWidth(ellipsisString, 0, ellipsisString.length());
+        if (available < 0) {
+            return ""; //$NON-NLS-1$
+        }
+
+        switch (type) {
+        case LEADING_ELLIPSIS:
+        case LEADING_WORD_ELLIPSIS:
+            return ellipsisString + text.substring(widths.fittingSuffix(text, available));
+
+        case CENTER_ELLIPSIS:
+        case CENTER_WORD_ELLIPSIS: {
+            /* Keep as much of the start as of the end, the start getting the odd character */
+            int start = 0;
+            int end = length;
+            double used = 0;
+            boolean takeFromStart = true;
+            while (start < end) {
+                double next = widths.charWidth(takeFromStart ? text.charAt(start) : text.charAt(end - 1));
+                if (used + next > available) {
+                    break;
+                }
+                used += next;
+                if (takeFromStart) {
+                    start++;
+                } else {
+                    end--;
+                }
+                takeFromStart = !takeFromStart;
+            }
+            return text.substring(0, start) + ellipsisString + text.substring(end);
+        }
+
+        case ELLIPSIS:
+        case WORD_ELLIPSIS:
+        default:
+            return text.substring(0, widths.fittingPrefix(text, available)) + ellipsisString;
         }
     }
 
+    /**
+     * Width of each character of a font, computed the first time it is
+     * requested.
+     */
+    private static class GlyphWidths {
+
+        /*
+         * Widths are stored in pages of 256 characters, allocated when first
+         * needed. Pages are only published once filled with NaN, "not
+         * measured yet", so that no thread can see a width of 0 instead.
+         */
+        private static final int PAGE_SIZE = 256;
+        private static final int NB_PAGES = (Character.MAX_VALUE + 1) / PAGE_SIZE;
+
+        private final AtomicReferenceArray<double[]> fPages = new AtomicReferenceArray<>(NB_PAGES);
+        private final Text fMeasuringText = new Text();
+
+        public GlyphWidths(Font font) {
+            fMeasuringText.setFont(font);
+        }
+
+        public double charWidth(char c) {
+            double[] page = fPages.get(c / PAGE_SIZE);
+            if (page == null) {
+                double[] newPage = new double[PAGE_SIZE];
+                Arrays.fill(newPage, Double.NaN);
+                /* Another thread may have published its page in the meantime */
+                page = fPages.compareAndSet(c / PAGE_SIZE, null, newPage) ? newPage : fPages.get(c / PAGE_SIZE);
+            }
+            double width = page[c % PAGE_SIZE];
+            if (Double.isNaN(width)) {
+                width = measure(c);
+                page[c % PAGE_SIZE] = width;
+            }
+            return width;
+        }
+
+        private synchronized double measure(char c) {
+            fMeasuringText.setText(String.valueOf(c));
+            return fMeasuringText.getLayoutBounds().getWidth();
+        }
+
+        public double stringWidth(String text, int start, int end) {
+            double width = 0;
+            for (int i = start; i < end; i++) {
+                width += charWidth(text.charAt(i));
+            }
+            return width;
+        }
+
+        /** Length of the longest prefix of 'text' fitting in 'width' */
+        public int fittingPrefix(String text, double width) {
+            double used = 0;
+            int i = 0;
+            while (i < text.length()) {
+                used += charWidth(text.charAt(i));
+                if (used > width) {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        /** Start index of the longest suffix of 'text' fitting in 'width' */
+        public int fittingSuffix(String text, double width) {
+            double used = 0;
+            int i = text.length();
+            while (i > 0) {
+                used += charWidth(text.charAt(i - 1));
+                if (used > width) {
+                    break;
+                }
+                i--;
+            }
+            return i;
+        }
+    }
+
+    private static class ClipKey {
+
+        private final Font fFont;
+        private final String fText;
+        private final int fWidth;
+        private final OverrunStyle fType;
+        private final String fEllipsis;
+
+        public ClipKey(Font font, String text, int width, OverrunStyle type, String ellipsis) {
+            fFont = font;
+            fText = text;
+            fWidth = width;
+            fType = type;
+            fEllipsis = ellipsis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fFont, fText, fWidth, fType, fEllipsis);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClipKey)) {
+                return false;
+            }
+            ClipKey other = (ClipKey) obj;
+            return fWidth == other.fWidth
+                    && fType == other.fType
+                    && fText.equals(other.fText)
+                    && fEllipsis.equals(other.fEllipsis)
+                    && fFont.equals(other.fFont);
+        }
+    }
 }
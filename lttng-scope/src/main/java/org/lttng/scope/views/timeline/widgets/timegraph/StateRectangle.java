@@ -13,25 +13,14 @@ import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.views.timegraph.model.render.LineThickness;
 import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateInterval;
 import com.google.common.base.MoreObjects;
-import javafx.application.Platform;
-import javafx.geometry.Point2D;
-import javafx.scene.Node;
-import javafx.scene.control.Tooltip;
-import javafx.scene.input.MouseButton;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
-import javafx.scene.text.Text;
 import org.jetbrains.annotations.Nullable;
-import org.lttng.scope.common.jfx.CountingGridPane;
 import org.lttng.scope.common.jfx.JfxColorFactory;
-import org.lttng.scope.views.timeline.DebugOptions;
+import org.lttng.scope.common.jfx.JfxUtils;
 
-import java.util.Arrays;
-import java.util.Map;
 import java.util.Objects;
 
-import static java.util.Objects.requireNonNull;
-
 /**
  * {@link Rectangle} object used to draw states in the timegraph. It attaches
  * the {@link TimeGraphStateInterval} that represents this state.
@@ -47,8 +36,6 @@ public class StateRectangle extends Rectangle {
     private transient @Nullable Paint fBaseColor;
     private transient @Nullable Paint fSelectedColor;
 
-    private @Nullable Tooltip fTooltip = null;
-
     /**
      * Constructor
      *
@@ -93,47 +80,12 @@ public class StateRectangle extends Rectangle {
         setOpacity(opacity);
 
         updatePaint();
-
-        /* Set initial selection state and selection listener. */
-        if (this.equals(viewer.getSelectedState())) {
-            setSelected(true);
-            viewer.setSelectedState(this, false);
-        } else {
-            setSelected(false);
-        }
-
-        setOnMouseClicked(e -> {
-            if (e.getButton() != MouseButton.PRIMARY) {
-                return;
-            }
-            viewer.setSelectedState(this, true);
-        });
+        setSelected(false);
 
         /*
-         * Initialize the tooltip when the mouse enters the rectangle, if it was
-         * not done previously.
+         * Mouse events (selection, tooltips) are handled by the state layer,
+         * which finds the state under the cursor from its coordinates.
          */
-        setOnMouseEntered(e -> generateTooltip());
-    }
-
-    private void generateTooltip() {
-        if (fTooltip != null) {
-            return;
-        }
-        TooltipContents ttContents = new TooltipContents(fWidget.getDebugOptions());
-        ttContents.addTooltipRow(Messages.statePropertyElement, fInterval.getTreeElement().getName());
-        ttContents.addTooltipRow(Messages.statePropertyStateName, fInterval.getStateName());
-        ttContents.addTooltipRow(Messages.statePropertyStartTime, fInterval.getStartTime());
-        ttContents.addTooltipRow(Messages.statePropertyEndTime, fInterval.getEndTime());
-        ttContents.addTooltipRow(Messages.statePropertyDuration, fInterval.getDuration() + " ns"); //$NON-NLS-1$
-        /* Add rows corresponding to the properties from the interval */
-        Map<String, String> properties = fInterval.getProperties();
-        properties.forEach((k, v) -> ttContents.addTooltipRow(k, v));
-
-        Tooltip tt = new Tooltip();
-        tt.setGraphic(ttContents);
-        Tooltip.install(this, tt);
-        fTooltip = tt;
     }
 
     /**
@@ -191,42 +143,22 @@ public class StateRectangle extends Rectangle {
         }
     }
 
+    /**
+     * Show the tooltip of this state, aligned below it.
+     *
+     * @param beginning
+     *            If the tooltip should be aligned to the start of the state,
+     *            or to its end
+     */
     public void showTooltip(boolean beginning) {
-        generateTooltip();
-        Tooltip tt = requireNonNull(fTooltip);
-
-        /*
-         * Show the tooltip first, then move it to the correct location. It
-         * needs to be shown for its getWidth() etc. to be populated.
-         */
-        tt.show(this, 0, 0);
-
-        Point2D position;
-        if (beginning) {
-            /* Align to the bottom-left of the rectangle, left-aligned. */
-            /* Yes, it needs to be getX() here (0), not getLayoutX(). */
-            position = this.localToScreen(getX(), getY() + getHeight());
-        } else {
-            /* Align to the bottom-right of the rectangle, right-aligned */
-            position = this.localToScreen(getX() + getWidth() - tt.getWidth(), getY() + getHeight());
-        }
-
-        tt.setAnchorX(position.getX());
-        tt.setAnchorY(position.getY());
+        fWidget.getStateTooltip().showForState(this, beginning);
     }
 
+    /**
+     * Hide the tooltip shown by {@link #showTooltip}, if it is still showing.
+     */
     public void hideTooltip() {
-        Tooltip tt = fTooltip;
-        if (tt != null) {
-            Platform.runLater(() -> {
-                tt.hide();
-            });
-        }
-    }
-
-    @Override
-    protected void finalize() {
-        hideTooltip();
+        JfxUtils.runOnMainThread(() -> fWidget.getStateTooltip().hideForState(this));
     }
 
     public static double getHeightFromThickness(LineThickness lt) {
@@ -243,7 +175,8 @@ public class StateRectangle extends Rectangle {
 
     @Override
     public int hashCode() {
-        return Objects.hash(fWidget, fInterval);
+        /* Rectangles of different widgets are rarely compared, skip it here. */
+        return fInterval.hashCode();
     }
 
     @Override
@@ -268,25 +201,4 @@ public class StateRectangle extends Rectangle {
                 .add("interval", fInterval) //$NON-NLS-1$
                 .toString();
     }
-
-    private static class TooltipContents extends CountingGridPane {
-
-        private final DebugOptions fOpts;
-
-        public TooltipContents(DebugOptions opts) {
-            fOpts = opts;
-        }
-
-        public void addTooltipRow(Object... objects) {
-            Node[] labels = Arrays.stream(objects)
-                    .map(Object::toString)
-                    .map(Text::new)
-                    .peek(text -> {
-                        text.fontProperty().bind(fOpts.getToolTipFont());
-                        text.fillProperty().bind(fOpts.getToolTipFontFill());
-                    })
-                    .toArray(Node[]::new);
-            appendRow(labels);
-        }
-    }
 }
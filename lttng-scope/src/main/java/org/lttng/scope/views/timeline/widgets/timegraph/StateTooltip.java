@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateInterval;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.GridPane;
+import javafx.scene.text.Text;
+import org.jetbrains.annotations.Nullable;
+import org.lttng.scope.views.timeline.DebugOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tooltip showing the properties of state intervals. There is only one per
+ * widget, its contents are replaced whenever it is shown for another interval.
+ *
+ * @author Alexandre Montplaisir
+ */
+public class StateTooltip {
+
+    private final DebugOptions fOpts;
+    private final Tooltip fTooltip = new Tooltip();
+    private final GridPane fContents = new GridPane();
+
+    /** Text nodes of the grid, two per row, reused from one interval to the next */
+    private final List<Text> fCells = new ArrayList<>();
+
+    private @Nullable TimeGraphStateInterval fInterval = null;
+    /** State to which the tooltip is currently anchored, if any */
+    private @Nullable StateRectangle fAnchorState = null;
+
+    /**
+     * Constructor
+     *
+     * @param opts
+     *            The debug options, providing the font to use
+     */
+    public StateTooltip(DebugOptions opts) {
+        fOpts = opts;
+        fTooltip.setGraphic(fContents);
+    }
+
+    /**
+     * Get the interval whose properties are currently shown.
+     *
+     * @return The interval, or null if the tooltip is not showing
+     */
+    public @Nullable TimeGraphStateInterval getShownInterval() {
+        return (fTooltip.isShowing() ? fInterval : null);
+    }
+
+    /**
+     * Show the tooltip of an interval at the given screen position, typically
+     * next to the mouse cursor.
+     *
+     * @param interval
+     *            The interval to describe
+     * @param owner
+     *            The node over which the tooltip is shown
+     * @param screenX
+     *            X position of the tooltip, in screen coordinates
+     * @param screenY
+     *            Y position of the tooltip, in screen coordinates
+     */
+    public void show(TimeGraphStateInterval interval, Node owner, double screenX, double screenY) {
+        setInterval(interval);
+        fAnchorState = null;
+        fTooltip.show(owner, screenX, screenY);
+    }
+
+    /**
+     * Show the tooltip of a state, aligned below the rectangle drawing it.
+     *
+     * @param state
+     *            The state to describe
+     * @param beginning
+     *            If the tooltip should be aligned to the start of the state
+     *            (left-aligned), or to its end (right-aligned)
+     */
+    public void showForState(StateRectangle state, boolean beginning) {
+        setInterval(state.getStateInterval());
+        fAnchorState = state;
+
+        /*
+         * Show the tooltip first, then move it to the correct location. It
+         * needs to be shown for its getWidth() etc. to be populated.
+         */
+        fTooltip.show(state, 0, 0);
+
+        Point2D position;
+        if (beginning) {
+            /* Align to the bottom-left of the rectangle, left-aligned. */
+            /* Yes, it needs to be getX() here (0), not getLayoutX(). */
+            position = state.localToScreen(state.getX(), state.getY() + state.getHeight());
+        } else {
+            /* Align to the bottom-right of the rectangle, right-aligned */
+            position = state.localToScreen(state.getX() + state.getWidth() - fTooltip.getWidth(),
+                    state.getY() + state.getHeight());
+        }
+
+        fTooltip.setAnchorX(position.getX());
+        fTooltip.setAnchorY(position.getY());
+    }
+
+    /**
+     * Hide the tooltip, if it is showing.
+     */
+    public void hide() {
+        fAnchorState = null;
+        fTooltip.hide();
+    }
+
+    /**
+     * Hide the tooltip only if it was shown by {@link #showForState} for the
+     * given state.
+     *
+     * @param state
+     *            The state
+     */
+    public void hideForState(StateRectangle state) {
+        if (fAnchorState == state) {
+            hide();
+        }
+    }
+
+    private void setInterval(TimeGraphStateInterval interval) {
+        if (interval.equals(fInterval)) {
+            return;
+        }
+        fInterval = interval;
+
+        List<String> cells = new ArrayList<>();
+        cells.add(Messages.statePropertyElement);
+        cells.add(interval.getTreeElement().getName());
+        cells.add(Messages.statePropertyStateName);
+        cells.add(interval.getStateName());
+        cells.add(Messages.statePropertyStartTime);
+        cells.add(String.valueOf(interval.getStartTime()));
+        cells.add(Messages.statePropertyEndTime);
+        cells.add(String.valueOf(interval.getEndTime()));
+        cells.add(Messages.statePropertyDuration);
+        cells.add(interval.getDuration() + " ns"); //$NON-NLS-1$
+        /* Add rows corresponding to the properties from the interval */
+        interval.getProperties().forEach((k, v) -> {
+            cells.add(k);
+            cells.add(v);
+        });
+
+        while (fCells.size() < cells.size()) {
+            int index = fCells.size();
+            Text text = new Text();
+            text.fontProperty().bind(fOpts.getToolTipFont());
+            text.fillProperty().bind(fOpts.getToolTipFontFill());
+            GridPane.setConstraints(text, index % 2, index / 2);
+            fCells.add(text);
+        }
+        for (int i = 0; i < cells.size(); i++) {
+            fCells.get(i).setText(cells.get(i));
+        }
+        fContents.getChildren().setAll(fCells.subList(0, cells.size()));
+    }
+}
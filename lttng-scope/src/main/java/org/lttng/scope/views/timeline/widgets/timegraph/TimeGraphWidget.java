@@ -12,7 +12,6 @@ package org.lttng.scope.views.timeline.widgets.timegraph;
 import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.task.JabberwockyTask;
 import com.efficios.jabberwocky.views.timegraph.control.TimeGraphModelControl;
-import com.efficios.jabberwocky.views.timegraph.model.provider.ITimeGraphModelProvider;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
 import com.efficios.jabberwocky.views.timegraph.view.TimeGraphModelView;
 import com.google.common.annotations.VisibleForTesting;
@@ -21,7 +20,9 @@ import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.event.EventHandler;
+import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
+import javafx.geometry.Pos;
 import javafx.scene.Group;
 import javafx.scene.Parent;
 import javafx.scene.control.ScrollPane;
@@ -32,12 +33,14 @@ import javafx.scene.input.InputEvent;
 import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.lttng.scope.common.LatestTaskExecutor;
 import org.lttng.scope.common.NestingBoolean;
+import org.lttng.scope.common.selftrace.SelfTracer;
 import org.lttng.scope.views.timeline.DebugOptions;
 import org.lttng.scope.views.timeline.TimelineManager;
 import org.lttng.scope.views.timeline.TimelineView;
@@ -50,7 +53,11 @@ import org.lttng.scope.views.timeline.widgets.timegraph.layer.drawnevents.TimeGr
 import org.lttng.scope.views.timeline.widgets.timegraph.toolbar.ViewerToolBar;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
@@ -78,6 +85,9 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
 
     private static final String BACKGROUND_STYLE = "-fx-background-color: rgba(255, 255, 255, 255);"; //$NON-NLS-1$
 
+    /** Keeps the statistics overlay clear of the vertical scroll bar */
+    private static final Insets PAINT_STATISTICS_OVERLAY_MARGIN = new Insets(5, 20, 0, 0);
+
     private static final int LABEL_SIDE_MARGIN = 10;
 
     /**
@@ -126,9 +136,18 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
 
     private final LoadingOverlay fTimeGraphLoadingOverlay;
 
+    /** Timings of the paint operations, also published through JMX */
+    private final PaintStatistics fPaintStatistics;
+    private final PaintStatisticsOverlay fPaintStatisticsOverlay;
+
+    /** The one tooltip used for all state intervals */
+    private final StateTooltip fStateTooltip = new StateTooltip(getDebugOptions());
+
     private final @NotNull PeriodicRedrawTask fRedrawTask = new PeriodicRedrawTask(this);
 
     private volatile TimeGraphTreeRender fLatestTreeRender = TimeGraphTreeRender.EMPTY_RENDER;
+    private volatile Set<List<TreePathElement>> fCollapsedBranches = Collections.emptySet();
+    private volatile TimeGraphVisibleRows fVisibleRows = TimeGraphVisibleRows.EMPTY_ROWS;
 
     /** Current zoom level */
     private final DoubleProperty fNanosPerPixel = new SimpleDoubleProperty(1.0);
@@ -155,11 +174,18 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
         this.weight = weight;
         fHScrollListenerStatus = hScrollListenerStatus;
 
+        fPaintStatistics = new PaintStatistics(getName());
+        fPaintStatistics.register();
+
         // --------------------------------------------------------------------
         // Prepare the tree part's scene graph
         // --------------------------------------------------------------------
 
         fTreeArea = new TimeGraphWidgetTreeArea(ENTRY_HEIGHT, getControl().getRenderProvider().traceProjectProperty());
+        fTreeArea.collapsedBranchesProperty().addListener((obs, oldVal, newVal) -> {
+            fCollapsedBranches = newVal;
+            fRedrawTask.forceRedraw();
+        });
 
         // --------------------------------------------------------------------
         // Prepare the time graph's part scene graph
@@ -237,6 +263,14 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
          */
         fTimeGraphScrollPane.hvalueProperty().addListener(fScrollingCtx.fHScrollChangeListener);
 
+        /*
+         * Show the states of the prefetched rows as soon as they are scrolled
+         * into view, the next redraw will take care of the rest.
+         */
+        fTimeGraphScrollPane.vvalueProperty().addListener((obs, oldVal, newVal) -> {
+            fStateLayer.showRows(getCurrentVerticalPosition());
+        });
+
         /*
          * Mouse scroll handlers (for zooming) are attached to the time graph
          * itself: events let through will be used by the scrollpane as normal
@@ -265,7 +299,13 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
 
         fToolBar = new ViewerToolBar(this);
 
-        fSplitPane = new SplitPane(fTreeArea, fTimeGraphScrollPane);
+        /* The statistics overlay stays in the top-right corner of the viewport */
+        fPaintStatisticsOverlay = new PaintStatisticsOverlay(fPaintStatistics, getDebugOptions());
+        StackPane timeGraphArea = new StackPane(fTimeGraphScrollPane, fPaintStatisticsOverlay);
+        StackPane.setAlignment(fPaintStatisticsOverlay, Pos.TOP_RIGHT);
+        StackPane.setMargin(fPaintStatisticsOverlay, PAINT_STATISTICS_OVERLAY_MARGIN);
+
+        fSplitPane = new SplitPane(fTreeArea, timeGraphArea);
         fSplitPane.setOrientation(Orientation.HORIZONTAL);
 
         fBasePane = new BorderPane();
@@ -273,10 +313,31 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
         fBasePane.setTop(fToolBar);
     }
 
+    /**
+     * Get the timing statistics of this widget's paint operations. Layers
+     * should record their own phases in it.
+     *
+     * @return The paint statistics
+     */
+    public PaintStatistics getPaintStatistics() {
+        return fPaintStatistics;
+    }
+
     public TimeGraphTreeRender getLatestTreeRender() {
         return fLatestTreeRender;
     }
 
+    /**
+     * Get the rows currently displayed by the timegraph, which depend on the
+     * latest tree render and on the branches collapsed in the tree area.
+     * Layers should use this to place their contents.
+     *
+     * @return The displayed rows
+     */
+    public TimeGraphVisibleRows getVisibleRows() {
+        return fVisibleRows;
+    }
+
     // ------------------------------------------------------------------------
     // ITimelineWidget
     // ------------------------------------------------------------------------
@@ -327,6 +388,7 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
 
     @Override
     public void disposeImpl() {
+        fPaintStatistics.unregister();
     }
 
     @Override
@@ -345,6 +407,7 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
 
             /* Also clear whatever cached objects the viewer currently has. */
             fLatestTreeRender = TimeGraphTreeRender.EMPTY_RENDER;
+            fVisibleRows = TimeGraphVisibleRows.EMPTY_ROWS;
             getTimelineWidgetUpdateTask().forceRedraw();
         });
     }
@@ -401,39 +464,18 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
         try {
 
             /*
-             * If the zoom level changed, resize the pane and relocate its
+             * If the zoom level changed, resize the pane and stretch its
              * current contents. That way the "intermediate" display before the
-             * next repaint will continue showing correct data.
+             * next repaint will continue showing correct data. Each layer
+             * applies a single transform to its group, whatever the number of
+             * nodes it contains.
              */
             if (Math.abs(newTotalWidth - oldTotalWidth) > 0.5) {
-
-                /* Resize/reposition the state rectangles */
                 double factor = (newTotalWidth / oldTotalWidth);
-                fStateLayer.getRenderedStateRectangles().forEach(rect -> {
-                    rect.setLayoutX(rect.getLayoutX() * factor);
-                    rect.setWidth(rect.getWidth() * factor);
-                });
-
-                /* Reposition the text labels (don't stretch them!) */
-                fStateLayer.getRenderedStateLabels().forEach(text -> {
-                    text.setX(text.getX() * factor);
-                });
-
-                /* Reposition the arrows */
-                fArrowLayer.getRenderedArrows().forEach(arrow -> {
-                    arrow.setStartX(arrow.getStartX() * factor);
-                    arrow.setEndX(arrow.getEndX() * factor);
-                });
-
-                /* Reposition the drawn events */
-                fDrawnEventLayer.getRenderedEvents().forEach(event -> {
-                    /*
-                     * Drawn events use the "translate" properties to define
-                     * their position.
-                     */
-                    event.setTranslateX(event.getTranslateX() * factor);
-                });
-
+                fBackgroundLayer.rescale(factor);
+                fStateLayer.rescale(factor);
+                fArrowLayer.rescale(factor);
+                fDrawnEventLayer.rescale(factor);
 
                 /*
                  * Resize the pane itself. Remember min/max are bound to the
@@ -504,76 +546,105 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
 
         JabberwockyTask<Void> task = new JabberwockyTask<>("Updating Timegraph " + getName(), it -> {
             LOGGER.finer(() -> "Starting paint task #" + taskSeqNb); //$NON-NLS-1$
+            final long taskStart = System.nanoTime();
+            SelfTracer.paintStart(getName(), taskSeqNb);
+            try {
+                paintLayers(it, windowRange, renderingRange, verticalPos, movedHorizontally, movedVertically);
+            } finally {
+                fPaintStatistics.recordPaintTask(taskStart, it.isCancelled());
+                SelfTracer.paintEnd(getName(), taskSeqNb, it.isCancelled());
+            }
+            return null;
+        });
 
-            ITimeGraphModelProvider modelProvider = getControl().getRenderProvider();
-            TimeGraphTreeRender treeRender = modelProvider.getTreeRender();
+        LOGGER.finer(() -> "Queueing task #" + taskSeqNb); //$NON-NLS-1$
 
-            if (it.isCancelled()) {
-                return null;
+        /*
+         * Attach a listener to the task to receive exceptions thrown within the
+         * task.
+         */
+        task.exceptionProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                newVal.printStackTrace();
             }
+        });
 
-            /* Prepare the tree part, if needed */
-            if (!treeRender.equals(fLatestTreeRender)) {
-                fLatestTreeRender = treeRender;
-                fTreeArea.updateTreeContents(treeRender);
-            }
+        fTaskExecutor.schedule(task);
+    }
 
-            if (it.isCancelled()) {
-                return null;
-            }
+    /**
+     * Body of the paint task: fetch the tree render, then have each layer
+     * query its provider and prepare its nodes. The time spent in each phase
+     * is recorded in the paint statistics.
+     */
+    private void paintLayers(FutureTask<?> task, TimeRange windowRange, TimeRange renderingRange,
+            VerticalPosition verticalPos, boolean movedHorizontally, boolean movedVertically) {
+        final long treeStart = System.nanoTime();
+        TimeGraphTreeRender treeRender = getControl().getRenderProvider().getTreeRender();
 
-            /* Paint the background. It's very quick so we can do it every time. */
-            fBackgroundLayer.drawContents(treeRender, renderingRange, verticalPos, it);
+        if (task.isCancelled()) {
+            return;
+        }
 
-            /*
-             * The state rectangles should be redrawn as soon as we move,
-             * either horizontally or vertically.
-             */
-            fStateLayer.setWindowRange(windowRange);
-            fStateLayer.drawContents(treeRender, renderingRange, verticalPos, it);
+        /* Prepare the tree part, if needed */
+        if (!treeRender.equals(fLatestTreeRender)) {
+            fLatestTreeRender = treeRender;
+            fTreeArea.updateTreeContents(treeRender);
+        }
 
-            if (it.isCancelled()) {
-                return null;
-            }
+        /* Elements of collapsed branches are skipped by all layers */
+        Set<List<TreePathElement>> collapsedBranches = fCollapsedBranches;
+        if (!fVisibleRows.isFor(treeRender, collapsedBranches)) {
+            fVisibleRows = TimeGraphVisibleRows.of(treeRender, collapsedBranches);
+        }
+        fPaintStatistics.recordSince(PaintStatistics.Phase.TREE_RENDER, treeStart);
 
-            /*
-             * Arrows and drawn events are drawn for the full vertical
-             * range. Only refetch/repaint them if we moved horizontally.
-             */
-            if (movedHorizontally) {
-                fArrowLayer.drawContents(treeRender, renderingRange, verticalPos, it);
-                fDrawnEventLayer.drawContents(treeRender, renderingRange, verticalPos, it);
-            }
+        if (task.isCancelled()) {
+            return;
+        }
 
-            if (it.isCancelled()) {
-                return null;
-            }
+        /* Paint the background. It's very quick so we can do it every time. */
+        fBackgroundLayer.drawContents(treeRender, renderingRange, verticalPos, task);
 
-            /* Painting is finished, turn off the loading overlay */
-            Platform.runLater(() -> {
-                LOGGER.finest(() -> "fading out overlay"); //$NON-NLS-1$
-                fTimeGraphLoadingOverlay.fadeOut();
-                if (fRepaintLatch != null) {
-                    fRepaintLatch.countDown();
-                }
-            });
+        /*
+         * The state rectangles should be redrawn as soon as we move,
+         * either horizontally or vertically.
+         */
+        fStateLayer.setWindowRange(windowRange);
+        fStateLayer.drawContents(treeRender, renderingRange, verticalPos, task);
 
-            return null;
-        });
+        if (task.isCancelled()) {
+            return;
+        }
 
-        LOGGER.finer(() -> "Queueing task #" + taskSeqNb); //$NON-NLS-1$
+        /*
+         * Arrows are culled to the visible rows, but they keep their
+         * provider's results as long as the time range does not change.
+         */
+        if (movedHorizontally || movedVertically) {
+            fArrowLayer.drawContents(treeRender, renderingRange, verticalPos, task);
+        }
 
         /*
-         * Attach a listener to the task to receive exceptions thrown within the
-         * task.
+         * Drawn events are drawn for the full vertical range. Only
+         * refetch/repaint them if we moved horizontally.
          */
-        task.exceptionProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal != null) {
-                newVal.printStackTrace();
+        if (movedHorizontally) {
+            fDrawnEventLayer.drawContents(treeRender, renderingRange, verticalPos, task);
+        }
+
+        if (task.isCancelled()) {
+            return;
+        }
+
+        /* Painting is finished, turn off the loading overlay */
+        Platform.runLater(() -> {
+            LOGGER.finest(() -> "fading out overlay"); //$NON-NLS-1$
+            fTimeGraphLoadingOverlay.fadeOut();
+            if (fRepaintLatch != null) {
+                fRepaintLatch.countDown();
             }
         });
-
-        fTaskExecutor.schedule(task);
     }
 
     @Override
@@ -620,6 +691,15 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
         return fSelectedState;
     }
 
+    /**
+     * Get the tooltip used to show the properties of state intervals.
+     *
+     * @return The state tooltip
+     */
+    public StateTooltip getStateTooltip() {
+        return fStateTooltip;
+    }
+
     /**
      * Return all state rectangles currently present in the timegraph.
      *
@@ -861,7 +941,7 @@ public class TimeGraphWidget extends TimeGraphModelView implements TimelineWidge
      *
      * @return The corresponding VerticalPosition
      */
-    VerticalPosition getCurrentVerticalPosition() {
+    public VerticalPosition getCurrentVerticalPosition() {
         double vvalue = fTimeGraphScrollPane.getVvalue();
 
         /* Get the Y position of the top/bottom edges of the pane */
@@ -12,18 +12,29 @@ package org.lttng.scope.views.timeline.widgets.timegraph;
 import com.efficios.jabberwocky.project.TraceProject;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
+import com.google.common.annotations.VisibleForTesting;
 import com.sun.javafx.scene.control.skin.TreeViewSkin;
 import com.sun.javafx.scene.control.skin.VirtualFlow;
 import javafx.application.Platform;
 import javafx.beans.binding.DoubleBinding;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import org.lttng.scope.common.jfx.JfxUtils;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
@@ -47,12 +58,14 @@ public class TimeGraphWidgetTreeArea extends BorderPane {
 
     private final TreeAreaTreeView fTreeView;
 
+    private final ReadOnlyObjectWrapper<Set<List<TreePathElement>>> fCollapsedBranches =
+            new ReadOnlyObjectWrapper<>(Collections.emptySet());
+
     /**
      * Constructor
      */
     public TimeGraphWidgetTreeArea(double entryHeight, ObjectProperty<TraceProject<?, ?>> targetTraceProjectProperty) {
-        TreeItem<String> treeRoot = new TreeItem<>();
-        treeRoot.setExpanded(true);
+        TreeItem<TimeGraphTreeElement> treeRoot = createRootItem();
 
         TreeAreaTreeView treeView = new TreeAreaTreeView(treeRoot);
         treeView.setFixedCellSize(entryHeight);
@@ -79,7 +92,20 @@ public class TimeGraphWidgetTreeArea extends BorderPane {
     }
 
     public void clear() {
-        fTreeView.setRoot(null);
+        fTreeView.setRoot(createRootItem());
+        fCollapsedBranches.set(Collections.emptySet());
+    }
+
+    /**
+     * The branches of the tree that are currently collapsed, each identified
+     * by the elements leading to it, starting with the root. Siblings with
+     * the same name are told apart by their rank.
+     * Only updated from the UI thread.
+     *
+     * @return The collapsed branches property
+     */
+    public ReadOnlyObjectProperty<Set<List<TreePathElement>>> collapsedBranchesProperty() {
+        return fCollapsedBranches.getReadOnlyProperty();
     }
 
     public ScrollBar getVerticalScrollBar() {
@@ -90,29 +116,119 @@ public class TimeGraphWidgetTreeArea extends BorderPane {
         return fTreeView.expandedItemCountProperty().multiply((fEntryHeight));
     }
 
+    /**
+     * Update the displayed tree to match a new tree render. Only the branches
+     * that changed are modified, the tree items of unchanged elements are
+     * kept.
+     *
+     * @param treeRender
+     *            The new tree render
+     */
     public void updateTreeContents(TimeGraphTreeRender treeRender) {
-        TreeItem<String> newRoot = getTreeItemForElement(treeRender.getRootElement());
-        newRoot.setExpanded(true);
         Platform.runLater(() -> {
-            fTreeView.setRoot(newRoot);
+            TreeItem<TimeGraphTreeElement> root = fTreeView.getRoot();
+            if (root == null) {
+                root = createRootItem();
+                fTreeView.setRoot(root);
+            }
+            updateTreeItem(root, treeRender.getRootElement());
+            updateCollapsedBranches();
         });
     }
 
-    private static TreeItem<String> getTreeItemForElement(TimeGraphTreeElement element) {
-        TreeItem<String> treeItem = new TreeItem<>(element.getName());
-        List<TreeItem<String>> childItems = element.getChildElements().stream()
-                .map(treeElem -> getTreeItemForElement(treeElem))
-                .collect(Collectors.toList());
-        if (!childItems.isEmpty()) {
-            treeItem.getChildren().addAll(childItems);
+    private TreeItem<TimeGraphTreeElement> createRootItem() {
+        TreeItem<TimeGraphTreeElement> root = new TreeItem<>();
+        root.setExpanded(true);
+        /* Expand/collapse events bubble up to the root, one handler covers the whole tree. */
+        root.addEventHandler(TreeItem.branchExpandedEvent(), event -> updateCollapsedBranches());
+        root.addEventHandler(TreeItem.branchCollapsedEvent(), event -> updateCollapsedBranches());
+        return root;
+    }
+
+    private void updateCollapsedBranches() {
+        TreeItem<TimeGraphTreeElement> root = fTreeView.getRoot();
+        if (root == null || root.getValue() == null) {
+            return;
+        }
+        Set<List<TreePathElement>> collapsedBranches = new HashSet<>();
+        collectCollapsedBranches(root, TreePathElement.rootPath(root.getValue().getName()), collapsedBranches);
+        fCollapsedBranches.set(Collections.unmodifiableSet(collapsedBranches));
+    }
+
+    @VisibleForTesting
+    static void collectCollapsedBranches(TreeItem<TimeGraphTreeElement> item, List<TreePathElement> path,
+            Set<List<TreePathElement>> collapsedBranches) {
+        if (item.isLeaf()) {
+            return;
+        }
+        if (!item.isExpanded()) {
+            collapsedBranches.add(path);
+            /* Branches under a collapsed one are hidden anyway */
+            return;
+        }
+        List<TreeItem<TimeGraphTreeElement>> children = item.getChildren();
+        List<TreePathElement> childPathElements = TreePathElement.ofSiblings(children.stream()
+                .map(child -> child.getValue().getName())
+                .collect(Collectors.toList()));
+        for (int i = 0; i < children.size(); i++) {
+            List<TreePathElement> childPath = new ArrayList<>(path);
+            childPath.add(childPathElements.get(i));
+            collectCollapsedBranches(children.get(i), childPath, collapsedBranches);
+        }
+    }
+
+    /**
+     * Make the given tree item, and its sub-tree, represent the given
+     * element. Kept items keep their expanded/collapsed state.
+     *
+     * Existing child items are matched with the new child elements by name
+     * (and rank, for siblings with the same name). The children list is only
+     * modified if the children actually changed, which avoids having the
+     * tree view recompute its rows for unchanged branches.
+     */
+    @VisibleForTesting
+    static void updateTreeItem(TreeItem<TimeGraphTreeElement> item, TimeGraphTreeElement element) {
+        item.setValue(element);
+
+        List<TreeItem<TimeGraphTreeElement>> oldChildren = item.getChildren();
+        List<TimeGraphTreeElement> newElements = element.getChildElements();
+
+        if (haveSameKeys(oldChildren, newElements)) {
+            for (int i = 0; i < newElements.size(); i++) {
+                updateTreeItem(oldChildren.get(i), newElements.get(i));
+            }
+            return;
         }
 
-        // TODO Correctly manage sub-trees being expanded. Disallow it for now.
-        treeItem.setExpanded(true);
-        treeItem.addEventHandler(TreeItem.branchCollapsedEvent(),
-                event -> event.getTreeItem().setExpanded(true));
+        Map<String, Deque<TreeItem<TimeGraphTreeElement>>> reusableItems = new HashMap<>();
+        for (TreeItem<TimeGraphTreeElement> child : oldChildren) {
+            reusableItems.computeIfAbsent(child.getValue().getName(), k -> new ArrayDeque<>()).add(child);
+        }
 
-        return treeItem;
+        List<TreeItem<TimeGraphTreeElement>> newChildren = new ArrayList<>(newElements.size());
+        for (TimeGraphTreeElement childElement : newElements) {
+            Deque<TreeItem<TimeGraphTreeElement>> candidates = reusableItems.get(childElement.getName());
+            TreeItem<TimeGraphTreeElement> childItem = (candidates == null ? null : candidates.poll());
+            if (childItem == null) {
+                childItem = new TreeItem<>();
+                childItem.setExpanded(true);
+            }
+            updateTreeItem(childItem, childElement);
+            newChildren.add(childItem);
+        }
+        item.getChildren().setAll(newChildren);
+    }
+
+    private static boolean haveSameKeys(List<TreeItem<TimeGraphTreeElement>> items, List<TimeGraphTreeElement> elements) {
+        if (items.size() != elements.size()) {
+            return false;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (!items.get(i).getValue().getName().equals(elements.get(i).getName())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // ------------------------------------------------------------------------
@@ -174,7 +290,11 @@ public class TimeGraphWidgetTreeArea extends BorderPane {
     // Helper inner classes
     // ------------------------------------------------------------------------
 
-    private static class TreeAreaTreeViewCell extends TreeCell<String> {
+    /**
+     * Cell showing the name of a tree element. Cells are only created for the
+     * visible rows, and are reused as the tree is scrolled.
+     */
+    private static class TreeAreaTreeViewCell extends TreeCell<TimeGraphTreeElement> {
 
         public TreeAreaTreeViewCell() {
             // TODO Font size etc. could be managed here. Might be needed on ENTRY_HEIGHT
@@ -183,22 +303,22 @@ public class TimeGraphWidgetTreeArea extends BorderPane {
         }
 
         @Override
-        public void updateItem(String item, boolean empty) {
+        public void updateItem(TimeGraphTreeElement item, boolean empty) {
             super.updateItem(item, empty);
             setGraphic(null);
-            if (empty) {
+            if (empty || item == null) {
                 setText(null);
             } else {
-                setText(item);
+                setText(item.getName());
             }
         }
     }
 
-    private static class TreeAreaTreeView extends TreeView<String> {
+    private static class TreeAreaTreeView extends TreeView<TimeGraphTreeElement> {
 
         private TreeAreaTreeViewSkin fSkin = new TreeAreaTreeViewSkin(this);
 
-        public TreeAreaTreeView(TreeItem<String> root) {
+        public TreeAreaTreeView(TreeItem<TimeGraphTreeElement> root) {
             super(root);
 
             /*
@@ -245,7 +365,7 @@ public class TimeGraphWidgetTreeArea extends BorderPane {
         }
     }
 
-    private static class TreeAreaTreeViewSkin extends TreeViewSkin<String> {
+    private static class TreeAreaTreeViewSkin extends TreeViewSkin<TimeGraphTreeElement> {
 
         public TreeAreaTreeViewSkin(TreeAreaTreeView treeView) {
             super(treeView);
@@ -12,20 +12,23 @@ package org.lttng.scope.views.timeline.widgets.timegraph.layer;
 import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.views.common.ColorDefinition;
 import com.efficios.jabberwocky.views.timegraph.model.provider.arrows.TimeGraphModelArrowProvider;
+import com.efficios.jabberwocky.views.timegraph.model.render.arrows.TimeGraphArrow;
 import com.efficios.jabberwocky.views.timegraph.model.render.arrows.TimeGraphArrowRender;
-import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
 import com.google.common.collect.ImmutableMap;
 import javafx.application.Platform;
 import javafx.scene.Group;
-import javafx.scene.paint.Paint;
+import javafx.scene.shape.PathElement;
 import org.jetbrains.annotations.Nullable;
-import org.lttng.scope.common.jfx.Arrow;
+import org.lttng.scope.common.jfx.ArrowsPath;
 import org.lttng.scope.common.jfx.JfxColorFactory;
+import org.lttng.scope.views.timeline.widgets.timegraph.PaintStatistics;
+import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphVisibleRows;
 import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphWidget;
 import org.lttng.scope.views.timeline.widgets.timegraph.VerticalPosition;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.FutureTask;
@@ -46,14 +49,14 @@ public class TimeGraphArrowLayer extends TimeGraphLayer {
                 .collect(ImmutableMap.toImmutableMap(
                         Function.identity(),
                         ap -> {
-                            Group group = new Group();
+                            ArrowsPath path = new ArrowsPath();
                             ColorDefinition colorDef = ap.getArrowSeries().getColor();
-                            Paint stroke = JfxColorFactory.getColorFromDef(colorDef);
-                            return new ArrowConfig(group, stroke);
+                            path.setStroke(JfxColorFactory.getColorFromDef(colorDef));
+                            return new ArrowConfig(path);
                         }));
 
         fArrowProvidersConfig.values().stream()
-                .map(ArrowConfig::getGroup)
+                .map(ArrowConfig::getPath)
                 .forEach(parentGroup.getChildren()::add);
 
         /*
@@ -70,9 +73,10 @@ public class TimeGraphArrowLayer extends TimeGraphLayer {
                      */
                     TimeRange timeRange = getWidget().getViewContext().getVisibleTimeRange();
                     TimeGraphTreeRender treeRender = getWidget().getLatestTreeRender();
+                    VerticalPosition vPos = getWidget().getCurrentVerticalPosition();
                     // FIXME Not using a task here, so this might end up running
                     // on the UI thread  and not being cancellable...
-                    paintArrowsOfProvider(treeRender, timeRange, ap, null);
+                    paintArrowsOfProvider(treeRender, timeRange, vPos, ap, null);
                 } else {
                     /*
                      * The provider is now disabled, we must remove the existing
@@ -83,7 +87,7 @@ public class TimeGraphArrowLayer extends TimeGraphLayer {
                         return;
                     }
                     Platform.runLater(() -> {
-                        config.getGroup().getChildren().clear();
+                        config.getPath().clearArrows();
                     });
                 }
             });
@@ -95,98 +99,207 @@ public class TimeGraphArrowLayer extends TimeGraphLayer {
             VerticalPosition vPos, @Nullable FutureTask<?> task) {
         fArrowProvidersConfig.keySet().stream()
                 .filter(arrowProvider -> arrowProvider.enabledProperty().get())
-                .forEach(arrowProvider -> paintArrowsOfProvider(treeRender, timeRange, arrowProvider, task));
+                .forEach(arrowProvider -> paintArrowsOfProvider(treeRender, timeRange, vPos, arrowProvider, task));
     }
 
     @Override
     public void clear() {
         /*
-         * Only clear the children's children, not our direct children which
+         * Only clear the paths' contents, not our direct children which
          * could still be valid.
          */
         fArrowProvidersConfig.values().stream()
-                .map(ArrowConfig::getGroup)
-                .forEach(group -> group.getChildren().clear());
+                .map(ArrowConfig::getPath)
+                .forEach(ArrowsPath::clearArrows);
     }
 
+    /**
+     * Paint the arrows of one provider that cross the rows of the given
+     * vertical position.
+     *
+     * The provider's arrows of the whole time range are kept in an index, so
+     * that moving only vertically does not need to query the provider again.
+     */
     private void paintArrowsOfProvider(TimeGraphTreeRender treeRender, TimeRange timeRange,
-            TimeGraphModelArrowProvider arrowProvider, @Nullable FutureTask<?> task) {
+            VerticalPosition vPos, TimeGraphModelArrowProvider arrowProvider, @Nullable FutureTask<?> task) {
         ArrowConfig config = fArrowProvidersConfig.get(arrowProvider);
         if (config == null) {
             /* Should not happen... */
             return;
         }
 
-        TimeGraphArrowRender arrowRender = arrowProvider.getArrowRender(treeRender, timeRange, task);
-        Collection<Arrow> arrows = prepareArrows(treeRender, arrowRender, config.getStroke());
+        PaintStatistics stats = getWidget().getPaintStatistics();
+        TimeGraphVisibleRows visibleRows = getWidget().getVisibleRows();
+        IndexedArrows indexedArrows = config.getIndexedArrows();
+        if (indexedArrows == null || !indexedArrows.isFor(treeRender, timeRange)) {
+            long queryStart = System.nanoTime();
+            TimeGraphArrowRender arrowRender = arrowProvider.getArrowRender(treeRender, timeRange, task);
+            stats.recordSince(PaintStatistics.Phase.ARROWS_QUERY, queryStart);
+            if (task != null && task.isCancelled()) {
+                return;
+            }
+            indexedArrows = new IndexedArrows(visibleRows, timeRange, arrowRender);
+            config.setIndexedArrows(indexedArrows);
+        } else if (indexedArrows.getVisibleRows() != visibleRows) {
+            /* Branches were collapsed or expanded, the arrows are still valid. */
+            indexedArrows = new IndexedArrows(visibleRows, timeRange, indexedArrows.getArrowRender());
+            config.setIndexedArrows(indexedArrows);
+        }
 
-        Platform.runLater(() -> {
-            config.getGroup().getChildren().clear();
-            config.getGroup().getChildren().addAll(arrows);
-        });
+        final int entriesToPrefetch = getWidget().getDebugOptions().getEntryPadding().get();
+        final int topEntry = Math.max(0,
+                TimeGraphWidget.paneYPosToEntryListIndex(vPos.fTopPos, TimeGraphWidget.ENTRY_HEIGHT) - entriesToPrefetch);
+        final int bottomEntry = TimeGraphWidget.paneYPosToEntryListIndex(vPos.fBottomPos, TimeGraphWidget.ENTRY_HEIGHT) + entriesToPrefetch;
+
+        long prepareStart = System.nanoTime();
+        List<RowArrow> visibleArrows = indexedArrows.getIndex().query(topEntry, bottomEntry);
+        List<PathElement> elements = prepareArrows(visibleArrows);
+        int nbArrows = visibleArrows.size();
+        stats.recordSince(PaintStatistics.Phase.ARROWS_PREPARE, prepareStart);
+
+        stats.runLater(PaintStatistics.Phase.ARROWS_APPLY, () -> config.getPath().setArrows(elements, nbArrows));
     }
 
-    private Collection<Arrow> prepareArrows(TimeGraphTreeRender treeRender,
-            TimeGraphArrowRender arrowRender, Paint arrowStroke) {
+    /**
+     * Compute the path elements drawing the given arrows, all of which will
+     * be part of the same path node.
+     */
+    private List<PathElement> prepareArrows(List<RowArrow> rowArrows) {
         final double entryHeight = TimeGraphWidget.ENTRY_HEIGHT;
 
-        Collection<Arrow> arrows = arrowRender.getArrows().stream()
-            .map(timeGraphArrow -> {
-                TimeGraphTreeElement startTreeElem = timeGraphArrow.getStartEvent().getTreeElement();
-                TimeGraphTreeElement endTreeElem = timeGraphArrow.getEndEvent().getTreeElement();
-                long startTimestamp = timeGraphArrow.getStartEvent().getTimestamp();
-                long endTimestamp = timeGraphArrow.getEndEvent().getTimestamp();
-                // FIXME Build and use a hashmap instead for indexes
-                int startIndex = treeRender.getAllTreeElements().indexOf(startTreeElem);
-                int endIndex = treeRender.getAllTreeElements().indexOf(endTreeElem);
-                if (startIndex == -1 || endIndex == -1) {
-                    /* We shouldn't have received this... */
-                    return null;
-                }
+        double[] coords = new double[rowArrows.size() * 4];
+        int i = 0;
+        for (RowArrow rowArrow : rowArrows) {
+            TimeGraphArrow timeGraphArrow = rowArrow.getArrow();
+            coords[i++] = getWidget().timestampToPaneXPos(timeGraphArrow.getStartEvent().getTimestamp());
+            coords[i++] = rowArrow.getStartRow() * entryHeight + entryHeight / 2;
+            coords[i++] = getWidget().timestampToPaneXPos(timeGraphArrow.getEndEvent().getTimestamp());
+            coords[i++] = rowArrow.getEndRow() * entryHeight + entryHeight / 2;
+        }
+        return ArrowsPath.computeElements(coords);
+    }
 
-                double startX = getWidget().timestampToPaneXPos(startTimestamp);
-                double endX = getWidget().timestampToPaneXPos(endTimestamp);
-                double startY = startIndex * entryHeight + entryHeight / 2;
-                double endY = endIndex * entryHeight + entryHeight / 2;
-
-                Arrow arrow = new Arrow(startX, startY, endX, endY);
-                arrow.setStroke(arrowStroke);
-                return arrow;
-            })
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
-        return arrows;
+    /**
+     * {@inheritDoc}
+     *
+     * Each provider's path is stretched on its own, so that it can go back to
+     * the normal scale as soon as its own arrows are redrawn, whatever the
+     * other providers' state.
+     */
+    @Override
+    public void rescale(double factor) {
+        fArrowProvidersConfig.values().forEach(config -> config.getPath().stretchX(factor));
     }
 
-    public synchronized Collection<Arrow> getRenderedArrows() {
-        /*
-         * Retrieve the rendered arrows of each group, and flatten them into a
-         * single collection.
-         */
+    public synchronized int getNbRenderedArrows() {
         return fArrowProvidersConfig.values().stream()
-                .map(ArrowConfig::getGroup)
-                .map(Group::getChildren)
-                .flatMap(Collection::stream)
-                .map(node -> (Arrow) node)
-                .collect(Collectors.toList());
+                .mapToInt(config -> config.getPath().getNbArrows())
+                .sum();
     }
 
     private static class ArrowConfig {
 
-        private final Group fGroup;
-        private final Paint fStroke;
+        private final ArrowsPath fPath;
+        private volatile @Nullable IndexedArrows fIndexedArrows = null;
+
+        public ArrowConfig(ArrowsPath path) {
+            fPath = path;
+        }
+
+        public ArrowsPath getPath() {
+            return fPath;
+        }
+
+        public @Nullable IndexedArrows getIndexedArrows() {
+            return fIndexedArrows;
+        }
+
+        public void setIndexedArrows(IndexedArrows indexedArrows) {
+            fIndexedArrows = indexedArrows;
+        }
+    }
+
+    /**
+     * Arrow along with the rows of its start and end points.
+     */
+    private static class RowArrow {
+
+        private final TimeGraphArrow fArrow;
+        private final int fStartRow;
+        private final int fEndRow;
+
+        public RowArrow(TimeGraphArrow arrow, int startRow, int endRow) {
+            fArrow = arrow;
+            fStartRow = startRow;
+            fEndRow = endRow;
+        }
+
+        public TimeGraphArrow getArrow() {
+            return fArrow;
+        }
+
+        public int getStartRow() {
+            return fStartRow;
+        }
+
+        public int getEndRow() {
+            return fEndRow;
+        }
+
+        public int getTopRow() {
+            return Math.min(fStartRow, fEndRow);
+        }
+
+        public int getBottomRow() {
+            return Math.max(fStartRow, fEndRow);
+        }
+    }
+
+    /**
+     * Arrows of a provider for one tree render and time range, indexed by the
+     * rows they cross. Arrows with an end in a collapsed branch are not drawn.
+     */
+    private static class IndexedArrows {
+
+        private final TimeGraphVisibleRows fVisibleRows;
+        private final TimeRange fTimeRange;
+        private final TimeGraphArrowRender fArrowRender;
+        private final RowSpanIndex<RowArrow> fIndex;
+
+        public IndexedArrows(TimeGraphVisibleRows visibleRows, TimeRange timeRange, TimeGraphArrowRender arrowRender) {
+            fVisibleRows = visibleRows;
+            fTimeRange = timeRange;
+            fArrowRender = arrowRender;
+
+            List<RowArrow> rowArrows = arrowRender.getArrows().stream()
+                    .map(arrow -> {
+                        int startRow = visibleRows.rowOf(arrow.getStartEvent().getTreeElement());
+                        int endRow = visibleRows.rowOf(arrow.getEndEvent().getTreeElement());
+                        if (startRow == -1 || endRow == -1) {
+                            return null;
+                        }
+                        return new RowArrow(arrow, startRow, endRow);
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            fIndex = new RowSpanIndex<>(rowArrows, RowArrow::getTopRow, RowArrow::getBottomRow);
+        }
+
+        public boolean isFor(TimeGraphTreeRender treeRender, TimeRange timeRange) {
+            return (fVisibleRows.getTreeRender() == treeRender && fTimeRange.equals(timeRange));
+        }
 
-        public ArrowConfig(Group group, Paint stroke) {
-            fGroup = group;
-            fStroke = stroke;
+        public TimeGraphVisibleRows getVisibleRows() {
+            return fVisibleRows;
         }
 
-        public Group getGroup() {
-            return fGroup;
+        public TimeGraphArrowRender getArrowRender() {
+            return fArrowRender;
         }
 
-        public Paint getStroke() {
-            return fStroke;
+        public RowSpanIndex<RowArrow> getIndex() {
+            return fIndex;
         }
     }
 }
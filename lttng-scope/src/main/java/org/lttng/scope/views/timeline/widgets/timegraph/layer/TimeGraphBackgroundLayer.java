@@ -13,24 +13,36 @@ import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
 import javafx.application.Platform;
 import javafx.scene.Group;
-import javafx.scene.shape.Line;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.CycleMethod;
+import javafx.scene.paint.LinearGradient;
+import javafx.scene.paint.Paint;
+import javafx.scene.paint.Stop;
+import javafx.scene.shape.Rectangle;
 import org.jetbrains.annotations.Nullable;
 import org.lttng.scope.common.jfx.JfxUtils;
 import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphWidget;
 import org.lttng.scope.views.timeline.widgets.timegraph.VerticalPosition;
 
-import java.util.LinkedList;
 import java.util.concurrent.FutureTask;
-import java.util.stream.DoubleStream;
 
 /**
  * Sub-control of the time graph widget taking care of simply drawing the
- * background lines in the area of the current visible window.
+ * background lines of the tree entries.
+ *
+ * All the lines are drawn by a single rectangle, filled with a pattern that
+ * repeats every entry. It spans the whole width of the time graph and the
+ * height of all the entries, so it only needs to be updated when the number
+ * of entries changes.
  *
  * @author Alexandre Montplaisir
  */
 public class TimeGraphBackgroundLayer extends TimeGraphLayer {
 
+    private static final double LINE_WIDTH = 1.0;
+
+    private final Rectangle fRowLines = new Rectangle();
+
     /**
      * Constructor
      *
@@ -41,52 +53,56 @@ public class TimeGraphBackgroundLayer extends TimeGraphLayer {
      */
     public TimeGraphBackgroundLayer(TimeGraphWidget widget, Group parentGroup) {
         super(widget, parentGroup);
+
+        fRowLines.setFill(createRowLinesPattern(TimeGraphWidget.ENTRY_HEIGHT));
+        fRowLines.setMouseTransparent(true);
+        fRowLines.widthProperty().bind(widget.getTimeGraphPane().widthProperty());
+        fRowLines.setHeight(0);
+        parentGroup.getChildren().add(fRowLines);
+    }
+
+    /**
+     * Create a paint drawing one horizontal line in the middle of every
+     * entry, by repeating a vertical gradient with hard stops.
+     */
+    private static Paint createRowLinesPattern(double entryHeight) {
+        Color lineColor = TimeGraphWidget.BACKGROUD_LINES_COLOR;
+        double lineStart = (entryHeight - LINE_WIDTH) / 2 / entryHeight;
+        double lineEnd = (entryHeight + LINE_WIDTH) / 2 / entryHeight;
+        return new LinearGradient(0, 0, 0, entryHeight, false, CycleMethod.REPEAT,
+                new Stop(0, Color.TRANSPARENT),
+                new Stop(lineStart, Color.TRANSPARENT),
+                new Stop(lineStart, lineColor),
+                new Stop(lineEnd, lineColor),
+                new Stop(lineEnd, Color.TRANSPARENT),
+                new Stop(1, Color.TRANSPARENT));
     }
 
     @Override
     public void drawContents(TimeGraphTreeRender treeRender, TimeRange timeRange,
             VerticalPosition vPos, @Nullable FutureTask<?> task) {
-        final double entryHeight = TimeGraphWidget.ENTRY_HEIGHT;
-
-        final int entriesToPrefetch = getWidget().getDebugOptions().getEntryPadding().get();
-        int totalNbEntries = treeRender.getAllTreeElements().size();
-
-        final double timeGraphWidth = getWidget().getTimeGraphPane().getWidth();
-        final double paintTopPos = Math.max(0.0, vPos.fTopPos - entriesToPrefetch * entryHeight);
-        final double paintBottomPos = Math.min(vPos.fBottomPos + entriesToPrefetch * entryHeight,
-                /*
-                 * If there are less tree elements than can fill the window,
-                 * stop at the end of the real tree elements.
-                 */
-                totalNbEntries * entryHeight);
-
-        LinkedList<Line> lines = new LinkedList<>();
-        DoubleStream.iterate((entryHeight / 2), y -> y + entryHeight)
-                // TODO Java 9 will allow using dropWhile()/takeWhile()/collect
-                .filter(y -> y > paintTopPos)
-                .peek(y -> {
-                    Line line = new Line(0, y, timeGraphWidth, y);
-                    line.setStroke(TimeGraphWidget.BACKGROUD_LINES_COLOR);
-                    line.setStrokeWidth(1.0);
-
-                    lines.add(line);
-                })
-                .allMatch(y -> y < paintBottomPos);
-        // The list contains the first element that didn't match the predicate,
-        // we don't want it.
-        if (!lines.isEmpty()) {
-            lines.removeLast();
-        }
+        /* Stop at the end of the displayed tree elements. */
+        final double height = getWidget().getVisibleRows().getSize() * TimeGraphWidget.ENTRY_HEIGHT;
 
         Platform.runLater(() -> {
-            getParentGroup().getChildren().clear();
-            getParentGroup().getChildren().addAll(lines);
+            /* Setting the same value again does not trigger any repaint */
+            fRowLines.setHeight(height);
         });
     }
 
     @Override
     public void clear() {
-        JfxUtils.runOnMainThread(() -> getParentGroup().getChildren().clear());
+        JfxUtils.runOnMainThread(() -> fRowLines.setHeight(0));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The lines already span the whole width of the time graph, whatever
+     * the zoom level, there is nothing to stretch.
+     */
+    @Override
+    public void rescale(double factor) {
     }
 
 }
@@ -12,6 +12,7 @@ package org.lttng.scope.views.timeline.widgets.timegraph.layer;
 import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
 import javafx.scene.Group;
+import javafx.scene.transform.Scale;
 import org.jetbrains.annotations.Nullable;
 import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphWidget;
 import org.lttng.scope.views.timeline.widgets.timegraph.VerticalPosition;
@@ -28,6 +29,9 @@ public abstract class TimeGraphLayer {
     private final TimeGraphWidget fWidget;
     private final Group fParentGroup;
 
+    /** Horizontal stretching of the current contents, until the next redraw */
+    private final Scale fZoomScale = new Scale(1.0, 1.0, 0.0, 0.0);
+
     /**
      * Constructor
      *
@@ -39,6 +43,7 @@ public abstract class TimeGraphLayer {
     public TimeGraphLayer(TimeGraphWidget widget, Group parentGroup) {
         fWidget = widget;
         fParentGroup = parentGroup;
+        fParentGroup.getTransforms().add(fZoomScale);
     }
 
     /**
@@ -65,8 +70,9 @@ public abstract class TimeGraphLayer {
      * the Layer add children Nodes to itself.
      *
      * @param treeRender
-     *            The current tree render of the time graph. Can be used to get
-     *            the number of visible entries, etc.
+     *            The current tree render of the time graph. The rows on which
+     *            its elements are displayed, taking collapsed branches into
+     *            account, are given by {@link TimeGraphWidget#getVisibleRows()}.
      * @param timeRange
      *            The time range, or "horizontal position" of the current
      *            visible window
@@ -85,4 +91,43 @@ public abstract class TimeGraphLayer {
      * Remove from the scenegraph the Nodes generated by this layer.
      */
     public abstract void clear();
+
+    /**
+     * Stretch the currently drawn contents horizontally, relative to the
+     * start of the pane, so that they keep showing the right location when
+     * the zoom level changes. This is only meant as an intermediate display
+     * until the next redraw, the cost does not depend on the number of drawn
+     * nodes.
+     *
+     * This stretches the whole layer with one transform, which suits layers
+     * whose contents are all replaced at once. Layers whose parts are redrawn
+     * separately should override it.
+     *
+     * Should be called from the UI thread.
+     *
+     * @param factor
+     *            The factor by which to multiply all X positions and widths
+     */
+    public void rescale(double factor) {
+        fZoomScale.setX(fZoomScale.getX() * factor);
+    }
+
+    /**
+     * Cancel the effect of previous {@link #rescale} calls. Implementations
+     * should call it, from the UI thread, when they replace their contents by
+     * ones drawn for the current zoom level.
+     */
+    protected void resetScale() {
+        fZoomScale.setX(1.0);
+    }
+
+    /**
+     * Check if the current contents are stretched by {@link #rescale}, and so
+     * do not correspond to the current zoom level.
+     *
+     * @return If a redraw is pending following a rescale
+     */
+    protected boolean isRescaled() {
+        return fZoomScale.getX() != 1.0;
+    }
 }
@@ -11,34 +11,40 @@ package org.lttng.scope.views.timeline.widgets.timegraph.layer;
 
 import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.views.timegraph.model.provider.states.TimeGraphModelStateProvider;
+import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateInterval;
 import com.efficios.jabberwocky.views.timegraph.model.render.states.TimeGraphStateRender;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
-import javafx.application.Platform;
+import javafx.animation.PauseTransition;
 import javafx.scene.Group;
-import javafx.scene.Node;
 import javafx.scene.control.OverrunStyle;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.util.Duration;
 import org.jetbrains.annotations.Nullable;
+import org.lttng.scope.common.jfx.JfxColorFactory;
 import org.lttng.scope.common.jfx.JfxTextUtils;
 import org.lttng.scope.common.jfx.JfxUtils;
 import org.lttng.scope.views.timeline.DebugOptions;
+import org.lttng.scope.views.timeline.widgets.timegraph.PaintStatistics;
 import org.lttng.scope.views.timeline.widgets.timegraph.StateRectangle;
 import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphWidget;
 import org.lttng.scope.views.timeline.widgets.timegraph.VerticalPosition;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.FutureTask;
-import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
 
@@ -55,11 +61,23 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
 
     private static final Logger LOGGER = Logger.getLogger(TimeGraphStateLayer.class.getName());
 
+    private static final Duration TOOLTIP_DELAY = Duration.millis(500);
+    private static final double TOOLTIP_OFFSET = 10.0;
+
     private final Group fLabelGroup = new Group();
     private final TimeGraphModelStateProvider fStateProvider;
 
     private TimeRange fWindowRange;
 
+    /** Rows drawn by the latest redraw, only accessed from the UI thread */
+    private @Nullable FetchedRows fFetchedRows = null;
+
+    /* Hovering state, to show the tooltip of the state under the cursor */
+    private final PauseTransition fTooltipDelay = new PauseTransition(TOOLTIP_DELAY);
+    private @Nullable TimeGraphStateInterval fHoveredInterval = null;
+    private double fTooltipScreenX;
+    private double fTooltipScreenY;
+
     /**
      * Constructor
      *
@@ -77,6 +95,53 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
          * context, afterwards we'll let the widget update it.
          */
         fWindowRange = widget.getControl().getViewContext().getVisibleTimeRange();
+
+        /*
+         * The state rectangles do not receive mouse events themselves. The
+         * handlers on the time graph pane find the state under the cursor
+         * from the coordinates instead.
+         */
+        parentGroup.setMouseTransparent(true);
+
+        Pane timeGraphPane = widget.getTimeGraphPane();
+        timeGraphPane.addEventHandler(MouseEvent.MOUSE_CLICKED, e -> {
+            if (e.getButton() != MouseButton.PRIMARY) {
+                return;
+            }
+            StateRectangle state = findStateAt(e.getX(), e.getY());
+            if (state != null) {
+                widget.setSelectedState(state, true);
+            }
+        });
+        timeGraphPane.addEventHandler(MouseEvent.MOUSE_MOVED, e -> {
+            StateRectangle state = findStateAt(e.getX(), e.getY());
+            if (state == null) {
+                fHoveredInterval = null;
+                fTooltipDelay.stop();
+                if (widget.getStateTooltip().getShownInterval() != null) {
+                    widget.getStateTooltip().hide();
+                }
+                return;
+            }
+            fTooltipScreenX = e.getScreenX() + TOOLTIP_OFFSET;
+            fTooltipScreenY = e.getScreenY() + TOOLTIP_OFFSET;
+            if (!state.getStateInterval().equals(fHoveredInterval)) {
+                /* Moved to another state, wait a bit before showing its tooltip */
+                fHoveredInterval = state.getStateInterval();
+                widget.getStateTooltip().hide();
+                fTooltipDelay.playFromStart();
+            }
+        });
+        timeGraphPane.addEventHandler(MouseEvent.MOUSE_EXITED, e -> {
+            fHoveredInterval = null;
+            fTooltipDelay.stop();
+        });
+        fTooltipDelay.setOnFinished(e -> {
+            TimeGraphStateInterval interval = fHoveredInterval;
+            if (interval != null) {
+                widget.getStateTooltip().show(interval, timeGraphPane, fTooltipScreenX, fTooltipScreenY);
+            }
+        });
     }
 
     /**
@@ -107,7 +172,8 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
             VerticalPosition vPos, @Nullable FutureTask<?> task) {
 
         final long resolution = Math.max(1, Math.round(getWidget().getCurrentNanosPerPixel()));
-        final List<TimeGraphTreeElement> allTreeElements = treeRender.getAllTreeElements();
+        /* Elements of collapsed branches are not displayed, nor queried. */
+        final List<TimeGraphTreeElement> allTreeElements = getWidget().getVisibleRows().getElements();
         final int nbElements = allTreeElements.size();
         final int entriesToPrefetch = getWidget().getDebugOptions().getEntryPadding().get();
         final int topEntry = Math.max(0,
@@ -117,69 +183,217 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
 
         LOGGER.finest(() -> "topEntry=" + topEntry +", bottomEntry=" + bottomEntry);
 
+        final PaintStatistics stats = getWidget().getPaintStatistics();
+        final long queryStart = System.nanoTime();
         List<TimeGraphStateRender> stateRenders = allTreeElements.subList(topEntry, bottomEntry).stream()
                 .map(treeElem -> fStateProvider.getStateRender(treeElem, timeRange, resolution, task))
                 .collect(Collectors.toList());
+        stats.recordSince(PaintStatistics.Phase.STATES_QUERY, queryStart);
 
         if (task != null && task.isCancelled()) {
             return;
         }
 
-        Collection<StateRectangle> stateRectangles = prepareStateRectangles(stateRenders, topEntry);
-        Node statesLayerContents = prepareTimeGraphStatesContents(stateRectangles);
-        Node labelsLayerContents = prepareTimeGrahLabelsContents(stateRectangles, fWindowRange);
+        /*
+         * The rectangles are built in parallel, make sure they only read the
+         * color cache. Colors can be changed by the user at any time, so do
+         * this on every paint; it is cheap once the colors are known.
+         */
+        final long prepareStart = System.nanoTime();
+        JfxColorFactory.precomputePalette(fStateProvider.getStateDefinitions());
+
+        FetchedRows rows = new FetchedRows(topEntry, stateRenders, fWindowRange);
 
         /*
-         * Go over all state rectangles, and bring the "multi-state"
-         * ones to the front, to be sure they show on top of the others.
-         * Note we cannot do the forEach() as part of the stream, that
-         * would throw a ConcurrentModificationException.
+         * Only the rows currently in the viewport get their rectangles now,
+         * the prefetched ones will be materialized if they are scrolled into
+         * view before the next redraw.
          */
-        ((Group) statesLayerContents).getChildren().stream()
-                .map(node -> (StateRectangle) node)
-                .filter(rect -> (rect.getStateInterval().isMultiState()))
-                .collect(Collectors.toList())
-                .forEach(Node::toFront);
+        int firstVisibleRow = Math.max(0, rowIndexAt(vPos.fTopPos) - topEntry);
+        int lastVisibleRow = Math.min(rows.size() - 1, rowIndexAt(vPos.fBottomPos) - topEntry);
+        @Nullable StateRectangle previousSelection = getWidget().getSelectedState();
+        @Nullable TimeGraphStateInterval selectedInterval = (previousSelection == null ? null : previousSelection.getStateInterval());
+
+        List<StateRectangle[]> rectanglesPerRow = IntStream.rangeClosed(firstVisibleRow, lastVisibleRow).parallel()
+                .mapToObj(row -> createRowRectangles(rows, row))
+                .collect(Collectors.toList());
+        List<StateRectangle> stateRectangles = rectanglesPerRow.stream()
+                .flatMap(rects -> inDrawingOrder(rects).stream())
+                .collect(Collectors.toList());
+        List<Text> labels = createLabels(stateRectangles, rows.fWindowRange);
 
-        Platform.runLater(() -> {
+        @Nullable StateRectangle newSelection = (selectedInterval == null ? null :
+                stateRectangles.stream()
+                        .filter(rect -> rect.getStateInterval().equals(selectedInterval))
+                        .findFirst()
+                        .orElse(null));
+        stats.recordSince(PaintStatistics.Phase.STATES_PREPARE, prepareStart);
+
+        stats.runLater(PaintStatistics.Phase.STATES_APPLY, () -> {
+            resetScale();
             getParentGroup().getChildren().clear();
             getLabelGroup().getChildren().clear();
 
-            getParentGroup().getChildren().add(statesLayerContents);
-            getLabelGroup().getChildren().add(labelsLayerContents);
+            for (int i = 0; i < rectanglesPerRow.size(); i++) {
+                rows.fRectangles[firstVisibleRow + i] = rectanglesPerRow.get(i);
+            }
+            rows.fStates.getChildren().addAll(stateRectangles);
+            rows.fLabels.getChildren().addAll(labels);
+            if (newSelection != null) {
+                getWidget().setSelectedState(newSelection, false);
+            }
+            fFetchedRows = rows;
+
+            getParentGroup().getChildren().add(rows.fStates);
+            getLabelGroup().getChildren().add(rows.fLabels);
+            getLabelGroup().setVisible(true);
         });
     }
 
+    /**
+     * Create the nodes of the prefetched rows that are now in the viewport,
+     * if they were not created yet. This allows scrolling vertically without
+     * waiting for the next redraw, while only paying for the rows that are
+     * actually looked at.
+     *
+     * Should be called from the UI thread.
+     *
+     * @param vPos
+     *            The new vertical position of the viewport
+     */
+    public void showRows(VerticalPosition vPos) {
+        FetchedRows rows = fFetchedRows;
+        /* Positions computed now would not match the stretched contents. */
+        if (rows == null || isRescaled()) {
+            return;
+        }
+        int firstRow = Math.max(0, rowIndexAt(vPos.fTopPos) - rows.fTopEntry);
+        int lastRow = Math.min(rows.size() - 1, rowIndexAt(vPos.fBottomPos) - rows.fTopEntry);
+
+        @Nullable StateRectangle selection = getWidget().getSelectedState();
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (rows.fRectangles[row] != null) {
+                continue;
+            }
+            StateRectangle[] rowRectangles = createRowRectangles(rows, row);
+            rows.fRectangles[row] = rowRectangles;
+            List<StateRectangle> rectangles = inDrawingOrder(rowRectangles);
+            rows.fStates.getChildren().addAll(rectangles);
+            rows.fLabels.getChildren().addAll(createLabels(rectangles, rows.fWindowRange));
+
+            if (selection != null && !rectangles.contains(selection)) {
+                rectangles.stream()
+                        .filter(rect -> rect.getStateInterval().equals(selection.getStateInterval()))
+                        .findFirst()
+                        .ifPresent(rect -> getWidget().setSelectedState(rect, false));
+            }
+        }
+    }
+
+    /**
+     * Find the state drawn at the given position of the time graph pane.
+     *
+     * The row is found from the Y position, then the interval in that row
+     * from the timestamp, by binary search. A state drawn smaller than a
+     * pixel still covers that pixel.
+     *
+     * @param x
+     *            The X position in the time graph pane
+     * @param y
+     *            The Y position in the time graph pane
+     * @return The state rectangle at this position, or null if there is none
+     */
+    private @Nullable StateRectangle findStateAt(double x, double y) {
+        FetchedRows rows = fFetchedRows;
+        if (rows == null || y < 0) {
+            return null;
+        }
+        int row = rowIndexAt(y) - rows.fTopEntry;
+        if (row < 0 || row >= rows.size()) {
+            return null;
+        }
+        StateRectangle[] rectangles = rows.fRectangles[row];
+        if (rectangles == null) {
+            return null;
+        }
+
+        long ts = getWidget().paneXPosToTimestamp(x);
+        long pixelDuration = Math.round(getWidget().getCurrentNanosPerPixel());
+        long[] startTimes = rows.fStartTimes[row];
+
+        /* Index of the last interval starting at or before 'ts' */
+        int low = 0;
+        int high = startTimes.length - 1;
+        int index = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (startTimes[mid] <= ts) {
+                index = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        /* Multi-state intervals can overlap the previous one, check it too. */
+        for (int i = index; i >= 0 && i >= index - 1; i--) {
+            StateRectangle rect = rectangles[i];
+            TimeGraphStateInterval interval = rect.getStateInterval();
+            if (ts <= interval.getEndTime() + pixelDuration
+                    && y >= rect.getY() && y <= rect.getY() + rect.getHeight()) {
+                return rect;
+            }
+        }
+        return null;
+    }
+
+    private static int rowIndexAt(double yPos) {
+        return TimeGraphWidget.paneYPosToEntryListIndex(Math.max(0.0, yPos), TimeGraphWidget.ENTRY_HEIGHT);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The labels would get distorted if they were stretched, they are hidden
+     * instead until the next redraw.
+     */
+    @Override
+    public void rescale(double factor) {
+        super.rescale(factor);
+        getLabelGroup().setVisible(false);
+    }
+
     @Override
     public void clear() {
         JfxUtils.runOnMainThread(() -> {
+            fFetchedRows = null;
             getParentGroup().getChildren().clear();
             getLabelGroup().getChildren().clear();
         });
     }
 
-    private Collection<StateRectangle> prepareStateRectangles(
-            List<TimeGraphStateRender> stateRenders, int topEntry) {
-        /* Prepare the colored state rectangles */
-        Collection<StateRectangle> rectangles = IntStream.range(0, stateRenders.size()).parallel()
-                .mapToObj(idx -> getRectanglesForStateRender(stateRenders.get(idx), idx + topEntry))
-                .flatMap(Function.identity())
-                .collect(Collectors.toSet());
-        return rectangles;
-    }
-
-    private Stream<StateRectangle> getRectanglesForStateRender(TimeGraphStateRender stateRender, int entryIndex) {
-        return stateRender.getStateIntervals().stream()
-                .map(interval -> new StateRectangle(getWidget(), interval, entryIndex));
+    /**
+     * Create the rectangles of one of the fetched rows, in the same order as
+     * the row's intervals.
+     */
+    private StateRectangle[] createRowRectangles(FetchedRows rows, int row) {
+        int entryIndex = rows.fTopEntry + row;
+        return Arrays.stream(rows.fIntervals[row])
+                .map(interval -> new StateRectangle(getWidget(), interval, entryIndex))
+                .toArray(StateRectangle[]::new);
     }
 
-    private static Node prepareTimeGraphStatesContents(Collection<StateRectangle> stateRectangles) {
-        Group group = new Group();
-        group.getChildren().addAll(stateRectangles);
-        return group;
+    /**
+     * Order the rectangles of a row so that the "multi-state" ones are added
+     * last, to be sure they show on top of the others.
+     */
+    private static List<StateRectangle> inDrawingOrder(StateRectangle[] rectangles) {
+        return Arrays.stream(rectangles)
+                .sorted(Comparator.comparing(rect -> rect.getStateInterval().isMultiState()))
+                .collect(Collectors.toList());
     }
 
-    private Node prepareTimeGrahLabelsContents(Collection<StateRectangle> stateRectangles,
+    private List<Text> createLabels(Collection<StateRectangle> stateRectangles,
             TimeRange windowRange) {
         double minX = getWidget().timestampToPaneXPos(windowRange.getStartTime());
 
@@ -191,7 +405,7 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
 
         /* Requires a ~2 pixels adjustment to be centered on the states */
         final double yOffset = TimeGraphWidget.ENTRY_HEIGHT / 2.0 + 2.0;
-        Collection<Node> texts = stateRectangles.stream()
+        return stateRectangles.stream()
                 /* Only try to annotate rectangles that are large enough */
                 .filter(stateRect -> stateRect.getWidth() > ellipsisWidth)
                 .filter(stateRect -> stateRect.getStateInterval().getLabel() != null)
@@ -210,7 +424,7 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
                             overrunStyle,
                             ellipsisStr);
 
-                    if (ellipsedText.equals(ellipsisStr)) {
+                    if (ellipsedText.isEmpty() || ellipsedText.equals(ellipsisStr)) {
                         return null;
                     }
 
@@ -221,8 +435,6 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
                 })
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
-
-        return new Group(texts);
     }
 
     /**
@@ -257,4 +469,43 @@ public class TimeGraphStateLayer extends TimeGraphLayer {
         Collection<Text> ret = (Collection<Text>) texts;
         return ret;
     }
+
+    /**
+     * The state intervals of the rows fetched by a redraw, including the
+     * prefetched ones outside of the viewport. Those are only kept as
+     * intervals, their {@link StateRectangle} are created once they get into
+     * view.
+     */
+    private static class FetchedRows {
+
+        final int fTopEntry;
+        /** Intervals of each row, sorted by start time */
+        final TimeGraphStateInterval[][] fIntervals;
+        final long[][] fStartTimes;
+        /** Rectangles of each row, in the same order, or null if not created yet */
+        final @Nullable StateRectangle[][] fRectangles;
+        final TimeRange fWindowRange;
+
+        final Group fStates = new Group();
+        final Group fLabels = new Group();
+
+        public FetchedRows(int topEntry, List<TimeGraphStateRender> stateRenders, TimeRange windowRange) {
+            fTopEntry = topEntry;
+            fIntervals = stateRenders.stream()
+                    .map(render -> render.getStateIntervals().stream()
+                            .distinct()
+                            .sorted(Comparator.comparingLong(TimeGraphStateInterval::getStartTime))
+                            .toArray(TimeGraphStateInterval[]::new))
+                    .toArray(TimeGraphStateInterval[][]::new);
+            fStartTimes = Arrays.stream(fIntervals)
+                    .map(intervals -> Arrays.stream(intervals).mapToLong(TimeGraphStateInterval::getStartTime).toArray())
+                    .toArray(long[][]::new);
+            fRectangles = new StateRectangle[fIntervals.length][];
+            fWindowRange = windowRange;
+        }
+
+        public int size() {
+            return fIntervals.length;
+        }
+    }
 }
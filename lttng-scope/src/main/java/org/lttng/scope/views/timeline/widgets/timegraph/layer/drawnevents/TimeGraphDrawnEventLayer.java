@@ -13,28 +13,32 @@ import com.efficios.jabberwocky.common.TimeRange;
 import com.efficios.jabberwocky.views.common.EventSymbolStyle;
 import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProvider;
 import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProviderManager;
-import com.efficios.jabberwocky.views.timegraph.model.render.TimeGraphEvent;
 import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEvent;
-import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEventRender;
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
 import javafx.application.Platform;
 import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
+import javafx.geometry.VPos;
 import javafx.scene.Group;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.*;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
 import org.jetbrains.annotations.Nullable;
 import org.lttng.scope.project.filter.SymbolsKt;
 import org.lttng.scope.common.jfx.JfxColorFactory;
+import org.lttng.scope.views.timeline.widgets.timegraph.PaintStatistics;
+import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphVisibleRows;
 import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphWidget;
 import org.lttng.scope.views.timeline.widgets.timegraph.VerticalPosition;
 import org.lttng.scope.views.timeline.widgets.timegraph.layer.TimeGraphLayer;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.FutureTask;
 import java.util.stream.Collectors;
 
@@ -42,6 +46,9 @@ import static java.util.Objects.requireNonNull;
 
 public class TimeGraphDrawnEventLayer extends TimeGraphLayer {
 
+    private static final Font COUNT_BADGE_FONT = requireNonNull(Font.font(9));
+    private static final double COUNT_BADGE_OFFSET = 4;
+
     private final DrawnEventFilterListener filterListener;
     private final Map<TimeGraphDrawnEventProvider, Group> fEventProviders = new HashMap<>();
 
@@ -141,46 +148,89 @@ public class TimeGraphDrawnEventLayer extends TimeGraphLayer {
     private void paintEventsOfProvider(TimeGraphTreeRender treeRender, TimeRange timeRange,
             TimeGraphDrawnEventProvider eventsProvider, @Nullable FutureTask<?> task) {
 
-        TimeGraphDrawnEventRender eventRender = eventsProvider.getEventRender(treeRender, timeRange, task);
-        Collection<Shape> drawnEvents = prepareDrawnEvents(treeRender, eventRender);
+        PaintStatistics stats = getWidget().getPaintStatistics();
+        long queryStart = System.nanoTime();
+        double resolution = getWidget().getCurrentNanosPerPixel();
+        List<DrawnEventCluster> clusters = DrawnEventClustersKt.getDrawnEventClusters(eventsProvider, treeRender, timeRange, resolution, task);
+        stats.recordSince(PaintStatistics.Phase.DRAWN_EVENTS_QUERY, queryStart);
+
+        long prepareStart = System.nanoTime();
+        Collection<Shape> drawnEvents = prepareDrawnEvents(clusters);
+        stats.recordSince(PaintStatistics.Phase.DRAWN_EVENTS_PREPARE, prepareStart);
 
         Group paintGroup = requireNonNull(fEventProviders.get(eventsProvider));
-        Platform.runLater(() -> {
+        stats.runLater(PaintStatistics.Phase.DRAWN_EVENTS_APPLY, () -> {
             paintGroup.getChildren().clear();
             paintGroup.getChildren().addAll(drawnEvents);
         });
     }
 
-    private Collection<Shape> prepareDrawnEvents(TimeGraphTreeRender treeRender, TimeGraphDrawnEventRender eventRender) {
-        final double entryHeight = TimeGraphWidget.ENTRY_HEIGHT;
-
-        Collection<Shape> shapes = eventRender.getEvents().stream()
-                .map(event -> {
-                    TimeGraphEvent tgEvent = event.getEvent();
-                    double x = getWidget().timestampToPaneXPos(tgEvent.getTimestamp());
-
-                    int treeIndex = treeRender.getAllTreeElements().indexOf(tgEvent.getTreeElement());
-                    if (treeIndex == -1) {
-                        return null;
-                    }
-                    double y = treeIndex * entryHeight + entryHeight / 2;
-
-                    Shape shape = getShapeFromEvent(event);
-                    /*
-                     * Some symbols already use the layout* properties for
-                     * adjusting their center. Use translate* properties for
-                     * their positioning on the timegraph.
-                     */
-                    shape.setTranslateX(x);
-                    shape.setTranslateY(y);
-                    return shape;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+    /**
+     * {@inheritDoc}
+     *
+     * The symbols and their badges would get distorted by a stretching
+     * transform, and the providers are not redrawn at the same time, so
+     * only the position of each symbol is updated. The badges follow their
+     * symbol.
+     */
+    @Override
+    public void rescale(double factor) {
+        getRenderedEvents().forEach(event -> event.setTranslateX(event.getTranslateX() * factor));
+    }
 
+    /**
+     * Create the symbols for the given events. Events of the same tree
+     * element that end up on the same pixel are drawn as only one symbol,
+     * with a badge indicating the number of events it represents. Events of
+     * elements in collapsed branches are not drawn.
+     */
+    private Collection<Shape> prepareDrawnEvents(List<DrawnEventCluster> clusters) {
+        final double entryHeight = TimeGraphWidget.ENTRY_HEIGHT;
+        final TimeGraphVisibleRows visibleRows = getWidget().getVisibleRows();
+
+        List<PlacedDrawnEventCluster> placedClusters = DrawnEventClustersKt.mergeClustersPerPixel(clusters,
+                visibleRows::rowOf, getWidget()::timestampToPaneXPos);
+
+        List<Shape> shapes = new ArrayList<>(placedClusters.size());
+        placedClusters.forEach(placed -> {
+            DrawnEventCluster cluster = placed.getCluster();
+            double x = placed.getX();
+            double y = placed.getRow() * entryHeight + entryHeight / 2;
+
+            Shape shape = getShapeFromEvent(cluster.getEvent());
+            /*
+             * Some symbols already use the layout* properties for
+             * adjusting their center. Use translate* properties for
+             * their positioning on the timegraph.
+             */
+            shape.setTranslateX(x);
+            shape.setTranslateY(y);
+            shapes.add(shape);
+
+            if (cluster.getCount() > 1) {
+                shapes.add(createCountBadge(shape, cluster.getCount()));
+            }
+        });
         return shapes;
     }
 
+    /**
+     * Create the label showing the number of events represented by a symbol.
+     * Its position follows the symbol's, so it moves with it when the view
+     * is rescaled.
+     */
+    static Text createCountBadge(Shape symbol, int count) {
+        Text badge = new Text(String.valueOf(count));
+        badge.setFont(COUNT_BADGE_FONT);
+        badge.setTextOrigin(VPos.BOTTOM);
+        badge.setLayoutX(COUNT_BADGE_OFFSET);
+        badge.setLayoutY(-COUNT_BADGE_OFFSET);
+        badge.translateXProperty().bind(symbol.translateXProperty());
+        badge.translateYProperty().bind(symbol.translateYProperty());
+        badge.setMouseTransparent(true);
+        return badge;
+    }
+
     private static Shape getShapeFromEvent(TimeGraphDrawnEvent event) {
         Color color = JfxColorFactory.getColorFromDef(event.getEventSeries().getColor().get());
         EventSymbolStyle symbol = event.getEventSeries().getSymbolStyle().get();
@@ -190,11 +240,13 @@ public class TimeGraphDrawnEventLayer extends TimeGraphLayer {
     public synchronized Collection<Shape> getRenderedEvents() {
         /*
          * Retrieve the rendered events of each group, and flatten them into a
-         * single collection.
+         * single collection. Count badges are not events, and follow their
+         * symbol's position on their own.
          */
         return fEventProviders.values().stream()
                 .map(Group::getChildren)
                 .flatMap(Collection::stream)
+                .filter(node -> !(node instanceof Text))
                 .map(node -> (Shape) node)
                 .collect(Collectors.toList());
     }
@@ -15,6 +15,9 @@ import javafx.application.Platform
 import javafx.scene.Scene
 import javafx.stage.Stage
 import org.lttng.scope.common.jfx.JfxImageFactory
+import org.lttng.scope.common.selftrace.SelfTracer
+import org.lttng.scope.project.ProjectManager
+import org.lttng.scope.views.context.ViewGroupContextManager
 
 private const val INITIAL_WINDOW_WIDTH = 1500.0
 
@@ -34,6 +37,9 @@ class ScopeApplication : Application() {
         /* Do our part in preventing eye cancer. */
         System.setProperty("prism.lcdtext", "false")
 
+        SelfTracer.startFromSystemProperty()
+        ProjectManager.trackActiveProject(ViewGroupContextManager.getCurrent())
+
         try {
             /* Create the application window */
             val root = ScopeMainWindow()
@@ -68,6 +74,7 @@ class ScopeApplication : Application() {
     }
 
     override fun stop() {
+        SelfTracer.stop()
         System.exit(0)
     }
 
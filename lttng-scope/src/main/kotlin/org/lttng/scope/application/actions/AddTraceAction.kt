@@ -10,57 +10,177 @@
 package org.lttng.scope.application.actions
 
 import com.efficios.jabberwocky.ctf.trace.CtfTrace
-import com.efficios.jabberwocky.trace.TraceInitializationException
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import javafx.scene.Node
 import javafx.scene.control.Alert
 import javafx.scene.layout.Region
 import javafx.stage.DirectoryChooser
 import org.lttng.scope.ScopePaths
+import org.lttng.scope.common.TaskMetrics
 import org.lttng.scope.common.jfx.JfxUtils
-import java.nio.file.Files
-import java.nio.file.Path
+import java.io.IOException
+import java.nio.file.*
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.*
+import java.util.concurrent.Executors
 
 private const val DIRECTORY_CHOOSER_TITLE = "Select CTF Trace Directory to Open"
+private const val BULK_DIRECTORY_CHOOSER_TITLE = "Select Directory Containing CTF Traces"
 
-private const val ERROR_OPENING_ALERT_TITLE = "Error opening trace"
-private const val ERROR_OPENING_ALERT_TEXT = "The selected directory does not look like a CTF trace.\n" +
+private const val NO_TRACES_ALERT_TITLE = "No traces found"
+private const val NO_TRACES_ALERT_TEXT = "No CTF trace was found in the selected directory.\n" +
+        "CTF traces are directories containing a file named 'metadata'."
+private const val SEARCH_FAILED_ALERT_TITLE = "Some directories could not be read"
+private const val SEARCH_FAILED_ALERT_TEXT = "The traces in the following directories, if any, were not added:"
+/** Only list this many unreadable directories in the alert */
+private const val MAX_LISTED_FAILURES = 10
+private const val ALERT_WIDTH = 500.0
+
+/** Text explaining why a trace could not be opened */
+internal const val ERROR_OPENING_TRACE_TEXT = "The selected directory does not look like a CTF trace.\n" +
         "Make sure you select the directory with the file named 'metadata'."
-private const val ERROR_OPENING_ALERT_WIDTH = 500.0
+
+/** Text telling that a trace which could not be opened must be removed from the project setup */
+internal const val REMOVE_FAILED_TRACE_TEXT = "Remove this trace from the list to be able to create the project."
+
+private const val METADATA_FILE_NAME = "metadata"
+/** LTTng UST traces are 4 levels below their session directory, leave some margin */
+private const val MAX_TRACE_SEARCH_DEPTH = 6
 
 private var lastUsedDirectory: Path? = ScopePaths.homeDir
 
+/** Traces are opened, and searched for, in parallel, as building their index is mostly I/O */
+private val traceOpenExecutor = Executors.newFixedThreadPool(maxOf(2, Runtime.getRuntime().availableProcessors()),
+        ThreadFactoryBuilder().setNameFormat("trace-open-%d").setDaemon(true).build())
+
 /**
- * Ask the user for a directory from which to load a trace. The trace will be returned so it can be added to a project.
+ * Ask the user for a directory from which to load a trace. The trace itself is opened with [openTrace].
  *
  * @param refNode Reference Node, user-facing dialogs should be placed close (at least on the same screen) as this node.
  */
-fun askUserForTrace(refNode: Node?): CtfTrace? {
-    val tracePath = showTraceSelectionDialog(lastUsedDirectory, refNode) ?: return null
+fun askUserForTraceDirectory(refNode: Node?): Path? {
+    val tracePath = showTraceSelectionDialog(DIRECTORY_CHOOSER_TITLE, lastUsedDirectory, refNode) ?: return null
     lastUsedDirectory = tracePath
+    return tracePath
+}
 
-    return try {
-        // TODO This part takes some time, should run in a separate Task
-        CtfTrace(tracePath)
-    } catch (e: TraceInitializationException) {
-        JfxUtils.runLaterAndWait(Runnable {
-            with(Alert(Alert.AlertType.ERROR)) {
-                title = ERROR_OPENING_ALERT_TITLE
-                contentText = ERROR_OPENING_ALERT_TEXT
-                with(dialogPane) {
-                    minHeight = Region.USE_PREF_SIZE
-                    minWidth = ERROR_OPENING_ALERT_WIDTH
-                }
-                show()
-                refNode?.let { JfxUtils.centerDialogOnScreen(this, it) }
-            }
-        })
-        null
+/**
+ * Ask the user for a directory, then search for the CTF traces in it and its subdirectories in the background. If none
+ * were found, or if some directories could not be read, the user is told so.
+ *
+ * @param refNode Reference Node, user-facing dialogs should be placed close (at least on the same screen) as this node.
+ * @param onTracesFound Called on the UI thread with the found traces, if there are any
+ * @return The search task, or null if the user did not select a directory
+ */
+fun askUserForTraceDirectories(refNode: Node?, onTracesFound: (List<Path>) -> Unit): JabberwockyTask<TraceSearchResult>? {
+    val dir = showTraceSelectionDialog(BULK_DIRECTORY_CHOOSER_TITLE, lastUsedDirectory, refNode) ?: return null
+    lastUsedDirectory = dir
+
+    val task = JabberwockyTask<TraceSearchResult>("Searching for traces in $dir") { task ->
+        task.updateProgress(-1L, 1L)
+        findTraceDirectories(dir)
+    }
+    task.setOnSucceeded {
+        val result = task.value
+        when {
+            result.unreadablePaths.isNotEmpty() ->
+                showAlert(Alert.AlertType.WARNING, SEARCH_FAILED_ALERT_TITLE, traceSearchFailureText(result), refNode)
+            result.tracePaths.isEmpty() ->
+                showAlert(Alert.AlertType.INFORMATION, NO_TRACES_ALERT_TITLE, NO_TRACES_ALERT_TEXT, refNode)
+        }
+        if (result.tracePaths.isNotEmpty()) onTracesFound(result.tracePaths)
+    }
+    task.setOnFailed {
+        showAlert(Alert.AlertType.WARNING, SEARCH_FAILED_ALERT_TITLE, task.exception?.message ?: dir.toString(), refNode)
+    }
+    traceOpenExecutor.execute(TaskMetrics.track(task))
+    return task
+}
+
+/**
+ * Outcome of a search for traces.
+ *
+ * @property tracePaths The directories of the traces that were found, sorted
+ * @property unreadablePaths The files and directories that could not be read, in which traces may have been missed
+ */
+data class TraceSearchResult(val tracePaths: List<Path>, val unreadablePaths: List<Path>)
+
+/**
+ * Find the CTF traces in a directory, which is to say the directories that contain a metadata file. Directories that
+ * cannot be read are skipped and reported in the result.
+ */
+internal fun findTraceDirectories(dir: Path): TraceSearchResult {
+    val tracePaths = mutableListOf<Path>()
+    val unreadablePaths = mutableListOf<Path>()
+
+    Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption::class.java), MAX_TRACE_SEARCH_DEPTH, object : SimpleFileVisitor<Path>() {
+        override fun visitFile(file: Path, attrs: BasicFileAttributes): FileVisitResult {
+            if (attrs.isRegularFile && file.fileName?.toString() == METADATA_FILE_NAME) tracePaths.add(file.parent)
+            return FileVisitResult.CONTINUE
+        }
+
+        override fun visitFileFailed(file: Path, exc: IOException): FileVisitResult {
+            unreadablePaths.add(file)
+            return FileVisitResult.CONTINUE
+        }
+
+        override fun postVisitDirectory(dir: Path, exc: IOException?): FileVisitResult {
+            /* The directory could be opened, but not listed entirely */
+            if (exc != null) unreadablePaths.add(dir)
+            return FileVisitResult.CONTINUE
+        }
+    })
+    return TraceSearchResult(tracePaths.sorted(), unreadablePaths.sorted())
+}
+
+/**
+ * Text telling the user which directories could not be searched for traces.
+ */
+internal fun traceSearchFailureText(result: TraceSearchResult): String {
+    val paths = result.unreadablePaths
+    val listed = paths.take(MAX_LISTED_FAILURES).map { it.toString() }
+    val more = if (paths.size > MAX_LISTED_FAILURES) listOf("... and ${paths.size - MAX_LISTED_FAILURES} more") else emptyList()
+    return (listOf(SEARCH_FAILED_ALERT_TEXT) + listed + more).joinToString("\n")
+}
+
+private fun showAlert(type: Alert.AlertType, alertTitle: String, text: String, refNode: Node?) {
+    with(Alert(type)) {
+        title = alertTitle
+        headerText = null
+        contentText = text
+        with(dialogPane) {
+            minHeight = Region.USE_PREF_SIZE
+            minWidth = ALERT_WIDTH
+        }
+        show()
+        refNode?.let { JfxUtils.centerDialogOnScreen(this, it) }
+    }
+}
+
+/**
+ * Open a trace in the background. The task's value is the opened trace, whose time range is known, or the task fails
+ * if the directory is not a valid CTF trace.
+ *
+ * CTF traces do not report their indexing progress, so the task's progress is indeterminate until it is done.
+ */
+fun openTrace(tracePath: Path): JabberwockyTask<CtfTrace> {
+    val task = JabberwockyTask<CtfTrace>("Opening trace $tracePath") { task ->
+        task.updateProgress(-1L, 1L)
+        val trace = CtfTrace(tracePath)
+        /* Projects are named from the traces' time ranges, compute them now rather than on the UI thread */
+        trace.startTime
+        trace.endTime
+        task.updateProgress(1L, 1L)
+        trace
     }
+    traceOpenExecutor.execute(TaskMetrics.track(task))
+    return task
 }
 
-private fun showTraceSelectionDialog(initialDir: Path?, refNode: Node?): Path? {
+private fun showTraceSelectionDialog(dialogTitle: String, initialDir: Path?, refNode: Node?): Path? {
     return with(DirectoryChooser()) {
-        title = DIRECTORY_CHOOSER_TITLE
+        title = dialogTitle
         initialDir?.let {
             if (Files.exists(it) && Files.isDirectory(it)) {
                 initialDirectory = it.toFile()
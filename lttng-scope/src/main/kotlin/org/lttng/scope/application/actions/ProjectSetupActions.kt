@@ -11,14 +11,31 @@ package org.lttng.scope.application.actions
 
 import com.efficios.jabberwocky.project.TraceProject
 import com.efficios.jabberwocky.task.JabberwockyTask
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import javafx.application.Platform
 import javafx.scene.Node
+import javafx.scene.control.Alert
+import javafx.scene.control.ChoiceDialog
+import javafx.scene.layout.Region
 import org.lttng.scope.common.LatestTaskExecutor
+import org.lttng.scope.common.TaskMetrics
 import org.lttng.scope.common.jfx.JfxUtils
+import org.lttng.scope.project.ProjectPersistence
 import org.lttng.scope.views.context.ViewGroupContextManager
+import java.util.concurrent.Executors
+
+private const val OPEN_PROJECT_DIALOG_TITLE = "Open Project"
+private const val OPEN_PROJECT_DIALOG_TEXT = "Saved project:"
+private const val NO_SAVED_PROJECTS_TEXT = "There are no saved projects."
+private const val OPEN_PROJECT_ERROR_TITLE = "Error opening project"
+private const val SAVE_PROJECT_ERROR_TITLE = "Error saving project"
 
 private val projectOpenExecutor = LatestTaskExecutor()
 
+/** Saves must not cancel each other, so they run one after the other */
+private val projectSaveExecutor = Executors.newSingleThreadExecutor(
+        ThreadFactoryBuilder().setNameFormat("project-save-%d").setDaemon(true).build())
+
 /**
  * Open an empty Project Setup dialog to create a new project from scratch.
  */
@@ -59,3 +76,59 @@ private fun setActiveProject(project: TraceProject<*, *>) {
     }
             .let { projectOpenExecutor.schedule(it) }
 }
+
+/**
+ * Ask the user which saved project to open, then open it. The project is
+ * loaded in a separate Task, since the checksums of its traces need to be
+ * verified.
+ */
+fun openSavedProjectAction(refNode: Node) {
+    val savedProjects = ProjectPersistence.listSavedProjects()
+    if (savedProjects.isEmpty()) {
+        with(Alert(Alert.AlertType.INFORMATION)) {
+            title = OPEN_PROJECT_DIALOG_TITLE
+            headerText = null
+            contentText = NO_SAVED_PROJECTS_TEXT
+            setOnShowing { Platform.runLater { JfxUtils.centerDialogOnScreen(this, refNode) } }
+            showAndWait()
+        }
+        return
+    }
+
+    val projectName = with(ChoiceDialog(savedProjects.first(), savedProjects)) {
+        title = OPEN_PROJECT_DIALOG_TITLE
+        headerText = null
+        contentText = OPEN_PROJECT_DIALOG_TEXT
+        setOnShowing { Platform.runLater { JfxUtils.centerDialogOnScreen(this, refNode) } }
+        showAndWait().orElse(null)
+    } ?: return
+
+    JabberwockyTask<Unit>("Opening project $projectName") {
+        val project = ProjectPersistence.load(projectName)
+        ViewGroupContextManager.getCurrent().switchProject(project)
+    }
+            .apply { setOnFailed { showPersistenceError(refNode, OPEN_PROJECT_ERROR_TITLE, exception) } }
+            .let { projectOpenExecutor.schedule(it) }
+}
+
+/**
+ * Save the given project, so that it can be re-opened later with its filters
+ * and analysis results.
+ */
+fun saveProjectAction(refNode: Node, project: TraceProject<*, *>) {
+    JabberwockyTask<Unit>("Saving project ${project.name}") { ProjectPersistence.save(project) }
+            .apply { setOnFailed { showPersistenceError(refNode, SAVE_PROJECT_ERROR_TITLE, exception) } }
+            .let { projectSaveExecutor.execute(TaskMetrics.track(it)) }
+}
+
+private fun showPersistenceError(refNode: Node, alertTitle: String, exception: Throwable?) {
+    with(Alert(Alert.AlertType.ERROR)) {
+        title = alertTitle
+        contentText = exception?.message ?: ""
+        with(dialogPane) {
+            minHeight = Region.USE_PREF_SIZE
+        }
+        show()
+        JfxUtils.centerDialogOnScreen(this, refNode)
+    }
+}
@@ -12,13 +12,18 @@ package org.lttng.scope.application.actions
 import com.efficios.jabberwocky.collection.TraceCollection
 import com.efficios.jabberwocky.ctf.trace.CtfTrace
 import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.task.JabberwockyTask
 import com.efficios.jabberwocky.trace.Trace
+import javafx.beans.Observable
 import javafx.beans.binding.Bindings
+import javafx.beans.property.ReadOnlyObjectWrapper
 import javafx.beans.property.ReadOnlyStringWrapper
 import javafx.beans.property.SimpleListProperty
+import javafx.beans.value.ObservableValue
 import javafx.collections.FXCollections
 import javafx.collections.ListChangeListener
 import javafx.collections.ObservableList
+import javafx.concurrent.Worker
 import javafx.geometry.Insets
 import javafx.scene.Node
 import javafx.scene.control.*
@@ -28,7 +33,9 @@ import javafx.util.Callback
 import org.lttng.scope.ScopePaths
 import org.lttng.scope.common.jfx.ActionButton
 import java.nio.file.Files
+import java.nio.file.Path
 import java.util.*
+import java.util.concurrent.Callable
 import kotlin.math.absoluteValue
 
 /**
@@ -38,12 +45,16 @@ import kotlin.math.absoluteValue
  *
  * The dialog's result is the NEW project that was created. If the dialog is cancelled or if the project didn't change
  * (included traces remained the same) then the dialog will return null and no project-switching should be needed.
+ *
+ * Added traces are opened in parallel in the background, each row of the table showing the progress of its trace. The
+ * OK button is only enabled once all traces are opened, so traces that could not be opened have to be removed first.
  */
 class ProjectSetupDialog(private val refNode: Node, previousProject: TraceProject<*, *>?) : Dialog<TraceProject<*, *>?>() {
 
     companion object {
         private const val DIALOG_TITLE = "Trace Project Setup"
         private const val ADD_TRACE_BUTTON_TEXT = "Add Trace..."
+        private const val ADD_DIRECTORY_BUTTON_TEXT = "Add Traces from Directory..."
         private const val REMOVE_TRACE_BUTTON_TEXT = "Remove Trace"
         private const val PROJECT_NAME_FIELD = "Project Name (optional)"
 
@@ -52,9 +63,10 @@ class ProjectSetupDialog(private val refNode: Node, previousProject: TraceProjec
     }
 
     private var tracesChanged = false
-    private val trackedTraces: ObservableList<Trace<*>> = FXCollections.observableArrayList<Trace<*>>().apply {
+    /* Also report changes of the entries' states, so that bindings on the list are updated when traces are opened. */
+    private val trackedTraces: ObservableList<TraceEntry> = FXCollections.observableArrayList<TraceEntry> { arrayOf<Observable>(it.state) }.apply {
         /* Pre-load the traces from the previous project, if there is one. */
-        previousProject?.let { it.traceCollections.flatMap { it.traces }.let { addAll(it) } }
+        previousProject?.let { it.traceCollections.flatMap { it.traces }.let { addAll(it.map { TraceEntry.opened(it) }) } }
 
         /* As soon as the listed traces change, consider the results to be a new project. */
         addListener(ListChangeListener { tracesChanged = true })
@@ -63,9 +75,10 @@ class ProjectSetupDialog(private val refNode: Node, previousProject: TraceProjec
     private val table = TracesTableView(trackedTraces)
 
     private val addTraceButton = ActionButton(ADD_TRACE_BUTTON_TEXT) { addTraceAction() }
+    private val addDirectoryButton = ActionButton(ADD_DIRECTORY_BUTTON_TEXT) { addDirectoryAction() }
     private val removeTraceButton = ActionButton(REMOVE_TRACE_BUTTON_TEXT) { removeTraceAction() }
 
-    private val buttonsColumn = VBox(addTraceButton, removeTraceButton).apply {
+    private val buttonsColumn = VBox(addTraceButton, addDirectoryButton, removeTraceButton).apply {
         children.forEach {
             it as Button
             it.minWidthProperty().bind(this.widthProperty())
@@ -96,12 +109,19 @@ class ProjectSetupDialog(private val refNode: Node, previousProject: TraceProjec
         /* Activate the "Remove Trace" button only when there is a selection. */
         removeTraceButton.disableProperty().bind(Bindings.isEmpty(table.selectionModel.selectedItems))
 
+        /* Activate the "OK" button only once all traces are opened, which will also be the case with no traces. */
+        dialogPane.lookupButton(ButtonType.OK).disableProperty().bind(Bindings.createBooleanBinding(
+                Callable { trackedTraces.any { it.state.value != Worker.State.SUCCEEDED } }, trackedTraces))
+
+        /* Stop opening the traces that will not be used. */
+        setOnHidden { trackedTraces.forEach { it.task?.cancel() } }
+
         setResultConverter { buttonType ->
             when (buttonType) {
                 ButtonType.OK -> {
                     if (!tracesChanged) return@setResultConverter null
 
-                    val traces = trackedTraces.toList()
+                    val traces = trackedTraces.mapNotNull { it.trace }
                     /* Do not create a project if there are no traces, just cancel. */
                     if (traces.isEmpty()) return@setResultConverter null
 
@@ -120,19 +140,32 @@ class ProjectSetupDialog(private val refNode: Node, previousProject: TraceProjec
     }
 
     fun addTraceAction() {
-        val trace = askUserForTrace(refNode) ?: return
+        askUserForTraceDirectory(refNode)?.let { addTrace(it) }
+    }
+
+    private fun addDirectoryAction() {
+        val searchTask = askUserForTraceDirectories(refNode) { tracePaths ->
+            /* The dialog may have been closed during the search */
+            if (isShowing) tracePaths.forEach { addTrace(it) }
+        } ?: return
+        /* One search at a time */
+        addDirectoryButton.disableProperty().bind(searchTask.runningProperty())
+    }
+
+    private fun addTrace(tracePath: Path) {
         /*
          * Avoid duplicate traces in the same project. We could have used a Set, but the
          * TableView's model works with a List...
          */
-        if (trackedTraces.any { (it as? CtfTrace)?.tracePath == trace.tracePath }) return
+        if (trackedTraces.any { it.tracePath == tracePath }) return
 
-        trackedTraces.add(trace)
+        trackedTraces.add(TraceEntry.opening(tracePath))
     }
 
     private fun removeTraceAction() {
         val tracesToRemove = table.selectionModel.selectedItems.toList()
         trackedTraces.removeAll(tracesToRemove)
+        tracesToRemove.forEach { it.task?.cancel() }
     }
 
 }
@@ -160,11 +193,31 @@ private fun List<Trace<*>>.traceCollectionHash(): Int {
  */
 private fun Trace<*>.hash(traceName: String): Int = Objects.hash(traceName, startTime, endTime)
 
-private class TracesTableView(dataset: ObservableList<Trace<*>>) : TableView<Trace<*>>() {
+/**
+ * A trace of the dialog, either opened already or being opened by [task].
+ */
+private class TraceEntry private constructor(val tracePath: Path?,
+                                             val name: String,
+                                             private val openedTrace: Trace<*>?,
+                                             val task: JabberwockyTask<CtfTrace>?) {
+
+    companion object {
+        fun opened(trace: Trace<*>) = TraceEntry((trace as? CtfTrace)?.tracePath, trace.name, trace, null)
+        fun opening(tracePath: Path) = TraceEntry(tracePath, tracePath.fileName.toString(), null, openTrace(tracePath))
+    }
+
+    val state: ObservableValue<Worker.State> = task?.stateProperty() ?: ReadOnlyObjectWrapper(Worker.State.SUCCEEDED)
+
+    /** The trace, or null if it is not opened yet */
+    val trace: Trace<*>? get() = openedTrace ?: task?.value
+}
+
+private class TracesTableView(dataset: ObservableList<TraceEntry>) : TableView<TraceEntry>() {
 
     companion object {
         private const val TRACE_NAME_COL = "Trace Name"
         private const val TRACE_PATH_COL = "Path"
+        private const val TRACE_STATUS_COL = "Status"
         private const val UNKNOWN = "???"
     }
 
@@ -172,21 +225,69 @@ private class TracesTableView(dataset: ObservableList<Trace<*>>) : TableView<Tra
         selectionModel.selectionMode = SelectionMode.MULTIPLE
 
         /* Create and setup the columns */
-        val traceNameCol = TableColumn<Trace<*>, String>(TRACE_NAME_COL).apply {
+        val traceNameCol = TableColumn<TraceEntry, String>(TRACE_NAME_COL).apply {
             cellValueFactory = Callback { ReadOnlyStringWrapper(it.value.name) }
             prefWidthProperty().bind(this@TracesTableView.widthProperty().multiply(0.2))
         }
 
-        val tracePathCol = TableColumn<Trace<*>, String>(TRACE_PATH_COL).apply {
+        val tracePathCol = TableColumn<TraceEntry, String>(TRACE_PATH_COL).apply {
             cellValueFactory = Callback {
-                val trace = it.value
-                val pathToDisplay = (trace as? CtfTrace)?.tracePath?.toString() ?: UNKNOWN
+                val pathToDisplay = it.value.tracePath?.toString() ?: UNKNOWN
                 ReadOnlyStringWrapper(pathToDisplay)
             }
-            prefWidthProperty().bind(this@TracesTableView.widthProperty().multiply(0.75))
+            prefWidthProperty().bind(this@TracesTableView.widthProperty().multiply(0.55))
+        }
+
+        val traceStatusCol = TableColumn<TraceEntry, Worker.State>(TRACE_STATUS_COL).apply {
+            cellValueFactory = Callback { it.value.state }
+            cellFactory = Callback { TraceStatusCell() }
+            prefWidthProperty().bind(this@TracesTableView.widthProperty().multiply(0.2))
         }
-        columns.addAll(traceNameCol, tracePathCol)
+        columns.addAll(traceNameCol, tracePathCol, traceStatusCol)
         itemsProperty().bind(SimpleListProperty(dataset))
     }
 
 }
+
+/**
+ * Text explaining why a trace could not be opened, and that it blocks the creation of the project.
+ */
+internal fun failedTraceTooltipText(exception: Throwable?): String =
+        listOfNotNull(ERROR_OPENING_TRACE_TEXT, exception?.message, REMOVE_FAILED_TRACE_TEXT).joinToString("\n")
+
+/**
+ * Shows the opening progress of a trace, then whether it could be opened.
+ */
+private class TraceStatusCell : TableCell<TraceEntry, Worker.State>() {
+
+    companion object {
+        private const val OPENED_TEXT = "Opened"
+        private const val FAILED_TEXT = "Error"
+        private const val CANCELLED_TEXT = "Cancelled"
+    }
+
+    private val progressBar = ProgressBar().apply { maxWidth = Double.MAX_VALUE }
+
+    override fun updateItem(item: Worker.State?, empty: Boolean) {
+        super.updateItem(item, empty)
+        progressBar.progressProperty().unbind()
+        text = null
+        graphic = null
+        tooltip = null
+        if (empty || item == null) return
+
+        val task = tableView?.items?.getOrNull(index)?.task
+        when (item) {
+            Worker.State.SUCCEEDED -> text = OPENED_TEXT
+            Worker.State.CANCELLED -> text = CANCELLED_TEXT
+            Worker.State.FAILED -> {
+                text = FAILED_TEXT
+                tooltip = Tooltip(failedTraceTooltipText(task?.exception))
+            }
+            else -> {
+                task?.let { progressBar.progressProperty().bind(it.progressProperty()) }
+                graphic = progressBar
+            }
+        }
+    }
+}
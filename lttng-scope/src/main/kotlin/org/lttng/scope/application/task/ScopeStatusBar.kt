@@ -13,7 +13,9 @@ import com.efficios.jabberwocky.task.JabberwockyTask
 import com.efficios.jabberwocky.task.JabberwockyTaskManager
 import javafx.application.Platform
 import javafx.event.EventHandler
+import javafx.geometry.Orientation
 import javafx.scene.Scene
+import javafx.scene.control.SplitPane
 import javafx.scene.control.Tooltip
 import javafx.scene.input.MouseButton
 import javafx.scene.input.MouseEvent
@@ -41,9 +43,17 @@ class ScopeStatusBar(private val ownerWindow: ScopeMainWindow) : StatusBar(), Ja
         JabberwockyTaskManager.registerOutput(this)
     }
 
+    /** Metrics of past and current tasks, shown below the running ones */
+    private val metricsView = TaskMetricsView()
+
     private val taskProgressWindow = Stage().apply {
         title = PROGRESS_VIEW_WINDOW_TITLE
-        scene = Scene(progressView, 450.0, 450.0)
+        val splitPane = SplitPane(progressView, metricsView).apply { orientation = Orientation.VERTICAL }
+        scene = Scene(splitPane, 700.0, 600.0)
+
+        /* Only refresh the metrics while they are visible */
+        setOnShown { metricsView.startRefreshing() }
+        setOnHidden { metricsView.stopRefreshing() }
 
         ownerWindow.windowManager.registerWindow(this)
     }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.application.task
+
+import javafx.animation.Animation
+import javafx.animation.KeyFrame
+import javafx.animation.Timeline
+import javafx.beans.property.ReadOnlyObjectWrapper
+import javafx.event.EventHandler
+import javafx.geometry.Insets
+import javafx.scene.control.Alert
+import javafx.scene.control.Button
+import javafx.scene.control.TableColumn
+import javafx.scene.control.TableView
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.BorderPane
+import javafx.scene.layout.HBox
+import javafx.stage.FileChooser
+import javafx.util.Duration
+import org.lttng.scope.ScopePaths
+import org.lttng.scope.common.LatencyHistogram
+import org.lttng.scope.common.TaskMetrics
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Locale
+
+/**
+ * Table of the [TaskMetrics], with buttons to export them as CSV and to
+ * reset them. It is refreshed periodically between calls to
+ * [startRefreshing] and [stopRefreshing].
+ */
+class TaskMetricsView : BorderPane() {
+
+    companion object {
+        private val REFRESH_PERIOD = Duration.seconds(1.0)
+
+        private const val EXPORT_BUTTON_TEXT = "Export..."
+        private const val EXPORT_BUTTON_TOOLTIP = "Save the task metrics to a CSV file"
+        private const val RESET_BUTTON_TEXT = "Reset"
+        private const val RESET_BUTTON_TOOLTIP = "Forget the metrics recorded so far"
+        private const val FILE_CHOOSER_TITLE = "Export Task Metrics"
+        private const val EXPORT_FILE_NAME = "task-metrics.csv"
+        private const val ERROR_ALERT_TITLE = "Error exporting task metrics"
+
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+
+    private val table = TableView<TaskMetrics.Entry>().apply {
+        columns.addAll(
+                column("Task") { it.title },
+                column("Queued") { it.nbQueued },
+                column("Running") { it.nbRunning },
+                column("Completed") { it.nbCompleted },
+                column("Cancelled") { it.nbCancelled + it.nbCancelledWhileQueued },
+                column("Queue wait p95 (ms)") { p95Millis(it.queueWait) },
+                column("Run time p95 (ms)") { p95Millis(it.runTime) },
+                column("Cancel latency p95 (ms)") { p95Millis(it.cancellationLatency) },
+                column("Wasted (ms)") { millis(it.wastedNanos.toDouble()) })
+        columnResizePolicy = TableView.CONSTRAINED_RESIZE_POLICY
+    }
+
+    private val refreshTimeline = Timeline(KeyFrame(REFRESH_PERIOD, EventHandler { refresh() })).apply {
+        cycleCount = Animation.INDEFINITE
+    }
+
+    private var lastUsedDirectory: Path? = ScopePaths.homeDir
+
+    init {
+        val exportButton = Button(EXPORT_BUTTON_TEXT).apply {
+            tooltip = Tooltip(EXPORT_BUTTON_TOOLTIP)
+            setOnAction { export() }
+        }
+        val resetButton = Button(RESET_BUTTON_TEXT).apply {
+            tooltip = Tooltip(RESET_BUTTON_TOOLTIP)
+            setOnAction {
+                TaskMetrics.reset()
+                refresh()
+            }
+        }
+
+        center = table
+        bottom = HBox(5.0, exportButton, resetButton).apply { padding = Insets(5.0) }
+    }
+
+    fun startRefreshing() {
+        refresh()
+        refreshTimeline.play()
+    }
+
+    fun stopRefreshing() {
+        refreshTimeline.stop()
+    }
+
+    private fun refresh() {
+        table.items.setAll(TaskMetrics.getEntries())
+        /* The entries are updated in place, so the cells need to be redrawn */
+        table.refresh()
+    }
+
+    private fun export() {
+        val chooser = FileChooser().apply {
+            title = FILE_CHOOSER_TITLE
+            initialFileName = EXPORT_FILE_NAME
+            extensionFilters.add(FileChooser.ExtensionFilter("CSV file", "*.csv"))
+            lastUsedDirectory?.let {
+                if (Files.isDirectory(it)) initialDirectory = it.toFile()
+            }
+        }
+        val target = chooser.showSaveDialog(scene?.window)?.toPath() ?: return
+        lastUsedDirectory = target.parent
+
+        try {
+            Files.newBufferedWriter(target, StandardCharsets.UTF_8).use { TaskMetrics.writeCsv(it) }
+        } catch (e: IOException) {
+            with(Alert(Alert.AlertType.ERROR)) {
+                title = ERROR_ALERT_TITLE
+                contentText = e.message
+                show()
+            }
+        }
+    }
+
+    private fun <T> column(title: String, value: (TaskMetrics.Entry) -> T) =
+            TableColumn<TaskMetrics.Entry, T>(title).apply {
+                setCellValueFactory { ReadOnlyObjectWrapper(value(it.value)) }
+            }
+
+    private fun p95Millis(histogram: LatencyHistogram) = millis(histogram.percentileNanos(95.0).toDouble())
+
+    private fun millis(nanos: Double) = String.format(Locale.ROOT, "%.1f", nanos / NANOS_PER_MILLI)
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Histogram of durations, in nanoseconds, which can be recorded from any
+ * thread without locking.
+ *
+ * Values are counted in logarithmic buckets, [SUB_BUCKETS] per power of two,
+ * so percentiles are approximated within about 20%. This is plenty to see
+ * where time goes, for a few hundred bytes per histogram.
+ */
+class LatencyHistogram {
+
+    companion object {
+        private const val SUB_BUCKET_BITS = 2
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val NB_BUCKETS = 64 * SUB_BUCKETS
+
+        private fun bucketOf(nanos: Long): Int {
+            if (nanos < SUB_BUCKETS) return nanos.toInt()
+            val magnitude = 63 - java.lang.Long.numberOfLeadingZeros(nanos)
+            val subBucket = (nanos ushr (magnitude - SUB_BUCKET_BITS)).toInt() and (SUB_BUCKETS - 1)
+            return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket
+        }
+
+        /** Highest value that falls in the given bucket */
+        private fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket.toLong()
+            val magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1
+            val subBucket = (bucket % SUB_BUCKETS).toLong()
+            val lowerBound = (SUB_BUCKETS + subBucket) shl (magnitude - SUB_BUCKET_BITS)
+            return lowerBound + (1L shl (magnitude - SUB_BUCKET_BITS)) - 1
+        }
+    }
+
+    private val buckets = AtomicLongArray(NB_BUCKETS)
+    private val count = LongAdder()
+    private val total = LongAdder()
+    private val max = AtomicLong()
+
+    @Volatile
+    var lastNanos = 0L
+        private set
+
+    /** Number of recorded values */
+    val nbValues: Long
+        get() = count.sum()
+
+    /** Highest recorded value */
+    val maxNanos: Long
+        get() = max.get()
+
+    /** Mean of the recorded values, 0 if there are none */
+    val meanNanos: Double
+        get() {
+            val n = count.sum()
+            return if (n == 0L) 0.0 else total.sum().toDouble() / n
+        }
+
+    /**
+     * Record one value.
+     *
+     * @param nanos The duration, in nanoseconds. Negative values are
+     *              recorded as 0.
+     */
+    fun record(nanos: Long) {
+        val value = maxOf(0L, nanos)
+        buckets.incrementAndGet(bucketOf(value))
+        count.increment()
+        total.add(value)
+        max.accumulateAndGet(value) { a, b -> maxOf(a, b) }
+        lastNanos = value
+    }
+
+    /**
+     * Get an approximation of a percentile of the recorded values.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound of the bucket containing the percentile (but
+     *         never more than the maximum), or 0 if there are no values
+     */
+    fun percentileNanos(percentile: Double): Long {
+        val n = count.sum()
+        if (n == 0L) return 0L
+        val rank = maxOf(1L, Math.ceil(percentile / 100.0 * n).toLong())
+        var seen = 0L
+        for (i in 0 until NB_BUCKETS) {
+            seen += buckets.get(i)
+            if (seen >= rank) return minOf(upperBoundOf(i), max.get())
+        }
+        return max.get()
+    }
+
+    /**
+     * Forget all recorded values. Values recorded concurrently may be kept
+     * in some of the statistics only.
+     */
+    fun reset() {
+        for (i in 0 until NB_BUCKETS) buckets.set(i, 0)
+        count.reset()
+        total.reset()
+        max.set(0)
+        lastNanos = 0
+    }
+}
@@ -13,22 +13,37 @@ import javafx.concurrent.Task
 import java.lang.ref.WeakReference
 import java.util.concurrent.Executors
 
-class LatestTaskExecutor {
+/**
+ * Executor running only the latest task scheduled to it: scheduling a task
+ * cancels the previous one. The tasks' metrics are recorded in [TaskMetrics].
+ *
+ * @param poolSize Number of threads of the executor. By default, it is taken
+ *                 from the [POOL_SIZE_PROPERTY] system property, or 2.
+ */
+class LatestTaskExecutor @JvmOverloads constructor(poolSize: Int = DEFAULT_POOL_SIZE) {
+
+    companion object {
+        /** System property setting the default number of threads of each executor */
+        const val POOL_SIZE_PROPERTY = "lttng-scope.latestTaskExecutor.poolSize"
+
+        private val DEFAULT_POOL_SIZE: Int = Integer.getInteger(POOL_SIZE_PROPERTY, 2)
+    }
 
-    private val executor = Executors.newFixedThreadPool(2)
+    private val executor = Executors.newFixedThreadPool(poolSize)
 //    private val executor = Executors.newSingleThreadExecutor()
 
     /** The latest job that was scheduled in this queue. */
-    private var latestTask = WeakReference<Task<*>>(null)
+    private var latestTask = WeakReference<TaskMetrics.TrackedTask>(null)
 
     @Synchronized
     fun schedule(newTask: Task<*>) {
         /* Cancel the existing task. Here's hoping it cooperates and ends quickly! */
-        latestTask.get()?.cancel(false)
+        latestTask.get()?.cancel()
 
         /* Start the new job */
-        latestTask = WeakReference(newTask)
-        executor.submit(newTask)
+        val trackedTask = TaskMetrics.track(newTask)
+        latestTask = WeakReference(trackedTask)
+        executor.submit(trackedTask)
     }
 
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common
+
+import javafx.concurrent.Task
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Lifecycle metrics of the tasks run by the application's executors,
+ * aggregated per task title.
+ *
+ * Executors submit their tasks wrapped with [track]. For each title, this
+ * records how long tasks waited in their executor's queue, how long the
+ * completed ones ran, and for the cancelled ones, how long they took to
+ * actually stop after being cancelled, and how much work was wasted on
+ * them.
+ */
+object TaskMetrics {
+
+    private const val UNTITLED = "(untitled)"
+    private const val NANOS_PER_MILLI = 1_000_000.0
+
+    /**
+     * Metrics of all the tasks with a given title.
+     */
+    class Entry internal constructor(val title: String) {
+
+        /** Time between the submission of a task and the start of its execution */
+        val queueWait = LatencyHistogram()
+        /** Execution time of the tasks that completed */
+        val runTime = LatencyHistogram()
+        /**
+         * Time between the cancellation of a running task and the end of its
+         * execution. Only known for tasks cancelled by their executor.
+         */
+        val cancellationLatency = LatencyHistogram()
+
+        internal val queuedCount = AtomicInteger()
+        internal val runningCount = AtomicInteger()
+        internal val completedCount = LongAdder()
+        internal val cancelledCount = LongAdder()
+        internal val cancelledWhileQueuedCount = LongAdder()
+        internal val wastedTime = LongAdder()
+
+        /** Number of tasks currently waiting in an executor's queue */
+        val nbQueued get() = queuedCount.get()
+        /** Number of tasks currently running */
+        val nbRunning get() = runningCount.get()
+        /** Number of tasks that ran to completion, successfully or not */
+        val nbCompleted get() = completedCount.sum()
+        /** Number of tasks that were cancelled while running */
+        val nbCancelled get() = cancelledCount.sum()
+        /** Number of tasks that were cancelled before they started, which wasted no work */
+        val nbCancelledWhileQueued get() = cancelledWhileQueuedCount.sum()
+        /** Total execution time of the tasks that were cancelled while running */
+        val wastedNanos get() = wastedTime.sum()
+    }
+
+    /**
+     * A task wrapped to record its metrics. It is the object to submit to
+     * the executor, and should be cancelled through [cancel] so that the
+     * cancellation latency is known.
+     */
+    class TrackedTask internal constructor(val task: Task<*>, private val entry: Entry) : Runnable {
+
+        private val submitTime = System.nanoTime()
+
+        @Volatile
+        private var cancelTime = 0L
+
+        init {
+            entry.queuedCount.incrementAndGet()
+        }
+
+        /**
+         * Cancel the wrapped task, without interrupting it.
+         */
+        fun cancel() {
+            if (cancelTime == 0L) cancelTime = System.nanoTime()
+            task.cancel(false)
+        }
+
+        override fun run() {
+            val start = System.nanoTime()
+            entry.queuedCount.decrementAndGet()
+            entry.queueWait.record(start - submitTime)
+
+            /* A task cancelled before it started returns immediately */
+            if (task.isCancelled) {
+                entry.cancelledWhileQueuedCount.increment()
+                return
+            }
+
+            entry.runningCount.incrementAndGet()
+            try {
+                task.run()
+            } finally {
+                val end = System.nanoTime()
+                entry.runningCount.decrementAndGet()
+                if (task.isCancelled) {
+                    entry.cancelledCount.increment()
+                    entry.wastedTime.add(end - start)
+                    val cancelled = cancelTime
+                    if (cancelled != 0L) entry.cancellationLatency.record(end - maxOf(cancelled, start))
+                } else {
+                    entry.completedCount.increment()
+                    entry.runTime.record(end - start)
+                }
+            }
+        }
+    }
+
+    private val entries = ConcurrentHashMap<String, Entry>()
+
+    /**
+     * Wrap a task before submitting it to an executor, to record its
+     * metrics under its title.
+     */
+    @JvmStatic
+    fun track(task: Task<*>): TrackedTask {
+        val title = task.title?.takeIf { it.isNotEmpty() } ?: UNTITLED
+        return TrackedTask(task, entries.computeIfAbsent(title) { Entry(it) })
+    }
+
+    /**
+     * Get the metrics of all the task titles seen so far, sorted by title.
+     */
+    @JvmStatic
+    fun getEntries(): List<Entry> = entries.values.sortedBy { it.title }
+
+    /**
+     * Forget all metrics. Tasks that are queued or running at that moment
+     * are not counted in the new metrics.
+     */
+    @JvmStatic
+    fun reset() {
+        entries.clear()
+    }
+
+    /**
+     * Write the current metrics as CSV, one line per task title. Durations
+     * are in milliseconds.
+     */
+    @JvmStatic
+    fun writeCsv(out: Appendable) {
+        out.append("title,queued,running,completed,cancelled,cancelled_while_queued," +
+                "queue_wait_mean_ms,queue_wait_p95_ms,queue_wait_max_ms," +
+                "run_time_mean_ms,run_time_p95_ms,run_time_max_ms," +
+                "cancellation_latency_mean_ms,cancellation_latency_p95_ms,cancellation_latency_max_ms," +
+                "wasted_ms\n")
+        getEntries().forEach { entry ->
+            val values = listOf(entry.nbQueued, entry.nbRunning, entry.nbCompleted, entry.nbCancelled, entry.nbCancelledWhileQueued) +
+                    listOf(entry.queueWait, entry.runTime, entry.cancellationLatency).flatMap { histogram ->
+                        listOf(histogram.meanNanos, histogram.percentileNanos(95.0).toDouble(), histogram.maxNanos.toDouble())
+                                .map { toMillisString(it) }
+                    } +
+                    toMillisString(entry.wastedNanos.toDouble())
+            out.append(csvQuote(entry.title)).append(',').append(values.joinToString(",")).append('\n')
+        }
+    }
+
+    private fun toMillisString(nanos: Double) = String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI)
+
+    private fun csvQuote(value: String): String =
+            if (value.none { it == ',' || it == '"' || it == '\n' || it == '\r' }) value
+            else "\"" + value.replace("\"", "\"\"") + "\""
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.jfx
+
+import javafx.scene.shape.LineTo
+import javafx.scene.shape.MoveTo
+import javafx.scene.shape.Path
+import javafx.scene.shape.PathElement
+import javafx.scene.transform.Scale
+import kotlin.math.hypot
+
+/**
+ * Single [Path] node drawing many arrows of the same style, each one being a
+ * line with an arrow head at its end point.
+ *
+ * Compared to one [Arrow] node per arrow, this uses one node in total, and
+ * the arrows can be stretched horizontally all at once with [stretchX]. Note
+ * the arrow heads get stretched too, the arrows should be set again once
+ * the rescaling is done.
+ */
+class ArrowsPath : Path() {
+
+    companion object {
+        private const val ARROW_HEAD_LENGTH = 5.0
+        private const val ARROW_HEAD_WIDTH = 3.0
+
+        /**
+         * Compute the path elements of the given arrows. This can be done
+         * outside of the UI thread.
+         *
+         * @param coords The arrows' coordinates, 4 values per arrow: start X,
+         *               start Y, end X, end Y
+         */
+        @JvmStatic
+        fun computeElements(coords: DoubleArray): List<PathElement> {
+            val nbArrows = coords.size / 4
+            val elements = ArrayList<PathElement>(nbArrows * 5)
+            for (i in 0 until nbArrows) {
+                val sx = coords[i * 4]
+                val sy = coords[i * 4 + 1]
+                val ex = coords[i * 4 + 2]
+                val ey = coords[i * 4 + 3]
+
+                elements.add(MoveTo(sx, sy))
+                elements.add(LineTo(ex, ey))
+
+                /* If the line is just a point, don't draw the arrow head. */
+                if (ex == sx && ey == sy) continue
+
+                val length = hypot(sx - ex, sy - ey)
+                // part in direction of main line
+                val dx = (sx - ex) * ARROW_HEAD_LENGTH / length
+                val dy = (sy - ey) * ARROW_HEAD_LENGTH / length
+                // part orthogonal to main line
+                val ox = (sx - ex) * ARROW_HEAD_WIDTH / length
+                val oy = (sy - ey) * ARROW_HEAD_WIDTH / length
+
+                elements.add(MoveTo(ex + dx - oy, ey + dy + ox))
+                elements.add(LineTo(ex, ey))
+                elements.add(LineTo(ex + dx + oy, ey + dy - ox))
+            }
+            return elements
+        }
+    }
+
+    private val scale = Scale(1.0, 1.0, 0.0, 0.0)
+
+    /** Number of arrows currently drawn */
+    var nbArrows = 0
+        private set
+
+    init {
+        fill = null
+        transforms.add(scale)
+    }
+
+    /**
+     * Replace the drawn arrows, and reset any horizontal scaling.
+     *
+     * @param elements The path elements obtained from [computeElements]
+     * @param nbArrows The number of arrows they represent
+     */
+    fun setArrows(elements: List<PathElement>, nbArrows: Int) {
+        this.elements.setAll(elements)
+        this.nbArrows = nbArrows
+        scale.x = 1.0
+    }
+
+    fun clearArrows() {
+        setArrows(emptyList(), 0)
+    }
+
+    /**
+     * Stretch the drawn arrows horizontally, relative to X = 0.
+     */
+    fun stretchX(factor: Double) {
+        scale.x *= factor
+    }
+}
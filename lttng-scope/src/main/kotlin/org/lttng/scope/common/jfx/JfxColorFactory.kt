@@ -10,13 +10,17 @@
 package org.lttng.scope.common.jfx;
 
 import com.efficios.jabberwocky.views.common.ColorDefinition
+import com.efficios.jabberwocky.views.timegraph.model.render.StateDefinition
 import javafx.scene.paint.Color
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.roundToInt
 
 object JfxColorFactory {
 
-
+    /*
+     * These are read from the parallel threads building the state rectangles,
+     * so no method here should lock.
+     */
     private val COLOR_MAP = ConcurrentHashMap<ColorDefinition, Color>()
     private val DERIVED_COLOR_MAP = ConcurrentHashMap<ColorDefinition, Color>()
 
@@ -28,25 +32,37 @@ object JfxColorFactory {
      * @return The Color object
      */
     @JvmStatic
-    @Synchronized
     fun getColorFromDef(colorDef: ColorDefinition): Color {
-        COLOR_MAP[colorDef]?.let { return it }
-
-        with(Color.rgb(colorDef.red, colorDef.green, colorDef.blue, colorDef.alpha.toDouble() / ColorDefinition.MAX.toDouble())) {
-            COLOR_MAP[colorDef] = this
-            return this
+        /*
+         * Java 8's computeIfAbsent() locks the map's bin even when the key is
+         * present, do a plain get() first for the common case.
+         */
+        return COLOR_MAP[colorDef] ?: COLOR_MAP.computeIfAbsent(colorDef) {
+            Color.rgb(it.red, it.green, it.blue, it.alpha.toDouble() / ColorDefinition.MAX.toDouble())
         }
-
     }
 
     @JvmStatic
-    @Synchronized
     fun getDerivedColorFromDef(colorDef: ColorDefinition): Color {
-        DERIVED_COLOR_MAP[colorDef]?.let { return it }
+        return DERIVED_COLOR_MAP[colorDef] ?: DERIVED_COLOR_MAP.computeIfAbsent(colorDef) {
+            getColorFromDef(it).desaturate().darker()
+        }
+    }
 
-        with(getColorFromDef(colorDef).desaturate().darker()) {
-            DERIVED_COLOR_MAP[colorDef] = this
-            return this
+    /**
+     * Compute in advance the colors, and derived colors, of the given state
+     * definitions. Subsequent calls to [getColorFromDef] and
+     * [getDerivedColorFromDef] for them will then only read the cache.
+     *
+     * @param stateDefinitions
+     *            The state definitions, usually all those of a state provider
+     */
+    @JvmStatic
+    fun precomputePalette(stateDefinitions: Collection<StateDefinition>) {
+        stateDefinitions.forEach {
+            val colorDef = it.color.get()
+            getColorFromDef(colorDef)
+            getDerivedColorFromDef(colorDef)
         }
     }
 
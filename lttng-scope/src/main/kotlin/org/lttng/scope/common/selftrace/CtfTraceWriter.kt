@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import java.io.Closeable
+import java.net.InetAddress
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.UUID
+
+/**
+ * Writer of a CTF 1.8 trace containing [SelfTraceEvent]s, laid out like an
+ * LTTng-UST trace: a plain-text "metadata" file, and one binary stream file
+ * per traced thread.
+ *
+ * Every field is byte-aligned and little-endian, so an event takes 14 bytes
+ * of headers plus its payload. Each call to [writePacket] appends one packet
+ * to the stream of the given buffer.
+ *
+ * This class is not thread-safe, it is meant to be used by the thread
+ * flushing the buffers only.
+ *
+ * @param directory The trace directory, which must exist
+ * @param clockOffsetNanos Time since the Epoch, in nanoseconds, at which the
+ *                         event timestamps are 0
+ */
+internal class CtfTraceWriter(private val directory: Path, private val clockOffsetNanos: Long) : Closeable {
+
+    companion object {
+        private const val METADATA_FILE_NAME = "metadata"
+        private const val STREAM_FILE_PREFIX = "scope_"
+
+        private const val CTF_MAGIC = 0xC1FC1FC1.toInt()
+        private const val NANOS_PER_SECOND = 1_000_000_000L
+
+        /** Size of the packet header and context, which precede the events */
+        private const val PACKET_PREAMBLE_SIZE = 4 + 16 + 4 + 8 + 8 * 5 + 4
+        private const val INITIAL_PACKET_CAPACITY = 64 * 1024
+    }
+
+    private val uuid = UUID.randomUUID()
+    private val streams = mutableMapOf<SelfTraceBuffer, FileChannel>()
+
+    private var packet = ByteBuffer.allocate(INITIAL_PACKET_CAPACITY).order(ByteOrder.LITTLE_ENDIAN)
+
+    private val encoder = object : SelfTraceBuffer.RecordConsumer {
+        var tid = 0
+        var firstTimestamp = -1L
+        var lastTimestamp = 0L
+
+        override fun accept(timestamp: Long, event: SelfTraceEvent, string: String?, arg0: Long, arg1: Long) {
+            val stringBytes = if (event.stringField == null) null else (string ?: "").toByteArray(StandardCharsets.UTF_8)
+            ensureRemaining(2 + 8 + 4 + (stringBytes?.size?.plus(1) ?: 0) + 8 * event.longFields.size)
+
+            /* Event header and context */
+            packet.putShort(event.ordinal.toShort())
+            packet.putLong(timestamp)
+            packet.putInt(tid)
+
+            /* Payload */
+            if (stringBytes != null) {
+                packet.put(stringBytes)
+                packet.put(0.toByte())
+            }
+            if (event.longFields.isNotEmpty()) packet.putLong(arg0)
+            if (event.longFields.size > 1) packet.putLong(arg1)
+
+            if (firstTimestamp < 0) firstTimestamp = timestamp
+            lastTimestamp = timestamp
+        }
+    }
+
+    /**
+     * Write the trace's metadata file, describing all the [SelfTraceEvent]s.
+     */
+    fun writeMetadata() {
+        Files.write(directory.resolve(METADATA_FILE_NAME), generateMetadata().toByteArray(StandardCharsets.UTF_8))
+    }
+
+    /**
+     * Move at most [maxEvents] events from the given buffer to a new packet
+     * of its stream. Nothing is written if there are no new events.
+     *
+     * @return The number of events that were written
+     */
+    fun writePacket(buffer: SelfTraceBuffer, maxEvents: Int): Int {
+        packet.clear()
+        packet.position(PACKET_PREAMBLE_SIZE)
+        encoder.tid = buffer.tid.toInt()
+        encoder.firstTimestamp = -1L
+
+        val nbEvents = buffer.drain(maxEvents, encoder)
+        if (nbEvents == 0) return 0
+
+        val sizeInBits = packet.position().toLong() * 8
+
+        /* Packet header */
+        packet.putInt(0, CTF_MAGIC)
+        packet.position(4)
+        packet.putLong(uuid.mostSignificantBits.reverseBytes())
+        packet.putLong(uuid.leastSignificantBits.reverseBytes())
+        packet.putInt(0) // stream_id
+        packet.putLong(buffer.tid) // stream_instance_id
+
+        /* Packet context */
+        packet.putLong(encoder.firstTimestamp)
+        packet.putLong(encoder.lastTimestamp)
+        packet.putLong(sizeInBits) // content_size
+        packet.putLong(sizeInBits) // packet_size
+        packet.putLong(buffer.nbDiscarded) // events_discarded
+        packet.putInt(0) // cpu_id
+
+        packet.position((sizeInBits / 8).toInt())
+        packet.flip()
+
+        val channel = streams.getOrPut(buffer) {
+            FileChannel.open(directory.resolve("$STREAM_FILE_PREFIX${buffer.tid}"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+        }
+        while (packet.hasRemaining()) channel.write(packet)
+        return nbEvents
+    }
+
+    /**
+     * Close the stream of a buffer that will not have any new events.
+     */
+    fun closeStream(buffer: SelfTraceBuffer) {
+        streams.remove(buffer)?.close()
+    }
+
+    override fun close() {
+        streams.values.forEach { it.close() }
+        streams.clear()
+    }
+
+    private fun ensureRemaining(nbBytes: Int) {
+        if (packet.remaining() >= nbBytes) return
+        val newPacket = ByteBuffer.allocate(maxOf(packet.capacity() * 2, packet.position() + nbBytes))
+                .order(ByteOrder.LITTLE_ENDIAN)
+        packet.flip()
+        newPacket.put(packet)
+        packet = newPacket
+    }
+
+    /* The UUID is written as a byte array, so in big-endian order */
+    private fun Long.reverseBytes() = java.lang.Long.reverseBytes(this)
+
+    private fun generateMetadata(): String {
+        val hostname = try {
+            InetAddress.getLocalHost().hostName
+        } catch (e: Exception) {
+            "unknown"
+        }
+
+        val events = SelfTraceEvent.values().joinToString("\n") { event ->
+            val fields = listOfNotNull(event.stringField?.let { "\t\tstring _$it;" }) +
+                    event.longFields.map { "\t\tuint64_t _$it;" }
+            """
+            |event {
+            |	name = "${event.eventName}";
+            |	id = ${event.ordinal};
+            |	stream_id = 0;
+            |	fields := struct {
+            |${fields.joinToString("\n")}
+            |	};
+            |};
+            |""".trimMargin()
+        }
+
+        return """
+            |/* CTF 1.8 */
+            |
+            |typealias integer { size = 8; align = 8; signed = false; } := uint8_t;
+            |typealias integer { size = 16; align = 8; signed = false; } := uint16_t;
+            |typealias integer { size = 32; align = 8; signed = false; } := uint32_t;
+            |typealias integer { size = 64; align = 8; signed = false; } := uint64_t;
+            |
+            |trace {
+            |	major = 1;
+            |	minor = 8;
+            |	uuid = "$uuid";
+            |	byte_order = le;
+            |	packet.header := struct {
+            |		uint32_t magic;
+            |		uint8_t  uuid[16];
+            |		uint32_t stream_id;
+            |		uint64_t stream_instance_id;
+            |	};
+            |};
+            |
+            |env {
+            |	hostname = "${hostname.replace("\"", "")}";
+            |	domain = "ust";
+            |	tracer_name = "lttng-scope";
+            |	procname = "lttng-scope";
+            |};
+            |
+            |clock {
+            |	name = "monotonic";
+            |	description = "Monotonic clock of the traced application";
+            |	freq = $NANOS_PER_SECOND;
+            |	precision = 1;
+            |	offset_s = ${clockOffsetNanos / NANOS_PER_SECOND};
+            |	offset = ${clockOffsetNanos % NANOS_PER_SECOND};
+            |	absolute = FALSE;
+            |};
+            |
+            |typealias integer {
+            |	size = 64; align = 8; signed = false;
+            |	map = clock.monotonic.value;
+            |} := uint64_clock_monotonic_t;
+            |
+            |stream {
+            |	id = 0;
+            |	event.header := struct {
+            |		uint16_t id;
+            |		uint64_clock_monotonic_t timestamp;
+            |	};
+            |	packet.context := struct {
+            |		uint64_clock_monotonic_t timestamp_begin;
+            |		uint64_clock_monotonic_t timestamp_end;
+            |		uint64_t content_size;
+            |		uint64_t packet_size;
+            |		uint64_t events_discarded;
+            |		uint32_t cpu_id;
+            |	};
+            |	event.context := struct {
+            |		integer { size = 32; align = 8; signed = true; } _vtid;
+            |	};
+            |};
+            |
+            |""".trimMargin() + events
+    }
+}
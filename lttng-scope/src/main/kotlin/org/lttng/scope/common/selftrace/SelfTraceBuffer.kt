@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Ring buffer of self-tracing events of one thread.
+ *
+ * It has one producer, the thread owning it, and one consumer, the thread
+ * flushing the events to disk, so it does not need any lock: the producer
+ * publishes records by advancing the head, the consumer frees them by
+ * advancing the tail. Like LTTng in discard mode, events written while the
+ * buffer is full are dropped and counted.
+ *
+ * Records are stored in parallel arrays so that writing one does not
+ * allocate.
+ */
+internal class SelfTraceBuffer(val tid: Long, val threadName: String, capacity: Int) {
+
+    /**
+     * Receiver of the records read by [drain]
+     */
+    interface RecordConsumer {
+        fun accept(timestamp: Long, event: SelfTraceEvent, string: String?, arg0: Long, arg1: Long)
+    }
+
+    init {
+        require(capacity > 0 && Integer.bitCount(capacity) == 1) { "Capacity must be a power of two" }
+    }
+
+    private val size = capacity.toLong()
+    private val mask = size - 1
+
+    private val timestamps = LongArray(capacity)
+    private val events = arrayOfNulls<SelfTraceEvent>(capacity)
+    private val strings = arrayOfNulls<String>(capacity)
+    private val args0 = LongArray(capacity)
+    private val args1 = LongArray(capacity)
+
+    /** Next record to write, only advanced by the producer */
+    private val head = AtomicLong()
+    /** Next record to read, only advanced by the consumer */
+    private val tail = AtomicLong()
+
+    private val discarded = AtomicLong()
+
+    /** Total number of events that were dropped because the buffer was full */
+    val nbDiscarded: Long
+        get() = discarded.get()
+
+    /**
+     * Write one record. Must only be called from the owning thread.
+     */
+    fun write(timestamp: Long, event: SelfTraceEvent, string: String?, arg0: Long, arg1: Long) {
+        val h = head.get()
+        if (h - tail.get() >= size) {
+            discarded.incrementAndGet()
+            return
+        }
+        val i = (h and mask).toInt()
+        timestamps[i] = timestamp
+        events[i] = event
+        strings[i] = string
+        args0[i] = arg0
+        args1[i] = arg1
+        /* Publish the record to the consumer */
+        head.lazySet(h + 1)
+    }
+
+    /**
+     * Read, then free, at most [maxRecords] of the available records. Must
+     * only be called from the consumer thread.
+     *
+     * @return The number of records that were read
+     */
+    fun drain(maxRecords: Int, consumer: RecordConsumer): Int {
+        val t = tail.get()
+        val end = minOf(head.get(), t + maxRecords)
+        var pos = t
+        while (pos < end) {
+            val i = (pos and mask).toInt()
+            consumer.accept(timestamps[i], events[i]!!, strings[i], args0[i], args1[i])
+            /* Do not retain the strings once they are written out */
+            strings[i] = null
+            pos++
+        }
+        /* Give the slots back to the producer */
+        tail.lazySet(end)
+        return (end - t).toInt()
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+/**
+ * Event types recorded by the [SelfTracer].
+ *
+ * To keep the ring buffers simple, every event has the same shape: an
+ * optional string field, followed by at most two unsigned 64-bit integer
+ * fields. The event's ordinal is its CTF event ID.
+ *
+ * @property eventName Name of the event in the trace
+ * @property stringField Name of the string field, or null if there is none
+ * @property longFields Names of the integer fields, at most two
+ */
+enum class SelfTraceEvent(val eventName: String, val stringField: String?, vararg val longFields: String) {
+
+    /** First event of every thread's stream */
+    THREAD_START("scope:thread_start", "name", "tid"),
+
+    /** A timegraph paint task started. The sequence number comes from its PeriodicRedrawTask. */
+    PAINT_START("scope:paint_start", "widget", "task_seq"),
+    /** A timegraph paint task ended, either normally or because it was cancelled */
+    PAINT_END("scope:paint_end", "widget", "task_seq", "cancelled"),
+
+    /** A task was registered to the task manager */
+    TASK_REGISTERED("scope:task_registered", "title", "task_id"),
+    /** A task's state changed, the new state is given as a string */
+    TASK_STATE("scope:task_state", "state", "task_id"),
+    /** A task was removed from the task manager */
+    TASK_DEREGISTERED("scope:task_deregistered", "title", "task_id"),
+
+    /** The nodes of a layer were applied on the UI thread */
+    UI_APPLY("scope:ui_apply", "phase", "queue_delay_ns", "duration_ns"),
+    /** Time a probe runnable spent in the UI thread's queue */
+    UI_LATENCY("scope:ui_latency", null, "latency_ns"),
+
+    /** A garbage collection finished. The string is "<collector>: <cause>". */
+    GC_PAUSE("scope:gc_pause", "collector", "duration_ns", "gc_id");
+
+    companion object {
+        /** Maximum number of integer fields of an event */
+        const val MAX_LONG_FIELDS = 2
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.task.JabberwockyTaskManager
+import com.sun.management.GarbageCollectionNotificationInfo
+import javafx.application.Platform
+import org.lttng.scope.ScopePaths
+import java.io.IOException
+import java.lang.management.ManagementFactory
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.time.LocalDateTime
+import java.time.format.DateTimeFormatter
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.logging.Level
+import java.util.logging.Logger
+import javax.management.Notification
+import javax.management.NotificationEmitter
+import javax.management.NotificationListener
+import javax.management.openmbean.CompositeData
+
+/**
+ * Records the viewer's own activity as a CTF trace, which can then be opened
+ * in Scope itself.
+ *
+ * Events are written without locking to a ring buffer owned by the calling
+ * thread. A background thread periodically moves them to the trace files,
+ * one stream per thread, and drops the buffers of the threads that died.
+ * The recorded events are listed in [SelfTraceEvent]: timegraph paint
+ * tasks, task lifecycles, UI thread latency and garbage collections.
+ *
+ * Tracing is off by default. It is started with the [OUTPUT_DIR_PROPERTY]
+ * system property, and can only be started once per process. While it is
+ * off, the recording methods return right away.
+ */
+object SelfTracer {
+
+    /**
+     * System property enabling self-tracing at startup. Its value is the
+     * directory in which to write the trace. If it is empty, a new
+     * directory is created under the application's data directory.
+     */
+    const val OUTPUT_DIR_PROPERTY = "lttng-scope.selftrace"
+
+    private val LOGGER = Logger.getLogger(SelfTracer::class.java.name)
+
+    private const val BUFFER_CAPACITY = 8192
+    private const val MAX_EVENTS_PER_PACKET = 4096
+    private const val FLUSH_PERIOD_MILLIS = 200L
+    private const val FLUSHER_THREAD_NAME = "Scope self-tracing flusher"
+
+    @Volatile
+    private var enabled = false
+    @Volatile
+    private var started = false
+
+    private var clockBase = 0L
+    private var writer: CtfTraceWriter? = null
+    private var flusher: Thread? = null
+
+    private val buffers = ThreadBuffers(MAX_EVENTS_PER_PACKET)
+    private val threadBuffer = ThreadLocal.withInitial {
+        val thread = Thread.currentThread()
+        SelfTraceBuffer(thread.id, thread.name, BUFFER_CAPACITY).also {
+            buffers.add(thread, it)
+            it.write(now(), SelfTraceEvent.THREAD_START, thread.name, thread.id, 0)
+        }
+    }
+
+    /** If events are currently being recorded */
+    @JvmStatic
+    val isEnabled: Boolean
+        get() = enabled
+
+    /**
+     * Start tracing if the [OUTPUT_DIR_PROPERTY] system property is set.
+     */
+    @JvmStatic
+    fun startFromSystemProperty() {
+        val property = System.getProperty(OUTPUT_DIR_PROPERTY) ?: return
+        val directory = if (property.isBlank()) {
+            val timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+            ScopePaths.dataDir.resolve("selftrace").resolve("scope-$timestamp")
+        } else {
+            Paths.get(property)
+        }
+        try {
+            start(directory)
+            LOGGER.info { "Self-tracing to $directory" }
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Could not start self-tracing to $directory", e)
+        }
+    }
+
+    /**
+     * Start tracing to the given directory.
+     *
+     * @param directory The trace directory. It is created if needed.
+     * @throws IOException If the trace's metadata cannot be written
+     * @throws IllegalStateException If tracing was already started once
+     */
+    @JvmStatic
+    @Synchronized
+    fun start(directory: Path) {
+        check(!started) { "Self-tracing can only be started once" }
+
+        Files.createDirectories(directory)
+        clockBase = System.nanoTime()
+        val clockOffset = System.currentTimeMillis() * 1_000_000L
+        writer = CtfTraceWriter(directory, clockOffset).apply { writeMetadata() }
+
+        ManagementFactory.getGarbageCollectorMXBeans()
+                .filterIsInstance<NotificationEmitter>()
+                .forEach { it.addNotificationListener(GcListener, null, null) }
+        JabberwockyTaskManager.registerOutput(TaskListener)
+
+        started = true
+        enabled = true
+        flusher = Thread(Runnable { flushLoop() }, FLUSHER_THREAD_NAME).apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    /**
+     * Stop tracing, and write out the remaining events. Does nothing if
+     * tracing is not running.
+     */
+    @JvmStatic
+    @Synchronized
+    fun stop() {
+        if (!enabled) return
+        enabled = false
+
+        ManagementFactory.getGarbageCollectorMXBeans()
+                .filterIsInstance<NotificationEmitter>()
+                .forEach {
+                    try {
+                        it.removeNotificationListener(GcListener)
+                    } catch (e: Exception) {
+                        /* Was not registered to this collector */
+                    }
+                }
+
+        flusher?.let {
+            it.interrupt()
+            it.join()
+        }
+        flusher = null
+
+        writer?.use { buffers.flush(it) }
+        writer = null
+    }
+
+    // ------------------------------------------------------------------------
+    // Recording
+    // ------------------------------------------------------------------------
+
+    /**
+     * Record the start of a timegraph paint task.
+     *
+     * @param widgetName Name of the timegraph
+     * @param taskSeq Sequence number of the paint task
+     */
+    @JvmStatic
+    fun paintStart(widgetName: String, taskSeq: Long) {
+        record(SelfTraceEvent.PAINT_START, widgetName, taskSeq, 0)
+    }
+
+    /**
+     * Record the end of a timegraph paint task.
+     *
+     * @param widgetName Name of the timegraph
+     * @param taskSeq Sequence number of the paint task
+     * @param cancelled If the task was cancelled
+     */
+    @JvmStatic
+    fun paintEnd(widgetName: String, taskSeq: Long, cancelled: Boolean) {
+        record(SelfTraceEvent.PAINT_END, widgetName, taskSeq, if (cancelled) 1 else 0)
+    }
+
+    /**
+     * Record an operation that was run on the UI thread with
+     * [Platform.runLater]. To be called from the UI thread, once the
+     * operation is done.
+     *
+     * @param phase What the operation did
+     * @param queueDelayNanos Time it waited in the UI thread's queue
+     * @param durationNanos Time it took to run
+     */
+    @JvmStatic
+    fun uiApply(phase: String, queueDelayNanos: Long, durationNanos: Long) {
+        record(SelfTraceEvent.UI_APPLY, phase, queueDelayNanos, durationNanos)
+    }
+
+    private fun record(event: SelfTraceEvent, string: String?, arg0: Long, arg1: Long) {
+        if (!enabled) return
+        threadBuffer.get().write(now(), event, string, arg0, arg1)
+    }
+
+    private fun now() = System.nanoTime() - clockBase
+
+    // ------------------------------------------------------------------------
+    // Flushing
+    // ------------------------------------------------------------------------
+
+    private fun flushLoop() {
+        val writer = writer ?: return
+        while (true) {
+            try {
+                Thread.sleep(FLUSH_PERIOD_MILLIS)
+            } catch (e: InterruptedException) {
+                return
+            }
+            probeUiLatency()
+            try {
+                buffers.flush(writer)
+            } catch (e: IOException) {
+                LOGGER.log(Level.WARNING, "Error writing the self-trace, stopping", e)
+                enabled = false
+                return
+            }
+        }
+    }
+
+    /**
+     * Measure how long the UI thread takes to pick up a new runnable.
+     */
+    private fun probeUiLatency() {
+        val posted = System.nanoTime()
+        try {
+            Platform.runLater { record(SelfTraceEvent.UI_LATENCY, null, System.nanoTime() - posted, 0) }
+        } catch (e: IllegalStateException) {
+            /* The JavaFX toolkit is not running */
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Listeners
+    // ------------------------------------------------------------------------
+
+    private object GcListener : NotificationListener {
+        override fun handleNotification(notification: Notification, handback: Any?) {
+            if (notification.type != GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION) return
+            val info = GarbageCollectionNotificationInfo.from(notification.userData as CompositeData)
+            record(SelfTraceEvent.GC_PAUSE, "${info.gcName}: ${info.gcCause}",
+                    info.gcInfo.duration * 1_000_000L, info.gcInfo.id)
+        }
+    }
+
+    private object TaskListener : JabberwockyTaskManager.TaskManagerOutput {
+
+        private val taskIds = ConcurrentHashMap<JabberwockyTask<*>, Long>()
+        private val idGenerator = AtomicLong()
+
+        override fun taskRegistered(task: JabberwockyTask<*>) {
+            if (!enabled) return
+            val id = idGenerator.getAndIncrement()
+            taskIds[task] = id
+            record(SelfTraceEvent.TASK_REGISTERED, task.title, id, 0)
+
+            /* State changes happen on the UI thread */
+            Platform.runLater {
+                record(SelfTraceEvent.TASK_STATE, task.state.name, id, 0)
+                task.stateProperty().addListener { _, _, state -> record(SelfTraceEvent.TASK_STATE, state.name, id, 0) }
+            }
+        }
+
+        override fun taskDeregistered(task: JabberwockyTask<*>) {
+            val id = taskIds.remove(task) ?: return
+            record(SelfTraceEvent.TASK_DEREGISTERED, task.title, id, 0)
+        }
+    }
+}
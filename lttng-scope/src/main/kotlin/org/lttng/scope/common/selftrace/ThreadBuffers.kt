@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import java.lang.ref.WeakReference
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * The [SelfTraceBuffer]s of the traced threads, as seen by the flushing
+ * thread.
+ *
+ * Many threads only live for a short while (task and thread pool threads),
+ * so the buffer of a thread that died is dropped, and its stream closed,
+ * once its last events are written. Threads are only referenced weakly.
+ */
+internal class ThreadBuffers(private val maxEventsPerPacket: Int) {
+
+    private class Entry(thread: Thread, val buffer: SelfTraceBuffer) {
+        private val thread = WeakReference(thread)
+        val isThreadDead get() = thread.get()?.isAlive != true
+    }
+
+    private val entries = CopyOnWriteArrayList<Entry>()
+
+    /** Number of buffers currently kept */
+    val size get() = entries.size
+
+    /**
+     * Register the buffer of a thread.
+     *
+     * @param thread The thread owning the buffer, which is the only one writing to it
+     * @param buffer The buffer
+     */
+    fun add(thread: Thread, buffer: SelfTraceBuffer) {
+        entries.add(Entry(thread, buffer))
+    }
+
+    /**
+     * Write all the events of all the buffers, then drop the buffers of the
+     * threads that died.
+     *
+     * @param writer The trace writer
+     */
+    fun flush(writer: CtfTraceWriter) {
+        entries.forEach { entry ->
+            /*
+             * Checked before draining: once the thread is seen dead, all its
+             * writes are visible, so draining empties the buffer for good.
+             */
+            val threadDead = entry.isThreadDead
+            while (writer.writePacket(entry.buffer, maxEventsPerPacket) == maxEventsPerPacket) {
+                /* Keep going until the buffer is empty */
+            }
+            if (threadDead) {
+                writer.closeStream(entry.buffer)
+                entries.remove(entry)
+            }
+        }
+    }
+}
@@ -9,36 +9,110 @@
 
 package org.lttng.scope.project
 
+import com.efficios.jabberwocky.context.ViewGroupContext
 import com.efficios.jabberwocky.project.TraceProject
-import org.lttng.scope.project.filter.EventFilterDefinition
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.lttng.scope.ScopePaths
+import org.lttng.scope.common.TaskMetrics
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
 
 /**
  * Application-side manager that keeps track of active trace projects, and
  * the viewer-side state that we want to associate to them.
+ *
+ * Once attached to a view context with [trackActiveProject], the state of a
+ * project is released when another project is switched to. Its analysis
+ * results go to a [ProjectResultsCache], from which a later project on the
+ * same traces will get them back instead of running the analyses again. The
+ * memory and disk space used by this cache are bounded by the
+ * [MEMORY_BUDGET_PROPERTY] and [DISK_BUDGET_PROPERTY] system properties, in
+ * megabytes.
  */
 object ProjectManager {
 
+    const val MEMORY_BUDGET_PROPERTY = "lttng-scope.projectCache.budgetMB"
+    private const val DEFAULT_MEMORY_BUDGET_MB = 256L
+    const val DISK_BUDGET_PROPERTY = "lttng-scope.projectCache.diskMB"
+    private const val DEFAULT_DISK_BUDGET_MB = 1024L
+    private const val BYTES_PER_MB = 1024L * 1024L
+
+    private const val SPILL_DIR_NAME = "analysis-results"
+
     private val projectStates = mutableMapOf<TraceProject<*, *>, ProjectState>()
 
+    private val spillExecutor = Executors.newSingleThreadExecutor(
+            ThreadFactoryBuilder().setNameFormat("project-results-spill-%d").setDaemon(true).build())
+
+    private val resultsCache = ProjectResultsCache(
+            Long.getLong(MEMORY_BUDGET_PROPERTY, DEFAULT_MEMORY_BUDGET_MB) * BYTES_PER_MB,
+            ScopePaths.cacheDir.resolve(SPILL_DIR_NAME),
+            Long.getLong(DISK_BUDGET_PROPERTY, DEFAULT_DISK_BUDGET_MB) * BYTES_PER_MB,
+            Executor { spill ->
+                spillExecutor.execute(TaskMetrics.track(JabberwockyTask<Unit>("Caching analysis results") { spill.run() }))
+            })
+
+    private var activeProject: TraceProject<*, *>? = null
+
+    private val projectChangeListener = object : ViewGroupContext.ProjectChangeListener(this) {
+        override fun newProjectCb(newProject: TraceProject<*, *>?) {
+            projectSwitched(newProject)
+        }
+    }
+
+    /**
+     * Follow the active project of the given view context, to release the
+     * state of the projects that are switched away from.
+     *
+     * @param viewContext The view context
+     */
+    @JvmStatic
+    @Synchronized
+    fun trackActiveProject(viewContext: ViewGroupContext) {
+        activeProject = viewContext.registerProjectChangeListener(projectChangeListener)
+    }
+
     @Synchronized
     fun getProjectState(project: TraceProject<*, *>): ProjectState {
         var state = projectStates[project]
         if (state == null) {
             state = ProjectState(project)
+            ProjectResultsCache.ProjectKey.of(project)?.let { key ->
+                /* Computed on the first lookup only, it reads all the files of the traces */
+                val checksum by lazy { resultsCache.checksum(key) }
+                state.analysisResults.cachedResultsLoader = { analysisName ->
+                    checksum?.let { resultsCache.get(key, it, analysisName) }
+                }
+            }
             projectStates.put(project, state)
         }
         return state
     }
 
     /**
-     * Clear the "cache" for one given project. Usually should be called when said
-     * project is destroyed.
+     * Clear the "cache" for one given project, and cancel its running analyses.
+     * Usually should be called when said project is destroyed.
      *
      * @param project The project to dispose of
      */
     @Synchronized
     fun dispose(project: TraceProject<*, *>) {
-        projectStates.remove(project);
+        projectStates.remove(project)?.analysisResults?.cancelAll()
+    }
+
+    @Synchronized
+    private fun projectSwitched(newProject: TraceProject<*, *>?) {
+        val previous = activeProject
+        activeProject = newProject
+        if (previous == newProject) return
+        if (previous == null) return
+
+        /* The filters go away with the project, its analysis results are kept aside */
+        val state = projectStates.remove(previous) ?: return
+        val results = state.analysisResults.release()
+        val key = ProjectResultsCache.ProjectKey.of(previous)
+        if (key != null && results.isNotEmpty()) resultsCache.put(key, results)
     }
 
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project
+
+import com.efficios.jabberwocky.collection.TraceCollection
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.views.common.ColorDefinition
+import com.efficios.jabberwocky.views.common.EventSymbolStyle
+import org.lttng.scope.ScopePaths
+import org.lttng.scope.project.filter.createEventNameFilter
+import java.io.*
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import java.util.logging.Level
+import java.util.logging.Logger
+import java.util.stream.Collectors
+
+/**
+ * Saving and re-opening of trace projects.
+ *
+ * A project is saved in its directory under [ScopePaths.projectsDir], the
+ * same one Jabberwocky uses for its analysis files. It contains:
+ *
+ * - a versioned binary project file, listing the project's traces with their
+ *   checksums, and its event filters;
+ * - one file per analysis whose results are [Serializable], from
+ *   [ProjectAnalysisResults].
+ *
+ * When re-opening a project, the checksum of each trace is computed again.
+ * Cached analysis results are only restored if all traces are unchanged.
+ * Otherwise the project directory is cleared, including Jabberwocky's files,
+ * and everything will be recomputed.
+ */
+object ProjectPersistence {
+
+    private val LOGGER = Logger.getLogger(ProjectPersistence::class.java.name)
+
+    internal const val PROJECT_FILE_NAME = "scope-project.bin"
+    internal const val ANALYSIS_RESULTS_DIR_NAME = "analysis-results"
+    internal const val ANALYSIS_RESULTS_SUFFIX = ".bin"
+
+    /* "SCPJ" and "SCPA" */
+    internal const val PROJECT_FILE_MAGIC = 0x5343504A
+    private const val ANALYSIS_FILE_MAGIC = 0x53435041
+
+    /** Increment when changing the layout of the project file */
+    internal const val PROJECT_FILE_VERSION = 1
+    /** Increment when changing the layout of the analysis result files */
+    internal const val ANALYSIS_FILE_VERSION = 1
+
+    /**
+     * Get the names of the projects that were saved.
+     */
+    @JvmStatic
+    fun listSavedProjects(): List<String> {
+        val projectsDir = ScopePaths.projectsDir
+        if (!Files.isDirectory(projectsDir)) return emptyList()
+        return Files.list(projectsDir).use { dirs ->
+            dirs.filter { Files.isRegularFile(it.resolve(PROJECT_FILE_NAME)) }
+                    .map { it.fileName.toString() }
+                    .sorted()
+                    .collect(Collectors.toList())
+        }
+    }
+
+    /**
+     * Save a project: its traces, its filters and the analysis results that
+     * can be serialized.
+     *
+     * @param project The project to save
+     * @throws IOException If the files could not be written
+     */
+    @JvmStatic
+    fun save(project: TraceProject<*, *>) {
+        val projectDir = ScopePaths.projectsDir.resolve(project.name)
+        Files.createDirectories(projectDir)
+
+        val traces = project.traceCollections.flatMap { it.traces }.mapNotNull { trace ->
+            val path = (trace as? CtfTrace)?.tracePath
+            if (path == null) LOGGER.warning { "Trace ${trace.name} is not a CTF trace, it cannot be saved" }
+            path?.let { SavedTrace(it.toAbsolutePath(), traceChecksum(it)) }
+        }
+
+        val state = ProjectManager.getProjectState(project)
+        val filters = state.filters.getAllFilters().map { SavedFilter(it.name, it.color, it.symbol, it.isEnabled) }
+
+        writeAtomically(projectDir.resolve(PROJECT_FILE_NAME)) {
+            writeProjectFile(it, SavedProject(project.name, traces, filters))
+        }
+
+        val resultsDir = projectDir.resolve(ANALYSIS_RESULTS_DIR_NAME)
+        Files.createDirectories(resultsDir)
+        val checksum = projectChecksum(traces.map { it.checksum })
+        state.analysisResults.getComputedResults().forEach { (analysis, result) ->
+            if (result !is Serializable) return@forEach
+            writeAnalysisResult(resultsDir.resolve(analysis.javaClass.name + ANALYSIS_RESULTS_SUFFIX), checksum, serialize(result))
+        }
+    }
+
+    /**
+     * Re-open a saved project. This opens its traces and restores its
+     * filters. If the traces did not change since the project was saved, its
+     * analysis results are restored too.
+     *
+     * @param projectName The name of the saved project
+     * @return The project
+     * @throws IOException If the project file cannot be read, or if one of
+     *                     its traces cannot be opened
+     */
+    @JvmStatic
+    fun load(projectName: String): TraceProject<*, *> {
+        val projectDir = ScopePaths.projectsDir.resolve(projectName)
+        val savedProject = DataInputStream(BufferedInputStream(Files.newInputStream(projectDir.resolve(PROJECT_FILE_NAME)))).use {
+            readProjectFile(it)
+        } ?: throw IOException("Unsupported project file in $projectDir")
+
+        val currentTraces = savedProject.traces.map { SavedTrace(it.path, traceChecksum(it.path)) }
+        /* Before creating the project, which opens the files of its directory */
+        val tracesUnchanged = validateProjectDirectory(projectDir, savedProject, currentTraces)
+
+        val traces = currentTraces.map { CtfTrace(it.path) }
+        val project = TraceProject(savedProject.name, projectDir, listOf(TraceCollection(traces)))
+
+        val state = ProjectManager.getProjectState(project)
+        savedProject.filters.forEach { saved ->
+            val filter = createEventNameFilter(saved.name, saved.color, saved.symbol)
+            filter.isEnabled = saved.enabled
+            state.filters.createFilter(filter)
+        }
+
+        if (tracesUnchanged) {
+            val checksum = projectChecksum(currentTraces.map { it.checksum })
+            state.analysisResults.restoreResults(readAnalysisResults(projectDir, checksum))
+        }
+        return project
+    }
+
+    /**
+     * Make sure the files of a project directory are for the current
+     * contents of its traces. If a trace changed since the project was
+     * saved, everything but the project file is deleted, including
+     * Jabberwocky's analysis files, and the project file is updated with the
+     * new checksums.
+     *
+     * @return True if the traces did not change, so the files of the
+     *         directory can be used
+     */
+    internal fun validateProjectDirectory(projectDir: Path, savedProject: SavedProject, currentTraces: List<SavedTrace>): Boolean {
+        if (currentTraces == savedProject.traces) return true
+
+        LOGGER.info { "Traces of project ${savedProject.name} changed, discarding its analysis files" }
+        val projectFile = projectDir.resolve(PROJECT_FILE_NAME)
+        Files.list(projectDir).use { files ->
+            files.filter { it != projectFile }.collect(Collectors.toList())
+        }.forEach { deleteRecursively(it) }
+        writeAtomically(projectFile) { writeProjectFile(it, savedProject.copy(traces = currentTraces)) }
+        return false
+    }
+
+    /**
+     * Read the analysis results saved in a project directory.
+     *
+     * @return The results that are valid for the given traces checksum, by
+     *         analysis class name
+     */
+    internal fun readAnalysisResults(projectDir: Path, checksum: String): Map<String, Any> {
+        val resultsDir = projectDir.resolve(ANALYSIS_RESULTS_DIR_NAME)
+        if (!Files.isDirectory(resultsDir)) return emptyMap()
+        return Files.list(resultsDir).use { files ->
+            files.collect(Collectors.toList()).mapNotNull { file ->
+                val analysisName = file.fileName.toString().removeSuffix(ANALYSIS_RESULTS_SUFFIX)
+                readAnalysisResult(file, checksum)?.let { analysisName to it }
+            }
+        }.toMap()
+    }
+
+    // ------------------------------------------------------------------------
+    // File formats
+    // ------------------------------------------------------------------------
+
+    internal data class SavedTrace(val path: Path, val checksum: String)
+
+    internal data class SavedFilter(val name: String,
+                                    val color: ColorDefinition,
+                                    val symbol: EventSymbolStyle,
+                                    val enabled: Boolean)
+
+    internal data class SavedProject(val name: String,
+                                     val traces: List<SavedTrace>,
+                                     val filters: List<SavedFilter>)
+
+    internal fun writeProjectFile(out: DataOutputStream, project: SavedProject) {
+        with(out) {
+            writeInt(PROJECT_FILE_MAGIC)
+            writeInt(PROJECT_FILE_VERSION)
+            writeUTF(project.name)
+
+            writeInt(project.traces.size)
+            project.traces.forEach {
+                writeUTF(it.path.toString())
+                writeUTF(it.checksum)
+            }
+
+            writeInt(project.filters.size)
+            project.filters.forEach {
+                writeUTF(it.name)
+                writeInt(it.color.red)
+                writeInt(it.color.green)
+                writeInt(it.color.blue)
+                writeInt(it.color.alpha)
+                writeUTF(it.symbol.name)
+                writeBoolean(it.enabled)
+            }
+        }
+    }
+
+    /**
+     * @return The saved project, or null if the file is not a project file
+     *         or is from an unsupported version
+     */
+    internal fun readProjectFile(input: DataInputStream): SavedProject? {
+        with(input) {
+            if (readInt() != PROJECT_FILE_MAGIC || readInt() != PROJECT_FILE_VERSION) return null
+            val name = readUTF()
+
+            val traces = (0 until readInt()).map { SavedTrace(Paths.get(readUTF()), readUTF()) }
+
+            val filters = (0 until readInt()).map {
+                val filterName = readUTF()
+                val color = ColorDefinition(readInt(), readInt(), readInt(), readInt())
+                val symbol = EventSymbolStyle.valueOf(readUTF())
+                SavedFilter(filterName, color, symbol, readBoolean())
+            }
+            return SavedProject(name, traces, filters)
+        }
+    }
+
+    /**
+     * Serialize an analysis result, in the form expected by
+     * [writeAnalysisResult].
+     */
+    internal fun serialize(result: Serializable): ByteArray =
+            ByteArrayOutputStream().also { bytes -> ObjectOutputStream(bytes).use { it.writeObject(result) } }.toByteArray()
+
+    /**
+     * Write a serialized analysis result to the given file, marking it as
+     * valid for the given traces checksum.
+     */
+    internal fun writeAnalysisResult(file: Path, checksum: String, serializedResult: ByteArray) {
+        writeAtomically(file) { out ->
+            out.writeInt(ANALYSIS_FILE_MAGIC)
+            out.writeInt(ANALYSIS_FILE_VERSION)
+            out.writeUTF(checksum)
+            out.write(serializedResult)
+        }
+    }
+
+    /**
+     * @return The result stored in the given file, or null if it is not
+     *         valid for the given traces checksum or cannot be read. Invalid
+     *         files are deleted.
+     */
+    internal fun readAnalysisResult(file: Path, checksum: String): Any? {
+        val result = try {
+            DataInputStream(BufferedInputStream(Files.newInputStream(file))).use { input ->
+                if (input.readInt() != ANALYSIS_FILE_MAGIC
+                        || input.readInt() != ANALYSIS_FILE_VERSION
+                        || input.readUTF() != checksum) {
+                    null
+                } else {
+                    ObjectInputStream(input).use { it.readObject() }
+                }
+            }
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Could not read cached analysis results from $file", e)
+            null
+        } catch (e: ClassNotFoundException) {
+            LOGGER.log(Level.WARNING, "Could not read cached analysis results from $file", e)
+            null
+        }
+        if (result == null) Files.deleteIfExists(file)
+        return result
+    }
+
+    /**
+     * Write a file through a temporary one, so that a crash does not leave a
+     * truncated file behind.
+     */
+    private fun writeAtomically(target: Path, writer: (DataOutputStream) -> Unit) {
+        val tmp = target.resolveSibling(target.fileName.toString() + ".tmp")
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(tmp))).use(writer)
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    private fun deleteRecursively(path: Path) {
+        Files.walk(path).use { paths -> paths.sorted(Comparator.reverseOrder()).forEach { Files.deleteIfExists(it) } }
+    }
+
+    // ------------------------------------------------------------------------
+    // Checksums
+    // ------------------------------------------------------------------------
+
+    /**
+     * Compute the checksum of a trace directory.
+     *
+     * Hashing the contents of the streams would take as long as reading
+     * the trace, so only the CTF metadata's contents are hashed, along with
+     * the name, size and modification time of every file.
+     */
+    internal fun traceChecksum(tracePath: Path): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        val longBuffer = ByteBuffer.allocate(java.lang.Long.BYTES)
+        fun updateLong(value: Long) {
+            longBuffer.clear()
+            digest.update(longBuffer.putLong(value).array())
+        }
+
+        val files = Files.walk(tracePath).use { paths -> paths.filter { Files.isRegularFile(it) }.sorted().collect(Collectors.toList()) }
+        files.forEach { file ->
+            digest.update(tracePath.relativize(file).toString().toByteArray(Charsets.UTF_8))
+            updateLong(Files.size(file))
+            updateLong(Files.getLastModifiedTime(file).toMillis())
+            if (file.fileName.toString() == "metadata") digest.update(Files.readAllBytes(file))
+        }
+        return digest.digest().toHexString()
+    }
+
+    /**
+     * Combine the checksums of the traces of a project, in any order.
+     */
+    internal fun projectChecksum(traceChecksums: List<String>): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        traceChecksums.sorted().forEach { digest.update(it.toByteArray(Charsets.UTF_8)) }
+        return digest.digest().toHexString()
+    }
+
+    private fun ByteArray.toHexString() = joinToString("") { String.format("%02x", it) }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project
+
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import com.efficios.jabberwocky.project.TraceProject
+import java.io.IOException
+import java.io.Serializable
+import java.math.BigInteger
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executor
+import java.util.logging.Level
+import java.util.logging.Logger
+import java.util.stream.Collectors
+
+/**
+ * Analysis results of the projects that were closed, kept so that they do
+ * not have to be computed again if the same traces are re-opened.
+ *
+ * When a project is closed, its results are serialized and written ("spilled")
+ * to a directory under [spillDir]. The results of the most recently closed
+ * projects are also kept in memory, as long as their total serialized size
+ * stays under [memoryBudget] bytes. Older ones are evicted from memory and
+ * will be read back from disk if needed. The spilled results of the least
+ * recently used projects are deleted when they take more than [maxSpillSize]
+ * bytes.
+ *
+ * Results, in memory or on disk, are tied to the checksum of their traces
+ * when their project was closed. They are not returned anymore once the
+ * traces changed.
+ *
+ * Results that are not [Serializable] can neither be measured nor spilled,
+ * so they are dropped when their project is closed.
+ *
+ * @param memoryBudget Maximum total size, in bytes, of the results kept in memory
+ * @param spillDir Directory where results are written
+ * @param maxSpillSize Maximum total size, in bytes, of the files under [spillDir]
+ * @param spillExecutor Executor serializing and writing the results
+ */
+internal class ProjectResultsCache(private val memoryBudget: Long,
+                                   private val spillDir: Path,
+                                   private val maxSpillSize: Long,
+                                   private val spillExecutor: Executor) {
+
+    companion object {
+        private val LOGGER = Logger.getLogger(ProjectResultsCache::class.java.name)
+
+        private const val RESULTS_SUFFIX = ".bin"
+    }
+
+    /**
+     * What identifies a project across different [TraceProject] objects: the
+     * sorted paths of its traces. The name is not part of it, a new project
+     * on the same traces usually gets a new name.
+     */
+    data class ProjectKey(val tracePaths: List<Path>) {
+
+        companion object {
+            /**
+             * @return The key of the project, or null if some of its traces
+             *         are not CTF traces, whose path is unknown
+             */
+            fun of(project: TraceProject<*, *>): ProjectKey? {
+                val paths = project.traceCollections.flatMap { it.traces }.map {
+                    (it as? CtfTrace)?.tracePath?.toAbsolutePath() ?: return null
+                }
+                return ProjectKey(paths.sorted())
+            }
+        }
+
+        /** Name of the spill directory of this project */
+        val dirName: String by lazy {
+            val digest = MessageDigest.getInstance("SHA-256")
+            tracePaths.forEach { digest.update(it.toString().toByteArray(Charsets.UTF_8)); digest.update(0.toByte()) }
+            String.format("%064x", BigInteger(1, digest.digest()))
+        }
+    }
+
+    private class Entry(results: Map<String, Serializable>, val checksum: String) {
+        val results = ConcurrentHashMap(results)
+        /** Unknown until the results are spilled */
+        var weight = 0L
+        var inMemory = true
+    }
+
+    /** Access-ordered, so that the first entry is the least recently used */
+    private val entries = LinkedHashMap<ProjectKey, Entry>(16, 0.75f, true)
+    private var totalWeight = 0L
+
+    /**
+     * Keep the results of a project that was closed, and spill them to disk.
+     *
+     * @param key The project's key
+     * @param results The results, keyed by the class name of their analysis
+     */
+    fun put(key: ProjectKey, results: Map<String, Any>) {
+        @Suppress("UNCHECKED_CAST")
+        val serializable = results.filterValues { it is Serializable } as Map<String, Serializable>
+        (results.keys - serializable.keys).forEach { LOGGER.fine { "Dropping results of $it for $key, they are not serializable" } }
+        if (serializable.isEmpty()) return
+
+        val checksum = checksum(key) ?: return
+        val entry = Entry(serializable, checksum)
+        synchronized(this) {
+            entries.put(key, entry)?.let {
+                it.inMemory = false
+                totalWeight -= it.weight
+            }
+        }
+        spillExecutor.execute { spill(key, entry) }
+    }
+
+    /**
+     * Get a cached result of a project.
+     *
+     * @param key The project's key
+     * @param checksum The current checksum of the project's traces, see
+     *                 [checksum]. It goes through all the files of the
+     *                 traces, so callers should compute it once per project.
+     * @param analysisName The class name of the analysis
+     * @return The result, or null if it is neither in memory nor on disk,
+     *         or if the traces changed since it was put
+     */
+    fun get(key: ProjectKey, checksum: String, analysisName: String): Any? {
+        synchronized(this) {
+            val entry = entries[key]
+            if (entry != null && entry.checksum != checksum) {
+                LOGGER.fine { "Traces of $key changed, discarding their results" }
+                entries.remove(key)
+                entry.inMemory = false
+                totalWeight -= entry.weight
+            } else {
+                entry?.results?.get(analysisName)?.let { return it }
+            }
+        }
+
+        val dir = spillDir.resolve(key.dirName)
+        val file = dir.resolve(analysisName + RESULTS_SUFFIX)
+        if (!Files.isRegularFile(file)) return null
+        return ProjectPersistence.readAnalysisResult(file, checksum)?.also { touch(dir) }
+    }
+
+    /**
+     * Total size of the results currently kept in memory, in bytes.
+     */
+    @Synchronized
+    fun getMemoryUsage() = totalWeight
+
+    private fun spill(key: ProjectKey, entry: Entry) {
+        val dir = spillDir.resolve(key.dirName)
+        val dirCreated = try {
+            Files.createDirectories(dir)
+            true
+        } catch (e: IOException) {
+            /* The results will only be kept in memory, as long as they fit */
+            LOGGER.log(Level.WARNING, "Could not spill the analysis results of $key", e)
+            false
+        }
+
+        var weight = 0L
+        entry.results.entries.removeIf { (analysisName, result) ->
+            val bytes = try {
+                ProjectPersistence.serialize(result)
+            } catch (e: IOException) {
+                /* Some object in the result's graph is not serializable */
+                LOGGER.log(Level.WARNING, "Could not serialize the results of $analysisName for $key", e)
+                return@removeIf true
+            }
+            weight += bytes.size
+            if (dirCreated) {
+                try {
+                    ProjectPersistence.writeAnalysisResult(dir.resolve(analysisName + RESULTS_SUFFIX), entry.checksum, bytes)
+                } catch (e: IOException) {
+                    LOGGER.log(Level.WARNING, "Could not spill the results of $analysisName for $key", e)
+                }
+            }
+            false
+        }
+
+        synchronized(this) {
+            entry.weight = weight
+            /* The entry may have been replaced or evicted in the meantime */
+            if (entry.inMemory) totalWeight += weight
+            evict()
+        }
+
+        if (dirCreated) {
+            touch(dir)
+            evictSpilled()
+        }
+    }
+
+    /** Evict the least recently used entries until the budget is respected */
+    private fun evict() {
+        val iterator = entries.values.iterator()
+        while (totalWeight > memoryBudget && iterator.hasNext()) {
+            val entry = iterator.next()
+            iterator.remove()
+            entry.inMemory = false
+            totalWeight -= entry.weight
+        }
+    }
+
+    /** Keep track of the last use of a spill directory, for eviction */
+    private fun touch(dir: Path) {
+        try {
+            Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis()))
+        } catch (e: IOException) {
+            LOGGER.log(Level.FINE, "Could not update the last use of $dir", e)
+        }
+    }
+
+    /**
+     * Delete the spill directories of the least recently used projects until
+     * the files take less than [maxSpillSize] bytes. Only called from the
+     * spill executor.
+     */
+    private fun evictSpilled() {
+        try {
+            val dirs = Files.list(spillDir).use { paths -> paths.filter { Files.isDirectory(it) }.collect(Collectors.toList()) }
+                    .map { Triple(it, directorySize(it), Files.getLastModifiedTime(it)) }
+                    .sortedBy { it.third }
+
+            var totalSize = dirs.map { it.second }.sum()
+            for ((dir, size, _) in dirs) {
+                if (totalSize <= maxSpillSize) break
+                LOGGER.fine { "Evicting spilled analysis results $dir" }
+                Files.walk(dir).use { paths -> paths.sorted(Comparator.reverseOrder()).forEach { Files.deleteIfExists(it) } }
+                totalSize -= size
+            }
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Could not evict spilled analysis results from $spillDir", e)
+        }
+    }
+
+    private fun directorySize(dir: Path): Long =
+            Files.walk(dir).use { paths -> paths.filter { Files.isRegularFile(it) }.mapToLong { Files.size(it) }.sum() }
+
+    /**
+     * Compute the checksum of the current contents of a project's traces.
+     *
+     * @return The checksum, or null if the traces could not be read
+     */
+    fun checksum(key: ProjectKey): String? =
+            try {
+                ProjectPersistence.projectChecksum(key.tracePaths.map { ProjectPersistence.traceChecksum(it) })
+            } catch (e: IOException) {
+                LOGGER.log(Level.WARNING, "Could not compute the checksum of the traces of $key", e)
+                null
+            }
+}
@@ -11,7 +11,17 @@ package org.lttng.scope.project
 
 import com.efficios.jabberwocky.analysis.IAnalysis
 import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.lttng.scope.common.TaskMetrics
 import org.lttng.scope.project.filter.EventFilterDefinition
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.logging.Level
+import java.util.logging.Logger
 
 class ProjectState(project: TraceProject<*, *>) {
 
@@ -20,12 +30,60 @@ class ProjectState(project: TraceProject<*, *>) {
 
 }
 
+/**
+ * Results of the "permanent" analyses of a project.
+ *
+ * Each analysis runs at most once at a time, in its own [JabberwockyTask]:
+ * concurrent requests for the same analysis share the same task, and
+ * different analyses run in parallel.
+ *
+ * An analysis that needs the results of another one gets them from the
+ * same thread: waiting for a thread of the shared pool from one of its
+ * threads could wait forever once all of them do so.
+ */
 class ProjectAnalysisResults(private val project: TraceProject<*, *>) {
 
-    private val analysisResultsMap = mutableMapOf<IAnalysis, Any>()
+    companion object {
+        private val LOGGER = Logger.getLogger(ProjectAnalysisResults::class.java.name)
+
+        /** Shared by all projects, so that the number of analysis threads stays bounded */
+        private val analysisExecutor = Executors.newFixedThreadPool(maxOf(2, Runtime.getRuntime().availableProcessors()),
+                ThreadFactoryBuilder().setNameFormat("project-analysis-%d").setDaemon(true).build())
+
+        /** If the current thread is running an analysis */
+        private val inAnalysis = ThreadLocal.withInitial { false }
+    }
+
+    /**
+     * Run of an analysis task, which is started by whoever comes first: a
+     * thread of the pool, or an analysis that needs its results.
+     */
+    private class AnalysisRun(val task: JabberwockyTask<Any>) : Runnable {
+        private val tracked = TaskMetrics.track(task)
+        private val started = AtomicBoolean(false)
+
+        override fun run() {
+            if (started.compareAndSet(false, true)) tracked.run()
+        }
+    }
+
+    /** Runs of the analyses that are running or finished */
+    private val analysisRuns = ConcurrentHashMap<IAnalysis, AnalysisRun>()
+
+    /** Results restored from a saved project, by analysis class name, not yet claimed by an analysis */
+    private val restoredResults = ConcurrentHashMap<String, Any>()
+
+    /**
+     * Looks up results computed for the same traces by a project that was
+     * closed, by analysis class name. Called from the analysis threads.
+     */
+    @Volatile
+    internal var cachedResultsLoader: ((String) -> Any?)? = null
 
     /**
      * Obtain the results of the given analysis running on the given project.
+     * This blocks until the results are available, see [getAnalysisTask] to
+     * wait for them asynchronously.
      *
      * Note this method does not handle special analysis parameters, like
      * timestamps. It should only be used for "permanent" analysis results, which
@@ -37,20 +95,122 @@ class ProjectAnalysisResults(private val project: TraceProject<*, *>) {
      *            {@link IAnalysis#canExecute} on the given project.
      * @return The results of this analysis. You will have to cast manually to the
      *         real type if you know it.
+     * @throws CancellationException If the analysis was cancelled
      */
-    @Synchronized
     fun getAnalysisResults(analysis: IAnalysis): Any {
-        var result = analysisResultsMap[analysis];
-        if (result != null) {
-            return result;
+        val run = getAnalysisRun(analysis)
+        /* From another analysis, run it here if no pool thread started it yet */
+        if (inAnalysis.get()) run.run()
+        try {
+            return run.task.get()
+        } catch (e: ExecutionException) {
+            /* Rethrow the analysis' own exception */
+            throw e.cause ?: e
         }
+    }
 
-        /* We have not run this analysis yet, let's run it and save the results */
-        // TODO Separate thread/routine?
-        result = analysis.execute(project, null, null);
+    /**
+     * Get the task computing the results of the given analysis, starting it
+     * if it is not running already. A task that failed or was cancelled is
+     * replaced by a new one.
+     *
+     * @param analysis The analysis to run
+     * @return The task, whose value is the analysis' results
+     */
+    fun getAnalysisTask(analysis: IAnalysis): JabberwockyTask<Any> = getAnalysisRun(analysis).task
 
-        analysisResultsMap.put(analysis, result);
-        return result;
+    private fun getAnalysisRun(analysis: IAnalysis): AnalysisRun {
+        var newRun: AnalysisRun? = null
+        val run = analysisRuns.compute(analysis) { _, existing ->
+            if (existing != null && !existing.task.isCancelled) {
+                existing
+            } else {
+                AnalysisRun(createTask(analysis)).also { newRun = it }
+            }
+        }!!
+        /* Submit outside of the map's lock */
+        newRun?.let { analysisExecutor.execute(it) }
+        return run
+    }
+
+    private fun createTask(analysis: IAnalysis): JabberwockyTask<Any> =
+            JabberwockyTask("Running analysis ${analysis.javaClass.simpleName} on ${project.name}") { task ->
+                /* Use the results of a saved project, if there are some */
+                restoredResults.remove(analysis.javaClass.name)?.let { return@JabberwockyTask it }
+                /* Or those of a previous project on the same traces */
+                cachedResultsLoader?.invoke(analysis.javaClass.name)?.let { return@JabberwockyTask it }
+
+                /* Analyses do not report their progress */
+                task.updateProgress(-1L, 1L)
+                val wasInAnalysis = inAnalysis.get()
+                inAnalysis.set(true)
+                try {
+                    val result = analysis.execute(project, null, null)
+                    task.updateProgress(1L, 1L)
+                    result
+                } catch (e: Exception) {
+                    /* Let the next request try again */
+                    analysisRuns.computeIfPresent(analysis) { _, run -> if (run.task === task) null else run }
+                    if (!task.isCancelled) LOGGER.log(Level.WARNING, "Analysis ${analysis.javaClass.name} failed", e)
+                    throw e
+                } finally {
+                    inAnalysis.set(wasInAnalysis)
+                }
+            }
+
+    /**
+     * Cancel the given analysis if it is running, interrupting its thread.
+     * Threads waiting for its results get a [CancellationException].
+     */
+    fun cancelAnalysis(analysis: IAnalysis) {
+        analysisRuns.remove(analysis)?.task?.cancel(true)
+    }
+
+    /**
+     * Cancel all running analyses. Called when the project is disposed.
+     */
+    fun cancelAll() {
+        analysisRuns.keys.toList().forEach { cancelAnalysis(it) }
+    }
+
+    /**
+     * Cancel all running analyses and forget all results, so that they can
+     * be garbage-collected. Called when the project is closed.
+     *
+     * @return The results that were available, keyed by the class name of
+     *         their analysis
+     */
+    fun release(): Map<String, Any> {
+        val results = restoredResults + getComputedResults().mapKeys { it.key.javaClass.name }
+        cancelAll()
+        analysisRuns.clear()
+        restoredResults.clear()
+        return results
+    }
+
+    /**
+     * Get the results of the analyses that completed successfully so far.
+     */
+    fun getComputedResults(): Map<IAnalysis, Any> =
+            analysisRuns.entries
+                    .filter { (_, run) -> run.task.isDone && !run.task.isCancelled }
+                    .mapNotNull { (analysis, run) ->
+                        try {
+                            analysis to run.task.get()
+                        } catch (e: ExecutionException) {
+                            null
+                        }
+                    }
+                    .toMap()
+
+    /**
+     * Provide results loaded from a saved project. They will be returned by
+     * [getAnalysisResults] instead of running the analyses again.
+     *
+     * @param results The results, keyed by the class name of their analysis
+     */
+    fun restoreResults(results: Map<String, Any>) {
+        restoredResults.putAll(results)
     }
 
 }
@@ -72,6 +232,18 @@ class ProjectFilters(private val project: TraceProject<*, *>) {
         if (added) filters.forEach { listener.filterCreated(it) }
     }
 
+    /**
+     * Get the filters that are currently enabled.
+     */
+    @Synchronized
+    fun getEnabledFilters(): List<EventFilterDefinition> = filters.filter { it.isEnabled }
+
+    /**
+     * Get all the filters, enabled or not.
+     */
+    @Synchronized
+    fun getAllFilters(): List<EventFilterDefinition> = filters.toList()
+
     @Synchronized
     fun createFilter(filter: EventFilterDefinition) {
         /* Notify registered listeners about the new filter. */
@@ -114,10 +114,9 @@ class CreateEventFilterDialog : Dialog<EventFilterDefinition>() {
     private fun generateFilterDefinition(): EventFilterDefinition {
         val eventName = eventNameField.text ?: ""
 
-        return EventFilterDefinition(eventName,
+        return createEventNameFilter(eventName,
                 JfxColorFactory.colorToColorDef(symbolColorPicker.value),
-                symbolShapePicker.selectionModel.selectedItem,
-                { event -> event.eventName == eventName })
+                symbolShapePicker.selectionModel.selectedItem)
     }
 
     private class ShapePicker(colorSource: ReadOnlyProperty<Color>) : ComboBox<EventSymbolStyle>() {
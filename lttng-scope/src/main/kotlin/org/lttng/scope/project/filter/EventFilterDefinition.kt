@@ -31,4 +31,11 @@ data class EventFilterDefinition(val name: String,
 
 }
 
+/**
+ * Create a filter matching the events with the given name. The name is also
+ * used as the filter's name.
+ */
+fun createEventNameFilter(eventName: String, color: ColorDefinition, symbol: EventSymbolStyle) =
+        EventFilterDefinition(eventName, color, symbol, { event -> event.eventName == eventName })
+
 fun EventFilterDefinition.getGraphic(): Node = this.symbol.getGraphic(ReadOnlyObjectWrapper(JfxColorFactory.getColorFromDef(color)))
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project.index
+
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.BufferUnderflowException
+import java.nio.ByteBuffer
+import java.nio.LongBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.stream.LongStream
+
+/**
+ * Summary of the events of one trace, built by reading the trace once.
+ *
+ * It contains the number of events and the time range of each CPU and of
+ * each event name, as well as "checkpoints": the timestamp of every
+ * [checkpointInterval]-th event, which give the rank of an event from its
+ * timestamp, give or take one interval.
+ *
+ * Indexes are stored in files by [TraceIndexCache]. The checkpoints, which
+ * are most of the file for big traces, are read directly from the mapped
+ * file.
+ */
+class TraceIndex internal constructor(val nbEvents: Long,
+                                      val checkpointInterval: Int,
+                                      private val cpuRanges: Map<Int, EventRange>,
+                                      private val eventNameRanges: Map<String, EventRange>,
+                                      private val checkpoints: LongBuffer) {
+
+    companion object {
+        /* "SCIX" */
+        private const val FILE_MAGIC = 0x53434958
+        /** Increment when changing the layout of the index files */
+        internal const val FILE_VERSION = 1
+
+        /**
+         * Write an index to the given file.
+         */
+        internal fun write(index: TraceIndex, file: Path) {
+            DataOutputStream(BufferedOutputStream(Files.newOutputStream(file))).use { out ->
+                out.writeInt(FILE_MAGIC)
+                out.writeInt(FILE_VERSION)
+                out.writeLong(index.nbEvents)
+                out.writeInt(index.checkpointInterval)
+
+                out.writeInt(index.cpuRanges.size)
+                index.cpuRanges.forEach { (cpu, range) ->
+                    out.writeInt(cpu)
+                    writeRange(out, range)
+                }
+
+                out.writeInt(index.eventNameRanges.size)
+                index.eventNameRanges.forEach { (name, range) ->
+                    val bytes = name.toByteArray(Charsets.UTF_8)
+                    out.writeInt(bytes.size)
+                    out.write(bytes)
+                    writeRange(out, range)
+                }
+
+                out.writeInt(index.nbCheckpoints)
+                (0 until index.nbCheckpoints).forEach { out.writeLong(index.getCheckpoint(it)) }
+            }
+        }
+
+        /**
+         * Map an index file in memory.
+         *
+         * @return The index, or null if the file is not a valid index file
+         * @throws IOException If the file cannot be read
+         */
+        internal fun map(file: Path): TraceIndex? {
+            val buffer = FileChannel.open(file, StandardOpenOption.READ).use { it.map(FileChannel.MapMode.READ_ONLY, 0, it.size()) }
+            return try {
+                if (buffer.int != FILE_MAGIC || buffer.int != FILE_VERSION) return null
+                val nbEvents = buffer.long
+                val checkpointInterval = buffer.int
+
+                val cpuRanges = (0 until buffer.int).associate { buffer.int to readRange(buffer) }
+                val eventNameRanges = (0 until buffer.int).associate {
+                    val bytes = ByteArray(buffer.int).also { buffer.get(it) }
+                    String(bytes, Charsets.UTF_8) to readRange(buffer)
+                }
+
+                val nbCheckpoints = buffer.int
+                if (buffer.remaining() != nbCheckpoints * java.lang.Long.BYTES) return null
+                TraceIndex(nbEvents, checkpointInterval, cpuRanges, eventNameRanges, buffer.slice().asLongBuffer())
+            } catch (e: BufferUnderflowException) {
+                null
+            } catch (e: NegativeArraySizeException) {
+                null
+            }
+        }
+
+        private fun writeRange(out: DataOutputStream, range: EventRange) {
+            out.writeLong(range.count)
+            out.writeLong(range.first)
+            out.writeLong(range.last)
+        }
+
+        private fun readRange(buffer: ByteBuffer) = EventRange(buffer.long, buffer.long, buffer.long)
+    }
+
+    /**
+     * Number of events, and timestamps of the first and last ones, of a
+     * subset of the events of a trace.
+     */
+    data class EventRange(val count: Long, val first: Long, val last: Long)
+
+    /** Range of the events that happened on the given CPU, or null if there are none */
+    fun getCpuRange(cpu: Int): EventRange? = cpuRanges[cpu]
+
+    /** Range of the events with the given name, or null if there are none */
+    fun getEventNameRange(eventName: String): EventRange? = eventNameRanges[eventName]
+
+    val nbCheckpoints get() = checkpoints.limit()
+
+    /** Timestamp of the event of rank 'index * checkpointInterval' */
+    fun getCheckpoint(index: Int): Long = checkpoints.get(index)
+
+    /**
+     * Builds the index of a trace from its events, given in timestamp order.
+     */
+    internal class Builder(private val checkpointInterval: Int) {
+
+        private class MutableRange(val first: Long) {
+            var count = 0L
+            var last = first
+        }
+
+        private var nbEvents = 0L
+        private val cpuRanges = sortedMapOf<Int, MutableRange>()
+        private val eventNameRanges = sortedMapOf<String, MutableRange>()
+        private val checkpoints = LongStream.builder()
+
+        fun add(timestamp: Long, cpu: Int, eventName: String) {
+            if (nbEvents % checkpointInterval == 0L) checkpoints.add(timestamp)
+            nbEvents++
+            cpuRanges.getOrPut(cpu) { MutableRange(timestamp) }.update(timestamp)
+            eventNameRanges.getOrPut(eventName) { MutableRange(timestamp) }.update(timestamp)
+        }
+
+        private fun MutableRange.update(timestamp: Long) {
+            count++
+            last = timestamp
+        }
+
+        fun build() = TraceIndex(nbEvents, checkpointInterval,
+                cpuRanges.mapValues { EventRange(it.value.count, it.value.first, it.value.last) },
+                eventNameRanges.mapValues { EventRange(it.value.count, it.value.first, it.value.last) },
+                LongBuffer.wrap(checkpoints.build().toArray()))
+    }
+}
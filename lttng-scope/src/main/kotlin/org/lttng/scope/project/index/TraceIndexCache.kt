@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project.index
+
+import org.lttng.scope.project.ProjectPersistence
+import java.io.IOException
+import java.math.BigInteger
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.attribute.FileTime
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.logging.Level
+import java.util.logging.Logger
+import java.util.stream.Collectors
+
+/**
+ * Directory of [TraceIndex] files, one per trace.
+ *
+ * A trace's file is named from the trace's path and checksum (see
+ * [ProjectPersistence.traceChecksum]), so the index of a trace that changed
+ * is simply not found anymore. Files are evicted in
+ * least-recently used order when their total size goes over [maxSize] bytes.
+ *
+ * @param dir Directory of the index files
+ * @param maxSize Maximum total size of the index files, in bytes
+ */
+internal class TraceIndexCache(private val dir: Path, private val maxSize: Long) {
+
+    companion object {
+        private val LOGGER = Logger.getLogger(TraceIndexCache::class.java.name)
+
+        private const val INDEX_SUFFIX = ".idx"
+    }
+
+    /** Indexes mapped so far, by file name */
+    private val mappedIndexes = ConcurrentHashMap<String, TraceIndex>()
+
+    /**
+     * Get the index of a trace.
+     *
+     * @param tracePath The path of the trace
+     * @param traceChecksum The checksum of the trace's current contents
+     * @return The index, or null if there is none for these contents
+     */
+    fun get(tracePath: Path, traceChecksum: String): TraceIndex? {
+        val fileName = fileName(tracePath, traceChecksum)
+        val file = dir.resolve(fileName)
+        if (!Files.isRegularFile(file)) {
+            mappedIndexes.remove(fileName)
+            return null
+        }
+
+        return try {
+            /* Keep track of the last use, for eviction */
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()))
+            mappedIndexes[fileName] ?: TraceIndex.map(file)
+                    ?.also { mappedIndexes[fileName] = it }
+                    ?: run {
+                        LOGGER.info { "Discarding invalid trace index $file" }
+                        Files.deleteIfExists(file)
+                        null
+                    }
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Could not read trace index $file", e)
+            null
+        }
+    }
+
+    /**
+     * Store the index of a trace, then evict the least recently used indexes
+     * if the cache is over its size.
+     *
+     * @param tracePath The path of the trace
+     * @param traceChecksum The checksum of the trace's current contents
+     * @param index The index of these contents
+     * @throws IOException If the index could not be written
+     */
+    fun put(tracePath: Path, traceChecksum: String, index: TraceIndex) {
+        val fileName = fileName(tracePath, traceChecksum)
+        Files.createDirectories(dir)
+        val file = dir.resolve(fileName)
+        val tmp = dir.resolve("$fileName.tmp")
+        TraceIndex.write(index, tmp)
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        evict()
+    }
+
+    @Synchronized
+    private fun evict() {
+        val files = Files.list(dir).use { paths ->
+            paths.filter { it.fileName.toString().endsWith(INDEX_SUFFIX) }.collect(Collectors.toList())
+        }
+                .map { Triple(it, Files.size(it), Files.getLastModifiedTime(it)) }
+                .sortedBy { it.third }
+
+        var totalSize = files.map { it.second }.sum()
+        for ((file, size, _) in files) {
+            if (totalSize <= maxSize) break
+            LOGGER.fine { "Evicting trace index $file" }
+            mappedIndexes.remove(file.fileName.toString())
+            Files.deleteIfExists(file)
+            totalSize -= size
+        }
+    }
+
+    private fun fileName(tracePath: Path, traceChecksum: String): String {
+        val absolutePath = tracePath.toAbsolutePath()
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(absolutePath.toString().toByteArray(Charsets.UTF_8))
+        digest.update(0.toByte())
+        digest.update(traceChecksum.toByteArray(Charsets.UTF_8))
+        return String.format("%064x", BigInteger(1, digest.digest())) + INDEX_SUFFIX
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project.index
+
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.trace.Trace
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import org.lttng.scope.ScopePaths
+import org.lttng.scope.common.LatestTaskExecutor
+import org.lttng.scope.project.ProjectPersistence
+import java.io.IOException
+import java.lang.ref.WeakReference
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * Builds and provides the [TraceIndex]es of the traces of a project, which
+ * event searches use to narrow their scan.
+ *
+ * These indexes are separate from the ones Jabberwocky builds when opening a
+ * trace, which cannot be reused from here. Building them takes a full read of
+ * the project, so it is only done once a project is searched, see
+ * [indexInBackground].
+ *
+ * Indexes are kept under [ScopePaths.cacheDir], so each trace is only
+ * indexed once, until it changes. The size of the cache is bounded by the
+ * [MAX_SIZE_PROPERTY] system property, in megabytes.
+ */
+object TraceIndexer {
+
+    private val LOGGER = Logger.getLogger(TraceIndexer::class.java.name)
+
+    const val MAX_SIZE_PROPERTY = "lttng-scope.traceIndexCache.maxMB"
+    private const val DEFAULT_MAX_SIZE_MB = 512L
+    private const val BYTES_PER_MB = 1024L * 1024L
+
+    private const val INDEX_DIR_NAME = "trace-index"
+
+    /** One checkpoint per this many events of a trace */
+    private const val CHECKPOINT_INTERVAL = 10_000
+    /** Check for cancellation and report progress every this many events */
+    private const val CHECK_INTERVAL = 100_000L
+
+    private val cache = TraceIndexCache(ScopePaths.cacheDir.resolve(INDEX_DIR_NAME),
+            Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE_MB) * BYTES_PER_MB)
+
+    /** Indexing a new project cancels the indexing of the previous one */
+    private val indexingExecutor = LatestTaskExecutor(1)
+
+    /** Project whose indexing was started last */
+    private var indexingProject = WeakReference<TraceProject<*, *>>(null)
+
+    /**
+     * Checksums of the opened traces, computed once per trace object. The
+     * checksum goes through all the files of the trace, which is too slow to
+     * do on every lookup.
+     */
+    private val checksums: Cache<CtfTrace, String> = CacheBuilder.newBuilder().weakKeys().build()
+
+    /**
+     * Get the indexes of all the traces of a project. This does not build
+     * missing indexes, see [indexInBackground].
+     *
+     * @return The indexes, or null if some traces are not indexed
+     */
+    @JvmStatic
+    fun getIndexes(project: TraceProject<*, *>): Map<Trace<*>, TraceIndex>? {
+        return project.traceCollections.flatMap { it.traces }.associate { trace ->
+            val index = (trace as? CtfTrace)?.let { getIndex(it) } ?: return null
+            trace to index
+        }
+    }
+
+    /**
+     * Index the traces of a project that are not indexed yet, in a background
+     * task. Nothing is done if this project's indexing was already started.
+     */
+    @JvmStatic
+    @Synchronized
+    fun indexInBackground(project: TraceProject<*, *>) {
+        if (indexingProject.get() === project) return
+        indexingProject = WeakReference(project)
+        indexingExecutor.schedule(JabberwockyTask<Unit>("Indexing traces of ${project.name}") { task ->
+            buildMissingIndexes(project, task)
+        })
+    }
+
+    private fun getIndex(trace: CtfTrace): TraceIndex? = getChecksum(trace)?.let { cache.get(trace.tracePath, it) }
+
+    private fun getChecksum(trace: CtfTrace): String? {
+        checksums.getIfPresent(trace)?.let { return it }
+        return try {
+            ProjectPersistence.traceChecksum(trace.tracePath).also { checksums.put(trace, it) }
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Could not compute the checksum of ${trace.tracePath}", e)
+            null
+        }
+    }
+
+    private fun buildMissingIndexes(project: TraceProject<*, *>, task: JabberwockyTask<Unit>) {
+        val builders = project.traceCollections
+                .flatMap { it.traces }
+                .filterIsInstance<CtfTrace>()
+                .filter { getChecksum(it) != null && getIndex(it) == null }
+                .associate { it as Trace<*> to TraceIndex.Builder(CHECKPOINT_INTERVAL) }
+        if (builders.isEmpty()) return
+
+        /* Read the project once, for all the traces to index */
+        val projectStart = project.startTime
+        val duration = maxOf(1L, project.endTime - projectStart)
+        project.iterator().use { iter ->
+            var nbRead = 0L
+            while (iter.hasNext()) {
+                val event = iter.next()
+                builders[event.trace]?.add(event.timestamp, event.cpu, event.eventName)
+
+                if (++nbRead % CHECK_INTERVAL == 0L) {
+                    if (task.isCancelled) return
+                    task.updateProgress(event.timestamp - projectStart, duration)
+                }
+            }
+        }
+
+        builders.forEach { (trace, builder) ->
+            val ctfTrace = trace as CtfTrace
+            val tracePath = ctfTrace.tracePath
+            try {
+                cache.put(tracePath, getChecksum(ctfTrace)!!, builder.build())
+            } catch (e: IOException) {
+                LOGGER.log(Level.WARNING, "Could not write the index of $tracePath", e)
+            }
+        }
+    }
+}
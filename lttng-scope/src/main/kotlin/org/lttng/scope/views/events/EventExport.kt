@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import org.lttng.scope.project.filter.EventFilterDefinition
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.logging.Level
+import java.util.logging.Logger
+
+/**
+ * File formats to which events can be exported.
+ */
+enum class EventExportFormat(val description: String, val extension: String) {
+    /** One line per event, readable by any spreadsheet or CSV library. */
+    CSV("CSV file", "csv"),
+    /** Compact binary format, see [ColumnarEventWriter]. */
+    COLUMNAR("Columnar binary file", "sevt");
+
+    companion object {
+        /**
+         * Get the format matching the extension of a file name, ignoring case.
+         *
+         * @return The format, or null if the name has no known extension
+         */
+        @JvmStatic
+        fun fromFileName(fileName: String): EventExportFormat? {
+            val extension = fileName.substringAfterLast('.', "")
+            return values().firstOrNull { it.extension.equals(extension, ignoreCase = true) }
+        }
+    }
+
+    internal fun createWriter(channel: FileChannel): EventExportWriter = when (this) {
+        CSV -> CsvEventWriter(channel)
+        COLUMNAR -> ColumnarEventWriter(channel)
+    }
+}
+
+/**
+ * Export of the events of a trace project to a file.
+ *
+ * Events are streamed from the project's iterator straight to the output
+ * file, so the memory usage does not depend on the number of exported events.
+ *
+ * @param project The project whose events to export
+ * @param range The time range to export, inclusively
+ * @param filters If not empty, only events matching at least one of these
+ *                filters are exported
+ * @param format The output format
+ * @param target The output file, it is overwritten if it exists
+ */
+internal class EventExport(private val project: TraceProject<*, *>,
+                           private val range: TimeRange,
+                           private val filters: List<EventFilterDefinition>,
+                           private val format: EventExportFormat,
+                           private val target: Path) {
+
+    companion object {
+        private val LOGGER = Logger.getLogger(EventExport::class.java.name)
+
+        /** Check for cancellation and report progress every this many events */
+        private const val CHECK_INTERVAL = 10_000
+    }
+
+    fun createTask(): JabberwockyTask<Long> = JabberwockyTask("Exporting events to ${target.fileName}") { task -> export(task) }
+
+    /**
+     * @return The number of exported events
+     */
+    private fun export(task: JabberwockyTask<Long>): Long {
+        val startTime = range.startTime
+        val endTime = range.endTime
+        val duration = maxOf(1L, endTime - startTime)
+        var nbExported = 0L
+        var completed = false
+
+        try {
+            FileChannel.open(target,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING).use { channel ->
+                format.createWriter(channel).use { writer ->
+                    project.iterator().use { iter ->
+                        iter.seek(startTime)
+                        var nbRead = 0L
+                        while (iter.hasNext()) {
+                            val event = iter.next()
+                            if (event.timestamp > endTime) break
+
+                            if (filters.isEmpty() || filters.any { it.predicate(event) }) {
+                                writer.write(event)
+                                nbExported++
+                            }
+
+                            if (++nbRead % CHECK_INTERVAL == 0L) {
+                                if (task.isCancelled) break
+                                task.updateProgress(event.timestamp - startTime, duration)
+                            }
+                        }
+                    }
+                }
+            }
+            completed = !task.isCancelled
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Error exporting events to $target", e)
+            throw e
+        } finally {
+            /* Do not leave a truncated file behind, whatever stopped the export. */
+            if (!completed) deleteTarget()
+        }
+
+        task.updateProgress(duration, duration)
+        return nbExported
+    }
+
+    private fun deleteTarget() {
+        try {
+            Files.deleteIfExists(target)
+        } catch (e: IOException) {
+            LOGGER.log(Level.WARNING, "Could not delete incomplete export file $target", e)
+        }
+    }
+}
+
+/**
+ * Writer of events to an export file. Events must be written in timestamp order.
+ */
+internal interface EventExportWriter : AutoCloseable {
+
+    fun write(event: TraceEvent)
+
+    /** Flush the remaining buffered data. This does not close the underlying channel. */
+    override fun close()
+}
+
+/**
+ * Buffered writes to a channel, the buffer being written out whenever it is full.
+ */
+internal class ChannelOutput(private val channel: FileChannel, bufferSize: Int = 1 shl 20) {
+
+    private val buffer = ByteBuffer.allocateDirect(bufferSize)
+
+    fun putInt(value: Int) {
+        ensureRemaining(Integer.BYTES)
+        buffer.putInt(value)
+    }
+
+    fun putLong(value: Long) {
+        ensureRemaining(java.lang.Long.BYTES)
+        buffer.putLong(value)
+    }
+
+    fun putBytes(bytes: ByteArray) {
+        var offset = 0
+        while (offset < bytes.size) {
+            if (!buffer.hasRemaining()) flush()
+            val length = minOf(buffer.remaining(), bytes.size - offset)
+            buffer.put(bytes, offset, length)
+            offset += length
+        }
+    }
+
+    fun flush() {
+        buffer.flip()
+        while (buffer.hasRemaining()) {
+            channel.write(buffer)
+        }
+        buffer.clear()
+    }
+
+    private fun ensureRemaining(nbBytes: Int) {
+        if (buffer.remaining() < nbBytes) flush()
+    }
+}
+
+/**
+ * CSV writer, one line per event. Timestamps are written in nanoseconds,
+ * without any formatting, so that they can be processed by other tools.
+ */
+internal class CsvEventWriter(channel: FileChannel) : EventExportWriter {
+
+    companion object {
+        private const val HEADER = "timestamp,trace,cpu,event,fields\n"
+    }
+
+    private val output = ChannelOutput(channel)
+    private val line = StringBuilder()
+
+    init {
+        output.putBytes(HEADER.toByteArray(Charsets.UTF_8))
+    }
+
+    override fun write(event: TraceEvent) {
+        line.setLength(0)
+        line.append(event.timestamp).append(',')
+        appendQuoted(event.trace.name)
+        line.append(',').append(event.cpu).append(',')
+        appendQuoted(event.eventName)
+        line.append(',')
+        appendQuoted(event.fields.entries.joinToString(" ") { "${it.key}=${it.value}" })
+        line.append('\n')
+        output.putBytes(line.toString().toByteArray(Charsets.UTF_8))
+    }
+
+    override fun close() {
+        output.flush()
+    }
+
+    /** Append a value, quoted only if it contains characters that need it. */
+    private fun appendQuoted(value: String) {
+        if (value.none { it == ',' || it == '"' || it == '\n' || it == '\r' }) {
+            line.append(value)
+        } else {
+            line.append('"').append(value.replace("\"", "\"\"")).append('"')
+        }
+    }
+}
+
+/**
+ * Writer of the columnar binary format. The file is made of a header, a
+ * sequence of blocks of at most [BLOCK_SIZE] events, and an end marker.
+ *
+ * Header: the [MAGIC] bytes, then the format version (int).
+ *
+ * Each block:
+ *  - number of events in the block (int)
+ *  - string table: number of strings (int), then for each string its
+ *    UTF-8 length (int) and bytes
+ *  - timestamps column (long), each one being the delta from the previous
+ *    event of the block. The first one is absolute.
+ *  - CPU column (int)
+ *  - trace name column (int, index in the string table)
+ *  - event name column (int, index in the string table)
+ *  - field count column (int)
+ *  - fields: for each field of each event, in order, the indexes of its
+ *    name and of its value (as a string) in the string table (2 ints)
+ *
+ * End marker: a block of 0 events.
+ *
+ * All numbers are big-endian. Only one block is kept in memory at a time.
+ */
+internal class ColumnarEventWriter(channel: FileChannel) : EventExportWriter {
+
+    companion object {
+        val MAGIC = "SCOPEEVT".toByteArray(Charsets.US_ASCII)
+        const val VERSION = 1
+        const val BLOCK_SIZE = 65_536
+    }
+
+    private val output = ChannelOutput(channel)
+
+    private val timestamps = LongArray(BLOCK_SIZE)
+    private val cpus = IntArray(BLOCK_SIZE)
+    private val traceIds = IntArray(BLOCK_SIZE)
+    private val nameIds = IntArray(BLOCK_SIZE)
+    private val fieldCounts = IntArray(BLOCK_SIZE)
+    /* Name and value string IDs of the fields, interleaved */
+    private var fieldIds = IntArray(BLOCK_SIZE * 2)
+    private var nbFieldIds = 0
+    private val strings = LinkedHashMap<String, Int>()
+    private var nbEvents = 0
+
+    init {
+        output.putBytes(MAGIC)
+        output.putInt(VERSION)
+    }
+
+    override fun write(event: TraceEvent) {
+        val i = nbEvents
+        timestamps[i] = event.timestamp
+        cpus[i] = event.cpu
+        traceIds[i] = stringId(event.trace.name)
+        nameIds[i] = stringId(event.eventName)
+        fieldCounts[i] = event.fields.size
+        event.fields.forEach { name, value ->
+            addFieldId(stringId(name))
+            addFieldId(stringId(value.toString()))
+        }
+
+        nbEvents++
+        if (nbEvents == BLOCK_SIZE) writeBlock()
+    }
+
+    override fun close() {
+        if (nbEvents > 0) writeBlock()
+        /* End marker */
+        output.putInt(0)
+        output.flush()
+    }
+
+    private fun stringId(string: String) = strings.getOrPut(string) { strings.size }
+
+    private fun addFieldId(id: Int) {
+        if (nbFieldIds == fieldIds.size) fieldIds = fieldIds.copyOf(fieldIds.size * 2)
+        fieldIds[nbFieldIds++] = id
+    }
+
+    private fun writeBlock() {
+        output.putInt(nbEvents)
+
+        output.putInt(strings.size)
+        strings.keys.forEach {
+            val bytes = it.toByteArray(Charsets.UTF_8)
+            output.putInt(bytes.size)
+            output.putBytes(bytes)
+        }
+
+        var previousTs = 0L
+        for (i in 0 until nbEvents) {
+            output.putLong(timestamps[i] - previousTs)
+            previousTs = timestamps[i]
+        }
+        for (i in 0 until nbEvents) output.putInt(cpus[i])
+        for (i in 0 until nbEvents) output.putInt(traceIds[i])
+        for (i in 0 until nbEvents) output.putInt(nameIds[i])
+        for (i in 0 until nbEvents) output.putInt(fieldCounts[i])
+        for (i in 0 until nbFieldIds) output.putInt(fieldIds[i])
+
+        /* Reset for the next block. The field ID array keeps its size. */
+        nbEvents = 0
+        nbFieldIds = 0
+        strings.clear()
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import javafx.scene.control.Alert
+import javafx.scene.control.Button
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.Region
+import javafx.stage.FileChooser
+import org.lttng.scope.ScopePaths
+import org.lttng.scope.common.jfx.JfxUtils
+import java.nio.file.Files
+import java.nio.file.Path
+
+private const val BUTTON_TEXT = "Export..."
+private const val BUTTON_TOOLTIP = "Export the events of the selected time range (or of the whole project " +
+        "if there is no selected range) to a file. If some filters are enabled, only the events " +
+        "matching them are exported."
+
+private const val FILE_CHOOSER_TITLE = "Export Events"
+
+private const val ERROR_ALERT_TITLE = "Error exporting events"
+private const val ERROR_ALERT_WIDTH = 500.0
+
+/**
+ * Button asking for a target file, then exporting the events to it.
+ */
+class EventExportButton(private val tableControl: EventTableControl) : Button(BUTTON_TEXT) {
+
+    private var lastUsedDirectory: Path? = ScopePaths.homeDir
+
+    init {
+        tooltip = Tooltip(BUTTON_TOOLTIP)
+        setOnAction { startExport() }
+    }
+
+    private fun startExport() {
+        val viewCtx = tableControl.viewContext
+        val project = viewCtx.traceProject ?: return
+
+        val formats = EventExportFormat.values().associate {
+            FileChooser.ExtensionFilter(it.description, "*.${it.extension}") to it
+        }
+        val chooser = FileChooser().apply {
+            title = FILE_CHOOSER_TITLE
+            initialFileName = "${project.name}.${EventExportFormat.CSV.extension}"
+            extensionFilters.addAll(formats.keys)
+            lastUsedDirectory?.let {
+                if (Files.isDirectory(it)) initialDirectory = it.toFile()
+            }
+        }
+        val target = chooser.showSaveDialog(scene?.window)?.toPath() ?: return
+        lastUsedDirectory = target.parent
+
+        /* The extension the user typed wins over the selected filter */
+        val format = EventExportFormat.fromFileName(target.fileName.toString())
+                ?: formats[chooser.selectedExtensionFilter]
+                ?: EventExportFormat.CSV
+
+        /* A selection of a single timestamp means there is no selected range. */
+        val selection = viewCtx.selectionTimeRange
+        val range = if (selection.startTime < selection.endTime) selection else viewCtx.getCurrentProjectFullRange()
+
+        val task = tableControl.exportEvents(range, format, target) ?: return
+        task.setOnFailed { showError(task.exception?.message ?: "") }
+    }
+
+    private fun showError(message: String) {
+        with(Alert(Alert.AlertType.ERROR)) {
+            title = ERROR_ALERT_TITLE
+            contentText = message
+            with(dialogPane) {
+                minHeight = Region.USE_PREF_SIZE
+                minWidth = ERROR_ALERT_WIDTH
+            }
+            show()
+            JfxUtils.centerDialogOnScreen(this, this@EventExportButton)
+        }
+    }
+}
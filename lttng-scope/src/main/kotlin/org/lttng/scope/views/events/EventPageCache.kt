@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.trace.Trace
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.FieldValue
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import java.util.LinkedList
+
+/**
+ * Bounded cache of the event pages recently shown in the event table, so that
+ * going back to a previously-seen location does not need to read the trace
+ * again.
+ *
+ * Pages are not kept as lists of [TraceEvent]s, but column-wise: primitive
+ * arrays of timestamps and CPUs, IDs into a per-page string table for event
+ * and field names, and IDs into a per-page table of distinct field values,
+ * found through per-event offsets. Event objects are only re-created when the
+ * table asks for them.
+ *
+ * Field values stay [FieldValue] objects rather than bytes in a buffer: their
+ * types are Jabberwocky's, and the same values (names of processes, IDs of
+ * threads, ...) come back in most events of a page, so storing each distinct
+ * value once already saves most of the memory.
+ *
+ * @param maxEvents Maximum number of events kept in the cache, all pages
+ *                  combined. Least-recently used pages get evicted first.
+ * @param minMargin Minimum number of events a page must have on each side of
+ *                  a requested timestamp to be used for it, unless the page
+ *                  reaches the start or end of the project.
+ */
+internal class EventPageCache(private val maxEvents: Int, private val minMargin: Int) {
+
+    /** Cached events, and the index of the first one at or after the requested timestamp. */
+    class CachedEvents(val events: List<TraceEvent>, val index: Int)
+
+    /** Pages, most-recently used first */
+    private val pages = LinkedList<EventPage>()
+    private var nbCachedEvents = 0
+
+    /**
+     * Add a page to the cache.
+     *
+     * @param events The contiguous events of the page, in timestamp order
+     * @param reachesStart If there are no events before this page in the project
+     * @param reachesEnd If there are no events after this page in the project
+     */
+    @Synchronized
+    fun put(events: List<TraceEvent>, reachesStart: Boolean, reachesEnd: Boolean) {
+        if (events.isEmpty() || events.size > maxEvents) return
+
+        pages.addFirst(EventPage(events, reachesStart, reachesEnd))
+        nbCachedEvents += events.size
+
+        while (nbCachedEvents > maxEvents) {
+            nbCachedEvents -= pages.removeLast().size
+        }
+    }
+
+    /**
+     * Look for a cached page that contains the given timestamp, with enough
+     * events around it.
+     *
+     * @return The events of the page, or null if no cached page can be used
+     */
+    @Synchronized
+    fun lookup(timestamp: Long): CachedEvents? {
+        val iter = pages.iterator()
+        while (iter.hasNext()) {
+            val page = iter.next()
+            val index = page.lowerBound(timestamp)
+            val enoughBefore = (index >= minMargin || page.reachesStart)
+            val enoughAfter = (page.size - index >= minMargin || page.reachesEnd)
+            if (enoughBefore && enoughAfter) {
+                /* Mark the page as the most recently used. */
+                iter.remove()
+                pages.addFirst(page)
+                return CachedEvents(EventPageView(page), index)
+            }
+        }
+        return null
+    }
+
+    @Synchronized
+    fun clear() {
+        pages.clear()
+        nbCachedEvents = 0
+    }
+}
+
+/**
+ * Column-wise copy of a list of events.
+ */
+private class EventPage(events: List<TraceEvent>, val reachesStart: Boolean, val reachesEnd: Boolean) {
+
+    val size = events.size
+
+    private val timestamps = LongArray(size)
+    private val cpus = IntArray(size)
+    private val traceIds = IntArray(size)
+    private val nameIds = IntArray(size)
+
+    /** Fields of event 'i' are at indexes [fieldOffsets[i], fieldOffsets[i + 1]) of the field arrays. */
+    private val fieldOffsets = IntArray(size + 1)
+    private val fieldNameIds: IntArray
+    private val fieldValueIds: IntArray
+
+    private val traces: Array<Trace<*>>
+    private val strings: Array<String>
+    private val values: Array<FieldValue>
+
+    /** Attributes of the events, the same map objects are usually shared by many events */
+    private val attributes = events.map { it.attributes }
+
+    init {
+        val traceTable = LinkedHashMap<Trace<*>, Int>()
+        val stringTable = LinkedHashMap<String, Int>()
+        val valueTable = LinkedHashMap<FieldValue, Int>()
+        val fieldNameIdsList = ArrayList<Int>()
+        val fieldValueIdsList = ArrayList<Int>()
+
+        events.forEachIndexed { i, event ->
+            timestamps[i] = event.timestamp
+            cpus[i] = event.cpu
+            traceIds[i] = traceTable.getOrPut(event.trace) { traceTable.size }
+            nameIds[i] = stringTable.getOrPut(event.eventName) { stringTable.size }
+
+            fieldOffsets[i] = fieldValueIdsList.size
+            event.fields.forEach { name, value ->
+                fieldNameIdsList.add(stringTable.getOrPut(name) { stringTable.size })
+                fieldValueIdsList.add(valueTable.getOrPut(value) { valueTable.size })
+            }
+        }
+        fieldOffsets[size] = fieldValueIdsList.size
+
+        fieldNameIds = fieldNameIdsList.toIntArray()
+        fieldValueIds = fieldValueIdsList.toIntArray()
+        traces = traceTable.keys.toTypedArray()
+        strings = stringTable.keys.toTypedArray()
+        values = valueTable.keys.toTypedArray()
+    }
+
+    /** Index of the first event whose timestamp is equal or greater than 'timestamp'. */
+    fun lowerBound(timestamp: Long): Int {
+        var low = 0
+        var high = size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (timestamps[mid] < timestamp) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    /**
+     * Re-create the event at the given index.
+     */
+    fun decode(index: Int): TraceEvent {
+        val fields = LinkedHashMap<String, FieldValue>()
+        for (i in fieldOffsets[index] until fieldOffsets[index + 1]) {
+            fields[strings[fieldNameIds[i]]] = values[fieldValueIds[i]]
+        }
+        return BaseTraceEvent(traces[traceIds[index]], timestamps[index], cpus[index], strings[nameIds[index]], fields, attributes[index])
+    }
+}
+
+/**
+ * List view of a cached page, which creates event objects only when they are
+ * requested. The table usually only asks for the rows that are displayed.
+ */
+private class EventPageView(private val page: EventPage) : AbstractList<TraceEvent>(), RandomAccess {
+
+    private val decodedEvents = arrayOfNulls<TraceEvent>(page.size)
+
+    override val size = page.size
+
+    override fun get(index: Int): TraceEvent {
+        decodedEvents[index]?.let { return it }
+        return page.decode(index).also { decodedEvents[index] = it }
+    }
+}
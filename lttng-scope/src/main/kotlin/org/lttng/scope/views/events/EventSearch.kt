@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import org.lttng.scope.project.index.TraceIndex
+import org.lttng.scope.project.index.TraceIndexer
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Criteria of an event search. Criteria that are null are ignored, an event
+ * has to match all the other ones.
+ *
+ * @param eventName Exact name of the event type
+ * @param fieldRegex Regex that must be found in at least one of the event's
+ *                   fields, represented as "name=value"
+ * @param cpu CPU on which the event happened
+ */
+data class EventSearchQuery(val eventName: String?,
+                            val fieldRegex: Regex?,
+                            val cpu: Int?) {
+
+    val isEmpty get() = (eventName == null && fieldRegex == null && cpu == null)
+
+    fun matches(event: TraceEvent): Boolean {
+        if (cpu != null && event.cpu != cpu) return false
+        if (eventName != null && event.eventName != eventName) return false
+        if (fieldRegex != null && event.fields.none { fieldRegex.containsMatchIn("${it.key}=${it.value}") }) return false
+        return true
+    }
+}
+
+/**
+ * Position of a search match: its timestamp, and its rank among the matches
+ * that have this same timestamp.
+ */
+data class EventSearchMatch(val timestamp: Long, val rank: Int)
+
+/**
+ * Results of an event search. They are populated progressively while the
+ * background scan runs, and can be used to navigate between matches at any time.
+ *
+ * Only the number of matching events at each timestamp is kept, it is all we
+ * need to go to them in the event table.
+ */
+class EventSearchResults(val query: EventSearchQuery) {
+
+    /** Number of matches per timestamp */
+    private val matchCounts = ConcurrentSkipListMap<Long, AtomicInteger>()
+    private val nbMatches = AtomicLong()
+
+    val matchCount get() = nbMatches.get()
+
+    @Volatile
+    var isComplete = false
+        internal set
+
+    internal fun addMatch(timestamp: Long) {
+        matchCounts.computeIfAbsent(timestamp) { AtomicInteger() }.incrementAndGet()
+        nbMatches.incrementAndGet()
+    }
+
+    /** First match strictly after 'timestamp', or null if there is none (yet). */
+    fun nextMatch(timestamp: Long): EventSearchMatch? =
+            matchCounts.higherKey(timestamp)?.let { EventSearchMatch(it, 0) }
+
+    /** Last match strictly before 'timestamp', or null if there is none (yet). */
+    fun previousMatch(timestamp: Long): EventSearchMatch? =
+            matchCounts.lowerEntry(timestamp)?.let { EventSearchMatch(it.key, it.value.get() - 1) }
+
+    /** Match following the given one, or null if there is none (yet). */
+    fun nextMatch(match: EventSearchMatch): EventSearchMatch? {
+        val count = matchCounts[match.timestamp]?.get() ?: 0
+        return if (match.rank + 1 < count) EventSearchMatch(match.timestamp, match.rank + 1) else nextMatch(match.timestamp)
+    }
+
+    /** Match preceding the given one, or null if there is none. */
+    fun previousMatch(match: EventSearchMatch): EventSearchMatch? =
+            if (match.rank > 0) EventSearchMatch(match.timestamp, match.rank - 1) else previousMatch(match.timestamp)
+}
+
+/**
+ * Scan of a whole trace project looking for events matching a query.
+ *
+ * The project's time range is split in one slice per available core, each
+ * slice being read by its own iterator. Matches are added to the results
+ * as soon as they are found.
+ *
+ * If the project's traces are indexed (see [TraceIndexer]), the scan is
+ * restricted to the time range in which the searched event name and CPU
+ * appear, and the slices are chosen to have about as many events each.
+ * Otherwise the slices have the same duration. Either way, each slice goes
+ * through all its events. A complete scan of a project that is not indexed
+ * starts its indexing, for the next searches.
+ */
+internal class EventSearchScan(private val project: TraceProject<*, *>,
+                               private val results: EventSearchResults,
+                               private val updateCb: (EventSearchResults) -> Unit) {
+
+    companion object {
+        private val NB_PARTITIONS = Runtime.getRuntime().availableProcessors()
+
+        /** Check for cancellation and report progress every this many events */
+        private const val CHECK_INTERVAL = 10_000
+
+        private val scanExecutor = Executors.newFixedThreadPool(NB_PARTITIONS,
+                ThreadFactoryBuilder().setNameFormat("event-search-%d").setDaemon(true).build())
+    }
+
+    private val query = results.query
+
+    fun createTask(): JabberwockyTask<Unit> = JabberwockyTask("Searching events") { task -> scan(task) }
+
+    private fun scan(task: JabberwockyTask<Unit>) {
+        val indexes = TraceIndexer.getIndexes(project)?.values
+        val (scanStart, scanEnd) = if (indexes == null) {
+            project.startTime to project.endTime
+        } else {
+            indexedScanRange(indexes) ?: run {
+                /* No event of the project can match, there is nothing to read */
+                results.isComplete = true
+                task.updateProgress(1L, 1L)
+                updateCb(results)
+                return
+            }
+        }
+        val bounds = indexes?.let { balancedBounds(it, scanStart, scanEnd) } ?: timeBounds(scanStart, scanEnd)
+
+        /* How much of each slice was scanned so far, in nanoseconds. */
+        val scanned = AtomicLongArray(NB_PARTITIONS)
+        val totalDuration = maxOf(1L, scanEnd - scanStart)
+
+        val reportProgress = {
+            val done = (0 until NB_PARTITIONS).map { scanned.get(it) }.sum()
+            task.updateProgress(done, totalDuration)
+            updateCb(results)
+        }
+
+        val futures = (0 until NB_PARTITIONS).map { idx ->
+            scanExecutor.submit(Callable<Unit> {
+                scanSlice(task, bounds[idx], bounds[idx + 1], idx == NB_PARTITIONS - 1) { scannedUpTo ->
+                    scanned.set(idx, scannedUpTo - bounds[idx])
+                    reportProgress()
+                }
+            })
+        }
+        futures.forEach { it.get() }
+
+        if (task.isCancelled) return
+        results.isComplete = true
+        reportProgress()
+
+        /* Index after the scan rather than during it, both would read the whole project */
+        if (indexes == null) TraceIndexer.indexInBackground(project)
+    }
+
+    /** Bounds of slices of equal durations */
+    private fun timeBounds(start: Long, end: Long): List<Long> {
+        val sliceDuration = maxOf(1L, (end - start) / NB_PARTITIONS)
+        return (0..NB_PARTITIONS).map { if (it == NB_PARTITIONS) end else minOf(end, start + it * sliceDuration) }
+    }
+
+    /**
+     * Bounds of slices with about the same number of events, placed on the
+     * traces' checkpoints.
+     */
+    private fun balancedBounds(indexes: Collection<TraceIndex>, start: Long, end: Long): List<Long> {
+        val checkpoints = indexes
+                .flatMap { index -> (0 until index.nbCheckpoints).map { index.getCheckpoint(it) } }
+                .filter { it > start && it < end }
+                .sorted()
+        if (checkpoints.size < NB_PARTITIONS) return timeBounds(start, end)
+
+        val innerBounds = (1 until NB_PARTITIONS).map { checkpoints[it * checkpoints.size / NB_PARTITIONS] }
+        return listOf(start) + innerBounds + end
+    }
+
+    /**
+     * Time range of the project in which events matching the query can be,
+     * according to the traces' indexes.
+     *
+     * @return The range, or null if no event can match
+     */
+    private fun indexedScanRange(indexes: Collection<TraceIndex>): Pair<Long, Long>? {
+        /* For each criteria, the ranges of the traces that have matching events */
+        val constraints = listOfNotNull(
+                query.eventName?.let { name -> indexes.mapNotNull { it.getEventNameRange(name) } },
+                query.cpu?.let { cpu -> indexes.mapNotNull { it.getCpuRange(cpu) } })
+        if (constraints.any { it.isEmpty() }) return null
+
+        val start = constraints.map { ranges -> ranges.map { it.first }.reduce { a, b -> minOf(a, b) } }
+                .fold(project.startTime) { a, b -> maxOf(a, b) }
+        val end = constraints.map { ranges -> ranges.map { it.last }.reduce { a, b -> maxOf(a, b) } }
+                .fold(project.endTime) { a, b -> minOf(a, b) }
+        return if (start <= end) start to end else null
+    }
+
+    /**
+     * Scan one slice of the project. A slice includes its start and excludes
+     * its end, unless it is the last slice of the project.
+     */
+    private fun scanSlice(task: JabberwockyTask<Unit>,
+                          sliceStart: Long, sliceEnd: Long, includeEnd: Boolean,
+                          progressCb: (Long) -> Unit) {
+        project.iterator().use { iter ->
+            iter.seek(sliceStart)
+            var nbRead = 0L
+            while (iter.hasNext()) {
+                val event = iter.next()
+                val ts = event.timestamp
+                if (ts > sliceEnd || (ts == sliceEnd && !includeEnd)) break
+
+                if (query.matches(event)) results.addMatch(ts)
+
+                if (++nbRead % CHECK_INTERVAL == 0L) {
+                    if (task.isCancelled) return
+                    progressCb(ts)
+                }
+            }
+        }
+        progressCb(sliceEnd)
+    }
+}
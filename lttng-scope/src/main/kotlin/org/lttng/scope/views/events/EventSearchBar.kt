@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import javafx.scene.control.Button
+import javafx.scene.control.Label
+import javafx.scene.control.TextField
+import javafx.scene.control.ToolBar
+import java.util.regex.PatternSyntaxException
+
+/**
+ * Tool bar to search the whole trace project for events, and to jump from
+ * one match to another.
+ */
+class EventSearchBar(private val tableControl: EventTableControl) : ToolBar() {
+
+    companion object {
+        private const val EVENT_NAME_PROMPT = "Event type"
+        private const val FIELD_REGEX_PROMPT = "Field value (regex)"
+        private const val CPU_PROMPT = "CPU"
+
+        private const val SEARCH_BUTTON_TEXT = "Search"
+        private const val PREVIOUS_BUTTON_TEXT = "Previous"
+        private const val NEXT_BUTTON_TEXT = "Next"
+
+        private const val INVALID_REGEX_TEXT = "Invalid regular expression"
+        private const val INVALID_CPU_TEXT = "Invalid CPU number"
+    }
+
+    private val eventNameField = TextField().apply { promptText = EVENT_NAME_PROMPT }
+    private val fieldRegexField = TextField().apply { promptText = FIELD_REGEX_PROMPT }
+    private val cpuField = TextField().apply {
+        promptText = CPU_PROMPT
+        prefColumnCount = 4
+    }
+
+    private val searchButton = Button(SEARCH_BUTTON_TEXT).apply { setOnAction { startSearch() } }
+    private val previousButton = Button(PREVIOUS_BUTTON_TEXT).apply { setOnAction { tableControl.findPrevious() } }
+    private val nextButton = Button(NEXT_BUTTON_TEXT).apply { setOnAction { tableControl.findNext() } }
+
+    private val statusLabel = Label()
+
+    init {
+        /* Pressing Enter in any of the text fields starts the search. */
+        listOf(eventNameField, fieldRegexField, cpuField).forEach { it.setOnAction { startSearch() } }
+
+        statusLabel.textProperty().bind(tableControl.searchStatusProperty())
+
+        items.addAll(eventNameField, fieldRegexField, cpuField,
+                searchButton, previousButton, nextButton,
+                statusLabel)
+    }
+
+    private fun startSearch() {
+        val eventName = eventNameField.text?.trim()?.takeIf { it.isNotEmpty() }
+
+        val fieldRegex = try {
+            fieldRegexField.text?.takeIf { it.isNotEmpty() }?.let { Regex(it) }
+        } catch (e: PatternSyntaxException) {
+            showError(INVALID_REGEX_TEXT)
+            return
+        }
+
+        val cpuText = cpuField.text?.trim()?.takeIf { it.isNotEmpty() }
+        val cpu = cpuText?.let { it.toIntOrNull() ?: run { showError(INVALID_CPU_TEXT); return } }
+
+        tableControl.search(EventSearchQuery(eventName, fieldRegex, cpu))
+    }
+
+    private fun showError(text: String) {
+        /* The error message replaces the status of the previous search, if any. */
+        tableControl.clearSearch(text)
+    }
+}
@@ -21,6 +21,7 @@ import javafx.collections.FXCollections
 import javafx.collections.ListChangeListener
 import javafx.scene.CacheHint
 import javafx.scene.Node
+import javafx.scene.control.Separator
 import javafx.scene.control.TableCell
 import javafx.scene.control.TableColumn
 import javafx.scene.control.TableRow
@@ -68,6 +69,9 @@ class EventTable(private val tableControl: EventTableControl) : BorderPane() {
             }
         }
 
+        top = EventSearchBar(tableControl).apply {
+            items.addAll(Separator(), EventExportButton(tableControl))
+        }
         center = tableView
         right = EventTableScrollToolBar(tableControl)
     }
@@ -9,15 +9,25 @@
 
 package org.lttng.scope.views.events
 
+import com.efficios.jabberwocky.common.TimeRange
 import com.efficios.jabberwocky.context.ViewGroupContext
 import com.efficios.jabberwocky.project.TraceProject
 import com.efficios.jabberwocky.project.TraceProjectIterator
 import com.efficios.jabberwocky.task.JabberwockyTask
 import com.efficios.jabberwocky.trace.event.TraceEvent
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import javafx.application.Platform
 import javafx.beans.InvalidationListener
+import javafx.beans.property.ReadOnlyStringProperty
+import javafx.beans.property.ReadOnlyStringWrapper
 import org.lttng.scope.application.ScopeOptions
 import org.lttng.scope.common.LatestTaskExecutor
+import org.lttng.scope.common.TaskMetrics
+import org.lttng.scope.project.ProjectManager
+import java.nio.file.Path
 import java.util.*
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.logging.Logger
 
 class EventTableControl(internal val viewContext: ViewGroupContext) {
@@ -27,6 +37,13 @@ class EventTableControl(internal val viewContext: ViewGroupContext) {
 
         /** How many events to fetch *in each direction*, limited by the start/end of the project. */
         private const val FETCH_SIZE = 25_000
+
+        /** Maximum number of events kept in the page cache */
+        private const val PAGE_CACHE_SIZE = 1_000_000
+
+        /** Exports can take a while, they run one after the other without blocking the table. */
+        private val exportExecutor = Executors.newSingleThreadExecutor(
+                ThreadFactoryBuilder().setNameFormat("event-export-%d").setDaemon(true).build())
     }
 
     private val projectChangeListener = object : ViewGroupContext.ProjectChangeListener(this) {
@@ -38,6 +55,8 @@ class EventTableControl(internal val viewContext: ViewGroupContext) {
         }
 
         override fun newProjectCb(newProject: TraceProject<*, *>?) {
+            pageCache.clear()
+            clearSearch()
             if (newProject == null) {
                 clearView()
             } else {
@@ -52,10 +71,27 @@ class EventTableControl(internal val viewContext: ViewGroupContext) {
 
     val table = EventTable(this)
     private val taskExecutor = LatestTaskExecutor()
+    private val searchExecutor = LatestTaskExecutor()
+
+    /** Cache of recently shown pages, so that revisiting a location does not read the trace again. */
+    private val pageCache = EventPageCache(PAGE_CACHE_SIZE, FETCH_SIZE / 4)
 
     private var currentBackwardsEvents: List<TraceEvent>? = null
     private var currentForwardsEvents: List<TraceEvent>? = null
 
+    @Volatile
+    private var currentSearch: EventSearchResults? = null
+
+    /** Search match that was last selected with [findNext] or [findPrevious] */
+    @Volatile
+    private var currentMatch: EventSearchMatch? = null
+
+    /** If a search status update is already waiting to run on the UI thread */
+    private val searchStatusUpdatePending = AtomicBoolean(false)
+
+    private val searchStatus = ReadOnlyStringWrapper("")
+    fun searchStatusProperty(): ReadOnlyStringProperty = searchStatus.readOnlyProperty
+
     init {
         viewContext.registerProjectChangeListener(projectChangeListener)
 
@@ -146,6 +182,121 @@ class EventTableControl(internal val viewContext: ViewGroupContext) {
         table.scrollToBottom()
     }
 
+    /**
+     * Start a search of the whole project for events matching the given query.
+     * Any ongoing search is cancelled. Matches can be navigated with
+     * [findNext] and [findPrevious] while the search is still running.
+     */
+    @Synchronized
+    fun search(query: EventSearchQuery) {
+        val project = viewContext.traceProject ?: return
+        if (query.isEmpty) {
+            clearSearch()
+            return
+        }
+
+        val results = EventSearchResults(query)
+        currentSearch = results
+        currentMatch = null
+        updateSearchStatus()
+
+        val scan = EventSearchScan(project, results) { updateSearchStatus() }
+        searchExecutor.schedule(scan.createTask())
+    }
+
+    /**
+     * Cancel the current search, if any, and forget its results.
+     *
+     * @param statusText Text to display as the new search status
+     */
+    @Synchronized
+    fun clearSearch(statusText: String = "") {
+        currentSearch = null
+        currentMatch = null
+        /* Schedule an empty task, which cancels the running search, if any. */
+        searchExecutor.schedule(JabberwockyTask<Unit>(null) {})
+        Platform.runLater { searchStatus.set(statusText) }
+    }
+
+    /**
+     * Select the first search match after the current selection.
+     */
+    fun findNext() {
+        val results = currentSearch ?: return
+        val match = getSelectedMatch()
+        val next = if (match != null) results.nextMatch(match) else results.nextMatch(viewContext.selectionTimeRange.startTime)
+        next?.let { selectMatch(it) }
+    }
+
+    /**
+     * Select the last search match before the current selection.
+     */
+    fun findPrevious() {
+        val results = currentSearch ?: return
+        val match = getSelectedMatch()
+        val previous = if (match != null) results.previousMatch(match) else results.previousMatch(viewContext.selectionTimeRange.startTime)
+        previous?.let { selectMatch(it) }
+    }
+
+    /** The last selected search match, if the selection is still on it */
+    private fun getSelectedMatch(): EventSearchMatch? {
+        val selection = viewContext.selectionTimeRange
+        return currentMatch?.takeIf { it.timestamp == selection.startTime && it.timestamp == selection.endTime }
+    }
+
+    private fun selectMatch(match: EventSearchMatch) {
+        currentMatch = match
+        val selection = viewContext.selectionTimeRange
+        if (selection.startTime == match.timestamp && selection.endTime == match.timestamp) {
+            /* Another match of the same timestamp, the selection does not change */
+            viewContext.traceProject?.let { recenterOn(it, match.timestamp) }
+        } else {
+            selectTimestamp(match.timestamp)
+        }
+    }
+
+    /**
+     * Export the events of the given time range of the current project to a
+     * file. Only events matching at least one of the project's enabled
+     * filters are exported, or all events if there are no enabled filters.
+     *
+     * @return The export task, which returns the number of exported events,
+     *         or null if there is no current project
+     */
+    fun exportEvents(range: TimeRange, format: EventExportFormat, target: Path): JabberwockyTask<Long>? {
+        val project = viewContext.traceProject ?: return null
+        val filters = ProjectManager.getProjectState(project).filters.getEnabledFilters()
+        val task = EventExport(project, range, filters, format, target).createTask()
+        exportExecutor.execute(TaskMetrics.track(task))
+        return task
+    }
+
+    /**
+     * Show the status of the current search. The scan calls this often, from
+     * all its threads, so there is at most one update waiting on the UI
+     * thread, which shows the latest status.
+     */
+    private fun updateSearchStatus() {
+        if (searchStatusUpdatePending.getAndSet(true)) return
+        Platform.runLater {
+            searchStatusUpdatePending.set(false)
+            val results = currentSearch ?: return@runLater
+            searchStatus.set("${results.matchCount} matches" + if (results.isComplete) "" else " (searching...)")
+        }
+    }
+
+    /**
+     * Update the selection to the given timestamp, which will in turn recenter
+     * the table on it. The visible range is moved only if the timestamp is
+     * outside of it.
+     */
+    private fun selectTimestamp(timestamp: Long) {
+        viewContext.selectionTimeRange = TimeRange.of(timestamp, timestamp)
+        if (timestamp !in viewContext.visibleTimeRange) {
+            viewContext.centerVisibleRangeOn(timestamp)
+        }
+    }
+
     private fun clearView() {
         table.clearTable()
     }
@@ -162,6 +313,20 @@ class EventTableControl(internal val viewContext: ViewGroupContext) {
     @Synchronized
     private fun recenterOn(project: TraceProject<*, *>, timestamp: Long) {
         val task = JabberwockyTask<Unit>("Fetching Event Table Contents") {
+            /* If we have recently shown events around this timestamp, re-use them. */
+            val cached = pageCache.lookup(timestamp)
+            if (cached != null) {
+                LOGGER.finer { "Using cached events for timestamp $timestamp" }
+                if (it.isCancelled) return@JabberwockyTask
+
+                currentBackwardsEvents = cached.events.subList(0, cached.index)
+                currentForwardsEvents = cached.events.subList(cached.index, cached.events.size)
+
+                table.displayEvents(cached.events)
+                table.selectIndex(getSelectionIndex(cached.events, cached.index, timestamp))
+                return@JabberwockyTask
+            }
+
             // TODO Implement TraceProjectIterator.copy(), use it here instead of seeking twice
             val forwardsEvents = project.iterator().use {
                 it.seek(timestamp)
@@ -181,15 +346,35 @@ class EventTableControl(internal val viewContext: ViewGroupContext) {
 
             if (it.isCancelled) return@JabberwockyTask
 
+            /* Fewer events than requested means we reached the start or end of the project. */
+            pageCache.put(eventsList, backwardsEvents.size < FETCH_SIZE, forwardsEvents.size < FETCH_SIZE)
+
             currentBackwardsEvents = backwardsEvents
             currentForwardsEvents = forwardsEvents
 
             table.displayEvents(eventsList)
-            table.selectIndex(eventIndex)
+            table.selectIndex(getSelectionIndex(eventsList, eventIndex, timestamp))
         }
         taskExecutor.schedule(task)
     }
 
+    /**
+     * Index of the event to select among 'events' for the given timestamp:
+     * the selected search match if it is at this timestamp, otherwise the
+     * first event of the timestamp, at 'firstIndex'.
+     */
+    private fun getSelectionIndex(events: List<TraceEvent>, firstIndex: Int, timestamp: Long): Int {
+        val match = currentMatch?.takeIf { it.timestamp == timestamp } ?: return firstIndex
+        val query = currentSearch?.query ?: return firstIndex
+        var rank = -1
+        for (index in firstIndex until events.size) {
+            val event = events[index]
+            if (event.timestamp != timestamp) break
+            if (query.matches(event) && ++rank == match.rank) return index
+        }
+        return firstIndex
+    }
+
     private fun <E : TraceEvent> fetchPreviousEvents(iterator: TraceProjectIterator<E>, limit: Int): List<E> {
         if (limit < 0) throw IllegalArgumentException()
         var left = limit
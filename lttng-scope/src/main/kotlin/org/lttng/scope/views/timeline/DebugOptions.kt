@@ -57,6 +57,12 @@ class DebugOptions {
      */
     val isScrollingListenersEnabled = ConfigOption(true)
 
+    /**
+     * Whether the timegraphs should display the timing statistics of their
+     * paint operations on top of their contents.
+     */
+    val isPaintStatisticsOverlayEnabled = ConfigOption(false)
+
     // ------------------------------------------------------------------------
     // Loading overlay
     // ------------------------------------------------------------------------
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+import javafx.application.Platform
+import org.lttng.scope.common.LatencyHistogram
+import org.lttng.scope.common.selftrace.SelfTracer
+import java.lang.management.ManagementFactory
+import java.util.EnumMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+import java.util.logging.Level
+import java.util.logging.Logger
+import javax.management.JMException
+import javax.management.ObjectName
+
+/**
+ * JMX view of the [PaintStatistics] of a timegraph. Durations are in
+ * milliseconds, keyed by phase name.
+ */
+interface PaintStatisticsMXBean {
+
+    /** Name of the timegraph */
+    val widgetName: String
+
+    /** Number of paint tasks that ran to completion */
+    val completedPaints: Long
+
+    /** Number of paint tasks that were cancelled by a newer one */
+    val cancelledPaints: Long
+
+    val lastMillis: Map<String, Double>
+    val meanMillis: Map<String, Double>
+    val p50Millis: Map<String, Double>
+    val p95Millis: Map<String, Double>
+    val p99Millis: Map<String, Double>
+    val maxMillis: Map<String, Double>
+
+    /** Forget all the recorded statistics */
+    fun reset()
+}
+
+/**
+ * Timing statistics of the phases of a timegraph's paint operations.
+ *
+ * Each phase has a histogram of its durations, which can be recorded from
+ * any thread. They are published as an MBean named
+ * "org.lttng.scope:type=TimeGraphPaint,name=<widget name>,id=<n>" once
+ * [register] is called, and can also be shown by the widget's overlay.
+ */
+class PaintStatistics(override val widgetName: String) : PaintStatisticsMXBean {
+
+    companion object {
+        private val LOGGER = Logger.getLogger(PaintStatistics::class.java.name)
+        private val ID_GENERATOR = AtomicInteger()
+        private const val NANOS_PER_MILLI = 1_000_000.0
+    }
+
+    /** The phases of a paint operation */
+    enum class Phase(val label: String) {
+        /** The whole paint task, excluding the work done on the UI thread */
+        PAINT_TASK("Paint task"),
+        /** Fetching the tree render and updating the tree area */
+        TREE_RENDER("Tree render"),
+        STATES_QUERY("States query"),
+        STATES_PREPARE("States prepare"),
+        STATES_APPLY("States apply"),
+        ARROWS_QUERY("Arrows query"),
+        ARROWS_PREPARE("Arrows prepare"),
+        ARROWS_APPLY("Arrows apply"),
+        DRAWN_EVENTS_QUERY("Events query"),
+        DRAWN_EVENTS_PREPARE("Events prepare"),
+        DRAWN_EVENTS_APPLY("Events apply"),
+        /** Time between a layer posting its nodes and the UI thread applying them */
+        UI_QUEUE_DELAY("UI queue delay");
+    }
+
+    private val histograms = EnumMap<Phase, LatencyHistogram>(Phase::class.java).apply {
+        Phase.values().forEach { put(it, LatencyHistogram()) }
+    }
+    private val completed = LongAdder()
+    private val cancelled = LongAdder()
+
+    private var objectName: ObjectName? = null
+
+    /**
+     * Get the histogram of a phase.
+     */
+    fun histogram(phase: Phase): LatencyHistogram = histograms.getValue(phase)
+
+    /**
+     * Record a phase that started at the given time and just finished.
+     *
+     * @param phase The phase
+     * @param startNanos The start time of the phase, from [System.nanoTime]
+     */
+    fun recordSince(phase: Phase, startNanos: Long) {
+        histogram(phase).record(System.nanoTime() - startNanos)
+    }
+
+    /**
+     * Record the end of a paint task.
+     *
+     * @param startNanos The start time of the task, from [System.nanoTime]
+     * @param wasCancelled If the task was cancelled before completion.
+     *                     Cancelled tasks are only counted.
+     */
+    fun recordPaintTask(startNanos: Long, wasCancelled: Boolean) {
+        if (wasCancelled) {
+            cancelled.increment()
+        } else {
+            completed.increment()
+            recordSince(Phase.PAINT_TASK, startNanos)
+        }
+    }
+
+    /**
+     * Run an operation on the UI thread with [Platform.runLater], recording
+     * how long it waited in the queue and how long it took. This is also
+     * recorded in the self-trace, if it is enabled.
+     *
+     * @param applyPhase The phase in which to record the operation's duration
+     * @param action The operation to run
+     */
+    fun runLater(applyPhase: Phase, action: Runnable) {
+        val queued = System.nanoTime()
+        Platform.runLater {
+            val start = System.nanoTime()
+            histogram(Phase.UI_QUEUE_DELAY).record(start - queued)
+            action.run()
+            val duration = System.nanoTime() - start
+            histogram(applyPhase).record(duration)
+            SelfTracer.uiApply(applyPhase.label, start - queued, duration)
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // JMX
+    // ------------------------------------------------------------------------
+
+    /**
+     * Publish these statistics in the platform MBean server. Failures are
+     * only logged, the statistics remain usable.
+     */
+    @Synchronized
+    fun register() {
+        if (objectName != null) return
+        try {
+            val name = ObjectName("org.lttng.scope:type=TimeGraphPaint,name=${ObjectName.quote(widgetName)},id=${ID_GENERATOR.getAndIncrement()}")
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name)
+            objectName = name
+        } catch (e: JMException) {
+            LOGGER.log(Level.WARNING, "Could not register paint statistics MBean", e)
+        }
+    }
+
+    /**
+     * Remove these statistics from the platform MBean server, if they were
+     * registered.
+     */
+    @Synchronized
+    fun unregister() {
+        val name = objectName ?: return
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name)
+        } catch (e: JMException) {
+            LOGGER.log(Level.WARNING, "Could not unregister paint statistics MBean", e)
+        }
+        objectName = null
+    }
+
+    override val completedPaints: Long get() = completed.sum()
+    override val cancelledPaints: Long get() = cancelled.sum()
+
+    override val lastMillis get() = perPhase { it.lastNanos.toDouble() }
+    override val meanMillis get() = perPhase { it.meanNanos }
+    override val p50Millis get() = perPhase { it.percentileNanos(50.0).toDouble() }
+    override val p95Millis get() = perPhase { it.percentileNanos(95.0).toDouble() }
+    override val p99Millis get() = perPhase { it.percentileNanos(99.0).toDouble() }
+    override val maxMillis get() = perPhase { it.maxNanos.toDouble() }
+
+    override fun reset() {
+        histograms.values.forEach(LatencyHistogram::reset)
+        completed.reset()
+        cancelled.reset()
+    }
+
+    private inline fun perPhase(nanos: (LatencyHistogram) -> Double): Map<String, Double> =
+            histograms.entries.associate { (phase, histogram) -> phase.label to nanos(histogram) / NANOS_PER_MILLI }
+}
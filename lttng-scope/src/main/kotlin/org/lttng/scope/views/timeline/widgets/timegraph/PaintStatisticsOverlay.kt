@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+import javafx.animation.Animation
+import javafx.animation.KeyFrame
+import javafx.animation.Timeline
+import javafx.event.EventHandler
+import javafx.geometry.Insets
+import javafx.scene.layout.Background
+import javafx.scene.layout.BackgroundFill
+import javafx.scene.layout.CornerRadii
+import javafx.scene.layout.StackPane
+import javafx.scene.paint.Color
+import javafx.scene.text.Font
+import javafx.scene.text.FontWeight
+import javafx.scene.text.Text
+import javafx.util.Duration
+import org.lttng.scope.views.timeline.DebugOptions
+
+/**
+ * On-screen overlay showing the [PaintStatistics] of a timegraph: for each
+ * phase, the last, median, 95th percentile and maximum durations in
+ * milliseconds.
+ *
+ * It is shown according to the corresponding debug option, and only
+ * refreshes its contents while it is visible.
+ */
+class PaintStatisticsOverlay(private val stats: PaintStatistics, opts: DebugOptions) : StackPane() {
+
+    companion object {
+        private val REFRESH_PERIOD = Duration.millis(500.0)
+        private val BACKGROUND = Background(BackgroundFill(Color.rgb(0, 0, 0, 0.7), CornerRadii(4.0), Insets.EMPTY))
+        private val FONT = Font.font("Monospaced", FontWeight.NORMAL, 11.0)
+        private const val HEADER = "%-16s %8s %8s %8s %8s"
+        private const val ROW = "%-16s %8.2f %8.2f %8.2f %8.2f"
+    }
+
+    private val text = Text().apply {
+        font = FONT
+        fill = Color.WHITE
+    }
+
+    private val refreshTimeline = Timeline(KeyFrame(REFRESH_PERIOD, EventHandler { refresh() })).apply {
+        cycleCount = Animation.INDEFINITE
+    }
+
+    init {
+        children.add(text)
+        background = BACKGROUND
+        padding = Insets(6.0)
+        isMouseTransparent = true
+        /* Do not stretch to the size of the parent */
+        setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE)
+
+        visibleProperty().bind(opts.isPaintStatisticsOverlayEnabled)
+        visibleProperty().addListener { _, _, visible -> if (visible) start() else refreshTimeline.stop() }
+        if (isVisible) start()
+    }
+
+    private fun start() {
+        refresh()
+        refreshTimeline.play()
+    }
+
+    private fun refresh() {
+        val sb = StringBuilder()
+        sb.append(String.format(HEADER, "(ms)", "last", "p50", "p95", "max"))
+        PaintStatistics.Phase.values().forEach { phase ->
+            val histogram = stats.histogram(phase)
+            sb.append('\n').append(String.format(ROW, phase.label,
+                    histogram.lastNanos / 1e6,
+                    histogram.percentileNanos(50.0) / 1e6,
+                    histogram.percentileNanos(95.0) / 1e6,
+                    histogram.maxNanos / 1e6))
+        }
+        sb.append("\n${stats.completedPaints} paints, ${stats.cancelledPaints} cancelled")
+        text.text = sb.toString()
+    }
+}
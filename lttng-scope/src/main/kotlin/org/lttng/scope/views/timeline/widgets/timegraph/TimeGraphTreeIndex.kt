@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheLoader
+import com.google.common.cache.LoadingCache
+
+/**
+ * Lookup structures for the elements of a tree render, shared by the layers.
+ *
+ * The row of an element is found in a hash map, instead of searching the
+ * element list for every item drawn. Finding the element of a trace event is
+ * not indexed: elements only expose opaque predicates, so it remains a scan
+ * in tree order, restricted to the elements that have a predicate.
+ *
+ * An index is built once per tree render, the first time it is requested,
+ * and is then shared by all the layers of all the widgets using that render.
+ * Use [of] to obtain it.
+ */
+class TimeGraphTreeIndex private constructor(treeRender: TimeGraphTreeRender) {
+
+    companion object {
+
+        /* Tree renders are compared by identity, and indexes go away with their render. */
+        private val INDEXES: LoadingCache<TimeGraphTreeRender, TimeGraphTreeIndex> = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build(CacheLoader.from { render: TimeGraphTreeRender? -> TimeGraphTreeIndex(render!!) })
+
+        /**
+         * Get the index of the given tree render, building it if needed.
+         */
+        @JvmStatic
+        fun of(treeRender: TimeGraphTreeRender): TimeGraphTreeIndex = INDEXES.getUnchecked(treeRender)
+    }
+
+    private val elements: List<TimeGraphTreeElement> = treeRender.allTreeElements
+
+    /** Element -> row index. The first row is kept for elements that appear more than once. */
+    private val rows: Map<TimeGraphTreeElement, Int> = HashMap<TimeGraphTreeElement, Int>(elements.size * 2).apply {
+        elements.forEachIndexed { index, element -> putIfAbsent(element, index) }
+    }
+
+    /** Elements that can match trace events at all, in tree order */
+    private val matchingElements: List<TimeGraphTreeElement> = elements.filter { it.eventMatching != null }
+
+    /**
+     * Get the row index of the given tree element.
+     *
+     * @return The index in the render's element list, or -1 if the element is not part of it
+     */
+    fun rowOf(element: TimeGraphTreeElement): Int = rows[element] ?: -1
+
+    /**
+     * Find the tree element that represents the given trace event, as defined
+     * by the elements' 'eventMatching' predicates. If several elements match,
+     * the first one in tree order is returned.
+     *
+     * The predicates are opaque, so every element before the result has to
+     * be tested. Only elements that have a predicate are, though.
+     *
+     * @return The matching element, or null if no element matches
+     */
+    fun findMatchingElement(event: TraceEvent): TimeGraphTreeElement? =
+            matchingElements.find { it.eventMatching?.test(event) == true }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
+import java.util.Collections
+import java.util.IdentityHashMap
+
+/**
+ * The rows displayed by a timegraph: the elements of its tree render, minus
+ * the ones inside collapsed branches.
+ *
+ * All the layers place their contents using this mapping, so that they agree
+ * with the tree area on which element is on which row. Elements that are not
+ * displayed have no row, and should not be queried at all.
+ *
+ * @property treeRender The tree render whose elements are displayed
+ * @property collapsedBranches The paths (elements starting from the root)
+ *                             of the collapsed branches
+ */
+class TimeGraphVisibleRows private constructor(val treeRender: TimeGraphTreeRender,
+                                               val collapsedBranches: Set<List<TreePathElement>>) {
+
+    companion object {
+        /** Rows of a timegraph with nothing displayed */
+        @JvmField
+        val EMPTY_ROWS = TimeGraphVisibleRows(TimeGraphTreeRender.EMPTY_RENDER, emptySet())
+
+        /**
+         * Compute the rows to display for a tree render, with the given
+         * branches collapsed.
+         */
+        @JvmStatic
+        fun of(treeRender: TimeGraphTreeRender, collapsedBranches: Set<List<TreePathElement>>) =
+                TimeGraphVisibleRows(treeRender, collapsedBranches)
+
+        private fun collectHidden(element: TimeGraphTreeElement, path: List<TreePathElement>,
+                                  collapsedBranches: Set<List<TreePathElement>>, parentHidden: Boolean,
+                                  hidden: MutableSet<TimeGraphTreeElement>) {
+            val childrenHidden = parentHidden || path in collapsedBranches
+            val children = element.childElements
+            val childPathElements = TreePathElement.ofSiblings(children.map { it.name })
+            children.forEachIndexed { index, child ->
+                if (childrenHidden) hidden.add(child)
+                collectHidden(child, path + childPathElements[index], collapsedBranches, childrenHidden, hidden)
+            }
+        }
+    }
+
+    /** The displayed elements, in row order */
+    val elements: List<TimeGraphTreeElement>
+
+    private val rows: Map<TimeGraphTreeElement, Int>?
+
+    init {
+        if (collapsedBranches.isEmpty()) {
+            /* Everything is displayed, rows are the same as the tree render's. */
+            elements = treeRender.allTreeElements
+            rows = null
+        } else {
+            val hidden = Collections.newSetFromMap(IdentityHashMap<TimeGraphTreeElement, Boolean>())
+            val root = treeRender.rootElement
+            collectHidden(root, TreePathElement.rootPath(root.name), collapsedBranches, false, hidden)
+            elements = treeRender.allTreeElements.filter { it !in hidden }
+            rows = HashMap<TimeGraphTreeElement, Int>(elements.size * 2).apply {
+                elements.forEachIndexed { index, element -> putIfAbsent(element, index) }
+            }
+        }
+    }
+
+    /** Number of displayed rows */
+    val size: Int
+        get() = elements.size
+
+    /**
+     * Get the row on which the given tree element is displayed.
+     *
+     * @return The row index, or -1 if the element is not displayed
+     */
+    fun rowOf(element: TimeGraphTreeElement): Int =
+            if (rows == null) TimeGraphTreeIndex.of(treeRender).rowOf(element) else rows[element] ?: -1
+
+    /**
+     * Check if these rows are the ones to display for the given tree render
+     * and collapsed branches.
+     */
+    fun isFor(treeRender: TimeGraphTreeRender, collapsedBranches: Set<List<TreePathElement>>) =
+            this.treeRender === treeRender && this.collapsedBranches == collapsedBranches
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+/**
+ * One step of a path in a timegraph tree: the name of an element, and its
+ * rank among its siblings of the same name. Siblings with the same name,
+ * like two threads with the same command, get different paths. This is the
+ * same matching the tree area uses to keep its items across tree updates.
+ *
+ * @property name The name of the tree element
+ * @property rank The rank of the element among its siblings with the same name
+ */
+data class TreePathElement(val name: String, val rank: Int) {
+
+    companion object {
+        /**
+         * Get the path elements of siblings, from their names in order.
+         */
+        @JvmStatic
+        fun ofSiblings(names: List<String>): List<TreePathElement> {
+            val seen = HashMap<String, Int>()
+            return names.map { name ->
+                val rank = seen[name] ?: 0
+                seen[name] = rank + 1
+                TreePathElement(name, rank)
+            }
+        }
+
+        /**
+         * The path of the root element of a tree.
+         */
+        @JvmStatic
+        fun rootPath(rootName: String) = listOf(TreePathElement(rootName, 0))
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph.layer
+
+/**
+ * Static index of items spanning a range of timegraph rows, like arrows
+ * going from one entry to another, to find the ones crossing a given range
+ * of rows.
+ *
+ * This is an interval tree stored in arrays: items are sorted by first row,
+ * and each node of the implicit balanced tree over that array knows the
+ * highest last row of its subtree, so that whole subtrees can be skipped.
+ *
+ * @param T The type of items
+ * @param items The items to index
+ * @param firstRow Function giving the first row of an item
+ * @param lastRow Function giving the last row of an item, inclusively
+ */
+class RowSpanIndex<T>(items: Collection<T>, firstRow: (T) -> Int, lastRow: (T) -> Int) {
+
+    private val size = items.size
+    private val sortedItems: List<T> = items.sortedBy(firstRow)
+    private val firstRows = IntArray(size) { firstRow(sortedItems[it]) }
+    private val lastRows = IntArray(size) { lastRow(sortedItems[it]) }
+
+    /** Highest last row in the subtree rooted at each index */
+    private val maxLastRows = IntArray(size)
+
+    init {
+        computeMaxLastRows(0, size)
+    }
+
+    private fun computeMaxLastRows(from: Int, to: Int): Int {
+        if (from >= to) return Int.MIN_VALUE
+        val mid = (from + to) ushr 1
+        val max = maxOf(lastRows[mid], computeMaxLastRows(from, mid), computeMaxLastRows(mid + 1, to))
+        maxLastRows[mid] = max
+        return max
+    }
+
+    /**
+     * Get the items crossing at least one row of the given range.
+     *
+     * @param topRow First row of the range
+     * @param bottomRow Last row of the range, inclusively
+     * @return The matching items, sorted by first row
+     */
+    fun query(topRow: Int, bottomRow: Int): List<T> {
+        val results = mutableListOf<T>()
+        collect(topRow, bottomRow, 0, size, results)
+        return results
+    }
+
+    private fun collect(topRow: Int, bottomRow: Int, from: Int, to: Int, results: MutableList<T>) {
+        if (from >= to) return
+        val mid = (from + to) ushr 1
+        /* Nothing in this subtree reaches the range. */
+        if (maxLastRows[mid] < topRow) return
+
+        collect(topRow, bottomRow, from, mid, results)
+
+        /* This item and everything after it start below the range. */
+        if (firstRows[mid] > bottomRow) return
+        if (lastRows[mid] >= topRow) results.add(sortedItems[mid])
+
+        collect(topRow, bottomRow, mid + 1, to, results)
+    }
+}
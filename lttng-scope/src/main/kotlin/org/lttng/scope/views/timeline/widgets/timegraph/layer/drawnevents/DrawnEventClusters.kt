@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph.layer.drawnevents
+
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProvider
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEvent
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
+import java.util.concurrent.FutureTask
+import java.util.function.LongToDoubleFunction
+import java.util.function.ToIntFunction
+
+/**
+ * A group of drawn events of the same series, falling in the same pixel of
+ * the same tree element. It is drawn as one symbol, with a badge showing the
+ * count if there is more than one event.
+ *
+ * @param event The first event of the group, which determines the position of the symbol
+ * @param count The number of events in the group
+ */
+class DrawnEventCluster(val event: TimeGraphDrawnEvent, val count: Int)
+
+/**
+ * A cluster placed on the time graph.
+ *
+ * @param cluster The cluster
+ * @param row The row of the cluster's tree element
+ * @param x The X position of the cluster's first event in the pane
+ */
+class PlacedDrawnEventCluster(val cluster: DrawnEventCluster, val row: Int, val x: Double)
+
+/**
+ * Drawn event provider that can group its events itself while it reads them,
+ * so that it never has to keep more events than what fits on screen.
+ */
+interface ClusteringDrawnEventProvider {
+
+    /**
+     * Get the drawn events of the given range, grouped per tree element and
+     * per time bucket.
+     *
+     * @param treeRender The tree render whose elements the events are placed on
+     * @param timeRange The time range to query
+     * @param resolution The duration, in nanoseconds, of one time bucket.
+     *                   Usually the duration represented by one pixel.
+     * @param task The task running the query, to check for cancellation
+     */
+    fun getEventClusters(treeRender: TimeGraphTreeRender,
+                         timeRange: TimeRange,
+                         resolution: Double,
+                         task: FutureTask<*>?): List<DrawnEventCluster>
+}
+
+/**
+ * Accumulator of clusters, events being added in timestamp order.
+ */
+internal class DrawnEventClusterBuilder(private val range: TimeRange, resolution: Double) {
+
+    private class MutableCluster(val event: TimeGraphDrawnEvent) {
+        var count = 1
+    }
+
+    private val resolution = maxOf(1.0, resolution)
+
+    /* Key is (row, bucket). Insertion order is kept, so clusters remain sorted by timestamp within a row. */
+    private val clusters = LinkedHashMap<Long, MutableCluster>()
+
+    fun add(row: Int, event: TimeGraphDrawnEvent) {
+        val bucket = ((event.event.timestamp - range.startTime) / resolution).toLong()
+        val key = (row.toLong() shl 32) or (bucket and 0xFFFFFFFFL)
+        val cluster = clusters[key]
+        if (cluster == null) {
+            clusters[key] = MutableCluster(event)
+        } else {
+            cluster.count++
+        }
+    }
+
+    fun build(): List<DrawnEventCluster> = clusters.values.map { DrawnEventCluster(it.event, it.count) }
+}
+
+/**
+ * Get the events of a provider as clusters. Providers that group their events
+ * themselves give their clusters with their counts. The events of other
+ * providers are each in their own cluster, [mergeClustersPerPixel] will group
+ * them.
+ *
+ * @param resolution The duration, in nanoseconds, of one time bucket
+ */
+fun getDrawnEventClusters(provider: TimeGraphDrawnEventProvider,
+                          treeRender: TimeGraphTreeRender,
+                          timeRange: TimeRange,
+                          resolution: Double,
+                          task: FutureTask<*>?): List<DrawnEventCluster> =
+        if (provider is ClusteringDrawnEventProvider) {
+            provider.getEventClusters(treeRender, timeRange, resolution, task)
+        } else {
+            provider.getEventRender(treeRender, timeRange, task).events.map { DrawnEventCluster(it, 1) }
+        }
+
+/**
+ * Merge the clusters that end up on the same pixel of the same row, adding
+ * up their counts. The merged cluster keeps the first event, clusters being
+ * sorted by timestamp within a row. Clusters of tree elements that are not
+ * displayed are dropped.
+ *
+ * @param clusters The clusters to merge
+ * @param rowOf Gives the row of a tree element, or -1 if it is not displayed
+ * @param xOf Gives the X position of a timestamp in the pane
+ * @return The merged clusters, in the order of their first cluster
+ */
+fun mergeClustersPerPixel(clusters: List<DrawnEventCluster>,
+                          rowOf: ToIntFunction<TimeGraphTreeElement>,
+                          xOf: LongToDoubleFunction): List<PlacedDrawnEventCluster> {
+    /* Key is (row, pixel) */
+    val merged = LinkedHashMap<Long, PlacedDrawnEventCluster>()
+    clusters.forEach { cluster ->
+        val tgEvent = cluster.event.event
+        val row = rowOf.applyAsInt(tgEvent.treeElement)
+        if (row == -1) return@forEach
+        val x = xOf.applyAsDouble(tgEvent.timestamp)
+        val key = (row.toLong() shl 32) or (Math.floor(x).toLong() and 0xFFFFFFFFL)
+
+        val existing = merged[key]
+        merged[key] = if (existing == null) {
+            PlacedDrawnEventCluster(cluster, row, x)
+        } else {
+            PlacedDrawnEventCluster(DrawnEventCluster(existing.cluster.event, existing.cluster.count + cluster.count), row, existing.x)
+        }
+    }
+    return merged.values.toList()
+}
@@ -21,15 +21,28 @@ import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGra
 import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
 import org.lttng.scope.project.filter.EventFilterDefinition
 import org.lttng.scope.views.context.ViewGroupContextManager
+import org.lttng.scope.views.timeline.widgets.timegraph.TimeGraphTreeIndex
 import java.util.concurrent.FutureTask
 
-/** Maximum number of matching events */
-private const val MAX_EVENTS = 2000
+/**
+ * Number of time buckets per range used when no resolution is specified,
+ * larger than the width of most screens.
+ */
+private const val DEFAULT_NB_BUCKETS = 4000
+
+/** Check for cancellation every this many events */
+private const val CANCEL_CHECK_INTERVAL = 10_000
 
 /**
  * Provider of drawn event series based on a project event-filter.
+ *
+ * All the matching events of the range are shown, but events of the same
+ * tree element falling in the same time bucket are grouped together, so the
+ * size of the render depends on the screen area rather than on the number
+ * of events.
  */
-class PredicateDrawnEventProvider(private val eventFilter: EventFilterDefinition) : TimeGraphDrawnEventProvider(eventFilter.createSeries()) {
+class PredicateDrawnEventProvider(private val eventFilter: EventFilterDefinition) : TimeGraphDrawnEventProvider(eventFilter.createSeries()),
+        ClusteringDrawnEventProvider {
 
     private val projectChangeListener = object : ViewGroupContext.ProjectChangeListener(this) {
         override fun newProjectCb(newProject: TraceProject<*, *>?) {
@@ -52,32 +65,45 @@ class PredicateDrawnEventProvider(private val eventFilter: EventFilterDefinition
         ViewGroupContextManager.getCurrent().deregisterProjectChangeListener(projectChangeListener)
     }
 
+    /**
+     * The render has the first event of each cluster. The render type has no
+     * place for the number of events of each cluster, the time graph gets
+     * them from [getEventClusters] instead, through [getDrawnEventClusters].
+     */
     override fun getEventRender(treeRender: TimeGraphTreeRender, timeRange: TimeRange, task: FutureTask<*>?): TimeGraphDrawnEventRender {
-        val project = traceProject ?: return TimeGraphDrawnEventRender(timeRange, emptyList())
+        val resolution = timeRange.duration.toDouble() / DEFAULT_NB_BUCKETS
+        val events = getEventClusters(treeRender, timeRange, resolution, task).map { it.event }
+        return TimeGraphDrawnEventRender(timeRange, events)
+    }
+
+    override fun getEventClusters(treeRender: TimeGraphTreeRender,
+                                  timeRange: TimeRange,
+                                  resolution: Double,
+                                  task: FutureTask<*>?): List<DrawnEventCluster> {
+        val project = traceProject ?: return emptyList()
+        val treeIndex = TimeGraphTreeIndex.of(treeRender)
+        val clusters = DrawnEventClusterBuilder(timeRange, resolution)
 
         // TODO We could keep the iterator open for the lifetime of the provider, so that
         // the same iterator is reused from one render to another.
 
-        val matchingEvents = project.iterator().use {
+        project.iterator().use {
             it.seek(timeRange.startTime)
-            it.asSequence()
-                    .takeWhile { it.timestamp <= timeRange.endTime }
-                    .filter(eventFilter.predicate)
-                    .take(MAX_EVENTS)
-                    .toList()
+            var nbRead = 0L
+            while (it.hasNext()) {
+                val traceEvent = it.next()
+                if (traceEvent.timestamp > timeRange.endTime) break
+                if (++nbRead % CANCEL_CHECK_INTERVAL == 0L && task?.isCancelled == true) return emptyList()
+                if (!eventFilter.predicate(traceEvent)) continue
+
+                /* trace event -> TimeGraphEvent -> TimeGraphDrawnEvent */
+                val treeElement = treeIndex.findMatchingElement(traceEvent) ?: continue
+                val drawnEvent = TimeGraphDrawnEvent(TimeGraphEvent(traceEvent.timestamp, treeElement), drawnEventSeries, null)
+                clusters.add(treeIndex.rowOf(treeElement), drawnEvent)
+            }
         }
 
-        val drawnEvents = matchingEvents
-                /* trace event -> TimeGraphEvent */
-                .mapNotNull { traceEvent ->
-                    treeRender.allTreeElements
-                            .find { it.eventMatching?.test(traceEvent) == true }
-                            ?.let { TimeGraphEvent(traceEvent.timestamp, it) }
-                }
-                /* TimeGraphEvent -> TimeGraphDrawnEvent */
-                .map { TimeGraphDrawnEvent(it, drawnEventSeries, null) }
-
-        return TimeGraphDrawnEventRender(timeRange, drawnEvents)
+        return clusters.build()
     }
 
 }
@@ -112,7 +112,8 @@ class DebugOptionsDialog(button: DebugOptionsButton) : Dialog<Unit>() {
                     IntegerTextField(Messages.controlEntryPadding, opts.entryPadding),
                     DoubleTextField(Messages.controlRenderRangePadding, opts.renderRangePadding),
                     IntegerTextField(Messages.controlUIUpdateDelay, opts.uiUpdateDelay),
-                    CheckBoxControl(Messages.controlHScrollEnabled, opts.isScrollingListenersEnabled))
+                    CheckBoxControl(Messages.controlHScrollEnabled, opts.isScrollingListenersEnabled),
+                    CheckBoxControl(Messages.controlPaintStatisticsOverlayEnabled, opts.isPaintStatisticsOverlayEnabled))
 
     private fun createLoadingOverlayTab(): Tab =
             DebugOptionsDialogTab(Messages.tabNameLoadingOverlay,
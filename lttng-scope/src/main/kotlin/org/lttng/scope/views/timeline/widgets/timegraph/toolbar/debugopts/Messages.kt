@@ -22,6 +22,7 @@ internal object Messages {
     const val controlRenderRangePadding = "Render time range padding"
     const val controlUIUpdateDelay = "UI Update Delay (ms)"
     const val controlHScrollEnabled = "HScrolling listener enabled"
+    const val controlPaintStatisticsOverlayEnabled = "Show paint statistics overlay"
 
     const val tabNameLoadingOverlay = "Loading Overlay"
     const val controlLoadingOverlayEnabled = "Loading overlay enabled"
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph;
+
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement;
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender;
+import javafx.collections.ListChangeListener;
+import javafx.scene.control.TreeItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Tests for the incremental update of the {@link TimeGraphWidgetTreeArea}'s
+ * tree items.
+ */
+class TimeGraphWidgetTreeAreaTest {
+
+    private static TimeGraphTreeElement leaf(String name) {
+        return new TimeGraphTreeElement(name, Collections.emptyList());
+    }
+
+    private static TimeGraphTreeElement node(String name, TimeGraphTreeElement... children) {
+        return new TimeGraphTreeElement(name, Arrays.asList(children));
+    }
+
+    private static List<String> childNames(TreeItem<TimeGraphTreeElement> item) {
+        return item.getChildren().stream()
+                .map(child -> child.getValue().getName())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Test building the tree items from scratch.
+     */
+    @Test
+    void testInitialTree() {
+        TreeItem<TimeGraphTreeElement> root = new TreeItem<>();
+        TimeGraphTreeElement rootElement = node("root", node("a", leaf("a1"), leaf("a2")), leaf("b"));
+        TimeGraphWidgetTreeArea.updateTreeItem(root, rootElement);
+
+        assertSame(rootElement, root.getValue());
+        assertEquals(Arrays.asList("a", "b"), childNames(root));
+        assertEquals(Arrays.asList("a1", "a2"), childNames(root.getChildren().get(0)));
+    }
+
+    /**
+     * Items of the elements present in both trees should be kept, and the
+     * children lists of unchanged branches should not be modified.
+     */
+    @Test
+    void testIncrementalUpdate() {
+        TreeItem<TimeGraphTreeElement> root = new TreeItem<>();
+        TimeGraphWidgetTreeArea.updateTreeItem(root,
+                node("root", node("a", leaf("a1"), leaf("a2")), node("b", leaf("b1"))));
+
+        TreeItem<TimeGraphTreeElement> itemA = root.getChildren().get(0);
+        TreeItem<TimeGraphTreeElement> itemB = root.getChildren().get(1);
+        List<TreeItem<TimeGraphTreeElement>> childrenOfA = new ArrayList<>(itemA.getChildren());
+
+        int[] nbChangesOfA = { 0 };
+        itemA.getChildren().addListener((ListChangeListener<TreeItem<TimeGraphTreeElement>>) c -> nbChangesOfA[0]++);
+
+        /* "c" is inserted before "b", "b" gets a new child */
+        TimeGraphWidgetTreeArea.updateTreeItem(root,
+                node("root", node("a", leaf("a1"), leaf("a2")), leaf("c"), node("b", leaf("b1"), leaf("b2"))));
+
+        assertEquals(Arrays.asList("a", "c", "b"), childNames(root));
+        assertSame(itemA, root.getChildren().get(0));
+        assertSame(itemB, root.getChildren().get(2));
+        assertEquals(childrenOfA, itemA.getChildren());
+        assertEquals(0, nbChangesOfA[0]);
+        assertEquals(Arrays.asList("b1", "b2"), childNames(itemB));
+
+        /* "a" is removed */
+        TimeGraphWidgetTreeArea.updateTreeItem(root, node("root", leaf("c"), node("b", leaf("b1"), leaf("b2"))));
+        assertEquals(Arrays.asList("c", "b"), childNames(root));
+        assertSame(itemB, root.getChildren().get(1));
+    }
+
+    /**
+     * Siblings with the same name should each keep their own item.
+     */
+    @Test
+    void testDuplicateNames() {
+        TreeItem<TimeGraphTreeElement> root = new TreeItem<>();
+        TimeGraphWidgetTreeArea.updateTreeItem(root, node("root", leaf("x"), leaf("x")));
+        TreeItem<TimeGraphTreeElement> first = root.getChildren().get(0);
+        TreeItem<TimeGraphTreeElement> second = root.getChildren().get(1);
+
+        TimeGraphWidgetTreeArea.updateTreeItem(root, node("root", leaf("y"), leaf("x"), leaf("x")));
+        assertEquals(Arrays.asList("y", "x", "x"), childNames(root));
+        assertSame(first, root.getChildren().get(1));
+        assertSame(second, root.getChildren().get(2));
+    }
+
+    /**
+     * Collapsing one of two siblings with the same name should only report
+     * that one as collapsed, in the same form the visible rows use.
+     */
+    @Test
+    void testCollapsedSiblingWithSameName() {
+        TreeItem<TimeGraphTreeElement> root = new TreeItem<>();
+        root.setExpanded(true);
+        TimeGraphTreeElement rootElement = node("root", node("x", leaf("x1")), node("x", leaf("x1")));
+        TimeGraphWidgetTreeArea.updateTreeItem(root, rootElement);
+        root.getChildren().get(1).setExpanded(false);
+
+        Set<List<TreePathElement>> collapsedBranches = new HashSet<>();
+        TimeGraphWidgetTreeArea.collectCollapsedBranches(root, TreePathElement.rootPath("root"), collapsedBranches);
+        List<TreePathElement> expected = Arrays.asList(new TreePathElement("root", 0), new TreePathElement("x", 1));
+        assertEquals(Collections.singleton(expected), collapsedBranches);
+
+        /* The rows then hide the children of the second "x" only */
+        TimeGraphVisibleRows rows = TimeGraphVisibleRows.of(new TimeGraphTreeRender(rootElement), collapsedBranches);
+        assertEquals(Arrays.asList("root", "x", "x1", "x"),
+                rows.getElements().stream().map(TimeGraphTreeElement::getName).collect(Collectors.toList()));
+    }
+}
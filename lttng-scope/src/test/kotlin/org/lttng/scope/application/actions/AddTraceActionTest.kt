@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.application.actions
+
+import com.efficios.jabberwocky.tests.JavaFXTestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assumptions.assumeFalse
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.PosixFilePermissions
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+/**
+ * Tests for the search and opening of traces used by the project setup dialog.
+ */
+class AddTraceActionTest : JavaFXTestBase() {
+
+    private val tempDir = Files.createTempDirectory("add-trace")
+
+    @AfterEach
+    fun cleanup() {
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+    }
+
+    private fun createTrace(relativePath: String): Path {
+        val traceDir = Files.createDirectories(tempDir.resolve(relativePath))
+        Files.write(traceDir.resolve("metadata"), "/* CTF 1.8 */".toByteArray())
+        return traceDir
+    }
+
+    @Test
+    fun testFindTraceDirectories() {
+        val kernel = createTrace("session/kernel")
+        val ust = createTrace("session/ust/uid/1000/64-bit")
+        Files.createDirectories(tempDir.resolve("session/empty"))
+        /* A directory named "metadata" is not a trace */
+        Files.createDirectories(tempDir.resolve("other/metadata"))
+
+        val result = findTraceDirectories(tempDir)
+        assertThat(result.tracePaths).containsExactly(kernel, ust)
+        assertThat(result.unreadablePaths).isEmpty()
+    }
+
+    @Test
+    fun testFindTraceDirectoriesMaxDepth() {
+        createTrace("1/2/3/4/5/6/7")
+        assertThat(findTraceDirectories(tempDir).tracePaths).isEmpty()
+    }
+
+    @Test
+    fun testUnreadableDirectorySkipped() {
+        val trace = createTrace("readable/trace")
+        val unreadable = Files.createDirectories(tempDir.resolve("unreadable"))
+        createTrace("unreadable/trace")
+        val permissions = Files.getPosixFilePermissions(unreadable)
+        Files.setPosixFilePermissions(unreadable, PosixFilePermissions.fromString("-wx------"))
+        try {
+            /* Permissions are not enforced for the superuser */
+            assumeFalse(Files.isReadable(unreadable))
+
+            val result = findTraceDirectories(tempDir)
+            assertThat(result.tracePaths).containsExactly(trace)
+            assertThat(result.unreadablePaths).containsExactly(unreadable)
+            assertThat(traceSearchFailureText(result)).contains(unreadable.toString())
+        } finally {
+            Files.setPosixFilePermissions(unreadable, permissions)
+        }
+    }
+
+    @Test
+    fun testSearchFailureTextBounded() {
+        val paths = (1..15).map { tempDir.resolve("dir$it") }
+        val lines = traceSearchFailureText(TraceSearchResult(emptyList(), paths)).lines()
+        assertThat(lines).hasSize(12)
+        assertThat(lines.last()).contains("5 more")
+    }
+
+    @Test
+    fun testOpenInvalidTrace() {
+        val task = openTrace(Files.createDirectories(tempDir.resolve("not-a-trace")))
+        assertThatThrownBy { task.get(10, TimeUnit.SECONDS) }.isInstanceOf(ExecutionException::class.java)
+    }
+
+    @Test
+    fun testFailedTraceTooltip() {
+        val text = failedTraceTooltipText(IllegalStateException("Bad metadata"))
+        assertThat(text).contains(ERROR_OPENING_TRACE_TEXT, "Bad metadata", REMOVE_FAILED_TRACE_TEXT)
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.data.Percentage
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests for [LatencyHistogram].
+ */
+class LatencyHistogramTest {
+
+    @Test
+    fun testEmpty() {
+        val histogram = LatencyHistogram()
+        assertThat(histogram.nbValues).isEqualTo(0L)
+        assertThat(histogram.meanNanos).isEqualTo(0.0)
+        assertThat(histogram.percentileNanos(99.0)).isEqualTo(0L)
+    }
+
+    @Test
+    fun testSmallValuesAreExact() {
+        val histogram = LatencyHistogram()
+        listOf(0L, 1L, 2L, 3L, 4L).forEach { histogram.record(it) }
+        assertThat(histogram.percentileNanos(20.0)).isEqualTo(0L)
+        assertThat(histogram.percentileNanos(60.0)).isEqualTo(2L)
+        assertThat(histogram.percentileNanos(100.0)).isEqualTo(4L)
+        assertThat(histogram.lastNanos).isEqualTo(4L)
+    }
+
+    @Test
+    fun testPercentiles() {
+        val histogram = LatencyHistogram()
+        (1L..1000L).forEach { histogram.record(it * 1000) }
+
+        assertThat(histogram.nbValues).isEqualTo(1000L)
+        assertThat(histogram.maxNanos).isEqualTo(1_000_000L)
+        assertThat(histogram.meanNanos).isEqualTo(500_500.0)
+        assertThat(histogram.percentileNanos(50.0)).isCloseTo(500_000L, Percentage.withPercentage(25.0))
+        assertThat(histogram.percentileNanos(95.0)).isCloseTo(950_000L, Percentage.withPercentage(25.0))
+        assertThat(histogram.percentileNanos(100.0)).isEqualTo(1_000_000L)
+        /* Approximations are upper bounds */
+        assertThat(histogram.percentileNanos(50.0)).isGreaterThanOrEqualTo(500_000L)
+    }
+
+    @Test
+    fun testReset() {
+        val histogram = LatencyHistogram()
+        histogram.record(123_456L)
+        histogram.reset()
+        assertThat(histogram.nbValues).isEqualTo(0L)
+        assertThat(histogram.maxNanos).isEqualTo(0L)
+        assertThat(histogram.percentileNanos(50.0)).isEqualTo(0L)
+    }
+}
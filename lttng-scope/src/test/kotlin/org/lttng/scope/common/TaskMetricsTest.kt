@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common
+
+import com.efficios.jabberwocky.task.JabberwockyTask
+import com.efficios.jabberwocky.tests.JavaFXTestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests for [TaskMetrics].
+ */
+class TaskMetricsTest : JavaFXTestBase() {
+
+    @AfterEach
+    fun cleanup() {
+        TaskMetrics.reset()
+    }
+
+    private fun entry(title: String) = TaskMetrics.getEntries().single { it.title == title }
+
+    @Test
+    fun testCompletedTask() {
+        val tracked = TaskMetrics.track(JabberwockyTask<Unit>("completed") {})
+        assertThat(entry("completed").nbQueued).isEqualTo(1)
+
+        tracked.run()
+
+        with(entry("completed")) {
+            assertThat(nbQueued).isEqualTo(0)
+            assertThat(nbRunning).isEqualTo(0)
+            assertThat(nbCompleted).isEqualTo(1L)
+            assertThat(nbCancelled).isEqualTo(0L)
+            assertThat(runTime.nbValues).isEqualTo(1L)
+            assertThat(queueWait.nbValues).isEqualTo(1L)
+        }
+    }
+
+    @Test
+    fun testCancelledWhileRunning() {
+        lateinit var tracked: TaskMetrics.TrackedTask
+        tracked = TaskMetrics.track(JabberwockyTask<Unit>("cancelled") { task ->
+            tracked.cancel()
+            while (!task.isCancelled) {
+                Thread.sleep(1)
+            }
+        })
+        tracked.run()
+
+        with(entry("cancelled")) {
+            assertThat(nbCompleted).isEqualTo(0L)
+            assertThat(nbCancelled).isEqualTo(1L)
+            assertThat(cancellationLatency.nbValues).isEqualTo(1L)
+            assertThat(wastedNanos).isGreaterThan(0L)
+        }
+    }
+
+    @Test
+    fun testCancelledWhileQueued() {
+        val tracked = TaskMetrics.track(JabberwockyTask<Unit>("queued") {})
+        tracked.cancel()
+        tracked.run()
+
+        with(entry("queued")) {
+            assertThat(nbCancelled).isEqualTo(0L)
+            assertThat(nbCancelledWhileQueued).isEqualTo(1L)
+            assertThat(wastedNanos).isEqualTo(0L)
+        }
+    }
+
+    @Test
+    fun testCsv() {
+        TaskMetrics.track(JabberwockyTask<Unit>("Exporting events to a,b.csv") {}).run()
+        TaskMetrics.track(JabberwockyTask<Unit>(null) {}).run()
+
+        val lines = StringBuilder().also { TaskMetrics.writeCsv(it) }.lines().filter { it.isNotEmpty() }
+        assertThat(lines).hasSize(3)
+        assertThat(lines[0]).startsWith("title,queued,running,completed,")
+        assertThat(lines[1]).startsWith("(untitled),0,0,1,0,0,")
+        assertThat(lines[2]).startsWith("\"Exporting events to a,b.csv\",0,0,1,0,0,")
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.jfx
+
+import com.efficios.jabberwocky.views.common.ColorDefinition
+import javafx.scene.paint.Color
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+import java.util.stream.Collectors
+
+class JfxColorFactoryTest {
+
+    @Test
+    fun testColorFromDef() {
+        val color = JfxColorFactory.getColorFromDef(ColorDefinition(255, 0, 0, ColorDefinition.MAX))
+        assertEquals(Color.RED, color)
+        assertEquals(ColorDefinition(255, 0, 0, ColorDefinition.MAX), JfxColorFactory.colorToColorDef(color))
+    }
+
+    @Test
+    fun testCachedInstances() {
+        val colorDef = ColorDefinition(10, 20, 30, ColorDefinition.MAX)
+        assertSame(JfxColorFactory.getColorFromDef(colorDef), JfxColorFactory.getColorFromDef(colorDef))
+        assertSame(JfxColorFactory.getDerivedColorFromDef(colorDef), JfxColorFactory.getDerivedColorFromDef(colorDef))
+    }
+
+    /**
+     * Threads asking for the same colors at the same time should all get the
+     * same instances.
+     */
+    @Test
+    fun testConcurrentAccess() {
+        val colorDefs = (0 until 64).map { ColorDefinition(it, 255 - it, it * 2, ColorDefinition.MAX) }
+
+        val results = (0 until 10_000).toList().parallelStream()
+                .map { colorDefs[it % colorDefs.size] }
+                .map { it to JfxColorFactory.getDerivedColorFromDef(it) }
+                .collect(Collectors.toList())
+
+        results.forEach { (def, color) -> assertSame(JfxColorFactory.getDerivedColorFromDef(def), color) }
+    }
+}
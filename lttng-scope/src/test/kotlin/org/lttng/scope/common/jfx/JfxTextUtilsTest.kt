@@ -49,6 +49,44 @@ class JfxTextUtilsTest {
             assertTrue(it.contains("..."))
             assertFalse(it.endsWith(("...")))
         }
+
+        JfxTextUtils.computeClippedText(Font.font(10.0),
+                LONG_STRING,
+                100.0,
+                OverrunStyle.LEADING_ELLIPSIS,
+                "...").let {
+            assertTrue(it.startsWith("..."))
+            assertTrue(it.endsWith("somewhere"))
+        }
+
+        JfxTextUtils.computeClippedText(Font.font(10.0),
+                LONG_STRING,
+                100.0,
+                OverrunStyle.CLIP,
+                "...").let {
+            assertTrue(LONG_STRING.startsWith(it))
+            assertTrue(it.length < LONG_STRING.length)
+        }
+    }
+
+    @Test
+    fun testClippedTextFitsWidth() {
+        val font = Font.font(10.0)
+        listOf(10.0, 25.5, 50.0, 100.0, 150.0).forEach { width ->
+            val clipped = JfxTextUtils.computeClippedText(font, LONG_STRING, width, OverrunStyle.ELLIPSIS, "...")
+            assertTrue(JfxTextUtils.computeTextWidth(font, clipped) <= width)
+        }
+    }
+
+    @Test
+    fun testEllipsisDoesNotFit() {
+        JfxTextUtils.computeClippedText(Font.font(10.0),
+                LONG_STRING,
+                1.0,
+                OverrunStyle.ELLIPSIS,
+                "...").let {
+            assertEquals("", it)
+        }
     }
 
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+
+/**
+ * Tests for [CtfTraceWriter], reading back the written trace with the same
+ * CTF reader used to open user traces.
+ */
+class CtfTraceWriterTest {
+
+    companion object {
+        private const val CLOCK_OFFSET = 1_500_000_000_000_000_000L
+    }
+
+    private val traceDir = Files.createTempDirectory("selftrace")
+
+    @AfterEach
+    fun cleanup() {
+        Files.walk(traceDir).sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testReadBack() {
+        val buffer1 = SelfTraceBuffer(1, "first", 16).apply {
+            write(10L, SelfTraceEvent.THREAD_START, "first", 1, 0)
+            write(20L, SelfTraceEvent.PAINT_START, "Timegraph", 42, 0)
+            write(30L, SelfTraceEvent.PAINT_END, "Timegraph", 42, 0)
+        }
+        val buffer2 = SelfTraceBuffer(2, "second", 16).apply {
+            write(15L, SelfTraceEvent.GC_PAUSE, "G1 Young Generation: Allocation Failure", 1_000_000, 3)
+            write(25L, SelfTraceEvent.UI_LATENCY, null, 500, 0)
+        }
+
+        CtfTraceWriter(traceDir, CLOCK_OFFSET).use { writer ->
+            writer.writeMetadata()
+            /* Two packets in the first stream */
+            assertThat(writer.writePacket(buffer1, 2)).isEqualTo(2)
+            assertThat(writer.writePacket(buffer1, 2)).isEqualTo(1)
+            assertThat(writer.writePacket(buffer1, 2)).isEqualTo(0)
+            assertThat(writer.writePacket(buffer2, 10)).isEqualTo(2)
+        }
+
+        val events = CtfTrace(traceDir).iterator().use { it.asSequence().toList() }
+        assertThat(events.map { it.eventName }).containsExactly(
+                "scope:thread_start",
+                "scope:gc_pause",
+                "scope:paint_start",
+                "scope:ui_latency",
+                "scope:paint_end")
+        assertThat(events.map { it.timestamp - CLOCK_OFFSET }).containsExactly(10L, 15L, 20L, 25L, 30L)
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests for [SelfTraceBuffer].
+ */
+class SelfTraceBufferTest {
+
+    private class CollectingConsumer : SelfTraceBuffer.RecordConsumer {
+        val timestamps = mutableListOf<Long>()
+        val strings = mutableListOf<String?>()
+
+        override fun accept(timestamp: Long, event: SelfTraceEvent, string: String?, arg0: Long, arg1: Long) {
+            timestamps.add(timestamp)
+            strings.add(string)
+        }
+    }
+
+    @Test
+    fun testDrainInOrder() {
+        val buffer = SelfTraceBuffer(1, "test", 8)
+        (0L until 5L).forEach { buffer.write(it, SelfTraceEvent.PAINT_START, "w$it", it, 0) }
+
+        val consumer = CollectingConsumer()
+        assertThat(buffer.drain(3, consumer)).isEqualTo(3)
+        assertThat(buffer.drain(10, consumer)).isEqualTo(2)
+        assertThat(buffer.drain(10, consumer)).isEqualTo(0)
+
+        assertThat(consumer.timestamps).containsExactly(0L, 1L, 2L, 3L, 4L)
+        assertThat(consumer.strings).containsExactly("w0", "w1", "w2", "w3", "w4")
+    }
+
+    @Test
+    fun testFullBufferDiscards() {
+        val buffer = SelfTraceBuffer(1, "test", 4)
+        (0L until 6L).forEach { buffer.write(it, SelfTraceEvent.UI_LATENCY, null, it, 0) }
+        assertThat(buffer.nbDiscarded).isEqualTo(2L)
+
+        /* The oldest events are kept, and freed slots can be reused */
+        val consumer = CollectingConsumer()
+        buffer.drain(10, consumer)
+        buffer.write(10L, SelfTraceEvent.UI_LATENCY, null, 0, 0)
+        buffer.drain(10, consumer)
+        assertThat(consumer.timestamps).containsExactly(0L, 1L, 2L, 3L, 10L)
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.common.selftrace
+
+import com.efficios.jabberwocky.ctf.trace.CtfTrace
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+
+/**
+ * Tests for [ThreadBuffers].
+ */
+class ThreadBuffersTest {
+
+    private val traceDir = Files.createTempDirectory("selftrace")
+
+    @AfterEach
+    fun cleanup() {
+        Files.walk(traceDir).sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+    }
+
+    @Test
+    fun testDeadThreadBufferDropped() {
+        val buffers = ThreadBuffers(2)
+        val liveBuffer = SelfTraceBuffer(Thread.currentThread().id, "live", 16)
+        buffers.add(Thread.currentThread(), liveBuffer)
+
+        /* A short-lived thread, writing more events than fit in one packet */
+        val thread = Thread {
+            val buffer = SelfTraceBuffer(Thread.currentThread().id, "short-lived", 16)
+            buffers.add(Thread.currentThread(), buffer)
+            (1L..3L).forEach { buffer.write(it * 10L, SelfTraceEvent.PAINT_START, "Timegraph", it, 0) }
+        }
+        thread.start()
+        thread.join()
+        liveBuffer.write(5L, SelfTraceEvent.UI_LATENCY, null, 100, 0)
+
+        CtfTraceWriter(traceDir, 0L).use { writer ->
+            writer.writeMetadata()
+            assertThat(buffers.size).isEqualTo(2)
+            buffers.flush(writer)
+            /* Only the buffer of the running thread is kept */
+            assertThat(buffers.size).isEqualTo(1)
+        }
+
+        /* All the events of the dead thread were written before its buffer was dropped */
+        val events = CtfTrace(traceDir).iterator().use { it.asSequence().toList() }
+        assertThat(events.map { it.timestamp }).containsExactly(5L, 10L, 20L, 30L)
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project
+
+import com.efficios.jabberwocky.analysis.IAnalysis
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.project.TraceProject
+import com.efficios.jabberwocky.tests.JavaFXTestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.lttng.scope.common.tests.StubProject
+import org.lttng.scope.common.tests.StubTrace
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Tests for [ProjectAnalysisResults].
+ */
+class ProjectAnalysisResultsTest : JavaFXTestBase() {
+
+    companion object {
+        private const val TIMEOUT_SECONDS = 30L
+    }
+
+    private class TestAnalysis(private val body: () -> Any) : IAnalysis {
+        val nbExecutions = AtomicInteger(0)
+
+        override fun appliesTo(project: TraceProject<*, *>) = true
+        override fun canExecute(project: TraceProject<*, *>) = true
+        override fun execute(project: TraceProject<*, *>, range: TimeRange?, extraParams: String?): Any {
+            nbExecutions.incrementAndGet()
+            return body()
+        }
+    }
+
+    private val stubProject = StubProject(StubTrace())
+    private val results = ProjectAnalysisResults(stubProject.traceProject)
+    private val callers = Executors.newCachedThreadPool()
+
+    @AfterEach
+    fun cleanup() {
+        results.cancelAll()
+        callers.shutdownNow()
+        stubProject.close()
+    }
+
+    @Test
+    fun testConcurrentRequestsShareTask() {
+        val release = CountDownLatch(1)
+        val analysis = TestAnalysis {
+            release.await()
+            Any()
+        }
+
+        val requests = (1..4).map { callers.submit(Callable { results.getAnalysisResults(analysis) }) }
+        assertThat(results.getAnalysisTask(analysis)).isSameAs(results.getAnalysisTask(analysis))
+        release.countDown()
+
+        val values = requests.map { it.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) }
+        assertThat(values.distinct()).hasSize(1)
+        assertThat(analysis.nbExecutions.get()).isEqualTo(1)
+    }
+
+    @Test
+    fun testRetryAfterFailure() {
+        val attempts = AtomicInteger(0)
+        val analysis = TestAnalysis {
+            if (attempts.incrementAndGet() == 1) throw IllegalStateException("First run fails")
+            "result"
+        }
+
+        assertThatThrownBy { results.getAnalysisResults(analysis) }.isInstanceOf(IllegalStateException::class.java)
+        assertThat(results.getAnalysisResults(analysis)).isEqualTo("result")
+        assertThat(analysis.nbExecutions.get()).isEqualTo(2)
+        /* The successful run is kept */
+        assertThat(results.getAnalysisResults(analysis)).isEqualTo("result")
+        assertThat(analysis.nbExecutions.get()).isEqualTo(2)
+    }
+
+    @Test
+    fun testCancelAnalysis() {
+        val started = CountDownLatch(1)
+        val analysis = TestAnalysis {
+            started.countDown()
+            /* Only stops when interrupted */
+            CountDownLatch(1).await()
+            Any()
+        }
+
+        val task = results.getAnalysisTask(analysis)
+        assertThat(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)).isTrue()
+        results.cancelAnalysis(analysis)
+
+        assertThatThrownBy { task.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) }.isInstanceOf(CancellationException::class.java)
+        /* A new request starts a new run */
+        assertThat(results.getAnalysisTask(analysis)).isNotSameAs(task)
+    }
+
+    @Test
+    fun testNestedRequestsDoNotStarvePool() {
+        /* More analyses than pool threads, each of them waiting for another analysis */
+        val nbAnalyses = 2 * maxOf(2, Runtime.getRuntime().availableProcessors())
+        val allStarted = CountDownLatch(nbAnalyses)
+        val outerAnalyses = (1..nbAnalyses).map { i ->
+            val inner = TestAnalysis { i }
+            TestAnalysis {
+                allStarted.countDown()
+                allStarted.await(1, TimeUnit.SECONDS)
+                results.getAnalysisResults(inner)
+            }
+        }
+
+        val tasks = outerAnalyses.map { results.getAnalysisTask(it) }
+        val values = tasks.map { it.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) }
+        assertThat(values).isEqualTo((1..nbAnalyses).toList())
+    }
+}
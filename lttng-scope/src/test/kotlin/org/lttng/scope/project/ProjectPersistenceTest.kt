@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project
+
+import com.efficios.jabberwocky.views.common.ColorDefinition
+import com.efficios.jabberwocky.views.common.EventSymbolStyle
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.attribute.FileTime
+
+/**
+ * Tests for [ProjectPersistence].
+ */
+class ProjectPersistenceTest {
+
+    private val traceDir = Files.createTempDirectory("persistence-trace")
+    private val projectDir = Files.createTempDirectory("persistence-project")
+
+    @AfterEach
+    fun cleanup() {
+        listOf(traceDir, projectDir).forEach { dir ->
+            Files.walk(dir).sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+        }
+    }
+
+    private fun resultFile(analysisName: String): Path =
+            Files.createDirectories(projectDir.resolve(ProjectPersistence.ANALYSIS_RESULTS_DIR_NAME))
+                    .resolve(analysisName + ProjectPersistence.ANALYSIS_RESULTS_SUFFIX)
+
+    /** Save a project with one trace and one analysis result, as save() would */
+    private fun saveProject(): ProjectPersistence.SavedProject {
+        Files.write(traceDir.resolve("metadata"), "/* CTF 1.8 */".toByteArray())
+        val trace = ProjectPersistence.SavedTrace(traceDir, ProjectPersistence.traceChecksum(traceDir))
+        val project = ProjectPersistence.SavedProject("my-project", listOf(trace), emptyList())
+        Files.newOutputStream(projectDir.resolve(ProjectPersistence.PROJECT_FILE_NAME)).use {
+            ProjectPersistence.writeProjectFile(DataOutputStream(it), project)
+        }
+
+        val checksum = ProjectPersistence.projectChecksum(listOf(trace.checksum))
+        ProjectPersistence.writeAnalysisResult(resultFile("Analysis"), checksum, ProjectPersistence.serialize(arrayListOf(1L, 2L)))
+        return project
+    }
+
+    private fun currentTraces(project: ProjectPersistence.SavedProject) =
+            project.traces.map { ProjectPersistence.SavedTrace(it.path, ProjectPersistence.traceChecksum(it.path)) }
+
+    @Test
+    fun testProjectFileRoundTrip() {
+        val project = ProjectPersistence.SavedProject("my-project",
+                listOf(ProjectPersistence.SavedTrace(Paths.get("/traces/kernel"), "abcd")),
+                listOf(ProjectPersistence.SavedFilter("sched_switch", ColorDefinition(1, 2, 3, 255), EventSymbolStyle.values().first(), false)))
+
+        val bytes = ByteArrayOutputStream().also { ProjectPersistence.writeProjectFile(DataOutputStream(it), project) }.toByteArray()
+        val read = ProjectPersistence.readProjectFile(DataInputStream(ByteArrayInputStream(bytes)))!!
+
+        assertThat(read.name).isEqualTo("my-project")
+        assertThat(read.traces).isEqualTo(project.traces)
+        with(read.filters.single()) {
+            assertThat(name).isEqualTo("sched_switch")
+            assertThat(listOf(color.red, color.green, color.blue, color.alpha)).containsExactly(1, 2, 3, 255)
+            assertThat(symbol).isEqualTo(EventSymbolStyle.values().first())
+            assertThat(enabled).isFalse()
+        }
+    }
+
+    @Test
+    fun testUnsupportedProjectFile() {
+        val bytes = ByteArrayOutputStream().also {
+            DataOutputStream(it).apply {
+                writeInt(ProjectPersistence.PROJECT_FILE_MAGIC)
+                writeInt(ProjectPersistence.PROJECT_FILE_VERSION + 1)
+            }
+        }.toByteArray()
+        assertThat(ProjectPersistence.readProjectFile(DataInputStream(ByteArrayInputStream(bytes)))).isNull()
+    }
+
+    @Test
+    fun testTraceChecksum() {
+        val metadata = traceDir.resolve("metadata")
+        val stream = traceDir.resolve("channel0_0")
+        Files.write(metadata, "/* CTF 1.8 */".toByteArray())
+        Files.write(stream, ByteArray(16))
+
+        val initial = ProjectPersistence.traceChecksum(traceDir)
+        assertThat(ProjectPersistence.traceChecksum(traceDir)).isEqualTo(initial)
+
+        /* Rewriting the same stream contents at a later time is a change */
+        Files.setLastModifiedTime(stream, FileTime.fromMillis(Files.getLastModifiedTime(stream).toMillis() + 1000))
+        val touched = ProjectPersistence.traceChecksum(traceDir)
+        assertThat(touched).isNotEqualTo(initial)
+
+        /* So is a new stream file */
+        Files.write(traceDir.resolve("channel0_1"), ByteArray(16))
+        assertThat(ProjectPersistence.traceChecksum(traceDir)).isNotEqualTo(touched)
+    }
+
+    @Test
+    fun testAnalysisResultRoundTrip() {
+        val file = resultFile("Analysis")
+        ProjectPersistence.writeAnalysisResult(file, "abcd", ProjectPersistence.serialize(arrayListOf("a", "b")))
+
+        assertThat(ProjectPersistence.readAnalysisResult(file, "abcd")).isEqualTo(arrayListOf("a", "b"))
+        assertThat(ProjectPersistence.readAnalysisResults(projectDir, "abcd")).containsOnlyKeys("Analysis")
+
+        /* A result for other traces is discarded */
+        assertThat(ProjectPersistence.readAnalysisResult(file, "efgh")).isNull()
+        assertThat(file).doesNotExist()
+    }
+
+    @Test
+    fun testUnchangedTracesKeepProjectFiles() {
+        val project = saveProject()
+        val stateSystemFile = Files.write(projectDir.resolve("kernel.ht"), ByteArray(16))
+
+        assertThat(ProjectPersistence.validateProjectDirectory(projectDir, project, currentTraces(project))).isTrue()
+        assertThat(stateSystemFile).exists()
+
+        val checksum = ProjectPersistence.projectChecksum(currentTraces(project).map { it.checksum })
+        assertThat(ProjectPersistence.readAnalysisResults(projectDir, checksum)["Analysis"]).isEqualTo(arrayListOf(1L, 2L))
+    }
+
+    @Test
+    fun testChangedTracesClearProjectDirectory() {
+        val project = saveProject()
+        val stateSystemFile = Files.write(Files.createDirectories(projectDir.resolve("analysis")).resolve("kernel.ht"), ByteArray(16))
+
+        Files.write(traceDir.resolve("channel0_0"), ByteArray(16))
+        val current = currentTraces(project)
+        assertThat(ProjectPersistence.validateProjectDirectory(projectDir, project, current)).isFalse()
+
+        /* Jabberwocky's files and the cached results are gone, the project file now has the new checksums */
+        assertThat(stateSystemFile).doesNotExist()
+        assertThat(Files.list(projectDir).use { files -> files.map { it.fileName.toString() }.toArray() })
+                .containsExactly(ProjectPersistence.PROJECT_FILE_NAME)
+        val rewritten = Files.newInputStream(projectDir.resolve(ProjectPersistence.PROJECT_FILE_NAME)).use {
+            ProjectPersistence.readProjectFile(DataInputStream(it))!!
+        }
+        assertThat(rewritten.traces).isEqualTo(current)
+        assertThat(ProjectPersistence.validateProjectDirectory(projectDir, rewritten, current)).isTrue()
+    }
+}
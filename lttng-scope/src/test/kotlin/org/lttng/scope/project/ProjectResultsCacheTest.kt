@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.Executor
+
+/**
+ * Tests for [ProjectResultsCache].
+ */
+class ProjectResultsCacheTest {
+
+    private val tempDir = Files.createTempDirectory("results-cache")
+    private val spillDir = tempDir.resolve("spill")
+
+    private val key1 = createProject("project1")
+    private val key2 = createProject("project2")
+
+    @AfterEach
+    fun cleanup() {
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+    }
+
+    private fun createProject(name: String): ProjectResultsCache.ProjectKey {
+        val traceDir = Files.createDirectories(tempDir.resolve(name))
+        Files.write(traceDir.resolve("metadata"), "/* CTF 1.8 */".toByteArray())
+        return ProjectResultsCache.ProjectKey(listOf(traceDir))
+    }
+
+    /** Look up a result with the current checksum of the traces, like a new project would */
+    private fun ProjectResultsCache.get(key: ProjectResultsCache.ProjectKey, analysisName: String) =
+            get(key, checksum(key)!!, analysisName)
+
+    /** Spill synchronously, so that the results are on disk when put() returns */
+    private fun createCache(memoryBudget: Long, maxSpillSize: Long = Long.MAX_VALUE) =
+            ProjectResultsCache(memoryBudget, spillDir, maxSpillSize, Executor { it.run() })
+
+    private fun spilledSize() = Files.walk(spillDir).use { paths ->
+        paths.filter { Files.isRegularFile(it) }.mapToLong { Files.size(it) }.sum()
+    }
+
+    @Test
+    fun testResultsKeptInMemory() {
+        val cache = createCache(Long.MAX_VALUE)
+        val result = arrayListOf("a", "b")
+        cache.put(key1, mapOf("Analysis" to result))
+
+        /* The very same object is returned */
+        assertThat(cache.get(key1, "Analysis")).isSameAs(result)
+        assertThat(cache.get(key1, "OtherAnalysis")).isNull()
+        assertThat(cache.getMemoryUsage()).isGreaterThan(0L)
+    }
+
+    @Test
+    fun testSameTracesShareResults() {
+        val cache = createCache(Long.MAX_VALUE)
+        val result = arrayListOf("a", "b")
+        cache.put(key1, mapOf("Analysis" to result))
+
+        /* Another project on the same traces, whatever its name */
+        val sameTraces = ProjectResultsCache.ProjectKey(key1.tracePaths.toList())
+        assertThat(cache.get(sameTraces, "Analysis")).isSameAs(result)
+        assertThat(cache.get(key2, "Analysis")).isNull()
+    }
+
+    @Test
+    fun testEvictedResultsReadFromDisk() {
+        val cache = createCache(0L)
+        cache.put(key1, mapOf("Analysis" to arrayListOf("a", "b")))
+
+        assertThat(cache.getMemoryUsage()).isEqualTo(0L)
+        assertThat(cache.get(key1, "Analysis")).isEqualTo(arrayListOf("a", "b"))
+    }
+
+    @Test
+    fun testLeastRecentlyUsedEvicted() {
+        val result1 = arrayListOf("a")
+        val result2 = arrayListOf("b")
+        /* Measure a single entry, to allow exactly one in the budget */
+        val budget = createCache(Long.MAX_VALUE).apply { put(key1, mapOf("Analysis" to result1)) }.getMemoryUsage()
+
+        val cache = createCache(budget)
+        cache.put(key1, mapOf("Analysis" to result1))
+        cache.put(key2, mapOf("Analysis" to result2))
+
+        assertThat(cache.get(key2, "Analysis")).isSameAs(result2)
+        /* Read back from disk, so a different object */
+        assertThat(cache.get(key1, "Analysis")).isEqualTo(result1).isNotSameAs(result1)
+    }
+
+    @Test
+    fun testChangedTracesInvalidateSpilledResults() {
+        val cache = createCache(0L)
+        cache.put(key1, mapOf("Analysis" to arrayListOf("a")))
+
+        Files.write(key1.tracePaths.single().resolve("channel0_0"), ByteArray(16))
+        assertThat(cache.get(key1, "Analysis")).isNull()
+    }
+
+    @Test
+    fun testChangedTracesInvalidateResultsInMemory() {
+        val cache = createCache(Long.MAX_VALUE)
+        cache.put(key1, mapOf("Analysis" to arrayListOf("a")))
+
+        Files.write(key1.tracePaths.single().resolve("channel0_0"), ByteArray(16))
+        assertThat(cache.get(key1, "Analysis")).isNull()
+        assertThat(cache.getMemoryUsage()).isEqualTo(0L)
+    }
+
+    @Test
+    fun testLeastRecentlyUsedSpilledResultsEvicted() {
+        /* Measure the files of one project, to allow exactly one on disk */
+        createCache(0L).put(key1, mapOf("Analysis" to arrayListOf("a")))
+        val maxSpillSize = spilledSize()
+
+        Files.setLastModifiedTime(spillDir.resolve(key1.dirName), FileTime.fromMillis(0L))
+
+        val cache = createCache(0L, maxSpillSize)
+        cache.put(key2, mapOf("Analysis" to arrayListOf("b")))
+
+        assertThat(spilledSize()).isLessThanOrEqualTo(maxSpillSize)
+        assertThat(cache.get(key1, "Analysis")).isNull()
+        assertThat(cache.get(key2, "Analysis")).isEqualTo(arrayListOf("b"))
+    }
+
+    @Test
+    fun testNonSerializableResultsDropped() {
+        val cache = createCache(Long.MAX_VALUE)
+        cache.put(key1, mapOf("Analysis" to Any()))
+
+        assertThat(cache.get(key1, "Analysis")).isNull()
+        assertThat(cache.getMemoryUsage()).isEqualTo(0L)
+    }
+}
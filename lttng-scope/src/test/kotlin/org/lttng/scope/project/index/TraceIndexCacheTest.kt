@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.project.index
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.lttng.scope.project.ProjectPersistence
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+
+/**
+ * Tests for [TraceIndex] and [TraceIndexCache].
+ */
+class TraceIndexCacheTest {
+
+    private val tempDir = Files.createTempDirectory("trace-index")
+    private val cacheDir = tempDir.resolve("cache")
+
+    @AfterEach
+    fun cleanup() {
+        Files.walk(tempDir).sorted(Comparator.reverseOrder()).forEach { Files.delete(it) }
+    }
+
+    private fun createTrace(name: String): Path {
+        val traceDir = Files.createDirectories(tempDir.resolve(name))
+        Files.write(traceDir.resolve("metadata"), "/* CTF 1.8 */".toByteArray())
+        return traceDir
+    }
+
+    private fun checksum(trace: Path) = ProjectPersistence.traceChecksum(trace)
+
+    /** 25 events, alternating between 2 CPUs, with "sched_switch" events between timestamps 10 and 19 */
+    private fun buildIndex(): TraceIndex {
+        val builder = TraceIndex.Builder(10)
+        (0L until 25L).forEach { ts ->
+            builder.add(ts, (ts % 2).toInt(), if (ts in 10L..19L) "sched_switch" else "irq_handler_entry")
+        }
+        return builder.build()
+    }
+
+    @Test
+    fun testBuilder() {
+        with(buildIndex()) {
+            assertThat(nbEvents).isEqualTo(25L)
+            assertThat((0 until nbCheckpoints).map { getCheckpoint(it) }).containsExactly(0L, 10L, 20L)
+            assertThat(getCpuRange(1)).isEqualTo(TraceIndex.EventRange(12L, 1L, 23L))
+            assertThat(getEventNameRange("sched_switch")).isEqualTo(TraceIndex.EventRange(10L, 10L, 19L))
+            assertThat(getCpuRange(2)).isNull()
+            assertThat(getEventNameRange("sched_wakeup")).isNull()
+        }
+    }
+
+    @Test
+    fun testRoundTrip() {
+        val trace = createTrace("trace")
+        val cache = TraceIndexCache(cacheDir, Long.MAX_VALUE)
+        assertThat(cache.get(trace, checksum(trace))).isNull()
+
+        cache.put(trace, checksum(trace), buildIndex())
+
+        /* A new cache maps the file written by the first one */
+        with(TraceIndexCache(cacheDir, Long.MAX_VALUE).get(trace, checksum(trace))!!) {
+            assertThat(nbEvents).isEqualTo(25L)
+            assertThat(checkpointInterval).isEqualTo(10)
+            assertThat((0 until nbCheckpoints).map { getCheckpoint(it) }).containsExactly(0L, 10L, 20L)
+            assertThat(getCpuRange(0)).isEqualTo(TraceIndex.EventRange(13L, 0L, 24L))
+            assertThat(getEventNameRange("irq_handler_entry")).isEqualTo(TraceIndex.EventRange(15L, 0L, 24L))
+        }
+    }
+
+    @Test
+    fun testChangedTrace() {
+        val trace = createTrace("trace")
+        val cache = TraceIndexCache(cacheDir, Long.MAX_VALUE)
+        cache.put(trace, checksum(trace), buildIndex())
+
+        Files.write(trace.resolve("channel0_0"), ByteArray(16))
+        assertThat(cache.get(trace, checksum(trace))).isNull()
+    }
+
+    @Test
+    fun testEviction() {
+        val trace1 = createTrace("trace1")
+        val trace2 = createTrace("trace2")
+        val trace3 = createTrace("trace3")
+
+        /* Measure one index file, to allow exactly two in the cache */
+        TraceIndexCache(cacheDir, Long.MAX_VALUE).put(trace1, checksum(trace1), buildIndex())
+        val indexSize = Files.list(cacheDir).use { files -> files.mapToLong { Files.size(it) }.sum() }
+        val cache = TraceIndexCache(cacheDir, 2 * indexSize)
+
+        cache.put(trace2, checksum(trace2), buildIndex())
+        /* Make trace1 the most recently used one, so trace2 gets evicted */
+        Files.list(cacheDir).use { files -> files.forEach { Files.setLastModifiedTime(it, FileTime.fromMillis(0L)) } }
+        assertThat(cache.get(trace1, checksum(trace1))).isNotNull()
+        cache.put(trace3, checksum(trace3), buildIndex())
+
+        assertThat(cache.get(trace1, checksum(trace1))).isNotNull()
+        assertThat(cache.get(trace2, checksum(trace2))).isNull()
+        assertThat(cache.get(trace3, checksum(trace3))).isNotNull()
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.tests.JavaFXTestBase
+import com.efficios.jabberwocky.views.common.ColorDefinition
+import com.efficios.jabberwocky.views.common.EventSymbolStyle
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.lttng.scope.common.tests.StubProject
+import org.lttng.scope.common.tests.StubTrace
+import org.lttng.scope.project.filter.EventFilterDefinition
+import java.nio.file.Files
+import java.util.concurrent.ExecutionException
+
+/**
+ * Tests for [EventExport] and the choice of its [EventExportFormat].
+ */
+class EventExportTest : JavaFXTestBase() {
+
+    private val stubProject = StubProject(StubTrace())
+    private val target = Files.createTempFile("event-export", ".csv")
+
+    @AfterEach
+    fun cleanup() {
+        Files.deleteIfExists(target)
+        stubProject.close()
+    }
+
+    @Test
+    fun testFormatFromFileName() {
+        assertThat(EventExportFormat.fromFileName("events.csv")).isEqualTo(EventExportFormat.CSV)
+        assertThat(EventExportFormat.fromFileName("events.tar.SEVT")).isEqualTo(EventExportFormat.COLUMNAR)
+        assertThat(EventExportFormat.fromFileName("events")).isNull()
+        assertThat(EventExportFormat.fromFileName("events.txt")).isNull()
+    }
+
+    @Test
+    fun testFailedExportDeletesFile() {
+        val failingFilter = EventFilterDefinition("failing", ColorDefinition(0, 0, 0, ColorDefinition.MAX),
+                EventSymbolStyle.CIRCLE, { throw IllegalStateException("Filter failure") })
+        val range = TimeRange.of(StubTrace.FULL_TRACE_START_TIME, StubTrace.FULL_TRACE_END_TIME)
+        val task = EventExport(stubProject.traceProject, range, listOf(failingFilter), EventExportFormat.CSV, target).createTask()
+
+        task.run()
+
+        assertThatThrownBy { task.get() }.isInstanceOf(ExecutionException::class.java)
+        assertThat(target).doesNotExist()
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import org.lttng.scope.common.tests.StubTrace
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+
+/**
+ * Tests for the [EventExportWriter] implementations.
+ */
+class EventExportWriterTest {
+
+    private val trace = StubTrace()
+    private val target = Files.createTempFile("event-export", null)
+
+    @AfterEach
+    fun cleanup() {
+        Files.deleteIfExists(target)
+    }
+
+    private fun writeEvents(format: EventExportFormat, events: List<TraceEvent>) {
+        FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING).use { channel ->
+            format.createWriter(channel).use { writer -> events.forEach { writer.write(it) } }
+        }
+    }
+
+    @Test
+    fun testCsv() {
+        val events = listOf(
+                BaseTraceEvent(trace, 100_000L, 0, "sched_switch", emptyMap(), null),
+                BaseTraceEvent(trace, 100_010L, 1, "needs,quoting\"", emptyMap(), null))
+        writeEvents(EventExportFormat.CSV, events)
+
+        val lines = Files.readAllLines(target)
+        assertEquals(listOf(
+                "timestamp,trace,cpu,event,fields",
+                "100000,StubTrace,0,sched_switch,",
+                "100010,StubTrace,1,\"needs,quoting\"\"\","),
+                lines)
+    }
+
+    @Test
+    fun testColumnarBlocks() {
+        val nbEvents = ColumnarEventWriter.BLOCK_SIZE + 10
+        val events = (0 until nbEvents).map { BaseTraceEvent(trace, 1000L + it, it % 2, "event", emptyMap(), null) }
+        writeEvents(EventExportFormat.COLUMNAR, events)
+
+        val buffer = ByteBuffer.wrap(Files.readAllBytes(target))
+        val magic = ByteArray(ColumnarEventWriter.MAGIC.size).also { buffer.get(it) }
+        assertEquals(String(ColumnarEventWriter.MAGIC), String(magic))
+        assertEquals(ColumnarEventWriter.VERSION, buffer.int)
+
+        val blockSizes = mutableListOf<Int>()
+        var firstEvent = 0
+        while (true) {
+            val blockSize = buffer.int
+            if (blockSize == 0) break
+            blockSizes.add(blockSize)
+
+            /* String table: the trace name and the event name */
+            val strings = (0 until buffer.int).map {
+                ByteArray(buffer.int).also { buffer.get(it) }.toString(Charsets.UTF_8)
+            }
+            assertEquals(listOf("StubTrace", "event"), strings)
+
+            var ts = 0L
+            for (i in 0 until blockSize) {
+                ts += buffer.long
+                assertEquals(events[firstEvent + i].timestamp, ts)
+            }
+            for (i in 0 until blockSize) assertEquals(events[firstEvent + i].cpu, buffer.int)
+            for (i in 0 until blockSize) assertEquals(0, buffer.int)
+            for (i in 0 until blockSize) assertEquals(1, buffer.int)
+            for (i in 0 until blockSize) assertEquals(0, buffer.int)
+            firstEvent += blockSize
+        }
+
+        assertEquals(listOf(ColumnarEventWriter.BLOCK_SIZE, 10), blockSizes)
+        assertEquals(0, buffer.remaining())
+    }
+}
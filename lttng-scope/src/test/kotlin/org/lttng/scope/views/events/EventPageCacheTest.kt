@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.FieldValue
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.lttng.scope.common.tests.StubTrace
+
+/**
+ * Tests for [EventPageCache].
+ */
+class EventPageCacheTest {
+
+    private val trace = StubTrace()
+
+    private val commValues = listOf("bash", "sshd", "lttng-sessiond").map { FieldValue.StringValue(it) }
+    private val sharedAttributes = mapOf("source" to "kernel")
+
+    /**
+     * Events at timestamps 1000, 1010, 1020, ... Every fifth event has no
+     * fields, the others have a "comm" field whose values repeat and a "tid"
+     * field, then fields depending on the event name. Events of even index
+     * share the same attributes, the others have none.
+     */
+    private fun createEvents(nbEvents: Int, firstIndex: Int = 0): List<TraceEvent> =
+            (firstIndex until firstIndex + nbEvents).map {
+                val fields = if (it % 5 == 0) {
+                    emptyMap()
+                } else {
+                    linkedMapOf("comm" to commValues[it % commValues.size],
+                            "tid" to FieldValue.IntegerValue(it.toLong())) +
+                            (if (it % 3 == 0) mapOf("prio" to FieldValue.IntegerValue(20L)) else emptyMap())
+                }
+                BaseTraceEvent(trace, 1000L + it * 10L, it % 4, "event${it % 3}", fields, if (it % 2 == 0) sharedAttributes else null)
+            }
+
+    @Test
+    fun testEmptyCache() {
+        val cache = EventPageCache(1000, 10)
+        assertNull(cache.lookup(1000L))
+    }
+
+    @Test
+    fun testEventsAreRestored() {
+        val cache = EventPageCache(1000, 10)
+        val events = createEvents(100)
+        cache.put(events, false, false)
+
+        val cached = cache.lookup(1500L)!!
+        assertEquals(50, cached.index)
+        assertEquals(events.size, cached.events.size)
+        events.zip(cached.events).forEach { (expected, actual) ->
+            assertEquals(expected.timestamp, actual.timestamp)
+            assertEquals(expected.cpu, actual.cpu)
+            assertEquals(expected.eventName, actual.eventName)
+            assertEquals(expected.trace, actual.trace)
+            assertEquals(expected.fields, actual.fields)
+            assertEquals(expected.fields.keys.toList(), actual.fields.keys.toList())
+            assertEquals(expected.attributes, actual.attributes)
+        }
+    }
+
+    @Test
+    fun testFieldsAndAttributesAreRestored() {
+        val cache = EventPageCache(1000, 10)
+        val events = createEvents(100)
+        cache.put(events, true, true)
+        val cached = cache.lookup(1000L)!!.events
+
+        assertTrue(cached[0].fields.isEmpty())
+        assertEquals(listOf("comm", "tid", "prio"), cached[3].fields.keys.toList())
+        assertEquals(commValues[0], cached[3].fields["comm"])
+        assertEquals(events[3].fields["tid"], cached[3].fields["tid"])
+        assertEquals(listOf("comm", "tid"), cached[4].fields.keys.toList())
+
+        /* Repeated values come back as the same object */
+        assertSame(cached[1].fields["comm"], cached[4].fields["comm"])
+
+        assertEquals(sharedAttributes, cached[2].attributes)
+        assertNull(cached[3].attributes)
+    }
+
+    @Test
+    fun testMargins() {
+        val cache = EventPageCache(1000, 10)
+        cache.put(createEvents(100), false, false)
+
+        /* Not enough events before or after the requested timestamp */
+        assertNull(cache.lookup(1050L))
+        assertNull(cache.lookup(1950L))
+        assertNull(cache.lookup(5000L))
+
+        assertNotNull(cache.lookup(1100L))
+        assertNotNull(cache.lookup(1900L))
+    }
+
+    @Test
+    fun testMarginsAtProjectBounds() {
+        val cache = EventPageCache(1000, 10)
+        cache.put(createEvents(100), true, true)
+
+        assertEquals(0, cache.lookup(500L)?.index)
+        assertEquals(5, cache.lookup(1050L)?.index)
+        assertEquals(100, cache.lookup(5000L)?.index)
+    }
+
+    @Test
+    fun testEviction() {
+        val cache = EventPageCache(250, 10)
+        cache.put(createEvents(100, 0), false, false)
+        cache.put(createEvents(100, 1000), false, false)
+
+        /* Use the first page, so that the second one becomes the least recently used. */
+        assertNotNull(cache.lookup(1500L))
+
+        cache.put(createEvents(100, 2000), false, false)
+        assertNotNull(cache.lookup(1500L))
+        assertNull(cache.lookup(11500L))
+        assertNotNull(cache.lookup(21500L))
+
+        cache.clear()
+        assertNull(cache.lookup(1500L))
+    }
+}
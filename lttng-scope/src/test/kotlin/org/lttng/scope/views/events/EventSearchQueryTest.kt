@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.events
+
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.FieldValue
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.lttng.scope.common.tests.StubTrace
+
+/**
+ * Tests for [EventSearchQuery] and [EventSearchResults].
+ */
+class EventSearchQueryTest {
+
+    private val trace = StubTrace()
+    private val event = BaseTraceEvent(trace, 150_000L, 2, "sched_switch", emptyMap(), null)
+
+    @Test
+    fun testEmptyQuery() {
+        val query = EventSearchQuery(null, null, null)
+        assertTrue(query.isEmpty)
+        assertTrue(query.matches(event))
+    }
+
+    @Test
+    fun testEventName() {
+        assertTrue(EventSearchQuery("sched_switch", null, null).matches(event))
+        assertFalse(EventSearchQuery("sched_wakeup", null, null).matches(event))
+    }
+
+    @Test
+    fun testCpu() {
+        assertTrue(EventSearchQuery(null, null, 2).matches(event))
+        assertFalse(EventSearchQuery(null, null, 3).matches(event))
+        assertFalse(EventSearchQuery("sched_switch", null, 3).matches(event))
+    }
+
+    @Test
+    fun testFieldRegexWithoutFields() {
+        assertFalse(EventSearchQuery(null, Regex(".*"), null).matches(event))
+    }
+
+    @Test
+    fun testFieldRegex() {
+        val eventWithFields = BaseTraceEvent(trace, 150_000L, 2, "sched_switch",
+                mapOf("prev_comm" to FieldValue.StringValue("bash")), null)
+        assertTrue(EventSearchQuery(null, Regex("^prev_comm="), null).matches(eventWithFields))
+        assertTrue(EventSearchQuery("sched_switch", Regex("comm"), 2).matches(eventWithFields))
+        assertFalse(EventSearchQuery(null, Regex("^next_comm="), null).matches(eventWithFields))
+    }
+
+    @Test
+    fun testResultsNavigation() {
+        val results = EventSearchResults(EventSearchQuery("sched_switch", null, null))
+        listOf(10L, 20L, 20L, 30L).forEach { results.addMatch(it) }
+
+        assertEquals(4L, results.matchCount)
+        assertEquals(EventSearchMatch(10L, 0), results.nextMatch(5L))
+        assertEquals(EventSearchMatch(20L, 0), results.nextMatch(10L))
+        assertNull(results.nextMatch(30L))
+        assertEquals(EventSearchMatch(10L, 0), results.previousMatch(20L))
+        assertEquals(EventSearchMatch(20L, 1), results.previousMatch(30L))
+        assertNull(results.previousMatch(10L))
+    }
+
+    @Test
+    fun testNavigationThroughSameTimestamp() {
+        val results = EventSearchResults(EventSearchQuery("sched_switch", null, null))
+        listOf(10L, 20L, 20L, 20L, 30L).forEach { results.addMatch(it) }
+
+        /* Going forwards then backwards visits every match */
+        val forwards = generateSequence(results.nextMatch(0L)) { results.nextMatch(it) }.toList()
+        assertEquals(listOf(
+                EventSearchMatch(10L, 0),
+                EventSearchMatch(20L, 0),
+                EventSearchMatch(20L, 1),
+                EventSearchMatch(20L, 2),
+                EventSearchMatch(30L, 0)), forwards)
+        val backwards = generateSequence(forwards.last()) { results.previousMatch(it) }.toList()
+        assertEquals(forwards.reversed(), backwards)
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+import com.efficios.jabberwocky.trace.event.BaseTraceEvent
+import com.efficios.jabberwocky.trace.event.TraceEvent
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+import org.lttng.scope.common.tests.StubTrace
+import java.util.function.Predicate
+
+/**
+ * Tests for [TimeGraphTreeIndex].
+ */
+class TimeGraphTreeIndexTest {
+
+    private val trace = StubTrace()
+
+    private fun element(name: String, predicate: (TraceEvent) -> Boolean) = object : TimeGraphTreeElement(name, emptyList()) {
+        override val eventMatching = Predicate<TraceEvent> { predicate(it) }
+    }
+
+    private fun event(timestamp: Long, cpu: Int) = BaseTraceEvent(trace, timestamp, cpu, "event", emptyMap(), null)
+
+    /* "cpu0-late" also matches the events of CPU 0 after timestamp 100 */
+    private val cpu0 = element("cpu0") { it.cpu == 0 && it.timestamp < 100L }
+    private val cpu0Late = element("cpu0-late") { it.cpu == 0 }
+    private val cpu1 = element("cpu1") { it.cpu == 1 }
+    private val noPredicate = TimeGraphTreeElement("no-predicate", emptyList())
+    private val root = TimeGraphTreeElement("root", listOf(noPredicate, cpu0, cpu0Late, cpu1))
+    private val index = TimeGraphTreeIndex.of(TimeGraphTreeRender(root))
+
+    @Test
+    fun testRows() {
+        assertEquals(0, index.rowOf(root))
+        assertEquals(2, index.rowOf(cpu0))
+        assertEquals(4, index.rowOf(cpu1))
+        assertEquals(-1, index.rowOf(TimeGraphTreeElement("other", emptyList())))
+    }
+
+    @Test
+    fun testSingleMatch() {
+        assertSame(cpu1, index.findMatchingElement(event(10L, 1)))
+        assertNull(index.findMatchingElement(event(10L, 2)))
+    }
+
+    @Test
+    fun testFirstOfMultipleMatches() {
+        /* Both CPU 0 elements match, the first one in tree order wins */
+        assertSame(cpu0, index.findMatchingElement(event(10L, 0)))
+    }
+
+    @Test
+    fun testFirstMatchAfterOtherElementMatched() {
+        /* A previous event of the same CPU matching another element does not change the result */
+        assertSame(cpu0Late, index.findMatchingElement(event(200L, 0)))
+        assertSame(cpu0, index.findMatchingElement(event(20L, 0)))
+        assertSame(cpu0Late, index.findMatchingElement(event(300L, 0)))
+    }
+}
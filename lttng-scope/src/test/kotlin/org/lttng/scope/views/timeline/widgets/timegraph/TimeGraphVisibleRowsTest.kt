@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph
+
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
+import org.junit.jupiter.api.Assertions.*
+import org.junit.jupiter.api.Test
+
+/**
+ * Tests for [TimeGraphVisibleRows].
+ */
+class TimeGraphVisibleRowsTest {
+
+    private val a1 = TimeGraphTreeElement("a1", emptyList())
+    private val a2 = TimeGraphTreeElement("a2", emptyList())
+    private val b1 = TimeGraphTreeElement("b1", emptyList())
+    private val a = TimeGraphTreeElement("a", listOf(a1, a2))
+    private val b = TimeGraphTreeElement("b", listOf(b1))
+    private val root = TimeGraphTreeElement("root", listOf(a, b))
+    private val treeRender = TimeGraphTreeRender(root)
+
+    /** Path of a branch whose elements have unique names among their siblings */
+    private fun path(vararg names: String) = names.map { TreePathElement(it, 0) }
+
+    @Test
+    fun testNothingCollapsed() {
+        val rows = TimeGraphVisibleRows.of(treeRender, emptySet())
+        assertEquals(treeRender.allTreeElements, rows.elements)
+        treeRender.allTreeElements.forEachIndexed { index, element -> assertEquals(index, rows.rowOf(element)) }
+    }
+
+    @Test
+    fun testCollapsedBranch() {
+        val rows = TimeGraphVisibleRows.of(treeRender, setOf(path("root", "a")))
+
+        val expected = treeRender.allTreeElements.filter { it !== a1 && it !== a2 }
+        assertEquals(expected, rows.elements)
+        assertEquals(expected.size, rows.size)
+
+        /* The collapsed element itself is still displayed */
+        assertNotEquals(-1, rows.rowOf(a))
+        assertEquals(-1, rows.rowOf(a1))
+        assertEquals(-1, rows.rowOf(a2))
+        assertEquals(rows.rowOf(a) + 1, rows.rowOf(b))
+        assertEquals(rows.rowOf(b) + 1, rows.rowOf(b1))
+    }
+
+    @Test
+    fun testCollapsedRoot() {
+        val rows = TimeGraphVisibleRows.of(treeRender, setOf(path("root")))
+        assertTrue(rows.elements.none { it === a || it === b || it === a1 || it === a2 || it === b1 })
+        assertEquals(-1, rows.rowOf(b1))
+    }
+
+    @Test
+    fun testIsFor() {
+        val collapsed = setOf(path("root", "b"))
+        val rows = TimeGraphVisibleRows.of(treeRender, collapsed)
+        assertTrue(rows.isFor(treeRender, setOf(path("root", "b"))))
+        assertFalse(rows.isFor(treeRender, emptySet()))
+        assertFalse(rows.isFor(TimeGraphTreeRender(root), collapsed))
+    }
+
+    @Test
+    fun testCollapsedSiblingWithSameName() {
+        val t1 = TimeGraphTreeElement("thread", listOf(TimeGraphTreeElement("child", emptyList())))
+        val t2 = TimeGraphTreeElement("thread", listOf(TimeGraphTreeElement("child", emptyList())))
+        val render = TimeGraphTreeRender(TimeGraphTreeElement("root", listOf(t1, t2)))
+
+        /* Only the children of the second "thread" are hidden */
+        val rows = TimeGraphVisibleRows.of(render, setOf(listOf(TreePathElement("root", 0), TreePathElement("thread", 1))))
+        assertNotEquals(-1, rows.rowOf(t1.childElements.single()))
+        assertEquals(-1, rows.rowOf(t2.childElements.single()))
+        assertEquals(render.allTreeElements.size - 1, rows.size)
+    }
+
+    @Test
+    fun testPathElementsOfSiblings() {
+        assertEquals(listOf(TreePathElement("a", 0), TreePathElement("b", 0), TreePathElement("a", 1)),
+                TreePathElement.ofSiblings(listOf("a", "b", "a")))
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph.layer
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.*
+
+/**
+ * Tests for [RowSpanIndex].
+ */
+class RowSpanIndexTest {
+
+    private fun createIndex(spans: List<IntRange>) = RowSpanIndex(spans, { it.first }, { it.last })
+
+    @Test
+    fun testEmpty() {
+        assertTrue(createIndex(emptyList()).query(0, 100).isEmpty())
+    }
+
+    @Test
+    fun testQuery() {
+        val spans = listOf(0..2, 5..5, 3..10, 20..30, 8..9)
+        val index = createIndex(spans)
+
+        assertEquals(listOf(0..2), index.query(0, 1))
+        /* Spans crossing the range without starting or ending in it are included. */
+        assertEquals(listOf(3..10), index.query(6, 7))
+        assertEquals(listOf(3..10, 5..5, 8..9), index.query(4, 9))
+        assertEquals(listOf(20..30), index.query(25, 100))
+        assertTrue(index.query(11, 19).isEmpty())
+    }
+
+    @Test
+    fun testRandomSpans() {
+        val random = Random(42)
+        val spans = (0 until 1000).map {
+            val first = random.nextInt(500)
+            first..(first + random.nextInt(50))
+        }
+        val index = createIndex(spans)
+
+        repeat(100) {
+            val top = random.nextInt(550)
+            val bottom = top + random.nextInt(20)
+            val expected = spans.filter { it.first <= bottom && it.last >= top }
+            assertEquals(expected.sortedBy { it.first }.toSet(), index.query(top, bottom).toSet())
+            assertEquals(expected.size, index.query(top, bottom).size)
+        }
+    }
+}
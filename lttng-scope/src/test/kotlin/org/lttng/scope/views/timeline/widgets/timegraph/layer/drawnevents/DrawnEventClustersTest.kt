@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 EfficiOS Inc., Alexandre Montplaisir <alexmonthy@efficios.com>
+ *
+ * All rights reserved. This program and the accompanying materials are
+ * made available under the terms of the Eclipse Public License v1.0 which
+ * accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.lttng.scope.views.timeline.widgets.timegraph.layer.drawnevents
+
+import com.efficios.jabberwocky.common.ConfigOption
+import com.efficios.jabberwocky.common.TimeRange
+import com.efficios.jabberwocky.tests.JavaFXTestBase
+import com.efficios.jabberwocky.views.common.ColorDefinition
+import com.efficios.jabberwocky.views.common.EventSymbolStyle
+import com.efficios.jabberwocky.views.timegraph.model.provider.drawnevents.TimeGraphDrawnEventProvider
+import com.efficios.jabberwocky.views.timegraph.model.render.TimeGraphEvent
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEvent
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEventRender
+import com.efficios.jabberwocky.views.timegraph.model.render.drawnevents.TimeGraphDrawnEventSeries
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeElement
+import com.efficios.jabberwocky.views.timegraph.model.render.tree.TimeGraphTreeRender
+import javafx.scene.shape.Circle
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.util.concurrent.FutureTask
+import java.util.function.LongToDoubleFunction
+import java.util.function.ToIntFunction
+
+/**
+ * Tests for the clustering of drawn events, from the providers to the
+ * symbols and their count badges.
+ */
+class DrawnEventClustersTest : JavaFXTestBase() {
+
+    private val series = TimeGraphDrawnEventSeries("Series",
+            ConfigOption(ColorDefinition(0, 255, 0, ColorDefinition.MAX)),
+            ConfigOption(EventSymbolStyle.CIRCLE))
+
+    private val e1 = TimeGraphTreeElement("e1", emptyList())
+    private val e2 = TimeGraphTreeElement("e2", emptyList())
+    private val hidden = TimeGraphTreeElement("hidden", emptyList())
+    private val root = TimeGraphTreeElement("root", listOf(e1, e2, hidden))
+    private val treeRender = TimeGraphTreeRender(root)
+
+    private val range = TimeRange.of(1000L, 2000L)
+
+    /* One pixel per 10 ns from the start of the range, 'hidden' is not displayed */
+    private val rowOf = ToIntFunction<TimeGraphTreeElement> { if (it == hidden) -1 else treeRender.allTreeElements.indexOf(it) }
+    private val xOf = LongToDoubleFunction { (it - range.startTime) / 10.0 }
+
+    private fun event(ts: Long, element: TimeGraphTreeElement) = TimeGraphDrawnEvent(TimeGraphEvent(ts, element), series, null)
+
+    @Test
+    fun testBuilderGroupsPerRowAndBucket() {
+        val builder = DrawnEventClusterBuilder(range, 100.0)
+        val first = event(1000L, e1)
+        builder.add(1, first)
+        builder.add(1, event(1050L, e1))
+        builder.add(1, event(1099L, e1))
+        builder.add(2, event(1010L, e2))
+        builder.add(1, event(1100L, e1))
+
+        val clusters = builder.build()
+        assertThat(clusters.map { it.event.event.treeElement to it.count })
+                .containsExactly(e1 to 3, e2 to 1, e1 to 1)
+        /* A cluster is represented by its first event */
+        assertThat(clusters[0].event).isSameAs(first)
+        assertThat(clusters[2].event.event.timestamp).isEqualTo(1100L)
+    }
+
+    @Test
+    fun testBuilderMinimumResolution() {
+        /* Sub-nanosecond resolutions still give one bucket per nanosecond */
+        val builder = DrawnEventClusterBuilder(range, 0.001)
+        builder.add(1, event(1000L, e1))
+        builder.add(1, event(1000L, e1))
+        builder.add(1, event(1001L, e1))
+
+        assertThat(builder.build().map { it.count }).containsExactly(2, 1)
+    }
+
+    @Test
+    fun testMergePerPixel() {
+        val clusters = listOf(
+                DrawnEventCluster(event(1000L, e1), 3),
+                DrawnEventCluster(event(1005L, e1), 2),
+                DrawnEventCluster(event(1005L, e2), 1),
+                DrawnEventCluster(event(1010L, e1), 4))
+
+        val placed = mergeClustersPerPixel(clusters, rowOf, xOf)
+        assertThat(placed.map { Triple(it.row, it.x, it.cluster.count) })
+                .containsExactly(Triple(1, 0.0, 5), Triple(2, 0.5, 1), Triple(1, 1.0, 4))
+        /* The merged cluster keeps the position and event of its first cluster */
+        assertThat(placed[0].cluster.event).isSameAs(clusters[0].event)
+    }
+
+    @Test
+    fun testMergeSkipsHiddenRows() {
+        val clusters = listOf(
+                DrawnEventCluster(event(1000L, hidden), 7),
+                DrawnEventCluster(event(1000L, e1), 1))
+
+        val placed = mergeClustersPerPixel(clusters, rowOf, xOf)
+        assertThat(placed.map { it.cluster.event.event.treeElement }).containsExactly(e1)
+    }
+
+    @Test
+    fun testClusteringProviderCountsKept() {
+        val provider = object : TimeGraphDrawnEventProvider(series), ClusteringDrawnEventProvider {
+            override fun getEventRender(treeRender: TimeGraphTreeRender, timeRange: TimeRange, task: FutureTask<*>?) =
+                    throw AssertionError("The clusters should be queried instead")
+
+            override fun getEventClusters(treeRender: TimeGraphTreeRender, timeRange: TimeRange, resolution: Double, task: FutureTask<*>?) =
+                    listOf(DrawnEventCluster(event(1000L, e1), 42))
+        }
+
+        val clusters = getDrawnEventClusters(provider, treeRender, range, 10.0, null)
+        assertThat(clusters.map { it.count }).containsExactly(42)
+    }
+
+    @Test
+    fun testPlainProviderOneClusterPerEvent() {
+        val provider = object : TimeGraphDrawnEventProvider(series) {
+            override fun getEventRender(treeRender: TimeGraphTreeRender, timeRange: TimeRange, task: FutureTask<*>?) =
+                    TimeGraphDrawnEventRender(timeRange, listOf(event(1000L, e1), event(1001L, e1)))
+        }
+
+        val clusters = getDrawnEventClusters(provider, treeRender, range, 10.0, null)
+        assertThat(clusters.map { it.count }).containsExactly(1, 1)
+        /* They end up in the same pixel, so get merged */
+        assertThat(mergeClustersPerPixel(clusters, rowOf, xOf).map { it.cluster.count }).containsExactly(2)
+    }
+
+    @Test
+    fun testCountBadgeFollowsSymbol() {
+        val symbol = Circle(2.0)
+        val badge = TimeGraphDrawnEventLayer.createCountBadge(symbol, 12)
+        assertThat(badge.text).isEqualTo("12")
+        assertThat(badge.isMouseTransparent).isTrue()
+
+        symbol.translateX = 35.0
+        symbol.translateY = 17.0
+        assertThat(badge.translateX).isEqualTo(35.0)
+        assertThat(badge.translateY).isEqualTo(17.0)
+    }
+}